@@ -0,0 +1,161 @@
+package it.schillaci.jif.bench;
+
+/*
+ * InformCorpus.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Source of Inform text for the benchmarks. A corpus is either generated or
+ * read from a file or directory of Inform sources. The synthetic corpora are
+ * named <code>synthetic-&lt;size&gt;</code>, where the size is a number of
+ * characters with an optional <code>k</code> or <code>m</code> suffix. Any
+ * other name is taken as the path of an Inform file, such as a library
+ * <code>.h</code> file, or a directory whose <code>.inf</code> and
+ * <code>.h</code> files are joined together.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public final class InformCorpus {
+
+    private static final String SYNTHETIC = "synthetic-";
+
+    private InformCorpus() {
+    }
+
+    /**
+     * Returns the text of the named corpus
+     *
+     * @param name
+     *            a synthetic corpus name or a file path
+     * @return the Inform source text
+     * @throws IOException
+     *            If a corpus file cannot be read
+     */
+    public static String load(String name) throws IOException {
+
+        if (name.startsWith(SYNTHETIC)) {
+            return generate(parseSize(name.substring(SYNTHETIC.length())));
+        }
+
+        File file = new File(name);
+        StringBuilder sb = new StringBuilder();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                String fileName = files[i].getName().toLowerCase();
+                if (fileName.endsWith(".inf") || fileName.endsWith(".h")) {
+                    sb.append(read(files[i])).append('\n');
+                }
+            }
+        } else {
+            sb.append(read(file));
+        }
+        if (sb.length() == 0) {
+            throw new IOException("No Inform source found in " + name);
+        }
+        return sb.toString();
+
+    }
+
+    /**
+     * Generates an Inform game of at least the specified size. The game mixes
+     * the constructs the editor has to deal with: directives, classes and
+     * objects with properties and attributes, routines with nested brackets,
+     * comments, single quoted words, and strings spanning several lines.
+     *
+     * @param size
+     *            the minimum number of characters to generate
+     * @return the generated Inform source
+     */
+    public static String generate(int size) {
+
+        StringBuilder sb = new StringBuilder(size + 1024);
+        sb.append("! Generated benchmark game\n")
+          .append("Constant Story \"Benchmark\";\n")
+          .append("Constant Headline \"^A generated game^\";\n")
+          .append("Include \"Parser\";\n")
+          .append("Include \"VerbLib\";\n\n")
+          .append("Class Room\n")
+          .append("  has light;\n\n");
+
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("Room room").append(i).append(" \"Room ").append(i).append("\"\n")
+              .append("  with description\n")
+              .append("      \"This is room number ").append(i).append(". The walls are\n")
+              .append("      covered in writing that runs on to the next line.\",\n")
+              .append("      n_to room").append(i + 1).append(", s_to room").append(Math.max(i - 1, 0)).append(",\n")
+              .append("      before [;\n")
+              .append("          Take: if (noun == self || (noun ofclass Room && noun ~= ")
+              .append(i).append(")) {\n")
+              .append("              print \"You can't take that.^\"; rtrue;\n")
+              .append("          }\n")
+              .append("          Examine: <<Look>>;\n")
+              .append("      ],\n")
+              .append("      name 'room' 'number' 'wall@'s',\n")
+              .append("      counter $").append(Integer.toHexString(i)).append(" $$101 ").append(i).append(";\n\n")
+              .append("[ Routine").append(i).append(" x y; ! routine comment\n")
+              .append("  for (x = 0 : x < ").append(i % 17).append(" : x++) {\n")
+              .append("      y = y + x * 2;\n")
+              .append("      if (y > 100) return y;\n")
+              .append("  }\n")
+              .append("  return Array").append(i % 5).append("-->0;\n")
+              .append("];\n\n");
+        }
+        sb.append("Verb 'bench' * noun -> Examine;\n");
+        return sb.toString();
+
+    }
+
+    private static int parseSize(String size) {
+
+        String digits = size.toLowerCase();
+        int multiplier = 1;
+        if (digits.endsWith("k")) {
+            multiplier = 1024;
+            digits = digits.substring(0, digits.length() - 1);
+        } else if (digits.endsWith("m")) {
+            multiplier = 1024 * 1024;
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return Integer.parseInt(digits) * multiplier;
+
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("ISO-8859-1"));
+    }
+}
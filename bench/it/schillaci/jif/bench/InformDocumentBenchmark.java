@@ -0,0 +1,102 @@
+package it.schillaci.jif.bench;
+
+/*
+ * InformDocumentBenchmark.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.inform.InformDocument;
+import java.util.concurrent.TimeUnit;
+import javax.swing.text.BadLocationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the syntax highlighting of an <code>InformDocument</code>:
+ * highlighting the whole document with <code>applyHighlighting</code>, and
+ * the latency of the incremental highlighting after typing a character or
+ * opening and closing a string in the middle of the document.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InformDocumentBenchmark {
+
+    @Param({"synthetic-64k", "synthetic-1m"})
+    public String corpus;
+
+    private InformDocument document;
+    private int middle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InformDocument.setBackgroundHighlighting(false);
+        document = new InformDocument();
+        document.insertString(0, InformCorpus.load(corpus), null);
+        middle = document.getDefaultRootElement().getElement(
+                document.getDefaultRootElement().getElementCount() / 2).getStartOffset();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void applyHighlighting() throws BadLocationException {
+        document.applyHighlighting(0, document.getLength());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void typeCharacter() throws BadLocationException {
+        document.insertString(middle, "x", null);
+        document.remove(middle, 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void typeQuote() throws BadLocationException {
+        document.insertString(middle, "\"", null);
+        document.remove(middle, 1);
+    }
+}
@@ -0,0 +1,110 @@
+package it.schillaci.jif.bench;
+
+/*
+ * InformLexerBenchmark.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.inform.InformLexer;
+import it.schillaci.jif.inform.InformToken;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the <code>InformLexer</code> scanning methods. Each
+ * benchmark lexes the whole corpus, so the throughput is in corpora per
+ * second. Run with <code>-prof gc</code> to see the allocation rate.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InformLexerBenchmark {
+
+    @Param({"synthetic-64k", "synthetic-4m"})
+    public String corpus;
+
+    private String source;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = InformCorpus.load(corpus);
+    }
+
+    @Benchmark
+    public void nextElement(Blackhole bh) {
+        InformLexer lexer = new InformLexer(source);
+        InformToken token = lexer.nextElement();
+        while (token.getType() != InformToken.EOS) {
+            bh.consume(token);
+            token = lexer.nextElement();
+        }
+    }
+
+    @Benchmark
+    public void advance(Blackhole bh) {
+        InformLexer lexer = new InformLexer(source);
+        while (lexer.advance() != InformToken.EOS) {
+            bh.consume(lexer.getTokenEnd());
+        }
+    }
+
+    @Benchmark
+    public void nextBracket(Blackhole bh) {
+        InformLexer lexer = new InformLexer(source);
+        InformToken token = lexer.nextBracket();
+        while (token.getType() != InformToken.EOS) {
+            bh.consume(token);
+            token = lexer.nextBracket();
+        }
+    }
+
+    @Benchmark
+    public InformToken[] getTokens() {
+        return new InformLexer(source).getTokens();
+    }
+}
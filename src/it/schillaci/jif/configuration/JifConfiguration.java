@@ -104,6 +104,7 @@ public class JifConfiguration {
     private JifFileName lastProject        = null;
     // Control settings
     private boolean adventInLib            = false;
+    private boolean backgroundHighlighting = false;
     private boolean createNewFile          = false;
     private boolean helpedCode             = true;
     private boolean informMode             = true;
@@ -820,6 +821,16 @@ public class JifConfiguration {
         this.syntaxHighlighting = syntaxHighlighting;
     }
     
+    // --- Background syntax highlighting
+    
+    public boolean getBackgroundHighlighting() {
+        return backgroundHighlighting;
+    }
+    
+    public void setBackgroundHighlighting(boolean backgroundHighlighting) {
+        this.backgroundHighlighting = backgroundHighlighting;
+    }
+    
     // --- Wrap lines
     
     public boolean getWrapLines() {
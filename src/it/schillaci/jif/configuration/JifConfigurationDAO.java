@@ -110,6 +110,7 @@ public class JifConfigurationDAO {
         private static final Keyword SETTING          = new Keyword("[SETTINGS]");
         private static final Keyword WRAPLINES        = new Keyword("[WRAPLINES]");
         private static final Keyword SYNTAXCHECK      = new Keyword("[SYNTAXCHECK]");
+        private static final Keyword BACKGROUNDCHECK  = new Keyword("[BACKGROUNDSYNTAXCHECK]");
         private static final Keyword HELPEDCODECHECK  = new Keyword("[HELPEDCODECHECK]");
         private static final Keyword MAPPINGCODE      = new Keyword("[MAPPINGCODE]");
         private static final Keyword NUMBERLINES      = new Keyword("[NUMBERLINES]");
@@ -159,7 +160,7 @@ public class JifConfigurationDAO {
             ATTRIBUTE, KEYWORD, PROPERTY, VERB, SYMBOL, PATH, LIBRARY, LIBRARY1,
             LIBRARY2, LIBRARY3, COMPILED, INTERPRETERZCODE, INTERPRETERGLULX,
             COMPILER, BRES, BLC, SETTING, WRAPLINES, SYNTAXCHECK, 
-            HELPEDCODECHECK, MAPPINGCODE, NUMBERLINES, SCANPROJECT, 
+            BACKGROUNDCHECK, HELPEDCODECHECK, MAPPINGCODE, NUMBERLINES, SCANPROJECT, 
             OPENPROJECTFILES, USECOMPILED, OPENLASTFILE, CREATENEWFILE,
             MAKERESOURCE, TABSIZE, COLORBOOKMARK, COLORBRACKET, COLORERROR,
             COLORJUMPTO, COLORWARNING, COLORATTRIBUTE, COLORCOMMENT,
@@ -209,6 +210,7 @@ public class JifConfigurationDAO {
     private static final Pattern blcPathPattern = Pattern.compile("\n\\[BLCPATH\\](.+)");
     private static final Pattern wrapLinesPattern = Pattern.compile("\n\\[WRAPLINES\\](.+)");
     private static final Pattern syntaxCheckPattern = Pattern.compile("\n\\[SYNTAXCHECK\\](.+)");
+    private static final Pattern backgroundCheckPattern = Pattern.compile("\n\\[BACKGROUNDSYNTAXCHECK\\](.+)");
     private static final Pattern helpedCodeCheckPattern = Pattern.compile("\n\\[HELPEDCODECHECK\\](.+)");
     private static final Pattern mappingCodePattern = Pattern.compile("\n\\[MAPPINGCODE\\](.+)");
     private static final Pattern numberLinesPattern = Pattern.compile("\n\\[NUMBERLINES\\](.+)");
@@ -437,6 +439,12 @@ public class JifConfigurationDAO {
                 config.setSyntaxHighlighting(m.group(1).equals("true"));
             }
             
+            // Background syntax check setting
+            m = backgroundCheckPattern.matcher(cb);
+            while (m.find()) {
+                config.setBackgroundHighlighting(m.group(1).equals("true"));
+            }
+            
             // Help code setting
             m = helpedCodeCheckPattern.matcher(cb);
             while (m.find()) {
@@ -937,6 +945,7 @@ public class JifConfigurationDAO {
                     .append("\n# ").append(Keyword.SETTING.getName()).append(" Section\n\n")
                     .append(Keyword.WRAPLINES.getName()).append(config.getWrapLines()).append("\n")
                     .append(Keyword.SYNTAXCHECK.getName()).append(config.getSyntaxHighlighting()).append("\n")
+                    .append(Keyword.BACKGROUNDCHECK.getName()).append(config.getBackgroundHighlighting()).append("\n")
                     .append(Keyword.HELPEDCODECHECK.getName()).append(config.getHelpedCode()).append("\n")
                     .append(Keyword.MAPPINGCODE.getName()).append(config.getMappingLive()).append("\n")
                     .append(Keyword.NUMBERLINES.getName()).append(config.getNumberLines()).append("\n")
@@ -1008,6 +1017,7 @@ public class JifConfigurationDAO {
         config.setAdventInLib(newConfig.getAdventInLib());
         config.setAltKeys(newConfig.getAltKeys());
         config.setAttributes(newConfig.getAttributes());
+        config.setBackgroundHighlighting(newConfig.getBackgroundHighlighting());
         config.setBlcPath(newConfig.getBlcPath());
         config.setBresPath(newConfig.getBresPath());
         config.setCompilerPath(newConfig.getCompilerPath());
@@ -141,7 +141,7 @@ public class JifConfigurationDocument extends JifDocument {
             throws BadLocationException {
         
         super.insertString(offset, str, getStyle(InformSyntax.Normal.getName()));
-        processChangedLines(offset, str.length());
+        changedLines(offset, str.length());
     }
     
     /**
@@ -159,7 +159,7 @@ public class JifConfigurationDocument extends JifDocument {
             throws BadLocationException {
         
         super.remove(offset, length);
-        processChangedLines(offset, length);
+        changedLines(offset, length);
     }
     
     /**
@@ -32,10 +32,7 @@ package it.schillaci.jif.core;
  *
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * BLC compiler
@@ -55,37 +52,35 @@ public class Blc {
         this.path = path;
     }
     
-    public String run(String input, String dest, String dir) throws IOException, InterruptedException {
-        
-        StringBuilder output = new StringBuilder();
-        
-        output.append("Making blorb...\n");
+    /**
+     * Creates a process to run BLC. Equivalent to the command line:
+     * <code>BLC input dest</code>
+     *
+     * @param input
+     *              BLC control file
+     * @param dest
+     *              Blorb file to create
+     * @param dir
+     *              Working directory for BLC
+     * @return the BLC process, ready to run
+     */
+    public JifProcess process(String input, String dest, String dir) {
         
         String command[] = new String[3];
         command[0] = path;
         command[1] = input;
         command[2] = dest;
         
-        output.append(command[0]).append(" ").append(command[1]).append(" ").append(command[2]).append("\n");
-        
-        Process proc = Runtime.getRuntime().exec(
-                command,
-                null,
-                new File(dir)
-                );
-        
-        BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream(), Constants.fileFormat));
-        
-        String line = "";
-        while ((line = br.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-        
-        proc.waitFor();
-        output.append("\n");
-        output.append(ok).append("\n");
-        
-        return output.toString();
+        return new JifProcess(command, new File(dir));
+    }
+    
+    /**
+     * Returns the message displayed when BLC has finished
+     *
+     * @return the completion message
+     */
+    public String getOk() {
+        return ok;
     }
     
     public void verify() throws ProgramMissingException {
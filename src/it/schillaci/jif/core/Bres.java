@@ -32,10 +32,7 @@ package it.schillaci.jif.core;
  *
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Bres compiler
@@ -55,36 +52,32 @@ public class Bres {
         this.path = path;
     }
     
-    public String run(String source, String game) throws IOException, InterruptedException {
-        
-        StringBuilder output = new StringBuilder();
-        
-        output.append("Making resources...\n");
+    /**
+     * Creates a process to run BRES. Equivalent to the command line:
+     * <code>BRES source</code>
+     *
+     * @param source
+     *              Resource source name
+     * @param game
+     *              Working directory for BRES
+     * @return the BRES process, ready to run
+     */
+    public JifProcess process(String source, String game) {
 
         String command[] = new String[2];
         command[0] = path;
         command[1] = source;
         
-        output.append(command[0]).append(" ").append(command[1]).append("\n");
-        
-        Process proc = Runtime.getRuntime().exec(
-                command,
-                null,
-                new File(game)
-                );
-        
-        String line = "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream(), Constants.fileFormat));
-        
-        while ((line = br.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-        
-        proc.waitFor();
-        output.append("\n");
-        output.append(ok).append("\n");
-        
-        return output.toString();
+        return new JifProcess(command, new File(game));
+    }
+    
+    /**
+     * Returns the message displayed when BRES has finished
+     *
+     * @return the completion message
+     */
+    public String getOk() {
+        return ok;
     }
     
     public void verify() throws ProgramMissingException {
@@ -0,0 +1,164 @@
+package it.schillaci.jif.core;
+
+/*
+ * IntList.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * IntList: A growable list of primitive <code>int</code> values. This avoids
+ * boxing when per-line or per-token information has to be kept for large
+ * documents.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class IntList {
+
+    // Storage for the values in the list
+    private int[] values;
+    // Number of values in use
+    private int size = 0;
+
+    /**
+     * Creates a new empty list with a default initial capacity
+     */
+    public IntList() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty list with the specified initial capacity
+     *
+     * @param capacity
+     *              the initial number of values the list can hold
+     */
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a value to the end of the list
+     *
+     * @param value
+     *              the value to append
+     */
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Removes all the values from the list
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the value at the specified index
+     *
+     * @param index
+     *              index of the value
+     * @return the value at the index
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Replaces the value at the specified index
+     *
+     * @param index
+     *              index of the value
+     * @param value
+     *              the new value
+     */
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Replaces a range of values with a number of copies of a fill value. This
+     * is the primitive operation used to keep the list in step with a
+     * <code>DocumentEvent.ElementChange</code>.
+     *
+     * @param index
+     *              the index of the first value to replace
+     * @param removed
+     *              the number of values to remove
+     * @param added
+     *              the number of values to insert in their place
+     * @param fill
+     *              the value to use for the inserted entries
+     */
+    public void replace(int index, int removed, int added, int fill) {
+        if (index < 0 || index + removed > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Removed: " + removed + ", Size: " + size);
+        }
+        int delta = added - removed;
+        ensureCapacity(size + delta);
+        System.arraycopy(values, index + removed, values, index + added, size - index - removed);
+        Arrays.fill(values, index, index + added, fill);
+        size += delta;
+    }
+
+    /**
+     * Returns the number of values in the list
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values in the list as a new array
+     *
+     * @return copy of the values in the list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifBuild.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+
+/**
+ * JifBuild: Runs the stages of a build (for example BRES, Inform and BLC) as
+ * a dependency graph. Each stage starts as soon as the stages it depends on
+ * have finished, so independent stages run concurrently.
+ * <p>
+ * A stage is skipped when it is up to date: its fingerprint (a checksum of 
+ * its key, normally the command line, and the path, modification time and 
+ * size of each of its input files) is the same as the last time it ran 
+ * successfully and all its output files exist. Input files which are only
+ * known when the stage runs, such as included files, are found by a 
+ * <code>JifBuildInputs</code>; a stage whose inputs can not all be found is
+ * never skipped. Fingerprints are kept for as long as the 
+ * <code>JifBuild</code> instance.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifBuild {
+
+    public static final int PENDING   = 0;
+    public static final int SKIPPED   = 1;
+    public static final int SUCCEEDED = 2;
+    public static final int FAILED    = 3;
+    public static final int CANCELLED = 4;
+
+    /**
+     * A program to run as part of a build, with the files it reads and 
+     * writes and the stages which must finish before it can start.
+     */
+    public static class Stage {
+
+        // Unique name of the stage, used to remember its fingerprint
+        private String name;
+        // Message shown before the stage output, may be null
+        private String title;
+        // The program to run
+        private JifProcess process;
+        // Whether output is reported as it is written
+        private boolean streaming;
+        // Command line and settings which affect the output
+        private String key;
+        // Files read by the program
+        private List inputs = new ArrayList();
+        // Find more files read by the program when it runs
+        private List finders = new ArrayList();
+        // Files written by the program
+        private List outputs = new ArrayList();
+        // Stages which must finish first
+        private List dependencies = new ArrayList();
+        // Stage to the file it writes, for stages which only need to finish 
+        // first if the file is read by the program
+        private Map conditions = new HashMap();
+        // Message shown when the stage succeeds, may be null
+        private String message = null;
+
+        // Result of the stage
+        private volatile int state = PENDING;
+        private CountDownLatch done = new CountDownLatch(1);
+        private String failure = null;
+
+        /**
+         * Creates a new build stage
+         *
+         * @param name
+         *              unique name for the stage
+         * @param title
+         *              message shown before the stage output, may be null
+         * @param process
+         *              the program to run
+         * @param streaming
+         *              whether output is reported as it is written
+         */
+        public Stage(String name, String title, JifProcess process, boolean streaming) {
+            this.name = name;
+            this.title = title;
+            this.process = process;
+            this.streaming = streaming;
+            this.key = process.getCommandLine();
+        }
+
+        public void addDependency(Stage stage) {
+            dependencies.add(stage);
+        }
+
+        /**
+         * Adds a stage which must finish first if this stage reads a file 
+         * written by it. The file is looked for by name among the inputs of
+         * this stage.
+         *
+         * @param stage
+         *              the stage writing the file
+         * @param file
+         *              the file written by the stage
+         */
+        public void addDependency(Stage stage, File file) {
+            dependencies.add(stage);
+            conditions.put(stage, file);
+        }
+
+        public void addInput(File file) {
+            inputs.add(file);
+        }
+
+        public void addInputs(List files) {
+            inputs.addAll(files);
+        }
+
+        public void addInputs(JifBuildInputs finder) {
+            finders.add(finder);
+        }
+
+        public void addOutput(File file) {
+            outputs.add(file);
+        }
+
+        // --- Accessor methods ------------------------------------------------
+
+        public String getFailure() {
+            return failure;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public JifProcess getProcess() {
+            return process;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    // Stage name to fingerprint of its last successful run
+    private Map fingerprints = new HashMap();
+
+    // Stages of the build in progress
+    private volatile List running = null;
+
+    // Whether the build in progress has been cancelled
+    private volatile boolean cancelled = false;
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Run the stages of a build and wait for them all to finish. Each stage 
+     * runs on its own thread; stages must be listed after the stages they
+     * depend on.
+     *
+     * @param stages
+     *              the stages of the build
+     * @param observer
+     *              receives the output of each stage
+     * @return <code>true</code> if every stage succeeded or was up to date
+     * @throws InterruptedException
+     *              if the calling thread is interrupted while waiting
+     */
+    public boolean run(List stages, final JifBuildObserver observer) throws InterruptedException {
+
+        cancelled = false;
+        running = stages;
+
+        for (Iterator i = stages.iterator(); i.hasNext();) {
+            final Stage stage = (Stage) i.next();
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        runStage(stage, observer);
+                    } finally {
+                        try {
+                            observer.buildStageFinished(stage);
+                        } finally {
+                            stage.done.countDown();
+                        }
+                    }
+                }
+            }, "Jif build " + stage.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean succeeded = true;
+        for (Iterator i = stages.iterator(); i.hasNext();) {
+            Stage stage = (Stage) i.next();
+            stage.done.await();
+            succeeded &= (stage.state == SUCCEEDED || stage.state == SKIPPED);
+        }
+        running = null;
+        return succeeded;
+    }
+
+    /**
+     * Cancel the build in progress, stopping any programs which are running
+     */
+    public void cancel() {
+        cancelled = true;
+        List stages = running;
+        if (stages != null) {
+            for (Iterator i = stages.iterator(); i.hasNext();) {
+                ((Stage) i.next()).process.cancel();
+            }
+        }
+    }
+
+    /**
+     * Forget all fingerprints, so that every stage runs next time
+     */
+    public synchronized void clear() {
+        fingerprints.clear();
+    }
+
+    // Wait for the dependencies of a stage and run it if it is out of date
+    private void runStage(final Stage stage, final JifBuildObserver observer) {
+
+        try {
+            for (Iterator i = stage.dependencies.iterator(); i.hasNext();) {
+                Stage dependency = (Stage) i.next();
+                if (!stage.conditions.containsKey(dependency) && !await(stage, dependency)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            stage.state = CANCELLED;
+            return;
+        }
+
+        if (cancelled) {
+            stage.state = CANCELLED;
+            return;
+        }
+
+        // Find the inputs now that the dependencies have written them
+        List inputs = new ArrayList(stage.inputs);
+        boolean complete = true;
+        for (Iterator i = stage.finders.iterator(); i.hasNext();) {
+            try {
+                inputs.addAll(((JifBuildInputs) i.next()).getInputs());
+            } catch (IOException ex) {
+                System.err.println("Unable to find the inputs of " + stage.name + ": " + ex.getMessage());
+                complete = false;
+            }
+        }
+
+        // Wait for the stages writing one of the inputs
+        try {
+            for (Iterator i = stage.conditions.entrySet().iterator(); i.hasNext();) {
+                Map.Entry condition = (Map.Entry) i.next();
+                if ((!complete || reads(inputs, (File) condition.getValue()))
+                        && !await(stage, (Stage) condition.getKey())) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            stage.state = CANCELLED;
+            return;
+        }
+
+        // Fingerprint the inputs, unless some of them are not known
+        Long fingerprint = null;
+        if (complete) {
+            fingerprint = new Long(fingerprint(stage.key, inputs));
+            if (isUpToDate(stage, fingerprint)) {
+                stage.state = SKIPPED;
+                return;
+            }
+        }
+        forget(stage);
+
+        final List lines = new ArrayList();
+        try {
+            int exitCode = stage.process.run(new JifProcessObserver() {
+                public void processOutput(String line, boolean error) {
+                    if (stage.streaming) {
+                        observer.buildOutput(stage, line, error);
+                    } else {
+                        synchronized (lines) {
+                            lines.add(new Object[]{line, Boolean.valueOf(error)});
+                        }
+                    }
+                }
+            });
+
+            if (stage.process.isCancelled()) {
+                stage.state = CANCELLED;
+            } else if (exitCode == 0) {
+                stage.state = SUCCEEDED;
+                if (fingerprint != null) {
+                    remember(stage, fingerprint);
+                }
+            } else {
+                stage.state = FAILED;
+                stage.failure = java.util.ResourceBundle.getBundle("JIF").getString("BUILD_EXIT_CODE")
+                        + " " + exitCode;
+            }
+        } catch (IOException ex) {
+            stage.state = FAILED;
+            stage.failure = ex.getMessage();
+        } catch (InterruptedException ex) {
+            stage.state = CANCELLED;
+        }
+
+        synchronized (lines) {
+            for (Iterator i = lines.iterator(); i.hasNext();) {
+                Object[] line = (Object[]) i.next();
+                observer.buildOutput(stage, (String) line[0], ((Boolean) line[1]).booleanValue());
+            }
+        }
+    }
+
+    // Wait for a dependency, returning false if the stage can not run
+    private boolean await(Stage stage, Stage dependency) throws InterruptedException {
+        dependency.done.await();
+        if (dependency.state != SUCCEEDED && dependency.state != SKIPPED) {
+            stage.state = (dependency.state == CANCELLED) ? CANCELLED : FAILED;
+            stage.failure = java.util.ResourceBundle.getBundle("JIF").getString("BUILD_DEPENDENCY_FAILED")
+                    + " " + dependency.name;
+            return false;
+        }
+        return true;
+    }
+
+    // Whether a list of files has a file with the same name
+    private static boolean reads(List inputs, File file) {
+        for (Iterator i = inputs.iterator(); i.hasNext();) {
+            if (((File) i.next()).getName().equalsIgnoreCase(file.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // --- Fingerprints --------------------------------------------------------
+
+    /**
+     * Returns the fingerprint of the key and input files of a stage
+     *
+     * @param key
+     *              the key of the build stage
+     * @param inputs
+     *              the files read by the stage
+     * @return checksum of the key and the path, modification time and size of
+     *         every input file
+     */
+    static long fingerprint(String key, List inputs) {
+        CRC32 crc = new CRC32();
+        update(crc, key);
+        for (Iterator i = inputs.iterator(); i.hasNext();) {
+            File file = (File) i.next();
+            update(crc, file.getPath());
+            update(crc, file.lastModified());
+            update(crc, file.exists() ? file.length() : -1);
+        }
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            crc.update(c >>> 8);
+            crc.update(c);
+        }
+        crc.update(0);
+    }
+
+    private static void update(CRC32 crc, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (value >>> shift));
+        }
+    }
+
+    private synchronized boolean isUpToDate(Stage stage, Long fingerprint) {
+        if (!fingerprint.equals(fingerprints.get(stage.name))) {
+            return false;
+        }
+        for (Iterator i = stage.outputs.iterator(); i.hasNext();) {
+            if (!((File) i.next()).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void remember(Stage stage, Long fingerprint) {
+        fingerprints.put(stage.name, fingerprint);
+    }
+
+    private synchronized void forget(Stage stage) {
+        fingerprints.remove(stage.name);
+    }
+}
@@ -0,0 +1,59 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifBuildInputs.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds the files read by a build stage which are only known once the stage
+ * is about to run, such as the files included by a source file. Methods are
+ * called from the build threads, not the event dispatch thread.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public interface JifBuildInputs {
+    
+    /**
+     * Returns the files read by a stage. Called once the stages it depends
+     * on have finished. Files which do not exist may be listed, so that the
+     * stage runs again when they are created.
+     *
+     * @return list of <code>File</code>
+     * @throws IOException
+     *              if the files can not be determined, in which case the
+     *              stage is never skipped
+     */
+    List getInputs() throws IOException;
+}
@@ -44,11 +44,19 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
 
 /**
  * Data access object
@@ -58,6 +66,9 @@ import java.nio.charset.CharsetEncoder;
  * @since JIF 3.2
  */
 public class JifDAO {
+    
+    // Size of the buffer between the encoder and the file channel
+    private static final int SAVE_BUFFER_SIZE = 64 * 1024;
 
     /**
      * Creates a new instance of JifProjectDAO
@@ -100,6 +111,34 @@ public class JifDAO {
         return cb;
     }
     
+    /**
+     * Reads a <code>File</code> through its channel in a single bulk read and
+     * decodes it into a <code>CharBuffer</code> in the standard JIF character
+     * encoding. The file is closed once it has been read, so it can be saved
+     * over or deleted straight away. Line endings are left as they are in the
+     * file.
+     *
+     * @param file
+     *              <code>File</code> to load
+     * @return <code>CharBuffer</code> representation of the <code>File</code>
+     * @throws IOException
+     */
+    public static CharBuffer load(File file)
+            throws IOException {
+        
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer bbuf = ByteBuffer.allocate((int) channel.size());
+            while (bbuf.hasRemaining() && channel.read(bbuf) != -1) {
+            }
+            bbuf.flip();
+            return Charset.forName(Constants.fileFormat).decode(bbuf);
+        } finally {
+            in.close();
+        }
+    }
+    
     /**
      * Reads a <code>File</code> into a <code>String</code>
      *
@@ -182,4 +221,171 @@ public class JifDAO {
         out.close();
     }
     
+    /**
+     * Saves the text of a document to the specified <code>File</code> in the
+     * standard JIF character encoding. The text is encoded straight from the
+     * document content, a segment at a time, into a temporary file in the
+     * same directory which then replaces the file. The file is either left
+     * as it was or holds the whole of the new text. The document is locked
+     * for reading while it is written.
+     *
+     * @param doc
+     *              the document to save
+     * @param file
+     *              <code>File</code> destination for storing the text
+     * @param lineSeparator
+     *              the line separator written in place of each "\n"
+     * @throws IOException
+     */
+    public static void save(final AbstractDocument doc, File file, final String lineSeparator)
+            throws IOException {
+        
+        replace(file, new Content() {
+            public void write(FileChannel channel) throws IOException {
+                doc.readLock();
+                try {
+                    JifDAO.write(doc, channel, lineSeparator);
+                } finally {
+                    doc.readUnlock();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Saves a text to the specified <code>File</code> in the standard JIF 
+     * character encoding. As for a document, the text is written to a 
+     * temporary file in the same directory which then replaces the file.
+     *
+     * @param text
+     *              the text to save
+     * @param file
+     *              <code>File</code> destination for storing the text
+     * @throws IOException
+     */
+    public static void save(final CharSequence text, File file)
+            throws IOException {
+        
+        replace(file, new Content() {
+            public void write(FileChannel channel) throws IOException {
+                CharsetEncoder encoder = encoder();
+                ByteBuffer bytes = ByteBuffer.allocate(SAVE_BUFFER_SIZE);
+                encode(encoder, CharBuffer.wrap(text), bytes, channel);
+                finish(encoder, bytes, channel);
+            }
+        });
+    }
+    
+    // Writes the new content of a file
+    private interface Content {
+        void write(FileChannel channel) throws IOException;
+    }
+    
+    // Write the content to a temporary file and move it over the file
+    private static void replace(File file, Content content)
+            throws IOException {
+        
+        File target = file.getAbsoluteFile();
+        File temp = File.createTempFile(target.getName() + ".", ".tmp", target.getParentFile());
+        boolean saved = false;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel channel = out.getChannel();
+                content.write(channel);
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            saved = true;
+        } finally {
+            if (!saved) {
+                temp.delete();
+            }
+        }
+    }
+    
+    // Encode the text of a document into a channel. Each segment of the
+    // content is encoded where it lies, a line at a time when the line
+    // separator is not "\n".
+    private static void write(AbstractDocument doc, FileChannel channel, String lineSeparator)
+            throws IOException {
+        
+        CharsetEncoder encoder = encoder();
+        ByteBuffer bytes = ByteBuffer.allocate(SAVE_BUFFER_SIZE);
+        CharBuffer separator = CharBuffer.wrap(lineSeparator);
+        boolean convert = !lineSeparator.equals("\n");
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        
+        int offset = 0;
+        int length = doc.getLength();
+        try {
+            while (offset < length) {
+                doc.getText(offset, length - offset, segment);
+                int start = segment.offset;
+                int end = segment.offset + segment.count;
+                if (convert) {
+                    for (int i = start; i < end; i++) {
+                        if (segment.array[i] == '\n') {
+                            encode(encoder, CharBuffer.wrap(segment.array, start, i - start), bytes, channel);
+                            separator.rewind();
+                            encode(encoder, separator, bytes, channel);
+                            start = i + 1;
+                        }
+                    }
+                }
+                encode(encoder, CharBuffer.wrap(segment.array, start, end - start), bytes, channel);
+                offset += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IOException(ex.getMessage());
+        }
+        
+        finish(encoder, bytes, channel);
+    }
+    
+    private static CharsetEncoder encoder() {
+        
+        return Charset.forName(Constants.fileFormat).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+    
+    private static void finish(CharsetEncoder encoder, ByteBuffer bytes,
+            FileChannel channel) throws IOException {
+        
+        encoder.encode(CharBuffer.allocate(0), bytes, true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(bytes, channel);
+        }
+        drain(bytes, channel);
+    }
+    
+    private static void encode(CharsetEncoder encoder, CharBuffer chars,
+            ByteBuffer bytes, FileChannel channel) throws IOException {
+        
+        while (encoder.encode(chars, bytes, false).isOverflow()) {
+            drain(bytes, channel);
+        }
+    }
+    
+    private static void drain(ByteBuffer bytes, FileChannel channel)
+            throws IOException {
+        
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+    
 }
\ No newline at end of file
@@ -32,20 +32,31 @@ package it.schillaci.jif.core;
  *
  */
 
+import it.schillaci.jif.inform.InformBracketIndex;
 import it.schillaci.jif.inform.InformContext;
 import it.schillaci.jif.inform.InformLexer;
+import it.schillaci.jif.inform.InformOutline;
 import it.schillaci.jif.inform.InformSyntax;
 import it.schillaci.jif.inform.InformToken;
+import it.schillaci.jif.inform.InformTokenCache;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultEditorKit;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.GapContent;
 import javax.swing.text.StyleContext;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
 
 /**
  * An extension of DefaultStyledDocument for Inform Syntax Highlighting
@@ -64,6 +75,31 @@ public class JifDocument extends DefaultStyledDocument {
     private static int tabSize = InformContext.defaultTabSize;
     private static final String defaultComment = "!";
 
+    // Text removed by the edit in progress, kept for the undo of the edit
+    private String removedText;
+
+    // True while an undo or redo changes the text
+    private boolean undoing = false;
+
+    // Edit transaction in progress: its nesting depth, the edits made so far
+    // and the range of text damaged by them
+    private int editDepth = 0;
+    private EditTransaction transaction;
+    private int damageStart;
+    private int damageEnd;
+
+    // Tokens of the document, created on first use
+    private InformTokenCache tokenCache = null;
+
+    // Index of the significant brackets, created on first use
+    private InformBracketIndex bracketIndex = null;
+
+    // Outline of the directives of the document, created on first use
+    private InformOutline outline = null;
+
+    // Number of changes made to the text
+    private volatile int changes = 0;
+
     /**
      * Constructs a Jif document with a shared set of styles for syntax
      * highlighting.
@@ -106,6 +142,280 @@ public class JifDocument extends DefaultStyledDocument {
 
     }
 
+    /**
+     * Load the text read from a file into the document
+     * 
+     * @param offset
+     *            The offset to insert the text
+     * @param str
+     *            The text read from the file
+     * @throws BadLocationException
+     *            If the insert action fails
+     */
+    public void load(int offset, String str) throws BadLocationException {
+
+        insertString(offset, str, null);
+
+    }
+
+    /**
+     * Determine the area of the document whose syntax highlighting is impacted
+     * by a change of source content and highlight it again. A plain Jif
+     * document is not highlighted.
+     *
+     * @param offset
+     *            The initial offset of the change
+     * @param length
+     *            The length of the change
+     * @throws BadLocationException
+     *            If the change processing fails
+     */
+    public void processChangedLines(int offset, int length)
+            throws BadLocationException {
+    }
+
+    /**
+     * Highlight the text changed by an insertion or removal, unless an edit
+     * transaction is in progress in which case the lines are highlighted once
+     * when the transaction ends.
+     *
+     * @param offset
+     *            The initial offset of the change
+     * @param length
+     *            The length of the change
+     * @throws BadLocationException
+     *            If the change processing fails
+     */
+    protected void changedLines(int offset, int length)
+            throws BadLocationException {
+
+        if (editDepth == 0) {
+            processChangedLines(offset, length);
+        }
+
+    }
+
+    // --- Edit transactions --------------------------------------------------
+    /**
+     * Start a transaction grouping the following changes of text into a
+     * single edit. Until the matching <code>endEdit</code> the document is
+     * locked for writing, the changed lines are not highlighted and the
+     * changes are not reported to the undoable edit listeners. Transactions
+     * may be nested, the outermost one groups the changes.
+     */
+    public void beginEdit() {
+
+        writeLock();
+        if (editDepth++ == 0) {
+            transaction = new EditTransaction();
+            damageStart = -1;
+            damageEnd = -1;
+        }
+
+    }
+
+    /**
+     * End a transaction started by <code>beginEdit</code>. When the outermost
+     * transaction ends the lines damaged by all its changes are highlighted
+     * in one pass and the changes are reported to the undoable edit listeners
+     * as a single edit.
+     */
+    public void endEdit() {
+
+        try {
+            if (--editDepth > 0) {
+                return;
+            }
+            if (damageStart >= 0) {
+                try {
+                    processChangedLines(damageStart, damageEnd - damageStart);
+                } catch (BadLocationException ex) {
+                    System.err.println("Unable to highlight: " + ex.getMessage());
+                }
+            }
+            EditTransaction edit = transaction;
+            transaction = null;
+            edit.end();
+            if (edit.isSignificant()) {
+                super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+            }
+        } finally {
+            writeUnlock();
+        }
+
+    }
+
+    /**
+     * Returns <code>true</code> while an edit transaction is in progress
+     *
+     * @return <code>true</code> within <code>beginEdit</code> and
+     *         <code>endEdit</code>
+     */
+    public boolean isEditing() {
+        return editDepth > 0;
+    }
+
+    /**
+     * Extend the damaged range of the transaction in progress to cover text
+     * being inserted.
+     *
+     * @param chng
+     *            a description of the document change
+     * @param attr
+     *            the attributes for the inserted text
+     */
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        if (editDepth > 0) {
+            int offset = chng.getOffset();
+            int length = chng.getLength();
+            if (damageStart < 0) {
+                damageStart = offset;
+                damageEnd = offset + length;
+            } else {
+                damageStart = Math.min(damageStart, offset);
+                if (damageEnd >= offset) {
+                    damageEnd += length;
+                } else {
+                    damageEnd = offset + length;
+                }
+            }
+        }
+        changes++;
+        super.insertUpdate(chng, attr);
+    }
+
+    // --- Undo and redo ------------------------------------------------------
+    /**
+     * Keep the text about to be removed for the undo of the removal, and
+     * extend the damaged range of the transaction in progress.
+     *
+     * @param chng
+     *            a description of the document change
+     */
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        if (editDepth > 0) {
+            int offset = chng.getOffset();
+            int length = chng.getLength();
+            if (damageStart < 0) {
+                damageStart = offset;
+                damageEnd = offset;
+            } else {
+                damageStart = Math.min(damageStart, offset);
+                if (damageEnd >= offset + length) {
+                    damageEnd -= length;
+                } else {
+                    damageEnd = offset;
+                }
+            }
+        }
+        try {
+            removedText = getText(chng.getOffset(), chng.getLength());
+        } catch (BadLocationException ex) {
+            removedText = null;
+        }
+        changes++;
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * Notify the undoable edit listeners of a change of text. Changes of
+     * character attributes made by syntax highlighting are not reported, and
+     * a change of text is reported as a <code>TextEdit</code> holding just the
+     * text inserted or removed. Undoing a <code>TextEdit</code> inserts or
+     * removes the text again, so it is highlighted afresh rather than
+     * restored from the element structure at the time of the change. Within
+     * an edit transaction the changes are held back until it ends.
+     *
+     * @param e
+     *            the undoable edit event
+     */
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (undoing) {
+            return;
+        }
+        if (!(e.getEdit() instanceof DefaultDocumentEvent)) {
+            super.fireUndoableEditUpdate(e);
+            return;
+        }
+
+        DefaultDocumentEvent chng = (DefaultDocumentEvent) e.getEdit();
+        String text = null;
+        if (chng.getType() == DocumentEvent.EventType.INSERT) {
+            try {
+                text = getText(chng.getOffset(), chng.getLength());
+            } catch (BadLocationException ex) {
+                System.err.println("Unable to record edit: " + ex.getMessage());
+            }
+        } else if (chng.getType() == DocumentEvent.EventType.REMOVE) {
+            text = removedText;
+            removedText = null;
+        }
+        if (text == null) {
+            return;
+        }
+        TextEdit edit = new TextEdit(
+                chng.getType() == DocumentEvent.EventType.INSERT,
+                chng.getOffset(), text);
+        if (transaction != null) {
+            transaction.addEdit(edit);
+        } else {
+            super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+        }
+    }
+
+    /**
+     * Returns the cache of the tokens of the document, which is kept up to
+     * date with edits from its first use
+     *
+     * @return the token cache
+     */
+    public synchronized InformTokenCache getTokenCache() {
+        if (tokenCache == null) {
+            tokenCache = new InformTokenCache(this);
+        }
+        return tokenCache;
+    }
+
+    /**
+     * Returns the index of the significant brackets of the document, which
+     * is kept up to date with edits from its first use
+     *
+     * @return the bracket index
+     */
+    public InformBracketIndex getBracketIndex() {
+        if (bracketIndex == null) {
+            bracketIndex = new InformBracketIndex(this, getTokenCache());
+        }
+        return bracketIndex;
+    }
+
+    /**
+     * Returns the number of changes made to the text of the document, which
+     * tells whether it has been edited since an earlier call.
+     *
+     * @return the number of insertions and removals so far
+     */
+    public int getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * Returns the outline of the top level directives of the document, which
+     * is kept up to date with edits from its first use. This must be called
+     * on the event dispatch thread.
+     *
+     * @return the outline
+     */
+    public InformOutline getOutline() {
+        if (outline == null) {
+            outline = new InformOutline(this, getTokenCache());
+        }
+        return outline;
+    }
+
     // TODO
     // JifDocument specific routine but this is really Inform source code specific
     public Iterator bracketErrors() {
@@ -188,4 +498,146 @@ public class JifDocument extends DefaultStyledDocument {
     public static void setTabSize(int tabSize) {
         JifDocument.tabSize = tabSize;
     }
-}
\ No newline at end of file
+
+    // --- Inner classes ------------------------------------------------------
+    /**
+     * An undoable insertion or removal of text in a Jif document
+     */
+    public class TextEdit extends AbstractUndoableEdit {
+
+        private static final long serialVersionUID = -1870256612433617305L;
+
+        private final boolean insert;
+        private final int offset;
+        private final String text;
+
+        TextEdit(boolean insert, int offset, String text) {
+            this.insert = insert;
+            this.offset = offset;
+            this.text = text;
+        }
+
+        /**
+         * Returns <code>true</code> if the edit inserts text
+         *
+         * @return <code>true</code> for an insertion, <code>false</code> for
+         *         a removal
+         */
+        public boolean isInsert() {
+            return insert;
+        }
+
+        /**
+         * Returns the offset of the change
+         *
+         * @return the offset in the document
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the text inserted or removed
+         *
+         * @return the text
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String getPresentationName() {
+            return UIManager.getString(insert
+                    ? "AbstractDocument.additionText"
+                    : "AbstractDocument.deletionText");
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                change(!insert);
+            } catch (BadLocationException ex) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                change(insert);
+            } catch (BadLocationException ex) {
+                throw new CannotRedoException();
+            }
+        }
+
+        private void change(boolean add) throws BadLocationException {
+            boolean wasUndoing = undoing;
+            undoing = true;
+            try {
+                if (add) {
+                    insertString(offset, text, null);
+                } else {
+                    remove(offset, text.length());
+                }
+            } finally {
+                undoing = wasUndoing;
+            }
+        }
+    }
+
+    /**
+     * The changes of text made in an edit transaction, undone and redone
+     * as a transaction of their own so that the text is highlighted once.
+     */
+    public class EditTransaction extends CompoundEdit {
+
+        private static final long serialVersionUID = 4012394627810337245L;
+
+        private int textLength = 0;
+
+        @Override
+        public boolean addEdit(UndoableEdit anEdit) {
+            if (anEdit instanceof TextEdit) {
+                textLength += ((TextEdit) anEdit).getText().length();
+            }
+            return super.addEdit(anEdit);
+        }
+
+        /**
+         * Returns the total length of the text inserted and removed
+         *
+         * @return the number of characters
+         */
+        public int getTextLength() {
+            return textLength;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            boolean wasUndoing = undoing;
+            undoing = true;
+            beginEdit();
+            try {
+                super.undo();
+            } finally {
+                endEdit();
+                undoing = wasUndoing;
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            boolean wasUndoing = undoing;
+            undoing = true;
+            beginEdit();
+            try {
+                super.redo();
+            } finally {
+                endEdit();
+                undoing = wasUndoing;
+            }
+        }
+    }
+}
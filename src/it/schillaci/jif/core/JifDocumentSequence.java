@@ -0,0 +1,138 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifDocumentSequence.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * JifDocumentSequence: A read only <code>CharSequence</code> view of the text
+ * of a document. Characters are read straight from the document content 
+ * through partial-return <code>Segment</code>s, so regular expressions and
+ * scanners can run over the text of an editor without copying it.
+ * <p>
+ * The view reads the live document. It must only be used while the document
+ * is not being modified, that is on the event dispatch thread or while 
+ * holding the document read lock.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifDocumentSequence implements CharSequence {
+
+    // The document to read
+    private Document document;
+    // Start of the view in the document
+    private int start;
+    // Number of characters in the view
+    private int length;
+
+    // The block of content most recently read
+    private Segment segment = new Segment();
+    // Document offset of the first character in the segment
+    private int segmentStart = 0;
+    // Document offset after the last character in the segment
+    private int segmentEnd = 0;
+
+    /**
+     * Creates a view of the whole text of a document
+     *
+     * @param document
+     *              the document to view
+     */
+    public JifDocumentSequence(Document document) {
+        this(document, 0, document.getLength());
+    }
+
+    /**
+     * Creates a view of part of the text of a document
+     *
+     * @param document
+     *              the document to view
+     * @param start
+     *              offset of the start of the view
+     * @param length
+     *              number of characters in the view
+     */
+    public JifDocumentSequence(Document document, int start, int length) {
+        this.document = document;
+        this.start = start;
+        this.length = length;
+        segment.setPartialReturn(true);
+    }
+
+    // --- CharSequence methods ------------------------------------------------
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int offset = start + index;
+        if (offset < segmentStart || offset >= segmentEnd) {
+            load(offset);
+        }
+        return segment.array[segment.offset + offset - segmentStart];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length);
+        }
+        return new JifDocumentSequence(document, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return document.getText(start, length);
+        } catch (BadLocationException ex) {
+            throw new IndexOutOfBoundsException(ex.getMessage());
+        }
+    }
+
+    // Read the block of content containing an offset, without copying
+    private void load(int offset) {
+        try {
+            document.getText(offset, start + length - offset, segment);
+        } catch (BadLocationException ex) {
+            throw new IndexOutOfBoundsException(ex.getMessage());
+        }
+        segmentStart = offset;
+        segmentEnd = offset + segment.count;
+    }
+}
@@ -34,14 +34,13 @@ package it.schillaci.jif.core;
 
 import it.schillaci.jif.inform.InformContext;
 import java.awt.event.ActionEvent;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.CharBuffer;
 import javax.swing.Action;
 import javax.swing.JEditorPane;
 import javax.swing.text.BadLocationException;
@@ -98,7 +97,7 @@ public class JifEditorKit extends StyledEditorKit {
     public void read(File in, Document doc, int pos) 
         throws IOException, BadLocationException {
 
-        read(new FileInputStream(in), doc, pos);
+        insert(JifDAO.load(in), doc, pos);
     }
     
     /**
@@ -137,29 +136,75 @@ public class JifEditorKit extends StyledEditorKit {
     public void read(Reader in, Document doc, int pos)
             throws IOException, BadLocationException {
      
-        BufferedReader br = new BufferedReader(in);
-        SimpleAttributeSet sas = new SimpleAttributeSet();
         StringBuilder sb = new StringBuilder();
-        String line = "";
+        char[] buf = new char[8192];
+        int n;
         
-        while ((line = br.readLine()) != null) {
-            sb.append(line).append("\n");
+        try {
+            while ((n = in.read(buf)) != -1) {
+                sb.append(buf, 0, n);
+            }
+        } finally {
+            in.close();
         }
-        
-        br.close();
 
-        String text = sb.toString();
-                
-        // Check for tab characters
-        if (text.indexOf("\t")!=-1) {
-            doc.putProperty(TabConversionProperty, "true");
-            doc.insertString(
-                    0,
-                    Utils.replace(text, "\t", JifEditorKit.getTabString()),
-                    sas);
+        insert(CharBuffer.wrap(sb), doc, pos);
+    }
+    
+    /**
+     * Inserts the text read from a file into a document. Line endings are
+     * converted to newlines, the last line is terminated and each TAB is
+     * expanded to the tab string in a single pass over the text, which is then
+     * inserted in one go. A Jif document is loaded without highlighting the
+     * text on the calling thread.
+     *
+     * @param text The text read from the file
+     * @param doc The destination for the insertion.
+     * @param pos The location in the document to place the
+     *   content >= 0.
+     * @exception BadLocationException if pos represents an invalid
+     *   location within the document.
+     */
+    private void insert(CharBuffer text, Document doc, int pos)
+            throws BadLocationException {
+        
+        char[] tab = JifEditorKit.getTabString().toCharArray();
+        int length = text.remaining();
+        char[] out = new char[length + 1];
+        int count = 0;
+        boolean tabs = false;
+        char c;
+        
+        for (int i = 0; i < length; i++) {
+            c = text.get(i);
+            if (c == '\t') {
+                tabs = true;
+                if (out.length - count < length - i + tab.length) {
+                    char[] grown = new char[Math.max(out.length * 2, count + length - i + tab.length)];
+                    System.arraycopy(out, 0, grown, 0, count);
+                    out = grown;
+                }
+                System.arraycopy(tab, 0, out, count, tab.length);
+                count += tab.length;
+            } else if (c == '\r') {
+                if (i + 1 < length && text.get(i + 1) == '\n') {
+                    i++;
+                }
+                out[count++] = '\n';
+            } else {
+                out[count++] = c;
+            }
+        }
+        if (count > 0 && out[count - 1] != '\n') {
+            out[count++] = '\n';
+        }
+        
+        doc.putProperty(TabConversionProperty, tabs ? "true" : "false");
+        String str = new String(out, 0, count);
+        if (doc instanceof JifDocument) {
+            ((JifDocument) doc).load(pos, str);
         } else {
-            doc.putProperty(TabConversionProperty, "false");
-            doc.insertString(0, text, sas);
+            doc.insertString(pos, str, new SimpleAttributeSet());
         }
     }
     
@@ -356,7 +401,8 @@ public class JifEditorKit extends StyledEditorKit {
         }
 
         /*
-         * Add a prefix each paragraph in a block with a string prefix
+         * Add a prefix each paragraph in a block with a string prefix. The
+         * prefixes are inserted in a single edit transaction.
          *
          * @param editor
          *            the editor pane
@@ -366,7 +412,9 @@ public class JifEditorKit extends StyledEditorKit {
         protected final void addPrefixBlock(JEditorPane editor, String prefix)
                 throws BadLocationException {
             
-            StringBuilder output = new StringBuilder();
+            if (!editor.isEditable()) {
+                return;
+            }
             int p0 = editor.getSelectionStart();
             int p1 = editor.getSelectionEnd();
             JifDocument doc = getJifDocument(editor);
@@ -374,19 +422,21 @@ public class JifEditorKit extends StyledEditorKit {
             int startIndex = root.getElementIndex(p0);
             int endIndex = root.getElementIndex(p1);
             
-            for (int i = startIndex; i < endIndex; i++) {
-                Element line = root.getElement(i);
-                String lineString = doc.getText(line.getStartOffset(),
-                        line.getEndOffset() - line.getStartOffset());
-                output.append(prefix).append(lineString);
+            doc.beginEdit();
+            try {
+                for (int i = startIndex; i < endIndex; i++) {
+                    doc.insertString(root.getElement(i).getStartOffset(), prefix, null);
+                }
+            } finally {
+                doc.endEdit();
             }
             
-            editor.replaceSelection(output.toString());
-            setSelection(editor, p0, output.length());
+            setSelection(editor, p0, blockLength(root, p0, startIndex, endIndex));
         }
         
         /*
-         * Remove a prefix from each paragraph in a block with a string prefix
+         * Remove a prefix from each paragraph in a block with a string prefix.
+         * The prefixes are removed in a single edit transaction.
          *
          * @param editor
          *            the editor pane
@@ -396,7 +446,9 @@ public class JifEditorKit extends StyledEditorKit {
         protected final void removePrefixBlock(JEditorPane editor, String prefix)
                 throws BadLocationException {
 
-            StringBuilder output = new StringBuilder();
+            if (!editor.isEditable()) {
+                return;
+            }
             int p0 = editor.getSelectionStart();
             int p1 = editor.getSelectionEnd();
             JifDocument doc = getJifDocument(editor);
@@ -404,27 +456,36 @@ public class JifEditorKit extends StyledEditorKit {
             int startIndex = root.getElementIndex(p0);
             int endIndex = root.getElementIndex(p1);
 
-            for (int i = startIndex; i < endIndex; i++) {
-                Element line = root.getElement(i);
-
-                String lineString = doc.getText(line.getStartOffset(),
-                        line.getEndOffset() - line.getStartOffset());
-
-                if (lineString.startsWith(prefix)) {
-                    output.append(
-                            lineString.substring(
-                            prefix.length(),
-                            lineString.length()));
-                } else {
-                    output.append(lineString);
+            doc.beginEdit();
+            try {
+                for (int i = startIndex; i < endIndex; i++) {
+                    Element line = root.getElement(i);
+                    int start = line.getStartOffset();
+                    int length = Math.min(prefix.length(), line.getEndOffset() - start);
+                    if (doc.getText(start, length).equals(prefix)) {
+                        doc.remove(start, length);
+                    }
                 }
+            } finally {
+                doc.endEdit();
             }
 
-            editor.replaceSelection(output.toString());
-            setSelection(editor, p0, output.length());
+            setSelection(editor, p0, blockLength(root, p0, startIndex, endIndex));
 
         }
         
+        /*
+         * Length of the block of paragraphs from an offset in the start
+         * paragraph to the end of the paragraph before the end index
+         */
+        private int blockLength(Element root, int offset, int startIndex,
+                int endIndex) {
+            if (endIndex <= startIndex) {
+                return 0;
+            }
+            return root.getElement(endIndex - 1).getEndOffset() - offset;
+        }
+        
         /*
          * Extend the selection to the include the complete block of paragraphs
          * around the current selection
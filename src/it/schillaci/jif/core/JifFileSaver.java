@@ -0,0 +1,230 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifFileSaver.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.text.AbstractDocument;
+
+/**
+ * JifFileSaver: Saves documents to disk away from the event dispatch thread.
+ * <p>
+ * Each save encodes the document into a temporary file which then replaces 
+ * the saved file (see <code>JifDAO.save</code>), so a file is never left 
+ * half written. Saves of different files run in parallel, saves of the same
+ * file run in the order they were started. The outcome of each save is 
+ * passed to a <code>JifSaveObserver</code>.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifFileSaver {
+    
+    // Worker threads shared by all the savers
+    private static ExecutorService worker = null;
+    
+    // Saves not known to be finished
+    private final List pending = new ArrayList();
+    
+    // Last save started for each file
+    private final Map last = new HashMap();
+    
+    /**
+     * Creates a new instance of JifFileSaver
+     */
+    public JifFileSaver() {
+    }
+    
+    /**
+     * Saves the text of a document to a file in the background. The document
+     * is only locked for reading while it is encoded, so the text saved is
+     * the text at some moment after the call. No lock is held when the
+     * observer is called.
+     *
+     * @param doc
+     *              the document to save
+     * @param file
+     *              the file to save to
+     * @param lineSeparator
+     *              the line separator written in place of each "\n"
+     * @param observer
+     *              receives the outcome of the save, may be <code>null</code>
+     * @return the save, which completes once the observer has been called
+     */
+    public Future save(final AbstractDocument doc, File file,
+            final String lineSeparator, final JifSaveObserver observer) {
+        
+        return start(file, new Write() {
+            public void write(File target) throws IOException {
+                JifDAO.save(doc, target, lineSeparator);
+            }
+        }, observer);
+    }
+    
+    /**
+     * Saves a text to a file in the background
+     *
+     * @param text
+     *              the text to save, which must not be changed afterwards
+     * @param file
+     *              the file to save to
+     * @param observer
+     *              receives the outcome of the save, may be <code>null</code>
+     * @return the save, which completes once the observer has been called
+     */
+    public Future save(final CharSequence text, File file, final JifSaveObserver observer) {
+        
+        return start(file, new Write() {
+            public void write(File target) throws IOException {
+                JifDAO.save(text, target);
+            }
+        }, observer);
+    }
+    
+    /**
+     * Waits for the saves started so far to finish
+     */
+    public void awaitAll() {
+        Object[] tasks;
+        synchronized (this) {
+            tasks = pending.toArray();
+        }
+        for (int i = 0; i < tasks.length; i++) {
+            await((Future) tasks[i]);
+        }
+        synchronized (this) {
+            prune();
+        }
+    }
+    
+    /**
+     * Tests if any saves are still running or waiting to run
+     *
+     * @return <code>true</code> if a save has not finished
+     */
+    public synchronized boolean isSaving() {
+        prune();
+        return !pending.isEmpty();
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    // Writes a file
+    private interface Write {
+        void write(File target) throws IOException;
+    }
+    
+    // Start a save once the last save of the same file has finished
+    private synchronized Future start(File file, final Write write,
+            final JifSaveObserver observer) {
+        
+        final File target = file.getAbsoluteFile();
+        final Future previous = (Future) last.get(target);
+        FutureTask task = new FutureTask(new Runnable() {
+            @Override
+            public void run() {
+                if (previous != null) {
+                    await(previous);
+                }
+                IOException error = null;
+                try {
+                    write.write(target);
+                } catch (IOException ex) {
+                    error = ex;
+                }
+                if (observer != null) {
+                    observer.fileSaved(target, error);
+                }
+            }
+        }, null);
+        
+        prune();
+        pending.add(task);
+        last.put(target, task);
+        getWorker().execute(task);
+        return task;
+    }
+    
+    // Worker threads shared by all the savers
+    private static synchronized ExecutorService getWorker() {
+        if (worker == null) {
+            worker = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JifFileSaver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return worker;
+    }
+    
+    // Wait for a save, the observer has already been told of any failure
+    private static void await(Future task) {
+        try {
+            task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            System.err.println("JifFileSaver: " + ex.getCause());
+        }
+    }
+    
+    // Forget the saves which have finished
+    private void prune() {
+        for (Iterator i = pending.iterator(); i.hasNext();) {
+            if (((Future) i.next()).isDone()) {
+                i.remove();
+            }
+        }
+        for (Iterator i = last.values().iterator(); i.hasNext();) {
+            if (((Future) i.next()).isDone()) {
+                i.remove();
+            }
+        }
+    }
+}
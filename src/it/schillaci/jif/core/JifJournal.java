@@ -0,0 +1,599 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifJournal.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * JifJournal: An append-only log of the edits made to a document since its
+ * file was last loaded or saved, from which unsaved changes can be recovered
+ * after a crash.
+ * <p>
+ * Each insertion and removal is recorded as a compact record in memory. The
+ * records are appended to the log file of the journal, and forced to disk, by
+ * a background thread a short interval after the first unwritten edit, so a
+ * keystroke costs no more than encoding its record. The log file is created
+ * with the first edit and deleted when the document is saved or discarded.
+ * If the document is edited while it is being saved, the log restarts from
+ * the saved file with a record of the whole text of the document.
+ * <p>
+ * The log starts with the path of the file and the modification time and 
+ * size it had when the journal started, so that the edits are only replayed
+ * onto the text they were made to. A record cut short by a crash ends the 
+ * log.
+ * <p>
+ * A log file is locked for as long as it is in use, so that another session
+ * leaves the journals of a running session alone.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifJournal {
+    
+    /**
+     * The extension of journal log files
+     */
+    public static final String EXTENSION = ".journal";
+    
+    // Milliseconds between an edit and the log being written
+    private static final long FLUSH_DELAY = 500;
+    
+    // Identifies a journal log file and its format
+    private static final int MAGIC = 0x4A49464A;
+    
+    // Record types
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+    private static final byte TEXT   = 'T';
+    
+    // Thread writing the logs of all the journals
+    private static ScheduledExecutorService writer = null;
+    
+    // Journals with records waiting to be written
+    private static final Set dirty = new HashSet();
+    
+    // Directory holding the log files
+    private final File directory;
+    
+    // The file being edited, and its state when the journal started
+    private File file;
+    private long baseModified;
+    private long baseLength;
+    
+    // Records not yet written to the log
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream records = new DataOutputStream(pending);
+    
+    // Held while the log file is written or deleted
+    private final Object logLock = new Object();
+    
+    // The log file, null until the first records are written
+    private File log = null;
+    
+    // Open on the log file, holding its lock
+    private FileChannel channel = null;
+    
+    // The document being recorded
+    private Document document = null;
+    
+    private final DocumentListener listener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            try {
+                inserted(e.getOffset(), e.getDocument().getText(e.getOffset(), e.getLength()));
+            } catch (BadLocationException ex) {
+                System.err.println("Journal: " + ex.getMessage());
+            }
+        }
+        public void removeUpdate(DocumentEvent e) {
+            removed(e.getOffset(), e.getLength());
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    
+    /**
+     * Creates a new instance of JifJournal for the edits to a file. Nothing
+     * is written until a document is attached and edited.
+     *
+     * @param directory
+     *              the directory in which to create the log file
+     * @param file
+     *              the file being edited
+     */
+    public JifJournal(File directory, File file) {
+        this.directory = directory;
+        start(file);
+    }
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Record the edits made to a document, which holds the text of the file
+     * as it was when the journal started. Any document previously attached 
+     * is no longer recorded.
+     *
+     * @param doc
+     *              the document to record
+     */
+    public void attach(Document doc) {
+        detach();
+        document = doc;
+        document.addDocumentListener(listener);
+    }
+    
+    /**
+     * Stop recording the edits made to the attached document
+     */
+    public void detach() {
+        if (document != null) {
+            document.removeDocumentListener(listener);
+            document = null;
+        }
+    }
+    
+    /**
+     * Forget the edits recorded so far, and delete the log file, as the
+     * document now holds the text of a file, having been saved to it or 
+     * loaded from it. The edits that follow are recorded against the text of
+     * the file. This method must not be called while the document may be 
+     * changed, and only if the document has not changed since it was saved,
+     * for instance on the event dispatch thread after checking
+     * <code>JifDocument.getChangeCount</code>.
+     *
+     * @param file
+     *              the file the document was saved to or loaded from
+     */
+    public void reset(File file) {
+        synchronized (logLock) {
+            synchronized (this) {
+                pending.reset();
+                start(file);
+            }
+            deleteLog();
+        }
+    }
+    
+    /**
+     * Take a file which has just been saved as the text the edits apply to,
+     * when the attached document has changed since its text was saved. The
+     * edits recorded so far are forgotten and the whole text of the document
+     * is recorded instead, so that the unsaved edits can still be recovered
+     * onto the saved file. This method must not be called while the document
+     * may be changed, for instance it may be called on the event dispatch
+     * thread.
+     *
+     * @param file
+     *              the file the document was saved to
+     */
+    public void rebase(File file) {
+        Document doc = document;
+        if (doc == null) {
+            reset(file);
+            return;
+        }
+        String text;
+        try {
+            text = doc.getText(0, doc.getLength());
+        } catch (BadLocationException ex) {
+            System.err.println("Journal: " + ex.getMessage());
+            return;
+        }
+        synchronized (logLock) {
+            synchronized (this) {
+                pending.reset();
+                start(file);
+                try {
+                    byte[] bytes = text.getBytes("UTF-8");
+                    records.writeByte(TEXT);
+                    records.writeInt(0);
+                    records.writeInt(bytes.length);
+                    records.write(bytes);
+                } catch (IOException ex) {
+                    System.err.println("Journal: " + ex.getMessage());
+                }
+            }
+            deleteLog();
+        }
+        schedule(this);
+    }
+    
+    /**
+     * Forget the edits recorded so far, delete the log file and stop 
+     * recording, as the unsaved edits have been discarded
+     */
+    public void discard() {
+        detach();
+        synchronized (logLock) {
+            synchronized (this) {
+                pending.reset();
+            }
+            deleteLog();
+        }
+    }
+    
+    /**
+     * Append the records waiting to be written to the log file, and force
+     * them to disk
+     */
+    public void flush() {
+        synchronized (logLock) {
+            byte[] bytes;
+            File target;
+            long modified;
+            long length;
+            synchronized (this) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                bytes = pending.toByteArray();
+                pending.reset();
+                target = file;
+                modified = baseModified;
+                length = baseLength;
+            }
+            try {
+                if (log == null) {
+                    createLog(target, modified, length);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException ex) {
+                System.err.println("Journal: " + ex.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Write the records waiting to be written for all the journals
+     */
+    public static void flushAll() {
+        Object[] journals;
+        synchronized (dirty) {
+            journals = dirty.toArray();
+            dirty.clear();
+        }
+        for (int i = 0; i < journals.length; i++) {
+            ((JifJournal) journals[i]).flush();
+        }
+    }
+    
+    /**
+     * Find the journals left in a directory by a previous session, with
+     * edits which were never saved. The logs still locked by a running 
+     * session are left alone. The log of each recovery is locked until it
+     * is deleted.
+     *
+     * @param directory
+     *              the directory holding the log files
+     * @return the <code>Recovery</code> of each journal, oldest first
+     */
+    public static List recover(File directory) {
+        List recoveries = new ArrayList();
+        File[] logs = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (logs == null) {
+            return recoveries;
+        }
+        Arrays.sort(logs, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long m1 = ((File) o1).lastModified();
+                long m2 = ((File) o2).lastModified();
+                return (m1 < m2) ? -1 : (m1 == m2) ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < logs.length; i++) {
+            FileChannel locked = null;
+            try {
+                locked = lock(logs[i]);
+                if (locked != null) {
+                    recoveries.add(new Recovery(logs[i], locked));
+                }
+            } catch (IOException ex) {
+                System.err.println("Journal " + logs[i].getPath() + ": " + ex.getMessage());
+                // Only a log no other session holds is deleted
+                if (locked != null) {
+                    delete(logs[i], locked);
+                }
+            }
+        }
+        return recoveries;
+    }
+    
+    // --- Accessor methods ----------------------------------------------------
+    
+    /**
+     * Returns the file being edited
+     *
+     * @return the file
+     */
+    public synchronized File getFile() {
+        return file;
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    // Take the current state of a file as the text the edits apply to
+    private void start(File file) {
+        this.file = file.getAbsoluteFile();
+        baseModified = this.file.lastModified();
+        baseLength = this.file.length();
+    }
+    
+    private synchronized void inserted(int offset, String text) {
+        try {
+            byte[] bytes = text.getBytes("UTF-8");
+            records.writeByte(INSERT);
+            records.writeInt(offset);
+            records.writeInt(bytes.length);
+            records.write(bytes);
+        } catch (IOException ex) {
+            System.err.println("Journal: " + ex.getMessage());
+        }
+        schedule(this);
+    }
+    
+    private synchronized void removed(int offset, int length) {
+        try {
+            records.writeByte(REMOVE);
+            records.writeInt(offset);
+            records.writeInt(length);
+        } catch (IOException ex) {
+            System.err.println("Journal: " + ex.getMessage());
+        }
+        schedule(this);
+    }
+    
+    // Create the log file, locked until it is deleted, and write its header.
+    // Called holding the log lock.
+    private void createLog(File target, long modified, long length) throws IOException {
+        directory.mkdirs();
+        File created = File.createTempFile("jif", EXTENSION, directory);
+        FileChannel opened = new RandomAccessFile(created, "rw").getChannel();
+        try {
+            opened.tryLock();
+            DataOutputStream header = new DataOutputStream(Channels.newOutputStream(opened));
+            header.writeInt(MAGIC);
+            header.writeUTF(target.getAbsolutePath());
+            header.writeLong(modified);
+            header.writeLong(length);
+            header.flush();
+        } catch (IOException ex) {
+            delete(created, opened);
+            throw ex;
+        }
+        log = created;
+        channel = opened;
+    }
+    
+    // Called holding the log lock
+    private void deleteLog() {
+        if (log != null) {
+            delete(log, channel);
+            log = null;
+            channel = null;
+        }
+    }
+    
+    // Open and lock a log file, or return null if another session holds it
+    private static FileChannel lock(File log) throws IOException {
+        FileChannel opened = new RandomAccessFile(log, "rw").getChannel();
+        try {
+            if (opened.tryLock() != null) {
+                return opened;
+            }
+        } catch (IOException ex) {
+            opened.close();
+            throw ex;
+        }
+        opened.close();
+        return null;
+    }
+    
+    // Delete a log file and release its lock. Where the system allows it the
+    // file is deleted first, so no other session can take it up in between.
+    private static void delete(File log, FileChannel locked) {
+        boolean deleted = log.delete();
+        try {
+            locked.close();
+        } catch (IOException ex) {
+            System.err.println("Journal: " + ex.getMessage());
+        }
+        if (!deleted) {
+            log.delete();
+        }
+    }
+    
+    // Write the records of a journal after a short delay, together with the
+    // records of any other journals edited in the meantime
+    private static void schedule(JifJournal journal) {
+        synchronized (dirty) {
+            if (!dirty.add(journal) || dirty.size() > 1) {
+                return;
+            }
+        }
+        getWriter().schedule(new Runnable() {
+            public void run() {
+                flushAll();
+            }
+        }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+    
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JifJournal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return writer;
+    }
+    
+    // --- Recovery ------------------------------------------------------------
+    
+    /**
+     * The unsaved edits left in a journal log by a previous session
+     */
+    public static class Recovery {
+        
+        private final File log;
+        private final FileChannel channel;
+        private final File file;
+        private final long baseModified;
+        private final long baseLength;
+        
+        // The log is read through the channel holding its lock, and the
+        // streams are not closed, as that would close the channel
+        private Recovery(File log, FileChannel channel) throws IOException {
+            this.log = log;
+            this.channel = channel;
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("not a journal");
+                }
+                file = new File(in.readUTF());
+                baseModified = in.readLong();
+                baseLength = in.readLong();
+            } catch (EOFException ex) {
+                throw new IOException("empty journal");
+            }
+        }
+        
+        /**
+         * Returns the file which was being edited
+         *
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+        
+        /**
+         * Tests if the file is as it was when the edits were made, so that 
+         * the edits can be replayed onto its text
+         *
+         * @return <code>true</code> if the file has not changed
+         */
+        public boolean isCurrent() {
+            return file.lastModified() == baseModified && file.length() == baseLength;
+        }
+        
+        /**
+         * Replay the edits onto a document holding the text of the file. The
+         * replay stops at a record cut short by a crash.
+         *
+         * @param doc
+         *              the document holding the text of the file
+         * @return the number of edits replayed
+         * @throws IOException
+         * @throws BadLocationException
+         *              if an edit does not fit the text of the document
+         */
+        public int replay(Document doc) throws IOException, BadLocationException {
+            int count = 0;
+            channel.position(0);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            try {
+                in.readInt();
+                in.readUTF();
+                in.readLong();
+                in.readLong();
+                while (true) {
+                    byte type = in.readByte();
+                    int offset = in.readInt();
+                    int length = in.readInt();
+                    if (type == INSERT) {
+                        byte[] bytes = new byte[length];
+                        in.readFully(bytes);
+                        doc.insertString(offset, new String(bytes, "UTF-8"), null);
+                    } else if (type == TEXT) {
+                        byte[] bytes = new byte[length];
+                        in.readFully(bytes);
+                        doc.remove(0, doc.getLength());
+                        doc.insertString(0, new String(bytes, "UTF-8"), null);
+                    } else if (type == REMOVE) {
+                        doc.remove(offset, length);
+                    } else {
+                        break;
+                    }
+                    count++;
+                }
+            } catch (EOFException ex) {
+                // The end of the log, or a record cut short
+            }
+            return count;
+        }
+        
+        /**
+         * Delete the journal log and release its lock
+         */
+        public void delete() {
+            JifJournal.delete(log, channel);
+        }
+    }
+}
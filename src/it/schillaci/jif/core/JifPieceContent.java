@@ -0,0 +1,507 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifPieceContent.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * JifPieceContent: Document content held in a piece table. All the text ever
+ * inserted is appended to a single character buffer that is never changed in
+ * place, and the content is described by a list of pieces of that buffer.
+ * Inserting or removing text only splits and removes pieces, so the cost of
+ * an edit depends on the number of pieces rather than on the size of the
+ * text, and text lying within a single piece is handed out without copying.
+ * <p>
+ * Positions follow the same rules as <code>StringContent</code>: a position
+ * at an insertion point moves with the inserted text unless it is at the
+ * start of the content, and a position within removed text moves to the
+ * start of the removal. As in <code>GapContent</code>, positions are kept in
+ * order with a gap in their indexes at the last edit, so an edit only moves 
+ * the positions between it and the previous edit.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifPieceContent implements AbstractDocument.Content {
+
+    // Append only buffer holding the text of all the pieces
+    private char[] buffer;
+    private int used = 0;
+
+    // Buffer offset, length and content offset of each piece
+    private final IntList pieceStarts = new IntList();
+    private final IntList pieceLengths = new IntList();
+    private final IntList pieceOffsets = new IntList();
+
+    // Length of the content
+    private int length = 0;
+
+    // Initial size of the gap in the position indexes, and the least it
+    // grows by
+    private static final int GAP = 1 << 24;
+
+    // Positions in the content in index order. The index of a position at or
+    // after the gap is its offset plus the gap length.
+    private final List marks = new ArrayList();
+    private int gapStart = 0;
+    private int gapLength = GAP;
+
+    // Positions which are no longer referenced
+    private final ReferenceQueue queue = new ReferenceQueue();
+    private int unusedMarks = 0;
+
+    /**
+     * Creates a new piece table content containing only the implied newline
+     * at the end of a document
+     */
+    public JifPieceContent() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new piece table content containing only the implied newline
+     * at the end of a document
+     *
+     * @param capacity
+     *            the initial capacity of the text buffer
+     */
+    public JifPieceContent(int capacity) {
+        buffer = new char[Math.max(capacity, 16)];
+        append("\n");
+        pieceStarts.add(0);
+        pieceLengths.add(1);
+        pieceOffsets.add(0);
+        length = 1;
+    }
+
+    // --- Content methods -----------------------------------------------------
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        removeUnusedMarks();
+        Mark mark = new Mark();
+        int index = (offset < gapStart) ? offset : offset + gapLength;
+        mark.data = new MarkData(mark, index);
+        marks.add(findMark(index + 1), mark.data);
+        return mark;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str)
+            throws BadLocationException {
+
+        if (where < 0 || where >= length) {
+            throw new BadLocationException("Invalid insert", where);
+        }
+
+        int n = str.length();
+        if (n == 0) {
+            return null;
+        }
+
+        int start = append(str);
+
+        // Typing extends the piece that was last appended to the buffer
+        int index = (where > 0) ? findPiece(where - 1) : -1;
+        if (index >= 0
+                && pieceOffsets.get(index) + pieceLengths.get(index) == where
+                && pieceStarts.get(index) + pieceLengths.get(index) == start) {
+            pieceLengths.set(index, pieceLengths.get(index) + n);
+        } else {
+            index = split(where);
+            pieceStarts.replace(index, 0, 1, start);
+            pieceLengths.replace(index, 0, 1, n);
+            pieceOffsets.replace(index, 0, 1, where);
+        }
+        length += n;
+        updateOffsets(index);
+
+        updateMarksForInsert(where, n);
+        return new InsertUndo(where, n);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems)
+            throws BadLocationException {
+
+        if (where < 0 || nitems < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", where + nitems);
+        }
+        if (nitems == 0) {
+            return null;
+        }
+
+        String removed = getString(where, nitems);
+
+        int first = split(where);
+        int last = split(where + nitems);
+        pieceStarts.replace(first, last - first, 0, 0);
+        pieceLengths.replace(first, last - first, 0, 0);
+        pieceOffsets.replace(first, last - first, 0, 0);
+        length -= nitems;
+        updateOffsets(first);
+
+        updateMarksForRemove(where, nitems);
+        return new RemoveUndo(where, removed);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment s = new Segment();
+        getChars(where, len, s);
+        return new String(s.array, s.offset, s.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt)
+            throws BadLocationException {
+
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", where + len);
+        }
+
+        int index = findPiece(where);
+        int pieceEnd = pieceOffsets.get(index) + pieceLengths.get(index);
+        int start = pieceStarts.get(index) + where - pieceOffsets.get(index);
+
+        if (where + len <= pieceEnd || txt.isPartialReturn()) {
+            // Hand out the buffer itself, the text in it is never changed
+            txt.array = buffer;
+            txt.offset = start;
+            txt.count = Math.min(len, pieceEnd - where);
+            return;
+        }
+
+        char[] chars = new char[len];
+        int copied = 0;
+        int count;
+        while (copied < len) {
+            count = Math.min(len - copied, pieceEnd - where - copied);
+            System.arraycopy(buffer, start, chars, copied, count);
+            copied += count;
+            index++;
+            if (index < pieceStarts.size()) {
+                start = pieceStarts.get(index);
+                pieceEnd = pieceOffsets.get(index) + pieceLengths.get(index);
+            }
+        }
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    /**
+     * Returns the number of pieces making up the content
+     *
+     * @return the number of pieces
+     */
+    public int getPieceCount() {
+        return pieceStarts.size();
+    }
+
+    // --- Piece table ---------------------------------------------------------
+
+    // Append text to the buffer returning the buffer offset of the text
+    private int append(String str) {
+        int n = str.length();
+        if (used + n > buffer.length) {
+            char[] grown = new char[Math.max(buffer.length * 2, used + n)];
+            System.arraycopy(buffer, 0, grown, 0, used);
+            buffer = grown;
+        }
+        str.getChars(0, n, buffer, used);
+        used += n;
+        return used - n;
+    }
+
+    // Index of the piece containing the content offset
+    private int findPiece(int offset) {
+        int low = 0;
+        int high = pieceOffsets.size() - 1;
+        int mid;
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (pieceOffsets.get(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Split the piece containing the content offset so that a piece starts
+    // at the offset, returning the index of that piece
+    private int split(int offset) {
+        if (offset == length) {
+            return pieceStarts.size();
+        }
+        int index = findPiece(offset);
+        int delta = offset - pieceOffsets.get(index);
+        if (delta == 0) {
+            return index;
+        }
+        int start = pieceStarts.get(index);
+        int len = pieceLengths.get(index);
+        pieceLengths.set(index, delta);
+        pieceStarts.replace(index + 1, 0, 1, start + delta);
+        pieceLengths.replace(index + 1, 0, 1, len - delta);
+        pieceOffsets.replace(index + 1, 0, 1, offset);
+        return index + 1;
+    }
+
+    // Recompute the content offsets of the pieces from the piece index
+    private void updateOffsets(int index) {
+        int offset = (index == 0) ? 0 : pieceOffsets.get(index - 1) + pieceLengths.get(index - 1);
+        for (int i = index; i < pieceOffsets.size(); i++) {
+            pieceOffsets.set(i, offset);
+            offset += pieceLengths.get(i);
+        }
+    }
+
+    // --- Positions -----------------------------------------------------------
+
+    private void updateMarksForInsert(int offset, int n) {
+        if (offset == 0) {
+            // Positions at the start of the content stay there
+            offset = 1;
+        }
+        moveGap(offset);
+        if (gapLength < n) {
+            growGap(n);
+        }
+        gapStart += n;
+        gapLength -= n;
+    }
+
+    private void updateMarksForRemove(int offset, int n) {
+        moveGap(offset + n);
+        
+        // Positions in the removed text move after the gap, at its start
+        int from = findMark(offset);
+        int to = findMark(gapStart);
+        gapStart = offset;
+        gapLength += n;
+        for (int i = from; i < to; i++) {
+            ((MarkData) marks.get(i)).index = gapStart + gapLength;
+        }
+    }
+
+    // Move the gap to an offset, moving the positions in between across it
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            int to = findMark(gapStart);
+            for (int i = findMark(offset); i < to; i++) {
+                ((MarkData) marks.get(i)).index += gapLength;
+            }
+        } else if (offset > gapStart) {
+            int to = findMark(offset + gapLength);
+            for (int i = findMark(gapStart + gapLength); i < to; i++) {
+                ((MarkData) marks.get(i)).index -= gapLength;
+            }
+        }
+        gapStart = offset;
+    }
+
+    // Make the gap at least a number of characters long
+    private void growGap(int n) {
+        int grow = Math.max(n, GAP);
+        for (int i = findMark(gapStart + gapLength); i < marks.size(); i++) {
+            ((MarkData) marks.get(i)).index += grow;
+        }
+        gapLength += grow;
+    }
+
+    // Position in the list of the first position with an index at least the
+    // given index
+    private int findMark(int index) {
+        int low = 0;
+        int high = marks.size();
+        int mid;
+        while (low < high) {
+            mid = (low + high) >>> 1;
+            if (((MarkData) marks.get(mid)).index < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Drop the positions which are no longer referenced, once there are
+    // enough of them to be worth a pass over the list
+    private void removeUnusedMarks() {
+        while (queue.poll() != null) {
+            unusedMarks++;
+        }
+        if (unusedMarks <= Math.max(16, marks.size() / 8)) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < marks.size(); i++) {
+            if (((MarkData) marks.get(i)).get() != null) {
+                marks.set(kept++, marks.get(i));
+            }
+        }
+        marks.subList(kept, marks.size()).clear();
+        unusedMarks = 0;
+    }
+
+    /**
+     * The index of a position, kept by the content for as long as the 
+     * position is referenced
+     */
+    private class MarkData extends WeakReference {
+
+        private int index;
+
+        MarkData(Mark mark, int index) {
+            super(mark, queue);
+            this.index = index;
+        }
+    }
+
+    /**
+     * A position in the content that moves as text is inserted and removed
+     */
+    private class Mark implements Position {
+
+        private MarkData data;
+
+        @Override
+        public int getOffset() {
+            int index = data.index;
+            return (index < gapStart) ? index : index - gapLength;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    // --- Undo ----------------------------------------------------------------
+
+    /**
+     * Undoable insertion of text into the content
+     */
+    private class InsertUndo extends AbstractUndoableEdit {
+
+        private static final long serialVersionUID = 1L;
+        private final int offset;
+        private final int length;
+        private String string;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                string = getString(offset, length);
+                remove(offset, length);
+            } catch (BadLocationException ex) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                insertString(offset, string);
+                string = null;
+            } catch (BadLocationException ex) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+
+    /**
+     * Undoable removal of text from the content
+     */
+    private class RemoveUndo extends AbstractUndoableEdit {
+
+        private static final long serialVersionUID = 1L;
+        private final int offset;
+        private final String string;
+
+        RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                insertString(offset, string);
+            } catch (BadLocationException ex) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                remove(offset, string.length());
+            } catch (BadLocationException ex) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifProcess.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * JifProcess: Runs an external program (compiler or utility) and passes its 
+ * standard output and standard error to an observer line by line while it 
+ * runs. Both streams are read concurrently, so a program writing a lot to 
+ * standard error can not block. A process can be cancelled from any thread.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifProcess {
+
+    // Program and arguments
+    private String[] command;
+    // Working directory for the program
+    private File directory;
+    // The running program
+    private Process process = null;
+    // Whether the process has been cancelled
+    private volatile boolean cancelled = false;
+    // Exit code of the program, -1 until it has finished
+    private int exitCode = -1;
+    // Wall time taken by the program in milliseconds
+    private long time = 0;
+
+    /**
+     * Creates a new process for a command line
+     *
+     * @param command
+     *              the program followed by its arguments
+     * @param directory
+     *              the working directory for the program
+     */
+    public JifProcess(String[] command, File directory) {
+        this.command = command;
+        this.directory = directory;
+    }
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Run the program and wait for it to finish. Standard output is read on
+     * the calling thread and standard error on a second thread.
+     *
+     * @param observer
+     *              receives each line of output
+     * @return the exit code of the program
+     * @throws IOException
+     *              if the program can not be started
+     * @throws InterruptedException
+     *              if the calling thread is interrupted while waiting
+     */
+    public int run(JifProcessObserver observer) throws IOException, InterruptedException {
+
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            if (cancelled) {
+                return exitCode;
+            }
+            process = Runtime.getRuntime().exec(command, null, directory);
+        }
+
+        Thread errors = new Thread(
+                pump(process.getErrorStream(), observer, true),
+                "Jif process errors");
+        errors.setDaemon(true);
+        errors.start();
+
+        pump(process.getInputStream(), observer, false).run();
+        errors.join();
+
+        exitCode = process.waitFor();
+        time = System.currentTimeMillis() - start;
+        return exitCode;
+    }
+
+    /**
+     * Stop the program, if it is running, and prevent it from starting if 
+     * it is not
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (process != null) {
+            process.destroy();
+        }
+    }
+
+    // Reads a stream of the process line by line
+    private Runnable pump(final InputStream in, final JifProcessObserver observer, final boolean error) {
+        return new Runnable() {
+            public void run() {
+                try {
+                    BufferedReader br = new BufferedReader(new InputStreamReader(in, Constants.fileFormat));
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        observer.processOutput(line, error);
+                    }
+                    br.close();
+                } catch (IOException ex) {
+                    // The stream is closed when the process is cancelled
+                    if (!cancelled) {
+                        System.err.println("Unable to read process output: " + ex.getMessage());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the command line as it would be typed
+     *
+     * @return the command line
+     */
+    public String getCommandLine() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < command.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(command[i]);
+        }
+        return sb.toString();
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    public String[] getCommand() {
+        return command;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
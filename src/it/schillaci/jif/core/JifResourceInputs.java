@@ -0,0 +1,140 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifResourceInputs.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * JifResourceInputs: Finds the files listed in a BRES resource file (.res) or
+ * a BLC control file (.blc). Every word and quoted name in the list is 
+ * treated as a file name, and is an input if a file of that name exists in
+ * one of the directories the program reads from. A missing file makes the
+ * program fail, and creating it changes the list of inputs, so the stage 
+ * runs again.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifResourceInputs implements JifBuildInputs {
+
+    // The resource or control file
+    private File list;
+    // Directories the file names are relative to
+    private List directories;
+
+    /**
+     * Creates a new instance of JifResourceInputs
+     *
+     * @param list
+     *              the resource or control file
+     * @param directories
+     *              the directories the file names are relative to
+     */
+    public JifResourceInputs(File list, List directories) {
+        this.list = list;
+        this.directories = directories;
+    }
+
+    /**
+     * Returns the list file and the existing files it names
+     *
+     * @return list of <code>File</code>
+     * @throws IOException
+     *              if the list file can not be read
+     */
+    public List getInputs() throws IOException {
+
+        List files = new ArrayList();
+        files.add(list);
+        if (!list.exists()) {
+            return files;
+        }
+
+        CharSequence text = JifDAO.load(list);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end;
+            if (c == '"' || c == '\'') {
+                // Quoted name, which may contain spaces
+                start++;
+                end = start;
+                while (end < length && text.charAt(end) != c && text.charAt(end) != '\n') {
+                    end++;
+                }
+                i = end + 1;
+            } else {
+                end = start;
+                while (end < length && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                i = end;
+            }
+            add(files, text.subSequence(start, end).toString());
+        }
+        return files;
+
+    }
+
+    // Add the files a name refers to
+    private void add(List files, String name) {
+
+        if (name.length() == 0) {
+            return;
+        }
+        if (new File(name).isAbsolute()) {
+            File file = new File(name);
+            if (file.isFile()) {
+                files.add(file);
+            }
+            return;
+        }
+        for (Iterator i = directories.iterator(); i.hasNext();) {
+            File file = new File((File) i.next(), name);
+            if (file.isFile()) {
+                files.add(file);
+            }
+        }
+
+    }
+}
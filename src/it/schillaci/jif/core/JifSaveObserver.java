@@ -0,0 +1,58 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifSaveObserver.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Receives the outcome of a save started by a <code>JifFileSaver</code>. The
+ * method is called from the saving thread, not the event dispatch thread, 
+ * with no lock held on the saved document.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public interface JifSaveObserver {
+    
+    /**
+     * Called when a document has been saved, or has failed to save
+     *
+     * @param file
+     *              the file the document was saved to
+     * @param error
+     *              the reason the save failed, or <code>null</code> if the
+     *              file holds the text of the document
+     */
+    void fileSaved(File file, IOException error);
+}
@@ -0,0 +1,246 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifTextReplace.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.text.BadLocationException;
+
+/**
+ * JifTextReplace: A precompiled replacement of every occurrence of a string
+ * or regular expression. All the matches in a text are found in a single
+ * pass, each with its replacement text, before any of them is applied. A
+ * regular expression replacement may refer to the groups captured by the
+ * match as <code>$1</code>, <code>$2</code> and so on.
+ * <p>
+ * The replacements can be applied to a Jif document as a single edit
+ * transaction, so that the document is highlighted once and the whole
+ * change is undone in one step, or to a text to produce the replaced text.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifTextReplace {
+
+    // The expression to find
+    private final Pattern pattern;
+    // The replacement, in the syntax of Matcher.appendReplacement
+    private final String replacement;
+
+    /**
+     * An occurrence found in a text and the text that replaces it
+     */
+    public static class Replacement {
+
+        private final int start;
+        private final int end;
+        private final String text;
+
+        Replacement(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        /**
+         * Returns the offset of the start of the occurrence
+         *
+         * @return the start offset
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the offset following the end of the occurrence
+         *
+         * @return the end offset
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the text replacing the occurrence
+         *
+         * @return the replacement text
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Creates a new replacement
+     *
+     * @param target
+     *              the string or regular expression to find
+     * @param replacement
+     *              the replacement text, which for a regular expression may
+     *              refer to the captured groups
+     * @param regex
+     *              whether the target is a regular expression
+     * @param matchCase
+     *              whether the case of the target must be matched
+     * @throws java.util.regex.PatternSyntaxException
+     *              if the target is not a valid regular expression
+     */
+    public JifTextReplace(String target, String replacement, boolean regex,
+            boolean matchCase) {
+        int flags = Pattern.MULTILINE;
+        if (!matchCase) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        this.pattern = Pattern.compile(regex ? target : Pattern.quote(target), flags);
+        this.replacement = regex ? replacement : Matcher.quoteReplacement(replacement);
+    }
+
+    /**
+     * Find every occurrence in a text, in a single pass
+     *
+     * @param text
+     *              the text to search, for example a view of a document
+     * @return the <code>Replacement</code>s in order of their offsets
+     * @throws IllegalArgumentException
+     *              if the replacement is not valid, for example if it refers
+     *              to a group the expression does not have
+     */
+    public List findAll(CharSequence text) {
+        List replacements = new ArrayList();
+        Matcher m = pattern.matcher(text);
+        StringBuffer expanded = new StringBuffer();
+        int last = 0;
+
+        while (m.find()) {
+            // appendReplacement copies the text since the previous match
+            // ahead of the replacement, which is dropped
+            expanded.setLength(0);
+            try {
+                m.appendReplacement(expanded, replacement);
+            } catch (IndexOutOfBoundsException ex) {
+                // A reference to a group missing from the expression
+                throw new IllegalArgumentException(ex.getMessage());
+            }
+            replacements.add(new Replacement(
+                    m.start(),
+                    m.end(),
+                    expanded.substring(m.start() - last)));
+            last = m.end();
+        }
+        return replacements;
+    }
+
+    /**
+     * Find the first occurrence in a text at or after an offset
+     *
+     * @param text
+     *              the text to search, for example a view of a document
+     * @param from
+     *              the offset to start searching from
+     * @return the <code>Replacement</code>, or <code>null</code> if there
+     *         is no occurrence after the offset
+     * @throws IllegalArgumentException
+     *              if the replacement is not valid, for example if it refers
+     *              to a group the expression does not have
+     */
+    public Replacement find(CharSequence text, int from) {
+        Matcher m = pattern.matcher(text);
+        if (from > text.length() || !m.find(from)) {
+            return null;
+        }
+        // appendReplacement copies the text ahead of the match too
+        StringBuffer expanded = new StringBuffer();
+        try {
+            m.appendReplacement(expanded, replacement);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException(ex.getMessage());
+        }
+        return new Replacement(m.start(), m.end(), expanded.substring(m.start()));
+    }
+
+    /**
+     * Apply replacements found by <code>findAll</code> to the text they were
+     * found in
+     *
+     * @param text
+     *              the original text
+     * @param replacements
+     *              the replacements in order of their offsets
+     * @return the replaced text
+     */
+    public static String apply(CharSequence text, List replacements) {
+        StringBuilder out = new StringBuilder(text.length());
+        int last = 0;
+        for (int i = 0; i < replacements.size(); i++) {
+            Replacement r = (Replacement) replacements.get(i);
+            out.append(text, last, r.start).append(r.text);
+            last = r.end;
+        }
+        out.append(text, last, text.length());
+        return out.toString();
+    }
+
+    /**
+     * Apply replacements found by <code>findAll</code> to the document they
+     * were found in, as a single edit transaction. The replacements are made
+     * from the end of the document backwards so that the offsets of those
+     * still to be made are unchanged.
+     *
+     * @param doc
+     *              the document
+     * @param replacements
+     *              the replacements in order of their offsets
+     * @throws BadLocationException
+     *              if the document no longer holds the text the replacements
+     *              were found in
+     */
+    public static void apply(JifDocument doc, List replacements)
+            throws BadLocationException {
+        doc.beginEdit();
+        try {
+            for (int i = replacements.size() - 1; i >= 0; i--) {
+                Replacement r = (Replacement) replacements.get(i);
+                if (r.end > r.start) {
+                    doc.remove(r.start, r.end - r.start);
+                }
+                if (r.text.length() > 0) {
+                    doc.insertString(r.start, r.text, null);
+                }
+            }
+        } finally {
+            doc.endEdit();
+        }
+    }
+}
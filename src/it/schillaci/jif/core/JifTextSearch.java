@@ -0,0 +1,184 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifTextSearch.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * JifTextSearch: A precompiled, case insensitive search for a string using
+ * the Boyer-Moore-Horspool algorithm. The search runs directly over any
+ * <code>CharSequence</code> (for example a <code>Segment</code> of a document)
+ * without copying or lower-casing the text, and can search forwards or 
+ * backwards.
+ * <p>
+ * Characters are compared after folding them in the same way as
+ * <code>String.equalsIgnoreCase</code>. The shift tables are indexed by the
+ * low eight bits of the folded character, which only ever makes a shift 
+ * shorter, never skipping a match.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifTextSearch {
+
+    // The string to find
+    private String target;
+    // The folded characters of the string
+    private char[] pattern;
+    // Shifts for searching forwards, by last character of the window
+    private int[] forward = new int[256];
+    // Shifts for searching backwards, by first character of the window
+    private int[] backward = new int[256];
+
+    /**
+     * Creates a new search for a string, ignoring case
+     *
+     * @param target
+     *              the string to find
+     */
+    public JifTextSearch(String target) {
+        this.target = target;
+        int m = target.length();
+
+        pattern = new char[m];
+        for (int i = 0; i < m; i++) {
+            pattern[i] = fold(target.charAt(i));
+        }
+
+        Arrays.fill(forward, m);
+        for (int i = 0; i < m - 1; i++) {
+            forward[pattern[i] & 0xff] = m - 1 - i;
+        }
+        Arrays.fill(backward, m);
+        for (int i = m - 1; i > 0; i--) {
+            backward[pattern[i] & 0xff] = i;
+        }
+    }
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Returns the position of the first match at or after a position
+     *
+     * @param text
+     *              the text to search
+     * @param from
+     *              the position to start searching from
+     * @return the position of the match, or -1 if there is none
+     */
+    public int indexOf(CharSequence text, int from) {
+        int m = pattern.length;
+        int last = text.length() - m;
+        if (m == 0) {
+            return -1;
+        }
+
+        for (int i = Math.max(from, 0); i <= last;) {
+            int j = m - 1;
+            char c = fold(text.charAt(i + j));
+            if (c == pattern[j]) {
+                do {
+                    j--;
+                } while (j >= 0 && fold(text.charAt(i + j)) == pattern[j]);
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += forward[c & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the last match starting at or before a 
+     * position
+     *
+     * @param text
+     *              the text to search
+     * @param from
+     *              the position to start searching backwards from
+     * @return the position of the match, or -1 if there is none
+     */
+    public int lastIndexOf(CharSequence text, int from) {
+        int m = pattern.length;
+        if (m == 0) {
+            return -1;
+        }
+
+        for (int i = Math.min(from, text.length() - m); i >= 0;) {
+            int j = 0;
+            char c = fold(text.charAt(i));
+            if (c == pattern[0]) {
+                do {
+                    j++;
+                } while (j < m && fold(text.charAt(i + j)) == pattern[j]);
+                if (j == m) {
+                    return i;
+                }
+            }
+            i -= backward[c & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the positions of all the (non overlapping) matches in some 
+     * text
+     *
+     * @param text
+     *              the text to search
+     * @return list of match positions in ascending order
+     */
+    public IntList indexesOf(CharSequence text) {
+        IntList positions = new IntList();
+        int m = Math.max(pattern.length, 1);
+        for (int i = indexOf(text, 0); i != -1; i = indexOf(text, i + m)) {
+            positions.add(i);
+        }
+        return positions;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    public int getLength() {
+        return pattern.length;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,238 @@
+package it.schillaci.jif.core;
+
+/*
+ * JifUndoManager.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * JifUndoManager: Undo manager for the text of a Jif document. Changes of
+ * character attributes made by syntax highlighting are not recorded, so each
+ * undo step reverts a change of text; a Jif document reports its changes as
+ * <code>JifDocument.TextEdit</code>s and highlights the text again when they
+ * are undone. Characters typed one after another are
+ * merged into a single edit for each word, and consecutive deletions of
+ * single characters into a single edit. The history is limited by an
+ * estimate of the memory held by the edits rather than by their number, the
+ * oldest edits are discarded first.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifUndoManager extends UndoManager {
+
+    private static final long serialVersionUID = -3024218339212410466L;
+
+    /**
+     * Default limit of the memory held by the edits, in bytes
+     */
+    public static final long MEMORY_LIMIT = 8L * 1024 * 1024;
+
+    // Estimated bytes held by an edit besides its text
+    private static final int EDIT_BYTES = 96;
+
+    private final long memoryLimit;
+    private long memory = 0;
+
+    /**
+     * Creates an undo manager with the default memory limit
+     */
+    public JifUndoManager() {
+        this(MEMORY_LIMIT);
+    }
+
+    /**
+     * Creates an undo manager that keeps no more than an estimated amount of
+     * memory in edits. The last edit is always kept.
+     *
+     * @param memoryLimit
+     *            the memory limit in bytes
+     */
+    public JifUndoManager(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        setLimit(-1);
+    }
+
+    /**
+     * Records an edit. Attribute changes are ignored, an edit that continues
+     * the word being typed is merged with it.
+     *
+     * @param anEdit
+     *            the edit to record
+     * @return <code>false</code> if the edit is not recorded
+     */
+    @Override
+    public synchronized boolean addEdit(UndoableEdit anEdit) {
+        if (isStyleChange(anEdit)) {
+            return false;
+        }
+        UndoStep edit = new UndoStep(anEdit);
+        if (!super.addEdit(edit)) {
+            return false;
+        }
+        memory += edit.memory;
+        trimForMemory();
+        return true;
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        memory = 0;
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        closeLastEdit();
+        super.undo();
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        closeLastEdit();
+        super.redo();
+    }
+
+    /**
+     * Returns the estimated memory held by the recorded edits
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            memory -= ((UndoStep) edits.get(i)).memory;
+        }
+        super.trimEdits(from, to);
+    }
+
+    // Discard the oldest edits until the history fits in the memory limit
+    private void trimForMemory() {
+        int count = 0;
+        long excess = memory - memoryLimit;
+        while (excess > 0 && count < edits.size() - 1) {
+            excess -= ((UndoStep) edits.get(count)).memory;
+            count++;
+        }
+        if (count > 0) {
+            trimEdits(0, count - 1);
+        }
+    }
+
+    // Stop typing into the last edit after an undo or redo
+    private void closeLastEdit() {
+        UndoableEdit last = lastEdit();
+        if (last != null) {
+            ((UndoStep) last).typing = false;
+        }
+    }
+
+    // An attribute change of a document, as made by syntax highlighting
+    private static boolean isStyleChange(UndoableEdit edit) {
+        return edit instanceof AbstractDocument.DefaultDocumentEvent
+                && ((DocumentEvent) edit).getType() == DocumentEvent.EventType.CHANGE;
+    }
+
+    // --- Inner classes ------------------------------------------------------
+    /**
+     * A recorded undo step, either a single edit or a run of characters typed
+     * or deleted one after another.
+     */
+    private static class UndoStep extends CompoundEdit {
+
+        private static final long serialVersionUID = 8206717823719931562L;
+
+        private long memory;
+
+        // Typing state: the kind of change, the offset of the last character
+        // and the last character typed
+        private boolean typing = false;
+        private boolean insert;
+        private int offset;
+        private char last;
+
+        UndoStep(UndoableEdit edit) {
+            edits.add(edit);
+            end();
+            memory = EDIT_BYTES;
+            if (edit instanceof JifDocument.TextEdit) {
+                JifDocument.TextEdit text = (JifDocument.TextEdit) edit;
+                memory += text.getText().length() * 2L;
+                if (text.getText().length() == 1) {
+                    typing = true;
+                    insert = text.isInsert();
+                    offset = text.getOffset();
+                    last = text.getText().charAt(0);
+                }
+            } else if (edit instanceof JifDocument.EditTransaction) {
+                memory += ((JifDocument.EditTransaction) edit).getTextLength() * 2L;
+            }
+        }
+
+        /**
+         * Absorbs a single character edit that carries on the run of this
+         * step. A new word starts where a character follows white space.
+         */
+        @Override
+        public boolean addEdit(UndoableEdit anEdit) {
+            UndoStep step = (UndoStep) anEdit;
+            boolean follows = typing && step.typing && step.insert == insert;
+            if (follows && insert) {
+                follows = step.offset == offset + 1
+                        && !(Character.isWhitespace(last)
+                        && !Character.isWhitespace(step.last));
+            } else if (follows) {
+                // Backspace moves back a character, delete stays in place
+                follows = step.offset == offset - 1 || step.offset == offset;
+            }
+            if (!follows) {
+                typing = false;
+                return false;
+            }
+            edits.addAll(step.edits);
+            memory += step.memory;
+            offset = step.offset;
+            last = step.last;
+            return true;
+        }
+    }
+}
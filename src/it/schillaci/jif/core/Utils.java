@@ -38,12 +38,7 @@ import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.PrintGraphics;
 import java.awt.PrintJob;
-import java.io.BufferedReader;
 import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.StringReader;
 import java.util.Properties;
@@ -195,15 +190,17 @@ public class Utils {
     }
 
     public static int IgnoreCaseIndexOf(String mainString, String str, int fromIndex) {
-        String s1 = mainString.toLowerCase();
-        String t1 = str.toLowerCase();
-        return s1.indexOf(t1, fromIndex);
+        int last = mainString.length() - str.length();
+        for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+            if (mainString.regionMatches(true, i, str, 0, str.length())) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public static int IgnoreCaseIndexOf(String mainString, String str) {
-        String s1 = mainString.toLowerCase();
-        String t1 = str.toLowerCase();
-        return s1.indexOf(t1);
+        return IgnoreCaseIndexOf(mainString, str, 0);
     }
 
     /**
@@ -219,41 +216,4 @@ public class Utils {
         code = replace(code, "@", "");
         return code;
     }
-
-    /**
-     * Returns a string with all occurrences of the target string in file
-     *
-     */
-    public static String searchString(String target, File file) {
-        // open file
-        String head = "File=" + file.getName();
-        String filename = file.getAbsolutePath();
-        StringBuilder out = new StringBuilder();
-        try {
-            String riga;
-            int lineCount = 0;
-            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), Constants.fileFormat));
-            while ((riga = br.readLine()) != null) {
-                lineCount++;
-                if (Utils.IgnoreCaseIndexOf(riga, target) != -1) {
-                    out.append("\n")
-                            .append(Constants.TOKENSEARCH)
-                            .append(filename)
-                            .append(Constants.TOKENSEARCH)
-                            .append(lineCount)
-                            .append(Constants.TOKENSEARCH)
-                            .append(": ")
-                            .append(riga);
-                }
-            }
-            br.close();
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-        }
-        if (out.length() == 0) {
-            return null; // find no string "target" in the current file
-        } else {
-            return (head + out.toString() + "\n");
-        }
-    }
 }
\ No newline at end of file
@@ -160,27 +160,8 @@ public class EditorKeyAdapter extends KeyAdapter {
                     return;
                 }
                 
-                // Search for open parenthesis
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals("{")) {
-                    jif.highlightCloseBracket("{", "}");
-                }
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals("[")) {
-                    jif.highlightCloseBracket("[", "]");
-                }
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals("(")) {
-                    jif.highlightCloseBracket("(", ")");
-                }
-
-                // Search for closed parenthesis
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals("}")) {
-                    jif.highlightOpenBracket("{", "}");
-                }
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals("]")) {
-                    jif.highlightOpenBracket("[", "]");
-                }
-                if (jif.getText(jif.getCaretPosition() - 1, 1).equals(")")) {
-                    jif.highlightOpenBracket("(", ")");
-                }
+                // Highlight the bracket matching the one before the caret
+                jif.highlightMatchingBracket(jif.getCaretPosition() - 1);
                 return;
             }
 
@@ -0,0 +1,222 @@
+package it.schillaci.jif.gui;
+
+/*
+ * JifMemoryManager.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.swing.SwingUtilities;
+
+/**
+ * JifMemoryManager: Keeps the memory held by the open editor tabs in check.
+ * The documents of tabs that are neither shown nor modified are unloaded,
+ * least recently used first, once more than a set number of tabs hold their
+ * documents or when the heap is running short. An unloaded tab keeps its
+ * caret and scroll positions and reloads its file when it is shown again.
+ * The estimated memory held by each tab is shown in its tool tip.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifMemoryManager {
+
+    /**
+     * Number of tabs that keep their documents loaded
+     */
+    public static final int MAX_LOADED = 16;
+
+    /**
+     * Fraction of the maximum heap in use above which all the idle tabs are
+     * unloaded
+     */
+    public static final double HEAP_PRESSURE = 0.75;
+
+    // Main frame holding the editor tabs
+    private final jFrame jframe;
+
+    // Text panes in least recently used order
+    private final Map recent = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * Creates a new memory manager for the editor tabs of the main frame
+     *
+     * @param jframe
+     *              the main frame
+     */
+    public JifMemoryManager(jFrame jframe) {
+        this.jframe = jframe;
+        initHeapListener();
+    }
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Records the use of the text pane of a tab and unloads idle tabs if
+     * there are too many documents loaded or the heap is short.
+     *
+     * @param tp
+     *              the text pane that has been shown
+     */
+    public void touch(JifTextPane tp) {
+        recent.put(tp, Boolean.TRUE);
+        trim();
+    }
+
+    /**
+     * Unload the documents of idle tabs, least recently used first, until no
+     * more than <code>MAX_LOADED</code> tabs hold their documents. When the
+     * heap is short all the idle tabs are unloaded.
+     */
+    public void trim() {
+
+        List panes = new ArrayList();
+        List paths = new ArrayList();
+        int loaded = 0;
+        JifTextPane tp;
+
+        // Tabs that have never been shown are the least recently used
+        for (int i = 0; i < jframe.getFileTabCount(); i++) {
+            tp = jframe.getTextPaneAt(i);
+            if (!recent.containsKey(tp)) {
+                panes.add(tp);
+                paths.add(jframe.getPathAt(i));
+            }
+            if (tp.isLoaded()) {
+                loaded++;
+            }
+        }
+        for (Iterator i = recent.keySet().iterator(); i.hasNext();) {
+            tp = (JifTextPane) i.next();
+            int index = indexOf(tp);
+            if (index == -1) {
+                // The tab has been closed
+                i.remove();
+            } else {
+                panes.add(tp);
+                paths.add(jframe.getPathAt(index));
+            }
+        }
+
+        int limit = isHeapShort() ? 0 : MAX_LOADED;
+        for (int i = 0; i < panes.size() && loaded > limit; i++) {
+            tp = (JifTextPane) panes.get(i);
+            if (isIdle(tp) && tp.unload(new File((String) paths.get(i)))) {
+                loaded--;
+            }
+        }
+
+        updateToolTips();
+    }
+
+    /**
+     * Show the estimated memory held by each tab in its tool tip
+     */
+    public void updateToolTips() {
+        for (int i = 0; i < jframe.getFileTabCount(); i++) {
+            JifTextPane tp = jframe.getTextPaneAt(i);
+            String size = tp.isLoaded() ?
+                Math.max(1, tp.getMemoryEstimate() / 1024) + " KB" :
+                "unloaded";
+            jframe.setFileToolTipAt(i, jframe.getPathAt(i) + " (" + size + ")");
+        }
+    }
+
+    // --- Helper methods ------------------------------------------------------
+
+    // Index of the tab of a text pane or -1 if it is no longer open
+    private int indexOf(JifTextPane tp) {
+        for (int i = 0; i < jframe.getFileTabCount(); i++) {
+            if (jframe.getTextPaneAt(i) == tp) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Whether a text pane can be unloaded: not shown, not modified and with a
+    // file to load it from again
+    private boolean isIdle(JifTextPane tp) {
+        int index = indexOf(tp);
+        return index != -1
+                && index != jframe.getSelectedIndex()
+                && tp.isLoaded()
+                && !jframe.getTitleAt(index).endsWith("*")
+                && new File(jframe.getPathAt(index)).exists();
+    }
+
+    // Whether the heap in use is above the pressure threshold
+    private static boolean isHeapShort() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * HEAP_PRESSURE;
+    }
+
+    // Trim the tabs whenever a garbage collection leaves the heap above the
+    // pressure threshold
+    private void initHeapListener() {
+        for (Iterator i = ManagementFactory.getMemoryPoolMXBeans().iterator(); i.hasNext();) {
+            MemoryPoolMXBean pool = (MemoryPoolMXBean) i.next();
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isCollectionUsageThresholdSupported()
+                    && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * HEAP_PRESSURE));
+            }
+        }
+
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            trim();
+                        }
+                    });
+                }
+            }
+        }, null, null);
+    }
+}
@@ -34,24 +34,38 @@ package it.schillaci.jif.gui;
 import it.schillaci.jif.core.Constants;
 import it.schillaci.jif.core.HighlightBookmark;
 import it.schillaci.jif.core.HighlightText;
+import it.schillaci.jif.core.IntList;
 import it.schillaci.jif.core.JifDAO;
 import it.schillaci.jif.core.JifDocument;
+import it.schillaci.jif.core.JifDocumentSequence;
 import it.schillaci.jif.core.JifEditorKit;
 import it.schillaci.jif.core.JifFileName;
+import it.schillaci.jif.core.JifJournal;
+import it.schillaci.jif.core.JifTextSearch;
+import it.schillaci.jif.core.JifUndoManager;
 import it.schillaci.jif.core.TranslatedString;
 import it.schillaci.jif.core.Utils;
 import it.schillaci.jif.inform.InformContext;
+import it.schillaci.jif.inform.InformDocument;
+import it.schillaci.jif.inform.InformEditorKit;
+import it.schillaci.jif.inform.InformLargeEditorKit;
 import it.schillaci.jif.inform.InformSyntax;
+import it.schillaci.jif.inform.InformToken;
+import it.schillaci.jif.inform.InformTokenCache;
+import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.event.MouseListener;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -59,19 +73,29 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.AbstractAction;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.EditorKit;
 import javax.swing.text.Element;
-import javax.swing.text.Utilities;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
-import javax.swing.undo.UndoManager;
 
 /**
  * This is a sub-class of JTextPane, with the Inform source management.
@@ -83,7 +107,7 @@ import javax.swing.undo.UndoManager;
 public class JifTextPane extends JTextPane {
 
     private static final long serialVersionUID = 1475021670099346825L;
-    private UndoManager undoF;
+    private JifUndoManager undoF;
     private jFrame jframe;
     private Element el;
     private MouseListener popupListener;
@@ -98,6 +122,58 @@ public class JifTextPane extends JTextPane {
     private JifDocument doc;
     private JifEditorKit editorKit;
     private boolean wrap;
+    
+    // Find state kept between successive Find-Next calls
+    private JifTextSearch textSearch = null;
+    private CharSequence searchText = null;
+    private DocumentListener searchListener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            searchText = null;
+        }
+        public void removeUpdate(DocumentEvent e) {
+            searchText = null;
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+
+    // Repaints the gutter markers when the bracket errors change
+    private ChangeListener validationListener = new ChangeListener() {
+        public void stateChanged(ChangeEvent e) {
+            JScrollPane scrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass(
+                    JScrollPane.class, JifTextPane.this);
+            if (scrollPane != null && scrollPane.getRowHeader() != null) {
+                scrollPane.getRowHeader().repaint();
+            }
+        }
+    };
+
+    // Undo listener, moved to the document once a lazy load completes
+    private UndoableEditListener undoListener;
+
+    // Journal of the unsaved edits, moved along with the undo listener
+    private JifJournal journal = null;
+
+    // Worker threads shared by all the text panes for loading documents
+    private static ExecutorService loader = null;
+
+    // Document being loaded for the text pane, null once it has been shown
+    private FutureTask loading = null;
+
+    // File to load when an unloaded text pane is next shown
+    private File unloaded = null;
+
+    // Styles for the documents of the text pane
+    private InformContext context;
+
+    // Rough sizes in bytes of the elements of a document, used to estimate
+    // the memory held by the text pane
+    private static final int LINE_BYTES = 96;
+    private static final int RUN_BYTES = 128;
+
+    // Caret and top offsets to restore once the document is shown
+    private int restoreCaret = -1;
+    private int restoreTop = -1;
 
     /**
      * Creates a new instance of JifTextPane
@@ -106,7 +182,22 @@ public class JifTextPane extends JTextPane {
      * @param fileName Name of the file to be load into JifTextPane.
      */
     public JifTextPane(jFrame parent, JifFileName fileName, File file, InformContext context) {
+        this(parent, fileName, file, context, false);
+    }
+
+    /**
+     * Creates a new instance of JifTextPane. A lazy text pane is created with
+     * an empty document and the file is read, and its document built and
+     * highlighted, by a worker thread. The loaded document replaces the empty
+     * one when the text pane is first shown.
+     *
+     * @param parent The instance of main jFrame
+     * @param fileName Name of the file to be load into JifTextPane.
+     * @param lazy Whether to load the file in the background
+     */
+    public JifTextPane(jFrame parent, JifFileName fileName, File file, InformContext context, boolean lazy) {
         jframe = parent;
+        this.context = context;
         subPath = fileName.getTabTitle();
         popupListener = new PopupListener(jframe, this);
         initHighlighters(context);
@@ -116,10 +207,27 @@ public class JifTextPane extends JTextPane {
             fileName.createEditorKit() :
             new JifEditorKit();
 
-        initDocument(file, context);
+        // Large Inform files are edited without a style element per token
+        if (editorKit instanceof InformEditorKit
+                && file != null
+                && file.length() > InformLargeEditorKit.LARGE_FILE_SIZE) {
+            editorKit = new InformLargeEditorKit();
+        }
+
+        if (lazy && file != null) {
+            initPlaceholder();
+            load(file);
+        } else {
+            initDocument(file, context);
+        }
+        initLoading();
 
         initUndoManager();
         initActions();
+        doc.addDocumentListener(searchListener);
+        if (doc instanceof InformDocument) {
+            ((InformDocument) doc).getValidator().addChangeListener(validationListener);
+        }
         
         // Editor key adapter is only used with inform content
         if (fileName.getContentType().equals(JifFileName.INFORM)) {
@@ -151,25 +259,224 @@ public class JifTextPane extends JTextPane {
         System.out.println("Tempo impiegato= "+(System.currentTimeMillis()-tempo1));
     }
 
+    /**
+     * This method is called from within the constructor to create an empty
+     * placeholder document for a lazy text pane. The placeholder is shown
+     * until the document has been loaded.
+     */
+    private void initPlaceholder() {
+        doc = editorKit.createDefaultDocument(context);
+        setEditable(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+    }
+
+    /**
+     * This method is called from within the constructor to show a document
+     * loaded in the background once the text pane is shown, and to start
+     * loading the document of an unloaded text pane when it is shown again.
+     */
+    private void initLoading() {
+        addHierarchyListener(new HierarchyListener() {
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0
+                        && isShowing()) {
+                    if (unloaded != null) {
+                        load(unloaded);
+                        unloaded = null;
+                    }
+                    showLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Start loading the document for the text pane on a worker thread. The
+     * file is read and its document built away from the event dispatch 
+     * thread, loading an Inform document schedules its background 
+     * highlighting.
+     *
+     * @param file the file to load
+     */
+    private void load(final File file) {
+        loading = new FutureTask(new Callable() {
+            @Override
+            public Object call() throws Exception {
+                JifDocument loaded = editorKit.createDefaultDocument(context);
+                editorKit.read(file, loaded, 0);
+                return loaded;
+            }
+        }) {
+            @Override
+            protected void done() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isShowing()) {
+                            showLoaded();
+                        }
+                    }
+                });
+            }
+        };
+
+        getLoader().execute(loading);
+    }
+
+    /**
+     * Replace the placeholder document of a lazy text pane with the loaded
+     * document once the load has completed.
+     */
+    private void showLoaded() {
+        if (loading == null || !loading.isDone()) {
+            return;
+        }
+
+        JifDocument loaded = doc;
+        try {
+            loaded = (JifDocument) loading.get();
+        } catch (InterruptedException ex) {
+            System.err.println("Load file: " + ex.getMessage());
+        } catch (ExecutionException ex) {
+            System.err.println("Load file: " + ex.getCause());
+        }
+        loading = null;
+
+        replaceDocument(loaded);
+        setEditable(true);
+        setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+
+        // Bookmarks are kept by line while the document is unloaded
+        int lineCount = getDefaultRootElement().getElementCount();
+        for (Iterator i = bookmarks.iterator(); i.hasNext();) {
+            if (((Integer) i.next()).intValue() >= lineCount) {
+                i.remove();
+            }
+        }
+        if (!bookmarks.isEmpty()) {
+            applyBookmarks();
+        }
+
+        restorePosition();
+        jframe.fileLoaded(this);
+    }
+
+    /**
+     * Load the document of a lazy or unloaded text pane straight away, so 
+     * that it can be changed before the text pane is shown. A load already
+     * running in the background is waited for.
+     */
+    public void finishLoading() {
+        if (unloaded != null) {
+            load(unloaded);
+            unloaded = null;
+        }
+        if (loading == null) {
+            return;
+        }
+        // Run the load here unless a loader thread has already started it
+        loading.run();
+        try {
+            loading.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // Reported once the load is shown
+        }
+        showLoaded();
+    }
+
+    /**
+     * Unload the document of a text pane that is not shown, to free the
+     * memory it holds. The caret and scroll positions and the bookmarks are
+     * kept, and the document is loaded again from the file when the text
+     * pane is next shown. Only a text pane without unsaved changes should be
+     * unloaded, as any edits are lost.
+     *
+     * @param file the file to load the document from when it is shown
+     * @return <code>true</code> if the document has been unloaded
+     */
+    public boolean unload(File file) {
+        if (!isLoaded() || isShowing()) {
+            return false;
+        }
+
+        int[] position = getPosition();
+        restoreCaret = position[0];
+        restoreTop = position[1];
+
+        getHighlighter().removeAllHighlights();
+        initPlaceholder();
+        replaceDocument(doc);
+        unloaded = file;
+        return true;
+    }
+
+    /**
+     * Returns whether the document of the text pane is loaded and shown. The
+     * document of a lazy or unloaded text pane is an empty placeholder.
+     *
+     * @return <code>true</code> if the document has been loaded
+     */
+    public boolean isLoaded() {
+        return loading == null && unloaded == null;
+    }
+
+    /**
+     * Returns a rough estimate of the memory held by the document of the
+     * text pane, from the size of its text, its lines and the runs of text
+     * with the same style.
+     *
+     * @return the estimated number of bytes
+     */
+    public long getMemoryEstimate() {
+        Element root = getDefaultRootElement();
+        int lineCount = root.getElementCount();
+        long runs = 0;
+        for (int i = 0; i < lineCount; i++) {
+            runs += root.getElement(i).getElementCount();
+        }
+        return getLength() * 2L + lineCount * (long) LINE_BYTES + runs * RUN_BYTES;
+    }
+
+    // Move the listeners of the text pane to another document
+    private void replaceDocument(JifDocument replacement) {
+        getDocument().removeUndoableEditListener(undoListener);
+        if (doc instanceof InformDocument) {
+            ((InformDocument) doc).getValidator().removeChangeListener(validationListener);
+        }
+        doc = replacement;
+        doc.addUndoableEditListener(undoListener);
+        if (doc instanceof InformDocument) {
+            ((InformDocument) doc).getValidator().addChangeListener(validationListener);
+        }
+        setJifDocument(doc);
+        undoF.discardAllEdits();
+        if (journal != null) {
+            journal.reset(journal.getFile());
+            journal.attach(doc);
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialise the undo
      * manager for the text pane.
      */
     private void initUndoManager() {
-        undoF = new UndoManager();
-        undoF.setLimit(5000);
+        undoF = new JifUndoManager();
 
-        doc.addUndoableEditListener(new UndoableEditListener() {
+        undoListener = new UndoableEditListener() {
             @Override
             public void undoableEditHappened(UndoableEditEvent evt) {
-                undoF.addEdit(evt.getEdit());
-                // adding a "*" to the file name, when the file has changed but not saved
-                if (jframe.getFileTabCount() != 0 && jframe.getSelectedPath().indexOf("*") == -1) {
-                    jframe.setSelectedTitle(subPath + "*");
-                    jframe.setTitle(jframe.getJifVersion() + " - " + jframe.getSelectedPath());
+                if (!undoF.addEdit(evt.getEdit())) {
+                    return;
                 }
+                // adding a "*" to the file name, when the file has changed but not saved
+                jframe.setModified(JifTextPane.this);
             }
-        });
+        };
+        doc.addUndoableEditListener(undoListener);
     }
 
     /**
@@ -185,9 +492,6 @@ public class JifTextPane extends JTextPane {
             public void actionPerformed(ActionEvent evt) {
                 try {
                     if (undoF.canUndo()) {
-                        while (undoF.getUndoPresentationName().equals(java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_STYLE_CHANGED_UNDO"))) {
-                            undoF.undo();
-                        }
                         undoF.undo();
                         // adding a "*" to the file name, when the file has changed but not saved
                         if (jframe.getFileTabCount() != 0 && jframe.getSelectedPath().indexOf("*") == -1) {
@@ -208,9 +512,6 @@ public class JifTextPane extends JTextPane {
             public void actionPerformed(ActionEvent evt) {
                 try {
                     if (undoF.canRedo()) {
-                        while (undoF.getRedoPresentationName().equals(java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_STYLE_CHANGED_REDO"))) {
-                            undoF.redo();
-                        }
                         undoF.redo();
                         // adding a "*" to the file name, when the file has changed but not saved
                         if (jframe.getFileTabCount() != 0 && jframe.getSelectedPath().indexOf("*") == -1) {
@@ -224,9 +525,29 @@ public class JifTextPane extends JTextPane {
             }
         });
 
+        getActionMap().put("FindPrevious", new AbstractAction("FindPrevious") {
+            private static final long serialVersionUID = -6290744651924563311L;
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                findStringBackward(jframe);
+            }
+        });
+
+        getActionMap().put("HighlightAll", new AbstractAction("HighlightAll") {
+            private static final long serialVersionUID = 2218530617436427066L;
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                highlightAll(jframe);
+            }
+        });
+
         // JifTextPane actions
         getInputMap().put(KeyStroke.getKeyStroke("control Z"), "Undo");
         getInputMap().put(KeyStroke.getKeyStroke("control Y"), "Redo");
+        getInputMap().put(KeyStroke.getKeyStroke("shift F3"), "FindPrevious");
+        getInputMap().put(KeyStroke.getKeyStroke("control shift F3"), "HighlightAll");
 
         // JifEditorKit actions
         getInputMap().put(KeyStroke.getKeyStroke("TAB"), JifEditorKit.tabAction);
@@ -277,20 +598,14 @@ public class JifTextPane extends JTextPane {
     }
 
     /**
-     * Get the current text in this <code>TextComponent</code> wrapped in
-     * a <code>CharBuffer</code>
-     * @return 
+     * Get a read only view of the current text in this 
+     * <code>TextComponent</code>. The text is not copied, so the view must
+     * only be used on the event dispatch thread and until the next edit.
+     *
+     * @return the text of the document
      */
-    public CharBuffer getCharBuffer() {
-
-        CharBuffer cb = null;
-        try {
-            cb = JifDAO.buffer(getText());
-        } catch (CharacterCodingException ex) {
-            System.err.println("Unable to encode text in getCharBuffer:" + ex.getMessage());
-        } finally {
-            return cb;
-        }
+    public CharSequence getCharSequence() {
+        return new JifDocumentSequence(getDocument());
     }
 
     /**
@@ -345,96 +660,14 @@ public class JifTextPane extends JTextPane {
     }
 
     /**
-     * Returns the position of the close bracket matching the given open bracket
-     * searching from the position given.
-     *
-     * @param open
-     *              Open bracket to match
-     * @param close
-     *              Close bracket to find
-     * @param pos
-     *              The position to start the search
-     * @return The position of the close bracket or -1 if none found
-     */
-    
-    int findCloseBracket(String open, String close, int position) {
-        int c = position + 1;
-        int opened = 0;  // number of opened brackets
-        try {
-            while (c < getLength()) {
-                // matching close bracket found
-                if (getText(c, 1).equals(close) && opened==0) {
-                    return c;
-                }
-                // if an open bracket is found, opened++
-                if (getText(c, 1).equals(open)) {
-                    opened++;
-                }
-                // if a close bracket is found, opened--
-                if (getText(c, 1).equals(close) && opened!=0) {
-                    opened--;
-                }
-                c++;
-            }
-            return -1;  // no matching bracket found
-            
-        } catch (Exception ex) {
-            System.err.println("Find close bracket: "+ close + " position: " + position + " c: " + c);
-            return -1;  // an error occured so no matching bracket found
-        }
-    }
-    
-    /**
-     * Returns the position of the open bracket matching the given close bracket
-     * searching from the position given.
+     * Highlights the bracket matching the bracket at a position, if any.
+     * Brackets within strings, words and comments are not matched.
      *
-     * @param open
-     *              Open bracket to find
-     * @param close
-     *              Close bracket to match
-     * @param pos
-     *              The position to start the search
-     * @return The position of the close bracket or -1 if none found
-     */
-
-    int findOpenBracket(String open, String close, int position) {
-        int c = position - 1;
-        int closed = 0;  // number of opened brackets
-        try {
-            while (c > 0) {
-                // matching open bracket found
-                if (getText(c, 1).equals(open) && closed==0) {
-                    return c;
-                }
-                // if an open bracket is found, closed++
-                if (getText(c, 1).equals(close)) {
-                    closed++;
-                }
-                // if a close bracket is found, closed--
-                if (getText(c, 1).equals(open) && closed!=0) {
-                    closed--;
-                }
-                c--;
-            }
-            return -1;  // no matching open bracket found
-            
-        } catch (Exception ex) {
-            System.err.println("Find open bracket: " + open + " position: " + position + " c: " + c);
-            return -1;  // an error occured so no open matching bracket found
-        }
-    }
-    
-    // Highlight matching close bracket (if any)
-    void highlightCloseBracket(String open, String close) {
-        int c = findCloseBracket(open, close, getCaretPosition()-1);
-        if (c != -1) {
-            hlighterBrackets.highlightFromTo(this, c, c+1);
-        }
-    }
-    
-    // Highlight matching open bracket (if any)
-    void highlightOpenBracket(String open, String close) {
-        int c = findOpenBracket(open, close, getCaretPosition()-1);
+     * @param position
+     *              The position of the bracket to match
+     */
+    void highlightMatchingBracket(int position) {
+        int c = getJifDocument().getBracketIndex().findMatch(position);
         if (c != -1) {
             hlighterBrackets.highlightFromTo(this, c, c+1);
         }
@@ -450,13 +683,18 @@ public class JifTextPane extends JTextPane {
     // e.g. [[]]
     /**
      * Performs a brackets validation check. If this finds an incomplete bracket
-     * (either not opened or not closed), the bracket will be highlighted.
+     * (either not opened or not closed), the bracket will be highlighted and
+     * the caret moved to the first error after the caret, or to the first
+     * error when there are none after it, so that repeated checks step 
+     * through the errors.
      *
      * @return <code>true</code> if all brackets are valid
      */
     boolean checkBrackets() {
         int errors = 0;
         int first = -1;
+        int next = -1;
+        int caret = getCaretPosition();
         
         for (Iterator i=getJifDocument().bracketErrors(); i.hasNext(); ) {
             Integer value = (Integer) i.next();
@@ -465,52 +703,126 @@ public class JifTextPane extends JTextPane {
             if (first == -1) {
                 first = position;
             }
+            if (next == -1 && position > caret) {
+                next = position;
+            }
             errors++;
         }
         if (first != -1) {
-            setCaretPosition(first);
+            setCaretPosition(next != -1 ? next : first);
         }
         return errors==0;
     }
     
+    /**
+     * Returns the positions of the bracket errors found so far by the live
+     * validation of an Inform document, for marking in the gutter
+     *
+     * @return the error positions, in order
+     */
+    int[] getBracketErrors() {
+        if (doc instanceof InformDocument) {
+            return ((InformDocument) doc).getValidator().getErrors();
+        }
+        return new int[0];
+    }
+    
     /**
      * Finds a String in the JifTextPane and highlight it.
      * The target String to be found is taken from the Search TextField.
+     * The search ignores case and wraps around to the start of the file.
      */
     public void findString(jFrame parent) {
-        int pos = getCaretPosition();
-        String pattern = parent.getFindText();
-        
-        String text = getText();
-        boolean found = false;
-        
-        //while ( ( (pos = text.indexOf(pattern, pos)) >= 0) && (!found)) {
-        while ((pos = Utils.IgnoreCaseIndexOf(text, pattern, pos)) >= 0  && !found) {
-            //hlighterJumpTo.highlightFromTo(this, pos, pos + pattern.length());
-            // Bug #4416
-            this.setSelectionStart(pos);
-            this.setSelectionEnd(pos + pattern.length());
-            // Bug #4416
-            pos += pattern.length();
-            //setCaretPosition(pos);
-            found = true;
-            this.requestFocus();
+        JifTextSearch search = getTextSearch(parent.getFindText());
+        if (search == null) {
+            return;
         }
         
-        // If the string not found, JIF will move the Caret position to 0 (zero)
-        if (!found) {
-            // if at least one string is found
-            if (Utils.IgnoreCaseIndexOf(text, pattern, 0) != -1) {
-                // append a message in the outputwindow
-                parent.outputSetText(java.util.ResourceBundle.getBundle("JIF").getString("JIF_END_OF_FILE"));
-                setCaretPosition(0);
-                findString(parent);
-            } else {
+        CharSequence text = getSearchText();
+        int pos = search.indexOf(text, getCaretPosition());
+        
+        // If the string is not found, JIF continues from the start of the file
+        if (pos == -1) {
+            pos = search.indexOf(text, 0);
+            if (pos == -1) {
                 // if there aren't any occurences of the string
                 // append a message in the outputwindow
-                parent.outputSetText("String \"" + parent.getFindText() + "\" not found");
+                parent.outputSetText("String \"" + search.getTarget() + "\" not found");
+                return;
             }
+            parent.outputSetText(java.util.ResourceBundle.getBundle("JIF").getString("JIF_END_OF_FILE"));
+        }
+        
+        // Bug #4416
+        select(pos, pos + search.getLength());
+        requestFocus();
+    }
+    
+    /**
+     * Finds the previous occurrence of the String in the Search TextField
+     * before the current selection, wrapping around to the end of the file.
+     */
+    public void findStringBackward(jFrame parent) {
+        JifTextSearch search = getTextSearch(parent.getFindText());
+        if (search == null) {
+            return;
+        }
+        
+        CharSequence text = getSearchText();
+        int pos = search.lastIndexOf(text, getSelectionStart() - 1);
+        
+        if (pos == -1) {
+            pos = search.lastIndexOf(text, text.length());
+            if (pos == -1) {
+                parent.outputSetText("String \"" + search.getTarget() + "\" not found");
+                return;
+            }
+            parent.outputSetText(java.util.ResourceBundle.getBundle("JIF").getString("JIF_END_OF_FILE"));
+        }
+        
+        select(pos, pos + search.getLength());
+        requestFocus();
+    }
+    
+    /**
+     * Highlights every occurrence of the String in the Search TextField
+     *
+     * @return the number of occurrences highlighted
+     */
+    public int highlightAll(jFrame parent) {
+        removeHighlighter();
+        
+        JifTextSearch search = getTextSearch(parent.getFindText());
+        if (search == null) {
+            return 0;
+        }
+        
+        IntList positions = search.indexesOf(getSearchText());
+        for (int i = 0; i < positions.size(); i++) {
+            int pos = positions.get(i);
+            hlighterJumpTo.highlightFromTo(this, pos, pos + search.getLength());
         }
+        parent.outputSetText("String \"" + search.getTarget() + "\" found " + positions.size() + " times");
+        return positions.size();
+    }
+    
+    // The compiled search for a target, reused while the target is unchanged
+    private JifTextSearch getTextSearch(String target) {
+        if (target == null || target.length() == 0) {
+            return null;
+        }
+        if (textSearch == null || !textSearch.getTarget().equals(target)) {
+            textSearch = new JifTextSearch(target);
+        }
+        return textSearch;
+    }
+    
+    // The document text, reused until the document is edited
+    private CharSequence getSearchText() {
+        if (searchText == null) {
+            searchText = getCharSequence();
+        }
+        return searchText;
     }
     
     public void setError(int offset) {
@@ -781,16 +1093,27 @@ public class JifTextPane extends JTextPane {
         applyBookmarks();
     }
 
-    // returns the current Word using the caret Position
+    // returns the current Word using the caret Position, taken from the
+    // symbol token at or just before the caret. For a property of an object,
+    // as in "obj.prop", the object is returned.
     public String getCurrentWord() throws BadLocationException {
-        int start = Utilities.getWordStart(this, getSelectionStart());
-        int end = Utilities.getWordEnd(this, getSelectionStart());
-        String word = getDocument().getText(start, end - start);
-        if (word.indexOf(".") != -1) {
-            word = word.substring(0, word.lastIndexOf("."));
+        int caret = getSelectionStart();
+        InformTokenCache tokens = getJifDocument().getTokenCache();
+        InformTokenCache.Tokens token = tokens.getTokenAt(caret);
+        if ((token == null || token.getType() != InformToken.SYMBOL) && caret > 0) {
+            token = tokens.getTokenAt(caret - 1);
         }
-        //System.out.println( "Selected word: " + word );
-        return word;
+        if (token == null || token.getType() != InformToken.SYMBOL) {
+            return "";
+        }
+        int start = token.getStart();
+        int end = token.getEnd();
+        if (token.previous() && token.getType() == InformToken.DOT
+                && token.previous() && token.getType() == InformToken.SYMBOL) {
+            start = token.getStart();
+            end = token.getEnd();
+        }
+        return getDocument().getText(start, end - start);
     }
 
     void jumpToError(int index) {
@@ -934,9 +1257,84 @@ public class JifTextPane extends JTextPane {
      * @param doc  the document to display/edit
      */
     public void setJifDocument(JifDocument doc) {
+        getDocument().removeDocumentListener(searchListener);
+        searchText = null;
         super.setDocument(doc);
+        doc.addDocumentListener(searchListener);
     }
     
+    /**
+     * Paints a loading message over the placeholder document of a lazy text
+     * pane.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (!isLoaded()) {
+            Insets insets = getInsets();
+            g.setColor(getCaretColor());
+            g.drawString(
+                    java.util.ResourceBundle.getBundle("JIF").getString("MSG_LOADING") + "...",
+                    insets.left + 4,
+                    insets.top + g.getFontMetrics().getAscent());
+        }
+    }
+
+    /**
+     * Returns the caret position and the offset of the text at the top of the
+     * view. A lazy text pane that has not been shown yet returns the
+     * positions it is waiting to restore.
+     *
+     * @return the caret and top offsets
+     */
+    public int[] getPosition() {
+        if (restoreCaret >= 0) {
+            return new int[] { restoreCaret, restoreTop };
+        }
+        Rectangle view = getVisibleRect();
+        int top = viewToModel(view.getLocation());
+        return new int[] { getCaretPosition(), Math.max(top, 0) };
+    }
+
+    /**
+     * Sets the caret position and scrolls the view to show the text at an
+     * offset at its top. A lazy text pane restores the positions once its
+     * document has been shown.
+     *
+     * @param caret the caret offset
+     * @param top the offset of the text to show at the top of the view
+     */
+    public void setPosition(int caret, int top) {
+        restoreCaret = caret;
+        restoreTop = top;
+        if (isLoaded()) {
+            restorePosition();
+        }
+    }
+
+    /**
+     * Returns the journal recording the unsaved edits to the document
+     *
+     * @return the journal, or <code>null</code> if edits are not recorded
+     */
+    public JifJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Record the unsaved edits to the document of the text pane, and to the
+     * documents which later replace it, in a journal
+     *
+     * @param journal the journal to record the edits in
+     */
+    public void setJournal(JifJournal journal) {
+        if (this.journal != null) {
+            this.journal.discard();
+        }
+        this.journal = journal;
+        journal.attach(doc);
+    }
+
     /**
      * Fetches the model associated with the editor.
      *
@@ -971,6 +1369,50 @@ public class JifTextPane extends JTextPane {
     
     // --- Helper methods ------------------------------------------------------
     
+    // Worker threads shared by all the text panes for loading documents
+    private static synchronized ExecutorService getLoader() {
+        if (loader == null) {
+            loader = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JifTextPane loader");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return loader;
+    }
+
+    // Apply the caret and top positions waiting to be restored
+    private void restorePosition() {
+        if (restoreCaret < 0) {
+            return;
+        }
+        final int top = Math.min(restoreTop, getLength());
+        setCaretPosition(Math.min(restoreCaret, getLength()));
+        restoreCaret = -1;
+        restoreTop = -1;
+
+        // Scroll once the view has been laid out for the document
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Rectangle r = modelToView(top);
+                    if (r != null) {
+                        scrollRectToVisible(new Rectangle(0, r.y, 1, getVisibleRect().height));
+                    }
+                } catch (BadLocationException ex) {
+                    System.err.println("Restore position: " + ex.getMessage());
+                }
+            }
+        });
+    }
+    
     Element getCaretElement() {
         return getElement(getCaretIndex());
     }
@@ -38,7 +38,10 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Rectangle;
+import java.util.HashSet;
+import java.util.Set;
 import javax.swing.JComponent;
+import javax.swing.text.Element;
 
 
 public class LineNumber extends JComponent {
@@ -49,6 +52,9 @@ public class LineNumber extends JComponent {
     private static final long serialVersionUID = 2905458151135695364L;
     private final static Color DEFAULT_BACKGROUND = new Color(220, 220, 220);
     private final static Color DEFAULT_FOREGROUND = Color.black;
+    //  Colour of the markers of lines with bracket errors
+    private final static Color ERROR_MARKER = new Color(220, 0, 0);
+    private final static int MARKER_WIDTH = 3;
     private final static Font DEFAULT_FONT = new Font("monospaced", Font.PLAIN, 12);
     //  LineNumber height (abends when I use MAX_VALUE)
     private final static int DEFAULT_HEIGHT = Integer.MAX_VALUE - 1000000;
@@ -152,16 +158,42 @@ public class LineNumber extends JComponent {
         int endLineNumber = startLineNumber + (drawHere.height / lineHeight);
 
         int start = (drawHere.y / lineHeight) * lineHeight + startOffset;
+        Set errorLines = getErrorLines(startLineNumber, endLineNumber);
 
         for (int i = startLineNumber; i <= endLineNumber; i++) {
             String lineNumber = String.valueOf(i);
             int stringWidth = fontMetrics.stringWidth(lineNumber);
             int rowWidth = getSize().width;
-            g.drawString(lineNumber, rowWidth - stringWidth - MARGIN, start);
+            if (errorLines.contains(new Integer(i))) {
+                g.setColor(ERROR_MARKER);
+                g.fillRect(0, start - componentFontAscent, MARKER_WIDTH, lineHeight);
+                g.drawString(lineNumber, rowWidth - stringWidth - MARGIN, start);
+                g.setColor(getForeground());
+            } else {
+                g.drawString(lineNumber, rowWidth - stringWidth - MARGIN, start);
+            }
             start += lineHeight;
         }
 
         int rows = component.getSize().height / componentFontHeight;
         setPreferredWidth(rows);
     }
+
+    // The numbers of the lines in a range holding bracket errors
+    private Set getErrorLines(int first, int last) {
+        Set lines = new HashSet();
+        if (!(component instanceof JifTextPane)) {
+            return lines;
+        }
+        JifTextPane textPane = (JifTextPane) component;
+        Element root = textPane.getDocument().getDefaultRootElement();
+        int[] errors = textPane.getBracketErrors();
+        for (int i = 0; i < errors.length; i++) {
+            int line = root.getElementIndex(errors[i]) + 1;
+            if (line >= first && line <= last) {
+                lines.add(new Integer(line));
+            }
+        }
+        return lines;
+    }
 }
\ No newline at end of file
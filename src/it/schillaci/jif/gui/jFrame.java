@@ -41,26 +41,46 @@ import it.schillaci.jif.core.Bres;
 import it.schillaci.jif.core.Constants;
 import it.schillaci.jif.core.GamePathMissingException;
 import it.schillaci.jif.core.HighlightText;
-import it.schillaci.jif.core.InformAsset;
 import it.schillaci.jif.core.Interpreter;
 import it.schillaci.jif.core.JifDAO;
 import it.schillaci.jif.core.JifDocument;
+import it.schillaci.jif.core.JifDocumentSequence;
 import it.schillaci.jif.core.JifEditorKit;
 import it.schillaci.jif.core.JifFileFilter;
+import it.schillaci.jif.core.JifFileSaver;
+import it.schillaci.jif.core.JifJournal;
 import it.schillaci.jif.core.JifFileName;
+import it.schillaci.jif.core.JifBuild;
+import it.schillaci.jif.core.JifBuildObserver;
+import it.schillaci.jif.core.JifProcess;
+import it.schillaci.jif.core.JifResourceInputs;
+import it.schillaci.jif.core.JifSaveObserver;
+import it.schillaci.jif.core.JifTextReplace;
 import it.schillaci.jif.core.ProgramMissingException;
 import it.schillaci.jif.core.Utils;
 import it.schillaci.jif.inform.Inform;
+import it.schillaci.jif.inform.InformClassGraph;
 import it.schillaci.jif.inform.InformContext;
+import it.schillaci.jif.inform.InformDiagnostic;
 import it.schillaci.jif.inform.InformDocument;
 import it.schillaci.jif.inform.InformEditorKit;
+import it.schillaci.jif.inform.InformIncludes;
+import it.schillaci.jif.inform.InformOutline;
+import it.schillaci.jif.inform.InformSymbol;
+import it.schillaci.jif.inform.InformSymbolScanner;
 import it.schillaci.jif.inform.InformSyntax;
 import it.schillaci.jif.project.JifProject;
 import it.schillaci.jif.project.JifProjectDAO;
 import it.schillaci.jif.project.JifProjectException;
 import it.schillaci.jif.project.JifProjectListCellRenderer;
 import it.schillaci.jif.project.JifProjectListModel;
+import it.schillaci.jif.project.JifProjectReplace;
 import it.schillaci.jif.project.JifProjectObserver;
+import it.schillaci.jif.project.JifProjectSearch;
+import it.schillaci.jif.project.JifSearchMatch;
+import it.schillaci.jif.project.JifSearchObserver;
+import it.schillaci.jif.project.JifSymbolIndex;
+import it.schillaci.jif.project.JifSymbolIndexDAO;
 import java.awt.Checkbox;
 import java.awt.Color;
 import java.awt.Desktop;
@@ -78,9 +98,10 @@ import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -89,14 +110,14 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.Action;
 import javax.swing.ActionMap;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JColorChooser;
 import javax.swing.JDialog;
 import javax.swing.JEditorPane;
@@ -105,6 +126,8 @@ import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.SwingUtilities;
@@ -112,6 +135,7 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.TreeExpansionEvent;
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Element;
 import javax.swing.text.MutableAttributeSet;
@@ -147,6 +171,10 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         initHighlighters();
         initFrame();
         initView();
+        initSearch();
+        initReplace();
+        initMemory();
+        initJournal();
         
         config.registerObserver(this);
         project.registerObserver(this);
@@ -196,6 +224,12 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
 
     }
     
+    // Directory holding the journals of unsaved edits, next to the
+    // configuration file
+    private File getJournalDirectory() {
+        return new File(new File(config.getFilePath()).getAbsoluteFile().getParentFile(), "journal");
+    }
+    
     private void configurationMissingMessage() {
         JOptionPane.showMessageDialog(
                 this,
@@ -260,6 +294,119 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         adjustSplit();
     }
     
+    /**
+     * This method is called from within the constructor to add the search
+     * options menu to the "Search all project files" text field.
+     */
+    private void initSearch() {
+        final JCheckBoxMenuItem regexItem = new JCheckBoxMenuItem(java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_SEARCHALL_REGEX"));
+        regexItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                searchRegex = regexItem.isSelected();
+            }
+        });
+        
+        final JCheckBoxMenuItem wholeWordItem = new JCheckBoxMenuItem(java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_SEARCHALL_WHOLEWORD"));
+        wholeWordItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                searchWholeWord = wholeWordItem.isSelected();
+            }
+        });
+        
+        final JPopupMenu menu = new JPopupMenu();
+        menu.add(regexItem);
+        menu.add(wholeWordItem);
+        
+        searchProjectTextField.addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                maybeShowPopup(e);
+            }
+            
+            public void mouseReleased(MouseEvent e) {
+                maybeShowPopup(e);
+            }
+            
+            private void maybeShowPopup(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    menu.show(e.getComponent(), e.getX(), e.getY());
+                }
+            }
+        });
+    }
+    
+    /**
+     * This method is called from within the constructor to add the replace
+     * conditions and the replace in project button to the replace dialog.
+     */
+    private void initReplace() {
+        java.util.ResourceBundle bundle = java.util.ResourceBundle.getBundle("JIF");
+        
+        replaceRegexCheckBox = new JCheckBox(bundle.getString("JDIALOGREPLACE_CONDITIONS_REGEX"));
+        replaceMatchCaseCheckBox = new JCheckBox(bundle.getString("JDIALOGREPLACE_CONDITIONS_MATCHCASE"));
+        replaceMatchCaseCheckBox.setSelected(true);
+        JPanel replaceConditionsPanel = new JPanel();
+        replaceConditionsPanel.add(replaceRegexCheckBox);
+        replaceConditionsPanel.add(replaceMatchCaseCheckBox);
+        replaceDialog.getContentPane().add(replaceConditionsPanel, 1);
+        
+        JButton replaceProjectButton = new JButton(bundle.getString("JDIALOGREPLACE_BUTTON_REPLACE_PROJECT"));
+        replaceProjectButton.setFont(replaceAllButton.getFont());
+        replaceProjectButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                replaceProject();
+            }
+        });
+        replaceControlPanel.add(
+                replaceProjectButton,
+                replaceControlPanel.getComponentZOrder(replaceCloseButton));
+    }
+    
+    /**
+     * This method is called from within the constructor to unload the
+     * documents of idle editor tabs as tabs are selected.
+     */
+    private void initMemory() {
+        memory = new JifMemoryManager(this);
+        fileTabbedPane.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                if (getSelectedIndex() != -1) {
+                    memory.touch(getSelectedTextPane());
+                }
+            }
+        });
+    }
+    
+    /**
+     * This method is called from within the constructor to offer to recover
+     * the unsaved edits journaled by a previous session which ended without
+     * saving or discarding them. Recovered edits are replayed onto the files
+     * in their tabs, which are left modified.
+     */
+    private void initJournal() {
+        List recoveries = JifJournal.recover(getJournalDirectory());
+        if (recoveries.isEmpty()) {
+            return;
+        }
+        
+        StringBuilder message = new StringBuilder(java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_JOURNAL_RECOVER"));
+        for (Iterator i = recoveries.iterator(); i.hasNext();) {
+            message.append("\n").append(((JifJournal.Recovery) i.next()).getFile().getPath());
+        }
+        int result = JOptionPane.showConfirmDialog(
+                this,
+                message.toString(),
+                java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_JOURNAL_RECOVER_TITLE"),
+                JOptionPane.YES_NO_OPTION);
+        
+        for (Iterator i = recoveries.iterator(); i.hasNext();) {
+            JifJournal.Recovery recovery = (JifJournal.Recovery) i.next();
+            if (result == JOptionPane.YES_OPTION) {
+                fileRecover(recovery);
+            }
+            recovery.delete();
+        }
+    }
+    
     /** This method is called from within the constructor to
      * initialise the form.
      * WARNING: Do NOT modify this code. The content of this method is
@@ -4370,20 +4517,13 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      * Save all the currently open files
      */
     private void allFilesSave() {
-        // Remember the file selected
-        int index = getSelectedIndex();
-
         int componenti = getFileTabCount();
         for (int i = 0; i < componenti; i++) {
-            setSelectedIndex(i);
             // Only save modified files
-            if (getSelectedTitle().indexOf("*") != -1) {
-                fileSave();
+            if (getTitleAt(i).indexOf("*") != -1) {
+                fileSave(i);
             }
         }
-
-        // reassign the file selected
-        setSelectedIndex(index);
     }
 
     /**
@@ -4529,131 +4669,6 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
                 );
     }
 
-    /**
-     * Search for the definition of a class within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The class definition to search for
-     * @return <code>true</code> if the class definition is found
-     */
-    boolean fileClassCheck(CharBuffer cb, String entity) {
-        Matcher m = classPattern.matcher(cb);
-        while(m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    /**
-     * Search for the definition of a constant within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The constant definition to search for
-     * @return <code>true</code> if the constant definition is found
-     */
-    boolean fileClassObjectCheck(CharBuffer cb, String className, String entity) {
-        Pattern p = Pattern.compile(
-                "(?:^|;)\\s*" + className + "\\s+(?:->\\s+)*(\\w+)",
-                Pattern.MULTILINE|Pattern.CASE_INSENSITIVE
-                );
-        Matcher m = p.matcher(cb);
-        while (m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    /**
-     * Find all the objects directly defined using a class name in some Inform
-     * source code
-     *
-     * @param cb
-     *              Inform source to search for object to class references
-     * @param fileName
-     *              Name of the file being searched
-     * @param asset
-     *              The class definition to which any references found should be
-     *              added
-     */
-    private void fileClassObjectScan(CharBuffer cb, InformAsset asset) {
-        String parentName = asset.getName();
-        // Objects defined directly with a class reference using regular expression
-        Pattern p = Pattern.compile(
-                "(?:^|;)\\s*" + parentName + "\\s+(?:->\\s+)*(\\w+)",
-                Pattern.MULTILINE|Pattern.CASE_INSENSITIVE
-                );
-        Matcher m = p.matcher(cb);
-        fileObjectCreate(m, asset, parentName);
-    }
-    
-    /**
-     * Find all the class definitions in some Inform source code
-     *
-     * @param cb
-     *              Inform source to search for class definitions
-     * @param path
-     *              Inform source path
-     */
-    private void fileClassScan(CharBuffer cb, String path) {
-        
-        Matcher m = classPattern.matcher(cb);
-        while(m.find()) {
-            String name  = m.group(1).toLowerCase();
-            int position = m.start(1);
-            
-            if (fileAssets.containsKey(name)) {
-                InformAsset ia = (InformAsset) fileAssets.get(name);
-                ia.setLocation(new Inspect(name, path, position));
-            } else {
-                fileAssets.put(name, new InformAsset(path, name, position));
-            }
-        }
-    }
-    
-    /**
-     * Find all the class to class references in some Inform source code
-     *
-     * @param cb
-     *              Inform source to search for class to class references
-     * @param path
-     *              Inform source path
-     */
-    private void fileClassToClassScan(CharBuffer cb, String path) {
-        
-        Matcher m = classToClassPattern.matcher(cb);
-        while(m.find()) {
-            String childName  = m.group(1).toLowerCase();
-            String parentName = m.group(2).toLowerCase();
-            
-            InformAsset child  = getAsset(fileAssets, childName);
-            InformAsset parent = getAsset(fileAssets, parentName);
-            
-            child.setParent(parentName);
-            parent.addChild(childName);
-            
-        }
-    }
-
-    private InformAsset getAsset(Map assets, String name) {
-
-        InformAsset asset;
-        if (assets.containsKey(name)) {
-            asset = (InformAsset) assets.get(name);
-        } else {
-            asset = new InformAsset(null, name, -1);
-            assets.put(name, asset);
-        }
-        return asset;
-    }
-    
     void fileClearAll() {
     
         if (JOptionPane.showConfirmDialog(
@@ -4670,6 +4685,15 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     
     public void fileClose() {
         JifFileName selected = getSelectedFileName();
+        
+        // Unsaved edits are discarded so the index must go back to the disk
+        if (getSelectedTitle().endsWith("*") && project.contains(selected)) {
+            symbolIndex.invalidate(selected.getPath());
+        }
+        if (project.contains(selected)) {
+            projectPositionUpdate(selected.getPath(), getSelectedTextPane());
+        }
+        getSelectedTextPane().getJournal().discard();
         fileTabbedPane.remove(getSelectedScrollPane());
         buffer.remove(selected);
         updateBuffer();
@@ -4714,74 +4738,70 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         }
     }
     
-    /**
-     * Search for the definition of a constant within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The constant definition to search for
-     * @return <code>true</code> if the constant defintion is found
-     */
-    boolean fileConstantCheck(CharBuffer cb, String entity) {
-        Matcher m = constantPattern.matcher(cb);
-        while (m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity)) {
-                return true;
-            }
-        }
-        return false;
+    private void fileEdit(JifFileName fileName, File file) {
+        fileEdit(fileName, file, false);
     }
     
     /**
-     * Search for an Inform source code definition within a file.
-     * The definition could be a constant, a class, a function, a global or an
-     * object.
+     * Replay the unsaved edits left in a journal onto the file they were made
+     * to, in its editor tab
      *
-     * @param path
-     *              The file of Inform source code to search
-     * @param entity
-     *              The definition to search for
-     * @return <code>true</code> if the definition is found
+     * @param recovery
+     *              the edits to recover
      */
-    boolean fileDefinitionCheck(JifFileName path, String entity) {
-        if (path.getContentType() != JifFileName.INFORM) {
-            return false;
+    private void fileRecover(JifJournal.Recovery recovery) {
+        File file = recovery.getFile();
+        if (!recovery.isCurrent()) {
+            String message = java.util.ResourceBundle.getBundle("JIF").getString("JFRAME_JOURNAL_CHANGED") + file.getPath();
+            System.err.println(message);
+            outputAppend(message);
+            return;
         }
         
+        JifFileName fileName = new JifFileName(file.getAbsolutePath());
+        fileEdit(fileName, file.exists() ? file : null);
+        fileSelect(fileName);
+        
+        JifDocument doc = getSelectedTextPane().getJifDocument();
+        doc.beginEdit();
         try {
-            CharBuffer cb = JifDAO.buffer(new File(path.getPath()));
-            
-            return fileObjectCheck(cb, entity) ||
-                    fileGlobalCheck(cb, entity) ||
-                    fileConstantCheck(cb, entity) ||
-                    fileClassCheck(cb, entity) ||
-                    fileFunctionCheck(cb, entity) ||
-                    fileProjectClassCheck(cb, entity);
-            
-        } catch (CharacterCodingException ex) {
-            ex.printStackTrace();
+            recovery.replay(doc);
         } catch (IOException ex) {
-            ex.printStackTrace();
+            System.err.println("Recover file: " + ex.getMessage());
+        } catch (BadLocationException ex) {
+            System.err.println("Recover file: " + ex.getMessage());
+        } finally {
+            doc.endEdit();
         }
-        return false;
     }
     
-    private void fileEdit(JifFileName fileName, File file) {
+    /**
+     * Create an editor tab for a file. The file of a lazy tab is loaded in
+     * the background and its text is shown once the tab is first selected.
+     *
+     * @param fileName
+     *              The name of the file to edit
+     * @param file
+     *              The file to load into the editor, or <code>null</code>
+     * @param lazy
+     *              Whether to load the file in the background
+     */
+    private void fileEdit(JifFileName fileName, File file, boolean lazy) {
         
         // Check whether the file is already being edited
         if (isOpen(fileName)) {
             return;
         }
         
-        JifEditorKit kit = isSyntaxHighlighting()
-                ? fileName.createEditorKit()
-                : new JifEditorKit();
-
-        JifDocument doc = kit.createDefaultDocument(config.getContext());
-
-        JifTextPane tp = new JifTextPane(this, fileName, file, config.getContext());
+        JifTextPane tp = new JifTextPane(this, fileName, file, config.getContext(), lazy);
         tp.setWrap(config.getWrapLines());
+        tp.setJournal(new JifJournal(getJournalDirectory(), new File(fileName.getPath())));
+        
+        // Go back to where the project file was last left
+        int[] position = project.getPosition(fileName.getPath());
+        if (position != null) {
+            tp.setPosition(position[0], position[1]);
+        }
         
         JifScrollPane sp = new JifScrollPane(tp, fileName);
         sp.setToolTipText(fileName.getPath());
@@ -4795,44 +4815,6 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         updateFile(fileName);
     }
     
-    /**
-     * Search for the definition of a function within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The function definition to search for
-     * @return <code>true</code> if the function definition is found
-     */
-    boolean fileFunctionCheck(CharBuffer cb, String entity) {
-        Matcher m = functionPattern.matcher(cb);
-        while (m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity) || m.group(1).equalsIgnoreCase(entity + "sub")) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    /**
-     * Search for the definition of a global within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The global definition to search for
-     * @return <code>true</code> if the global definition is found
-     */
-    boolean fileGlobalCheck(CharBuffer cb, String entity) {
-        Matcher m = globalPattern.matcher(cb);
-        while (m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     private void fileMissingMessage(String path) {
         JOptionPane.showMessageDialog(
                 this,
@@ -4858,92 +4840,6 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         fileSelect(fileName);
     }
     
-    /**
-     * Search for the definition of an object within some Inform source.
-     *
-     * @param cb
-     *              The Inform source code to search
-     * @param entity
-     *              The object definition to search for
-     * @return <code>true</code> if the class definition is found
-     */
-    boolean fileObjectCheck(CharBuffer cb, String entity) {
-        Matcher m = objectPattern.matcher(cb);
-        while (m.find()) {
-            if (m.group(1).equalsIgnoreCase(entity)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
-    /**
-     * Create Inform source file assets for code tree
-     * 
-     * @param m
-     *              Pattern matcher to use to identify asset in Inform source file
-     * @param asset
-     *              <code>InformAsset</code> to which the result should be added
-     * @param parentName
-     *              Name of parent inform asset
-     */
-    private void fileObjectCreate(Matcher m, InformAsset asset, String parentName) {
-        while (m.find()) {
-            String name = m.group(1).toLowerCase();
-            int position = m.start(1);
-            
-            InformAsset object = new InformAsset(getSelectedPath(), name, position);
-            object.setParent(parentName);
-            object.setAllowChildren(false);
-            asset.addChild(name);
-            fileObjects.put(name, object);
-        }
-    }
-    
-    /**
-     * Find all the objects with class references in some Inform source code
-     *
-     * @param cb
-     *              Inform source to search for class to class references
-     * @param path
-     *              Inform source path
-     */
-    private void fileObjectToClassScan(CharBuffer cb, String path) {
-        
-        Matcher m = objectToClassPattern.matcher(cb);
-        while(m.find()) {
-            String childName  = m.group(1).toLowerCase();
-            String parentName = m.group(2).toLowerCase();
-            
-            InformAsset child  = getAsset(fileObjects, childName);
-            InformAsset parent = getAsset(fileAssets, parentName);
-            
-            child.setParent(parentName);
-            parent.addChild(childName);
-            
-        }
-    }
-    
-    /**
-     * Find all the object to class references in some Inform source code
-     *
-     * @param cb
-     *              Inform source to search for object to class references
-     * @param asset
-     *              The class definition to which any class references found
-     *              should be added
-     */
-    private void fileObjectToClassScan(CharBuffer cb, InformAsset asset) {
-        String parentName = asset.getName();
-        // Object class references (first only) using regular expression
-        Pattern p = Pattern.compile(
-                "\n+\\s*(?:Object|Nearby)\\s+(?:->\\s+)*(\\w+)\\s+(\"[^\"]+\")*\\s*(?:\\w+)*\\s*class\\s+" + parentName,
-                Pattern.MULTILINE|Pattern.CASE_INSENSITIVE
-                );
-        Matcher m = p.matcher(cb);
-        fileObjectCreate(m, asset, parentName);
-    }
-    
     // funzione per l'apertura di file
     private void fileOpenDialog() {
         
@@ -4989,49 +4885,78 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
 
     private void fileOpen(File file) {
-        fileEdit(new JifFileName(file.getAbsolutePath()), file);
+        fileOpen(file, false);
+    }
+
+    private void fileOpen(File file, boolean lazy) {
+        fileEdit(new JifFileName(file.getAbsolutePath()), file, lazy);
         config.setLastFile(file.getAbsolutePath());
         config.addRecentFile(file.getAbsolutePath());
         adjustSplit();
     }
     
-    boolean fileProjectClassCheck(CharBuffer cb, String entity) {
-        for (Iterator j=project.getClasses().keySet().iterator(); j.hasNext(); ) {
-            if (fileClassObjectCheck(cb, (String) j.next(), entity)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     /**
      * Save the selected file
      */
     private void fileSave() {
-        if (getSelectedTitle().endsWith("*")) {
-            String newtitle = getSelectedTitle().substring(0, getSelectedTitle().length()-1);
-            setSelectedTitle(newtitle);
+        fileSave(getSelectedIndex());
+    }
+    
+    /**
+     * Save the file of a tab in the background, without selecting the tab.
+     * The outcome is reported in the output window once the file is saved.
+     * The "*" of a modified tab is only removed once the file has been saved,
+     * if the document has not been changed since the save started.
+     *
+     * @param index
+     *              the index of the tab to save
+     */
+    private void fileSave(int index) {
+        final JifTextPane tp = getTextPaneAt(index);
+        // The placeholder of a tab still loading must not replace the file
+        if (!tp.isLoaded()) {
+            return;
         }
         
-        File file = new File(getSelectedPath());
-        try {
-            // The internal line separator character ("\n") is replaced with the 
-            // system line separator for the current environment
-            JifDAO.save(
-                    file, 
-                    Utils.replace(getText(), "\n", System.getProperty("line.separator"))
-                    );
-            
-            StringBuilder strb = new StringBuilder(java.util.ResourceBundle.getBundle("JIF").getString("OK_SAVE3"));
-            strb.append(getSelectedPath());
-            strb.append(java.util.ResourceBundle.getBundle("JIF").getString("OK_SAVE4"));
-            outputAppend(strb.toString());
-            
-            updateTitle();
-            
-        } catch (IOException ex) {
-            System.err.println("Save file: " + ex.getMessage());
-        }
+        final String path = getPathAt(index);
+        final boolean indexed = project.contains(path);
+        final JifDocument doc = (JifDocument) tp.getDocument();
+        final int changes = doc.getChangeCount();
+        
+        // The internal line separator character ("\n") is replaced with the 
+        // system line separator for the current environment
+        saver.save(doc, new File(path), System.getProperty("line.separator"),
+                new JifSaveObserver() {
+            public void fileSaved(final File file, final IOException error) {
+                if (error != null) {
+                    System.err.println("Save file: " + error.getMessage());
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (error != null) {
+                            outputAppend("Save file: " + path + " " + error.getMessage());
+                            return;
+                        }
+                        // Unless the document has changed the file holds its
+                        // text, and the edits journalled so far are saved.
+                        // Otherwise the journal must apply to the new file.
+                        if (tp.getDocument() == doc && doc.getChangeCount() == changes) {
+                            tp.getJournal().reset(file);
+                            setSaved(tp);
+                            if (indexed) {
+                                symbolIndex.saved(path, new JifDocumentSequence(doc));
+                            }
+                        } else if (tp.getDocument() == doc) {
+                            tp.getJournal().rebase(file);
+                        }
+                        StringBuilder strb = new StringBuilder(java.util.ResourceBundle.getBundle("JIF").getString("OK_SAVE3"));
+                        strb.append(path);
+                        strb.append(java.util.ResourceBundle.getBundle("JIF").getString("OK_SAVE4"));
+                        outputAppend(strb.toString());
+                    }
+                });
+            }
+        });
     }
     
     /**
@@ -5041,6 +4966,9 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      *              Optional base directory to use for new path
      */
     private void fileSaveAs(String directory) {
+        if (!getSelectedTextPane().isLoaded()) {
+            return;
+        }
         // recupero il nuovo nome del file e lo salvo....
         JFileChooser chooser;
         if (directory != null) {
@@ -5104,7 +5032,7 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         buffer.put(newName, getSelectedScrollPane());
         
         //setSelectedTitle(newName.getTabTitle());
-        setSelectedTitle(newName.getName());
+        setSelectedTitle(newName.getName() + (getSelectedTitle().endsWith("*") ? "*" : ""));
         setSelectedFileName(newName.getPath());
         
         fileSave();
@@ -5116,6 +5044,18 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         fileSave();
     }
     
+    /**
+     * Called once the document of a lazy editor has been loaded and shown
+     *
+     * @param tp
+     *              The editor whose document has been loaded
+     */
+    void fileLoaded(JifTextPane tp) {
+        if (getFileTabCount() != 0 && getSelectedTextPane() == tp) {
+            treeRefresh();
+        }
+    }
+    
     void fileSelect(JifFileName path) {
         JifScrollPane sp = (JifScrollPane) buffer.get(path);
         setSelectedIndex(fileTabbedPane.indexOfComponent(sp));
@@ -5530,42 +5470,36 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
             Element el = outputMouseElement(evt);
             String ultima = outputTextArea.getText(el.getStartOffset(), el.getEndOffset()-el.getStartOffset());
             
-            // Only if the line starts with the comment character
-            if (ultima.indexOf(Constants.TOKENCOMMENT)!=-1 &&
-                    ((ultima.indexOf(".inf") != -1) || (ultima.indexOf(".h") != -1))) {
+            // Compiler errors and warnings, in any of the -E0, -E1 or -E2 formats
+            if (ultima.startsWith(Constants.TOKENCOMMENT)) {
+                InformDiagnostic diagnostic = InformDiagnostic.parse(
+                        ultima.substring(Constants.TOKENCOMMENT.length()).trim());
+                if (diagnostic == null || diagnostic.getPath() == null || diagnostic.getLine() < 1) {
+                    return;
+                }
                 
-                // Errors in E1 format
-                if (Utils.IgnoreCaseIndexOf(ultima, "line ") == -1) {
-                    // Removing all highlights from the output window
-                    outputClearHighlights();
-                    
-                    StringTokenizer stok = new StringTokenizer(ultima, "#()");
-                    
-                    synchronized (this) {
-                        fileOpen(stok.nextToken());
-                    }
-                    
-                    riga = Integer.parseInt(stok.nextToken()) - 1;
-                    
-                    // Clear previous error and warning highlights
-                    getSelectedTextPane().removeHighlighterErrors();
-                    getSelectedTextPane().removeHighlighterWarnings();
-                    
-                    // Find and highlight the line with the error or warning
-                    if (Utils.IgnoreCaseIndexOf(ultima, "warning")==-1) {
-                        getSelectedTextPane().jumpToError(riga);
-                    } else {
-                        getSelectedTextPane().jumpToWarning(riga);
-                    }
-                    
-                } else {
-                    // Errors in E0-E2 format
-                    outputFormatMessage();
+                // Removing all highlights from the output window
+                outputClearHighlights();
+                
+                synchronized (this) {
+                    fileOpen(diagnostic.getPath());
+                }
+                String path = new File(diagnostic.getPath()).getAbsolutePath();
+                if (!path.equals(getSelectedPath())) {
                     return;
                 }
-            } else if (ultima.indexOf(Constants.TOKENCOMMENT) != -1 && Utils.IgnoreCaseIndexOf(ultima, "file") == -1) {
-                outputFormatMessage();
-                return;
+                
+                // Mark the errors and warnings of the last build in this file
+                buildMarkDiagnostics(path, getSelectedTextPane());
+                
+                // Find and highlight the line with the error or warning
+                riga = diagnostic.getLine() - 1;
+                if (diagnostic.isWarning()) {
+                    getSelectedTextPane().jumpToWarning(riga);
+                } else {
+                    getSelectedTextPane().jumpToError(riga);
+                }
+                
             } else if (ultima.startsWith(Constants.TOKENSEARCH)) {
                 // Find text from all files search function
                 
@@ -5592,15 +5526,6 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         }
     }
     
-    private void outputFormatMessage() {
-        JOptionPane.showMessageDialog(
-                this,
-                "Please, use the -E1 error switch.",
-                "Jump to Error",
-                JOptionPane.INFORMATION_MESSAGE
-                );
-    }
-    
     void outputHide() {
         outputTabbedPane.setVisible(false);
     }
@@ -5672,63 +5597,6 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     
     // --- Project -------------------------------------------------------------
 
-    /**
-     * Scan for class definitions in all the Inform source files within the
-     * currently open project
-     */
-    private void projectClassScan() {
-        for (Iterator i = project.iterator(); i.hasNext(); ) {
-            JifFileName projectFile = (JifFileName) i.next();
-            if (projectFile.getContentType() == JifFileName.INFORM) {
-                File file = new File(projectFile.getPath());
-                try {
-                    fileClassScan(JifDAO.buffer(file), projectFile.getPath());
-                } catch (Exception ex) {
-                    System.err.println("Seek classes " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-        }
-    }
-    
-    /**
-     * Scan for class to class references in all the Inform source files within
-     * the currently open project
-     */
-    private void projectClassToClassScan() {        
-        for (Iterator i = project.iterator(); i.hasNext(); ) {
-            JifFileName projectFile = (JifFileName) i.next();
-            if (projectFile.getContentType() == JifFileName.INFORM) {
-                File file = new File(projectFile.getPath());
-                try {
-                    fileClassToClassScan(JifDAO.buffer(file), projectFile.getPath());                    
-                } catch (Exception ex) {
-                    System.err.println("Seek class to class " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-        }
-    }
-    
-    /**
-     * Scan for object to class references in all the Inform source files within
-     * the currently open project
-     */
-    private void projectObjectToClassScan() {        
-        for (Iterator i = project.iterator(); i.hasNext(); ) {
-            JifFileName projectFile = (JifFileName) i.next();
-            if (projectFile.getContentType() == JifFileName.INFORM) {
-                File file = new File(projectFile.getPath());
-                try {
-                    fileObjectToClassScan(JifDAO.buffer(file), projectFile.getPath());                    
-                } catch (Exception ex) {
-                    System.err.println("Seek class to class " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-        }
-    }
-    
     private void projectClick(MouseEvent evt) {
         // Double clicking an entry, JIF opens the selected file
         if (evt.getClickCount()==2) {
@@ -5750,6 +5618,9 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     // relativi ad un progetto quando si chiude il progetto stesso
     private void projectClose() {
         projectFilesClose();
+        projectSearch.clear();
+        symbolIndexStore();
+        symbolIndex.clear();
         project.clear();
     }
 
@@ -5763,14 +5634,9 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      * @return The name of the file containing the defintion
      */
     String projectDefinitionCheck(String entity) {
-        for (Iterator i = project.iterator(); i.hasNext(); ) {
-            JifFileName file = (JifFileName) i.next();
-            
-            if (fileDefinitionCheck(file, entity)) {
-                return file.getPath();
-            }
-        }
-        return null;
+        symbolIndex.refresh(project);
+        InformSymbol symbol = symbolIndex.lookup(entity);
+        return (symbol == null) ? null : symbol.getPath();
     }
     
     private void projectEntered() {
@@ -5850,6 +5716,7 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         
         // Remove the file and save the project
         project.removeFile(fp);
+        symbolIndex.remove(fp.getPath());
         projectSave();
     }
 
@@ -5872,8 +5739,15 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         for (Iterator i = project.iterator(); i.hasNext(); ) {
             JifFileName projectFile = (JifFileName) i.next();
             // don't automatically open header files
-            if (!projectFile.getType().equals("h")) {
-                fileOpen(projectFile.getPath());
+            if (projectFile.getType().equals("h")) {
+                continue;
+            }
+            // Files are loaded in the background as their tabs are shown
+            File file = new File(projectFile.getPath());
+            if (file.exists()) {
+                fileOpen(file, true);
+            } else {
+                fileMissingMessage(projectFile.getPath());
             }
         }
 
@@ -5884,12 +5758,7 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
     
     private void projectFilesScan() {
-        fileAssets.clear();
-        fileObjects.clear();
-        projectClassScan();
-        projectClassToClassScan();
-        projectObjectToClassScan();
-        project.addClasses(fileAssets);
+        symbolIndex.refresh(project);
     }
     
     private void projectMainClear() {
@@ -5969,6 +5838,10 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         project.setFile(projectPath.getAbsolutePath());
         projectReload();
         
+        // Load the symbol index and bring it up to date with the project files
+        JifSymbolIndexDAO.load(symbolIndex, JifSymbolIndexDAO.getFile(project));
+        symbolIndex.refresh(project);
+        
         // Open all project files (except header files) if neccesary
         if (config.getOpenProjectFiles()) {
             projectFilesOpen();
@@ -6029,11 +5902,50 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
     
     private void projectSave() {
+        for (int i = 0; i < getFileTabCount(); i++) {
+            if (project.contains(getPathAt(i))) {
+                projectPositionUpdate(getPathAt(i), getTextPaneAt(i));
+            }
+        }
         try {
             JifProjectDAO.store(project);
         } catch (JifProjectException ex ) {
             System.err.println("Unable to save project: " + ex.getMessage());
         }
+        symbolIndexStore();
+    }
+    
+    /**
+     * Remember the caret and scroll positions of a project file so that it
+     * reopens where it was left.
+     *
+     * @param path
+     *              The path of the project file
+     * @param tp
+     *              The editor of the file
+     */
+    private void projectPositionUpdate(String path, JifTextPane tp) {
+        int[] position = tp.getPosition();
+        project.setPosition(path, position[0], position[1]);
+    }
+    
+    /**
+     * Keep the symbol index in step with unsaved edits to the selected file,
+     * so that definition lookups see the text in the editor.
+     *
+     * @param cb
+     *              The text of the selected file
+     */
+    private void symbolIndexUpdate(CharSequence cb) {
+        if (getSelectedTitle().endsWith("*") && project.contains(getSelectedPath())) {
+            symbolIndex.update(getSelectedPath(), cb);
+        }
+    }
+    
+    private void symbolIndexStore() {
+        if (project.isOpen()) {
+            JifSymbolIndexDAO.store(symbolIndex, JifSymbolIndexDAO.getFile(project));
+        }
     }
     
     private void projectSaveMessage() {
@@ -6157,89 +6069,61 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
     
     void replaceFind() {
-        if (replaceFindTextField.getText().equals("")) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    java.util.ResourceBundle.getBundle("JIF").getString("ERR_EMPTY_STRING")
-                    );
+        JifTextReplace replace = replaceCompile();
+        if (replace == null) {
+            return;
         }
-        replaceFindString(replaceFindTextField.getText());
+        replaceFindString(replace);
     }
     
-    void replaceFindString(String pattern) {
-        // rimuovo tutti gli highligh
-        // recupero la posizione del cursore
-        // eeguo la ricerca e l'highlight del testo trovato
+    // Select the next occurrence after the caret, offering to start again
+    // from the top of the file if there is none
+    void replaceFindString(JifTextReplace replace) {
+        if (!getSelectedTextPane().isLoaded()) {
+            return;
+        }
         int pos = getCaretPosition();   // current position
         try {
-            String text = getText();
-            boolean trovato = false;
-            while (((pos = text.indexOf(pattern, pos)) >= 0) && (!trovato)) {
-                //while ( ( (pos = Utils.IgnoreCaseIndexOf(text, pattern, pos)) >= 0) && (!trovato)) {
-                selectedRequestFocus();
-                setCaretPosition(pos);
-                setSelectionStart(pos);
-                setSelectionEnd(pos + pattern.length());
-                selectedRepaint();
-                pos += pattern.length();
-                trovato=true;
-                replaceDialog.requestFocus();
-            }
+            CharSequence text = getCharSequence();
+            JifTextReplace.Replacement found = replace.find(text, pos);
             
-            //se non lo trovo comunico che sono alla fine del file
-            if (!trovato) {
-                String[] scelte = new String[2];
-                scelte[0] = java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF18");
-                scelte[1] = java.util.ResourceBundle.getBundle("JIF").getString("MESSAGE_CANCEL");
-                int result = JOptionPane.showOptionDialog(
-                        replaceDialog,
-                        java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF19") + 
-                        " [" + pattern + "] " + 
-                        java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF20"),
-                        java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF21"),
-                        0,
-                        JOptionPane.INFORMATION_MESSAGE,
-                        null,
-                        scelte,
-                        scelte[1]);
-                if (result==0) {
-                    setCaretPosition(0);
-                    replaceFindString(pattern);
-                }
-                return;
+            // Step over an empty occurrence at the caret
+            if (found != null && found.getEnd() == pos && pos < text.length()) {
+                found = replace.find(text, pos + 1);
             }
-        } catch (Exception ex) {
-            System.err.println("Find string: " + ex.getMessage());
-        }
-    }
-    
-    boolean replaceFindAllString(String pattern) {
-        // rimuovo tutti gli highlight
-        // recupero la posizione del cursore
-        // eeguo la ricerca e l'highlight del testo trovato
-        
-        int pos = getCaretPosition();   // current position
-        try {
-            String text = getText();
-            boolean trovato = false;
-            while (((pos = text.indexOf(pattern, pos)) >= 0) && (!trovato)) {
+            
+            if (found != null) {
                 selectedRequestFocus();
-                setCaretPosition(pos);
-                setSelectionStart(pos);
-                setSelectionEnd(pos + pattern.length());
+                setCaretPosition(found.getStart());
+                setSelectionStart(found.getStart());
+                setSelectionEnd(found.getEnd());
                 selectedRepaint();
-                pos += pattern.length();
-                trovato = true;
                 replaceDialog.requestFocus();
+                return;
             }
             
             //se non lo trovo comunico che sono alla fine del file
-            return !trovato;
-                    
-        } catch (Exception ex) {
-            System.err.println("Find all: " + ex.getMessage());
+            String[] scelte = new String[2];
+            scelte[0] = java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF18");
+            scelte[1] = java.util.ResourceBundle.getBundle("JIF").getString("MESSAGE_CANCEL");
+            int result = JOptionPane.showOptionDialog(
+                    replaceDialog,
+                    java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF19") + 
+                    " [" + replaceFindTextField.getText() + "] " + 
+                    java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF20"),
+                    java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF21"),
+                    0,
+                    JOptionPane.INFORMATION_MESSAGE,
+                    null,
+                    scelte,
+                    scelte[1]);
+            if (result==0 && pos != 0) {
+                setCaretPosition(0);
+                replaceFindString(replace);
+            }
+        } catch (IllegalArgumentException ex) {
+            replaceError(ex.getMessage());
         }
-        return false;
     }
     
     void replaceHide() {
@@ -6247,28 +6131,186 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
     
     void replaceReplace() {
-        // Replacing....only if there is a selected TEXT
-        if (getSelectedText() == null) {
+        // Replacing....only if the selected TEXT is an occurrence
+        if (getSelectedText() == null || !getSelectedTextPane().isLoaded()) {
+            return;
+        }
+        JifTextReplace replace = replaceCompile();
+        if (replace == null) {
             return;
         }
-        replaceSelection(replaceReplaceTextField.getText());
+        try {
+            int start = getSelectedTextPane().getSelectionStart();
+            int end = getSelectedTextPane().getSelectionEnd();
+            JifTextReplace.Replacement found = replace.find(getCharSequence(), start);
+            if (found != null && found.getStart() == start && found.getEnd() == end) {
+                replaceSelection(found.getText());
+            }
+        } catch (IllegalArgumentException ex) {
+            replaceError(ex.getMessage());
+        }
     }
     
-    // 1. cerco la prima occorrenza se non esiste esci
-    // 2. replace string e vai al punto 1.
+    // Replace every occurrence in the selected file. The occurrences are all
+    // found before any is replaced, and replaced in a single edit.
     void replaceReplaceAll() {
-        // Start at the beginning of the selected file
-        setCaretPosition(0);
-        boolean eseguito = false;
-        while (!eseguito) {
-            eseguito = replaceFindAllString(replaceFindTextField.getText());
-            if (!eseguito) {
-                replaceSelection(replaceReplaceTextField.getText());
-            }
+        if (!getSelectedTextPane().isLoaded()) {
+            return;
+        }
+        JifTextReplace replace = replaceCompile();
+        if (replace == null) {
+            return;
+        }
+        try {
+            JifTextReplace.apply(getDocument(), replace.findAll(getCharSequence()));
+        } catch (IllegalArgumentException ex) {
+            replaceError(ex.getMessage());
+        } catch (BadLocationException ex) {
+            System.err.println("Replace all: " + ex.getMessage());
         }
         treeRefreshIncremental();
     }
     
+    // Replace every occurrence in all the files of the project. The changed
+    // lines are listed in the output window and nothing is changed until the
+    // replacement is confirmed. Files open for editing are replaced in their
+    // editor and left to be saved, the others are saved in the background.
+    void replaceProject() {
+        if (project.isClosed()) {
+            return;
+        }
+        JifTextReplace replace = replaceCompile();
+        if (replace == null) {
+            return;
+        }
+        
+        // Tabs still loading are loaded now, so that their text is replaced 
+        // in the editor rather than in the file behind the loader's back
+        Map panes = new HashMap();
+        Map texts = new HashMap();
+        for (int i = 0; i < getFileTabCount(); i++) {
+            if (project.contains(getPathAt(i))) {
+                JifTextPane tp = getTextPaneAt(i);
+                tp.finishLoading();
+                panes.put(getPathAt(i), tp);
+                texts.put(getPathAt(i), tp.getText());
+            }
+        }
+        
+        List changes;
+        final List failures = new ArrayList();
+        try {
+            changes = JifProjectReplace.find(project, replace, texts, failures);
+        } catch (IllegalArgumentException ex) {
+            replaceError(ex.getMessage());
+            return;
+        }
+        
+        if (changes.isEmpty() && failures.isEmpty()) {
+            JOptionPane.showMessageDialog(
+                    replaceDialog,
+                    java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF19") + 
+                    " [" + replaceFindTextField.getText() + "] " + 
+                    java.util.ResourceBundle.getBundle("JIF").getString("STR_JIF20"));
+            return;
+        }
+        
+        // Preview
+        projectSearch.cancel();
+        searchOutput = null;
+        outputInit();
+        for (Iterator i = changes.iterator(); i.hasNext();) {
+            JifProjectReplace.FileReplace change = (JifProjectReplace.FileReplace) i.next();
+            outputAppend(outputMatches(change.getPath(), change.getLines()));
+        }
+        for (Iterator i = failures.iterator(); i.hasNext();) {
+            replaceFailed((String) i.next());
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        int result = JOptionPane.showConfirmDialog(
+                replaceDialog,
+                java.util.ResourceBundle.getBundle("JIF").getString("JDIALOGREPLACE_PREVIEW"),
+                java.util.ResourceBundle.getBundle("JIF").getString("JDIALOGREPLACE_BUTTON_REPLACE_PROJECT"),
+                JOptionPane.OK_CANCEL_OPTION);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+        
+        for (Iterator i = changes.iterator(); i.hasNext();) {
+            final JifProjectReplace.FileReplace change = (JifProjectReplace.FileReplace) i.next();
+            JifTextPane tp = (JifTextPane) panes.get(change.getPath());
+            if (tp != null) {
+                try {
+                    JifTextReplace.apply((JifDocument) tp.getDocument(), change.getReplacements());
+                } catch (BadLocationException ex) {
+                    replaceFailed(change.getPath() + ": " + ex.getMessage());
+                }
+                continue;
+            }
+            final String text = change.getReplacedText();
+            saver.save(text, new File(change.getPath()), new JifSaveObserver() {
+                public void fileSaved(File file, final IOException error) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (error != null) {
+                                replaceFailed(change.getPath() + ": " + error.getMessage());
+                            } else {
+                                symbolIndex.saved(change.getPath(), text);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        if (getFileTabCount() != 0) {
+            treeRefreshIncremental();
+        }
+    }
+    
+    // The replacement set up in the replace dialog, or null if there is
+    // nothing to find or the expression to find is not valid
+    private JifTextReplace replaceCompile() {
+        String target = replaceFindTextField.getText();
+        if (target.equals("")) {
+            JOptionPane.showMessageDialog(
+                    replaceDialog,
+                    java.util.ResourceBundle.getBundle("JIF").getString("ERR_EMPTY_STRING")
+                    );
+            return null;
+        }
+        try {
+            return new JifTextReplace(
+                    target,
+                    replaceReplaceTextField.getText(),
+                    replaceRegexCheckBox.isSelected(),
+                    replaceMatchCaseCheckBox.isSelected());
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(
+                    replaceDialog,
+                    ex.getDescription(),
+                    java.util.ResourceBundle.getBundle("JIF").getString("ERR_INVALID_REGEX"),
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+    
+    private void replaceError(String message) {
+        JOptionPane.showMessageDialog(
+                replaceDialog,
+                message,
+                java.util.ResourceBundle.getBundle("JIF").getString("ERR_INVALID_REPLACEMENT"),
+                JOptionPane.ERROR_MESSAGE);
+    }
+    
+    // Report a file of the project which could not be replaced
+    private void replaceFailed(String message) {
+        System.err.println("Replace in project: " + message);
+        outputAppend(java.util.ResourceBundle.getBundle("JIF").getString("JDIALOGREPLACE_FAILED")
+                + " " + message + "\n");
+    }
+    
     void replaceShow() {
         replaceDialog.pack();
         replaceDialog.setLocationRelativeTo(this);
@@ -6303,23 +6345,37 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      *
      * @param target Search string to find in project files
      */
-    private void searchAllFiles(String target) {
+    private void searchAllFiles(final String target) {
         if (project.isClosed()) {
             return;
         }
+        
+        try {
+            JifProjectSearch.compile(target, searchRegex, searchWholeWord);
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(
+                    this,
+                    ex.getDescription(),
+                    java.util.ResourceBundle.getBundle("JIF").getString("ERR_INVALID_REGEX"),
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
         outputInit();
-        StringBuilder output = new StringBuilder();
-        String result;
-        for (Iterator i = project.iterator(); i.hasNext();) {
-            JifFileName file = (JifFileName) i.next();
-            result = Utils.searchString(target, new File(file.getPath()));
-            if (result != null) {
-                output.append(result).append("\n");
+        
+        // Matches are appended to the output window as each file is searched
+        final SearchOutput output = new SearchOutput();
+        searchOutput = output;
+        final boolean regex = searchRegex;
+        final boolean wholeWord = searchWholeWord;
+        
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                projectSearch.search(project, target, regex, wholeWord, output);
             }
-        }
-        outputSetText(output.toString());
-        outputSetCaretPosition(0);
+        }, "Jif project search");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private void searchDialog() {
@@ -6411,59 +6467,42 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
 
     // --- Tree ----------------------------------------------------------------
     
-    private void treeClassesBuild() {
+    // Build the classes tree from a class graph, with the positions of the
+    // definitions in the selected file taken from its own definitions
+    private void treeClassesBuild(InformClassGraph graph, List symbols) {
 
         classTree.removeAllChildren();
 
-//        Set deletions = new TreeSet(fileNodes.keySet());
-//        deletions.removeAll(fileAssets.keySet());
-//        
-//        for (Iterator i=deletions.iterator(); i.hasNext(); ) {
-//            String name = (String) i.next();
-//            InformTreeNode node = (InformTreeNode) fileNodes.get(name); 
-//            ((InformTreeNode) node.getParent()).remove(node);
-//            fileNodes.remove(name);
-//        }
-
-        for (Iterator i = fileAssets.entrySet().iterator(); i.hasNext();) {
-            Entry e = (Entry) i.next();
-            InformAsset asset = (InformAsset) e.getValue();
-
-            // Only basic class definitions have no parent
-            if (!asset.hasParent()) {
-                treeNodeBuild(classTree, asset);
+        Map positions = new HashMap();
+        for (Iterator i = symbols.iterator(); i.hasNext();) {
+            InformSymbol symbol = (InformSymbol) i.next();
+            if ((symbol.getKind() == InformSymbol.CLASS || symbol.getKind() == InformSymbol.OBJECT)
+                    && !positions.containsKey(symbol.getName())) {
+                positions.put(symbol.getName(), Integer.valueOf(symbol.getPosition()));
             }
         }
 
-    }
-
-    private void treeClassesRefresh(CharBuffer cb) {
-
-        fileAssets.clear();
-        fileObjects.clear();
-
-        if (config.getScanProjectFiles() && project.contains(getSelectedFileName())) {
-            project.clear(getSelectedName());
-            fileAssets.putAll(project.getClasses());
+        // Only classes that do not inherit from another class are at the top
+        for (Iterator i = graph.getRoots().iterator(); i.hasNext();) {
+            treeNodeBuild(classTree, graph, positions, (String) i.next(), new HashSet());
         }
 
-        fileClassScan(cb, getSelectedPath());
-        fileClassToClassScan(cb, getSelectedPath());
-        fileObjectToClassScan(cb, getSelectedPath());
+    }
 
-        if (config.getScanProjectFiles() && project.contains(getSelectedFileName())) {
-            project.addClasses(fileAssets);
-        }
+    private void treeClassesRefresh() {
 
-        for (Iterator i = fileAssets.entrySet().iterator(); i.hasNext();) {
-            Entry e = (Entry) i.next();
-            InformAsset asset = (InformAsset) e.getValue();
-            fileObjectToClassScan(cb, asset);
-            fileClassObjectScan(cb, asset);
+        // The index is scanned from the files on disk, whose positions differ
+        // from the document where the editor has expanded TABs
+        List symbols = InformSymbolScanner.scan(getSelectedPath(), getDocument().getOutline());
+        if (config.getScanProjectFiles() && project.contains(getSelectedFileName())) {
+            synchronized (symbolIndex) {
+                treeClassesBuild(symbolIndex.getClassGraph(), symbols);
+            }
+        } else {
+            fileClasses.clear();
+            fileClasses.update(getSelectedPath(), symbols);
+            treeClassesBuild(fileClasses, symbols);
         }
-
-        fileAssets.putAll(fileObjects);
-        treeClassesBuild();
         treeModel.reload(classTree);
     }
 
@@ -6489,7 +6528,7 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         }
 
         Inspect insp = (Inspect) node.getUserObject();
-        if (insp == null || insp.getPath() != getSelectedPath() || insp.getPosition() == -1) {
+        if (insp == null || !isSelected(insp.getPath()) || insp.getPosition() == -1) {
             return;
         }
 
@@ -6497,23 +6536,22 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         jumpTo(insp.getPosition());
     }
 
-    private void treeConstantsRefresh(CharBuffer cb) {
-        constantTree.replaceChildren(treeNodeList(constantPattern.matcher(cb)));
+    private void treeConstantsRefresh() {
+        constantTree.replaceChildren(treeNodeList(InformSymbol.CONSTANT));
         treeModel.reload(constantTree);
     }
 
     void treeExpand(TreeExpansionEvent evt) {
-        CharBuffer cb = getCharBuffer();
         if (evt.getPath().equals(new TreePath(treeModel.getPathToRoot(globalTree)))) {
-            treeGlobalsRefresh(cb);
+            treeGlobalsRefresh();
         } else if (evt.getPath().equals(new TreePath(treeModel.getPathToRoot(constantTree)))) {
-            treeConstantsRefresh(cb);
+            treeConstantsRefresh();
         } else if (evt.getPath().equals(new TreePath(treeModel.getPathToRoot(objectTree)))) {
-            treeObjectsRefresh(cb);
+            treeObjectsRefresh();
         } else if (evt.getPath().equals(new TreePath(treeModel.getPathToRoot(functionTree)))) {
-            treeFunctionsRefresh(cb);
+            treeFunctionsRefresh();
         } else if (evt.getPath().equals(new TreePath(treeModel.getPathToRoot(classTree)))) {
-            treeClassesRefresh(cb);
+            treeClassesRefresh();
         }
         evt = null;
     }
@@ -6533,13 +6571,13 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         tree.expandPath(parent);
     }
 
-    private void treeFunctionsRefresh(CharBuffer cb) {
-        functionTree.replaceChildren(treeNodeList(functionPattern.matcher(cb)));
+    private void treeFunctionsRefresh() {
+        functionTree.replaceChildren(treeNodeList(InformSymbol.ROUTINE));
         treeModel.reload(functionTree);
     }
 
-    private void treeGlobalsRefresh(CharBuffer cb) {
-        globalTree.replaceChildren(treeNodeList(globalPattern.matcher(cb)));
+    private void treeGlobalsRefresh() {
+        globalTree.replaceChildren(treeNodeList(InformSymbol.GLOBAL));
         treeModel.reload(globalTree);
     }
 
@@ -6547,49 +6585,53 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         upperSplitPane.setDividerLocation(0);
     }
 
-    private void treeNodeBuild(InformTreeNode tree, InformAsset asset) {
+    private void treeNodeBuild(InformTreeNode tree, InformClassGraph graph, Map positions, String name, Set path) {
 
         // Only display inform object definitions that are in the current file
-        if (asset.isInformObject() && !isSelected(asset.getPath())) {
+        Integer position = (Integer) positions.get(name);
+        if (!graph.isClass(name) && position == null) {
+            return;
+        }
+
+        // Classes inheriting from each other in the source are shown once
+        if (!path.add(name)) {
             return;
         }
 
-        // New code
-//        String name = asset.getName();
-//        InformTreeNode node;
-//        if (fileNodes.containsKey(name)) {
-//            node = (InformTreeNode) fileNodes.get(name);
-//            if (!tree.isNodeChild(node)) {
-//                tree.insert(node);
-//            }
-//        } else {
-        InformTreeNode node = new InformTreeNode(asset.getLocation());
-//            fileNodes.put(asset.getName(), node);
+        InformSymbol symbol = graph.getDefinition(name);
+        InformTreeNode node;
+        if (position != null) {
+            node = new InformTreeNode(new Inspect(name, getSelectedPath(), position.intValue()));
+        } else if (symbol != null) {
+            node = new InformTreeNode(new Inspect(name, symbol.getPath(), symbol.getPosition()));
+        } else {
+            node = new InformTreeNode(new Inspect(name, null, -1));
+        }
         tree.add(node);
-//        }
 
-        for (Iterator i = asset.iterator(); i.hasNext();) {
-            String childName = (String) i.next();
-            if (fileAssets.containsKey(childName)) {
-                InformAsset child = (InformAsset) fileAssets.get(childName);
-                treeNodeBuild(node, child);
-            }
+        for (Iterator i = graph.getChildren(name).iterator(); i.hasNext();) {
+            treeNodeBuild(node, graph, positions, (String) i.next(), path);
         }
+        path.remove(name);
     }
 
-    private List treeNodeList(Matcher m) {
+    private List treeNodeList(InformSymbol.Kind kind) {
         List list = new ArrayList();
-        while (m.find()) {
-            list.add(new Inspect(
-                    m.group(1).toLowerCase(),
-                    getSelectedPath(),
-                    m.start(1)));
+        InformOutline outline = getDocument().getOutline();
+        for (Iterator i = outline.getDirectives(kind).iterator(); i.hasNext();) {
+            InformOutline.Directive directive = (InformOutline.Directive) i.next();
+            if (directive.getName() != null) {
+                list.add(new Inspect(
+                        directive.getName().toLowerCase(),
+                        getSelectedPath(),
+                        directive.getPosition()));
+            }
         }
         return list;
     }
 
-    private void treeObjectsRefresh(CharBuffer cb) {
-        objectTree.replaceChildren(treeNodeList(objectPattern.matcher(cb)));
+    private void treeObjectsRefresh() {
+        objectTree.replaceChildren(treeNodeList(InformSymbol.OBJECT));
         treeModel.reload(objectTree);
     }
 
@@ -6608,18 +6650,19 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         top.setUserObject(getSelectedName());
         codeTree.setEnabled(true);
 
-        CharBuffer cb = getCharBuffer();
+        CharSequence cb = getCharSequence();
+        symbolIndexUpdate(cb);
 
         // Globals
-        treeGlobalsRefresh(cb);
+        treeGlobalsRefresh();
         // Constants
-        treeConstantsRefresh(cb);
+        treeConstantsRefresh();
         // Objects
-        treeObjectsRefresh(cb);
+        treeObjectsRefresh();
         // Functions
-        treeFunctionsRefresh(cb);
+        treeFunctionsRefresh();
         // Classes
-        treeClassesRefresh(cb);
+        treeClassesRefresh();
         // Display new tree fully expanded
         treeExpand(codeTree);
     }
@@ -6641,28 +6684,29 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         TreePath functionPath = new TreePath(treeModel.getPathToRoot(functionTree));
         TreePath classPath = new TreePath(treeModel.getPathToRoot(classTree));
 
-        // Inform source in char buffer format for use by regular expressions 
-        CharBuffer cb = getCharBuffer();
+        // Inform source in char buffer format for the symbol index
+        CharSequence cb = getCharSequence();
+        symbolIndexUpdate(cb);
 
         // Globals
         if (codeTree.isExpanded(globalPath) || globalTree.isLeaf()) {
-            treeGlobalsRefresh(cb);
+            treeGlobalsRefresh();
         }
         // Constants
         if (codeTree.isExpanded(constantPath) || constantTree.isLeaf()) {
-            treeConstantsRefresh(cb);
+            treeConstantsRefresh();
         }
         // Objects
         if (codeTree.isExpanded(objectPath) || objectTree.isLeaf()) {
-            treeObjectsRefresh(cb);
+            treeObjectsRefresh();
         }
         // Functions
         if (codeTree.isExpanded(functionPath) || functionTree.isLeaf()) {
-            treeFunctionsRefresh(cb);
+            treeFunctionsRefresh();
         }
         // Classes
         if (codeTree.isExpanded(classPath) || classTree.isLeaf()) {
-            treeClassesRefresh(cb);
+            treeClassesRefresh();
             treeExpand(codeTree, classPath);
         }
     }
@@ -6717,23 +6761,50 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
 
     // -------------------------------------------------------------------------
     private void buildAllDialog() {
+        if (buildCancelDialog()) {
+            return;
+        }
         outputInit();
         allFilesSave();
+        
+        List stages = new ArrayList();
+        JifBuild.Stage resources = null;
         if (isGlulxMode() && config.getMakeResource()) {
-            makeResources();
+            resources = makeResources(stages);
+            if (resources == null) {
+                return;
+            }
+        }
+        JifBuild.Stage compile = buildAll(stages, resources);
+        if (compile == null) {
+            return;
         }
-        buildAll();
         if (isGlulxMode()) {
-            makeBlb();
+            makeBlb(stages, resources, compile);
         }
+        buildStart(stages, compile, null);
     }
 
-    private void buildAll() {
+    /**
+     * Add the Inform compiler run to a list of build stages. The inputs of 
+     * the compiler are the source files and every file they include from the
+     * library path. The compiler only waits for BRES if the source code 
+     * includes the header file generated by BRES, otherwise both run at the
+     * same time.
+     *
+     * @param stages
+     *              the build stages
+     * @param resources
+     *              the BRES stage, or <code>null</code> if there is none
+     * @return the compiler stage, or <code>null</code> if the compiler can
+     *         not be run
+     */
+    private JifBuild.Stage buildAll(List stages, JifBuild.Stage resources) {
 
         // Check main file is valid when compiling a project
         if (project.isOpen() && project.isMainClear()) {
             mainMissingMessage();
-            return;
+            return null;
         }
 
         Inform compiler = new Inform(
@@ -6742,20 +6813,200 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
 
         try {
             compiler.verify();
-            outputAppend(compiler.run(
-                    makeCompilerSwitches(),
-                    makeCompilerLibraries(),
-                    getSourcePath(),
-                    makeFile(getSourcePath(), makeExtension())));
         } catch (ProgramMissingException ex) {
             compilerMissingMessage(resolveAbsolutePath(config.getWorkingDirectory(), config.getCompilerPath()));
+            return null;
         } catch (GamePathMissingException ex) {
             gamePathMissingMessage();
-        } catch (IOException ex) {
-            System.err.println("Build all: " + ex.getMessage());
+            return null;
         }
         
-        adjustSplit();
+        String game = makeFile(getSourcePath(), makeExtension());
+        JifBuild.Stage stage = new JifBuild.Stage(
+                "inform:" + game,
+                null,
+                compiler.process(
+                        makeCompilerSwitches(),
+                        makeCompilerLibraries(),
+                        getSourcePath(),
+                        game),
+                true);
+        stage.setMessage(compiler.getOk());
+        
+        // The compiler looks for included files on the library path and in 
+        // its working directory
+        List directories = new ArrayList();
+        for (Iterator i = makeCompilerLibraryPath().iterator(); i.hasNext();) {
+            directories.add(new File((String) i.next()));
+        }
+        directories.add(new File(resolveAbsolutePath(config.getWorkingDirectory(), config.getGamePath())));
+        
+        stage.addInputs(buildSources());
+        stage.addInputs(new InformIncludes(new File(getSourcePath()), directories));
+        stage.addOutput(new File(game));
+        if (resources != null) {
+            stage.addDependency(resources, new File(makeFile(getSourcePath(), "bli")));
+        }
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Returns the source files for the current build: the Inform files of 
+     * the project, or the Inform files in the directory of the source file
+     * when there is no project.
+     *
+     * @return list of <code>File</code>
+     */
+    private List buildSources() {
+        List sources = new ArrayList();
+        File main = new File(getSourcePath());
+        sources.add(main);
+        
+        if (project.isOpen()) {
+            for (Iterator i = project.iterator(); i.hasNext();) {
+                JifFileName file = (JifFileName) i.next();
+                if (file.getContentType() == JifFileName.INFORM) {
+                    sources.add(new File(file.getPath()));
+                }
+            }
+        } else if (main.getParentFile() != null) {
+            File[] files = main.getParentFile().listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                String name = files[i].getName().toLowerCase();
+                if (name.endsWith(".inf") || name.endsWith(".h")) {
+                    sources.add(files[i]);
+                }
+            }
+        }
+        return sources;
+    }
+    
+    /**
+     * If a build is running, ask whether to cancel it
+     *
+     * @return <code>true</code> if a build is running
+     */
+    private boolean buildCancelDialog() {
+        if (buildThread == null) {
+            return false;
+        }
+        if (JOptionPane.showConfirmDialog(
+                this,
+                java.util.ResourceBundle.getBundle("JIF").getString("BUILD_CANCEL"),
+                java.util.ResourceBundle.getBundle("JIF").getString("BUILD_TITLE"),
+                JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+            buildCancel();
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the build in progress, if any
+     */
+    private void buildCancel() {
+        buildCancelled = true;
+        build.cancel();
+    }
+
+    /**
+     * Run the stages of a build on a background thread. The output of the 
+     * compiler is appended to the output window as it is written, and 
+     * compiler errors and warnings are collected as they are reported. 
+     * Stages which are up to date are skipped.
+     *
+     * @param stages
+     *              the build stages
+     * @param compile
+     *              the compiler stage, or <code>null</code> if there is none
+     * @param success
+     *              run on the event dispatch thread if every stage succeeds,
+     *              may be <code>null</code>
+     */
+    private void buildStart(final List stages, final JifBuild.Stage compile, final Runnable success) {
+        if (stages.isEmpty()) {
+            return;
+        }
+        
+        buildCancelled = false;
+        buildDiagnostics = Collections.synchronizedList(new ArrayList());
+        final BuildOutput output = new BuildOutput(compile);
+        
+        buildThread = new Thread(new Runnable() {
+            public void run() {
+                boolean ok = false;
+                // Compile the files as they are being saved
+                saver.awaitAll();
+                try {
+                    ok = build.run(stages, output);
+                } catch (InterruptedException ex) {
+                    System.err.println("Build interrupted: " + ex.getMessage());
+                }
+                final boolean succeeded = ok && !buildCancelled;
+                if (buildCancelled) {
+                    output.append(java.util.ResourceBundle.getBundle("JIF").getString("BUILD_CANCELLED"));
+                }
+                output.flush();
+                
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        buildThread = null;
+                        adjustSplit();
+                        buildMarkDiagnostics();
+                        if (succeeded && success != null) {
+                            success.run();
+                        }
+                    }
+                });
+            }
+        }, "Jif build");
+        buildThread.setDaemon(true);
+        buildThread.start();
+    }
+
+    /**
+     * Mark the compiler errors and warnings of the last build in the open 
+     * editors
+     */
+    private void buildMarkDiagnostics() {
+        for (int i = 0; i < getFileTabCount(); i++) {
+            buildMarkDiagnostics(getPathAt(i), getTextPaneAt(i));
+        }
+    }
+
+    /**
+     * Mark the compiler errors and warnings of the last build in an editor
+     *
+     * @param path
+     *              the path of the file in the editor
+     * @param tp
+     *              the editor
+     */
+    private void buildMarkDiagnostics(String path, JifTextPane tp) {
+        tp.removeHighlighterErrors();
+        tp.removeHighlighterWarnings();
+        if (!tp.isLoaded()) {
+            return;
+        }
+        synchronized (buildDiagnostics) {
+            for (Iterator i = buildDiagnostics.iterator(); i.hasNext();) {
+                InformDiagnostic diagnostic = (InformDiagnostic) i.next();
+                if (diagnostic.getPath() == null
+                        || diagnostic.getLine() < 1
+                        || !new File(diagnostic.getPath()).getAbsolutePath().equals(path)) {
+                    continue;
+                }
+                Element el = tp.getElement(diagnostic.getLine() - 1);
+                if (el == null) {
+                    continue;
+                }
+                if (diagnostic.isWarning()) {
+                    tp.highlightWarnings(el.getStartOffset(), el.getEndOffset());
+                } else {
+                    tp.highlightErrors(el.getStartOffset(), el.getEndOffset());
+                }
+            }
+        }
     }
 
     private void compilerMissingMessage(String path) {
@@ -6804,26 +7055,39 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
 
     private String makeCompilerLibraries() {
 
-        String fileInf = getSourcePath();
         StringBuilder lib = new StringBuilder("+include_path=");
+        for (Iterator i = makeCompilerLibraryPath().iterator(); i.hasNext();) {
+            lib.append(i.next());
+            if (i.hasNext()) {
+                lib.append(",");
+            }
+        }
+        return lib.toString();
+    }
+
+    // The directories of the compiler include path
+    private List makeCompilerLibraryPath() {
+
+        String fileInf = getSourcePath();
+        List path = new ArrayList();
 
         if (config.getAdventInLib()) {
-            lib.append(fileInf.substring(0, fileInf.lastIndexOf(File.separator))).append(",");
+            path.add(fileInf.substring(0, fileInf.lastIndexOf(File.separator)));
         }
 
-        lib.append(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath()));
+        path.add(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath()));
 
         // Secondary 1-2-3 Library Path
         if (!config.getLibraryPath1().trim().equals("")) {
-            lib.append(",").append(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath1()));
+            path.add(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath1()));
         }
         if (!config.getLibraryPath2().trim().equals("")) {
-            lib.append(",").append(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath2()));
+            path.add(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath2()));
         }
         if (!config.getLibraryPath3().trim().equals("")) {
-            lib.append(",").append(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath3()));
+            path.add(resolveAbsolutePath(config.getWorkingDirectory(), config.getLibraryPath3()));
         }
-        return lib.toString();
+        return path;
     }
 
     private Set makeCompilerSwitches() {
@@ -6923,10 +7187,23 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
 
     private void runDialog() {
+        if (buildCancelDialog()) {
+            return;
+        }
         outputInit();
         allFilesSave();
-        buildAll();
-        runAdventure(makeFile(getSourcePath(), makeExtension()));
+        
+        List stages = new ArrayList();
+        JifBuild.Stage compile = buildAll(stages, null);
+        if (compile == null) {
+            return;
+        }
+        final String adventure = makeFile(getSourcePath(), makeExtension());
+        buildStart(stages, compile, new Runnable() {
+            public void run() {
+                runAdventure(adventure);
+            }
+        });
     }
 
     private void runInterpreter() {
@@ -7007,18 +7284,42 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
                 scelte,
                 scelte[2]);
 
+        final boolean saving = (result == 0);
         switch (result) {
             // Save
             case 0:
                 allFilesSaveDialog();
             // Exit
             case 1:
-                configurationSave();
-                System.exit(0);
+                buildCancel();
+                saver.awaitAll();
+                // The outcome of each save is reported on the event dispatch
+                // thread, so exit once the tabs have been updated
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        exitJif(saving);
+                    }
+                });
             // Cancel
             default:
         }
     }
+    
+    // Exit once the saves have finished. Unsaved edits are discarded, not
+    // left to be recovered, unless they failed to save.
+    private void exitJif(boolean saving) {
+        for (int i = 0; i < getFileTabCount(); i++) {
+            if (!saving || !getTitleAt(i).endsWith("*")) {
+                getTextPaneAt(i).getJournal().discard();
+            }
+        }
+        JifJournal.flushAll();
+        if (project.isOpen()) {
+            symbolIndexStore();
+        }
+        configurationSave();
+        System.exit(0);
+    }
 
     // --- Enable / disable components -----------------------------------------
     
@@ -7324,26 +7625,54 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      * <code>BLC source.blc source.blb</code>
      */
     private void makeBlbDialog() {
+        if (buildCancelDialog()) {
+            return;
+        }
         outputInit();
-        makeBlb();
+        List stages = new ArrayList();
+        makeBlb(stages, null, null);
+        buildStart(stages, null, null);
     }
     
-    private void makeBlb() {
+    /**
+     * Add the BLC run to a list of build stages, after the stages making the
+     * resources and the game file it reads.
+     */
+    private JifBuild.Stage makeBlb(List stages, JifBuild.Stage resources, JifBuild.Stage compile) {
         Blc blc = new Blc(resolveAbsolutePath(config.getWorkingDirectory(), config.getBlcPath()));
         try {
             blc.verify();
-            outputAppend(blc.run(
-                    makeFile(getSourcePath(), "blc"),
-                    makeFile(getSourcePath(), "blb"),
-                    getSourcePath().substring(0, getSourcePath().lastIndexOf(File.separator))
-                    ));
         } catch(ProgramMissingException ex) {
             compilerMissingMessage(resolveAbsolutePath(config.getWorkingDirectory(), config.getBlcPath()));
-        } catch(InterruptedException ex) {
-            System.out.println("ERROR make blorb: " + ex.getMessage());
-        } catch(IOException ex) {
-            System.out.println("ERROR make blorb: " + ex.getMessage());
+            return null;
+        }
+        
+        String control = makeFile(getSourcePath(), "blc");
+        String blorb = makeFile(getSourcePath(), "blb");
+        JifBuild.Stage stage = new JifBuild.Stage(
+                "blc:" + blorb,
+                java.util.ResourceBundle.getBundle("JIF").getString("BUILD_BLORB"),
+                blc.process(
+                        control,
+                        blorb,
+                        getSourcePath().substring(0, getSourcePath().lastIndexOf(File.separator))),
+                false);
+        stage.setMessage(blc.getOk());
+        
+        // The control file is written by BRES, so it is read when BLC runs
+        List directories = new ArrayList();
+        directories.add(new File(getSourcePath()).getParentFile());
+        stage.addInputs(new JifResourceInputs(new File(control), directories));
+        stage.addInput(new File(makeFile(getSourcePath(), makeExtension())));
+        stage.addOutput(new File(blorb));
+        if (resources != null) {
+            stage.addDependency(resources);
+        }
+        if (compile != null) {
+            stage.addDependency(compile);
         }
+        stages.add(stage);
+        return stage;
     }
     
     /**
@@ -7352,24 +7681,40 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
      * <code>BRES source</code>
      */
     private void makeResourcesDialog() {
+        if (buildCancelDialog()) {
+            return;
+        }
         outputInit();
-        makeResources();
+        List stages = new ArrayList();
+        makeResources(stages);
+        buildStart(stages, null, null);
     }
     
-    private void makeResources() {
+    private JifBuild.Stage makeResources(List stages) {
         Bres bres = new Bres(resolveAbsolutePath(config.getWorkingDirectory(), config.getBresPath()));
         try {
             bres.verify();
-            outputAppend(bres.run(
-                    makeName(getSourcePath()),
-                    resolveAbsolutePath(config.getWorkingDirectory(), config.getGamePath())));
         } catch (ProgramMissingException ex) {
             compilerMissingMessage(resolveAbsolutePath(config.getWorkingDirectory(), config.getBresPath()));
-        } catch (InterruptedException ex) {
-            System.err.println("Unable to make resources: " + ex.getMessage());
-        } catch (IOException ex) {
-            System.err.println("Unable to make resources: " + ex.getMessage());
+            return null;
         }
+        
+        JifBuild.Stage stage = new JifBuild.Stage(
+                "bres:" + makeName(getSourcePath()),
+                java.util.ResourceBundle.getBundle("JIF").getString("BUILD_RESOURCES"),
+                bres.process(
+                        makeName(getSourcePath()),
+                        resolveAbsolutePath(config.getWorkingDirectory(), config.getGamePath())),
+                false);
+        stage.setMessage(bres.getOk());
+        
+        List directories = new ArrayList();
+        directories.add(new File(resolveAbsolutePath(config.getWorkingDirectory(), config.getGamePath())));
+        directories.add(new File(getSourcePath()).getParentFile());
+        stage.addInputs(new JifResourceInputs(new File(makeFile(getSourcePath(), "res")), directories));
+        stage.addOutput(new File(makeFile(getSourcePath(), "blc")));
+        stages.add(stage);
+        return stage;
     }
 
     // -------------------------------------------------------------------------
@@ -7422,6 +7767,8 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     // --- Configuration
     
     private void updateDocuments() {
+        InformDocument.setBackgroundHighlighting(config.getBackgroundHighlighting());
+
         // Apply color and font changes to all open documents
         for (int i = 0; i < getFileTabCount(); i++) {
             JifScrollPane sp = getScrollPaneAt(i);
@@ -7634,8 +7981,8 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         getSelectedTextPane().setCaretPosition(position);
     }
     
-    CharBuffer getCharBuffer() {
-        return getSelectedTextPane().getCharBuffer();
+    CharSequence getCharSequence() {
+        return getSelectedTextPane().getCharSequence();
     }
     
     JifDocument getDocument() {
@@ -7699,6 +8046,37 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         fileTabbedPane.setTitleAt(getSelectedIndex(), title);
     }
     
+    // Add a "*" to the title of the tab of a text pane changed since it was
+    // saved, which need not be the selected tab
+    void setModified(JifTextPane tp) {
+        for (int i = 0; i < getFileTabCount(); i++) {
+            if (getTextPaneAt(i) == tp) {
+                if (getTitleAt(i).indexOf("*") == -1) {
+                    fileTabbedPane.setTitleAt(i, tp.getSubPath() + "*");
+                    if (i == getSelectedIndex()) {
+                        setTitle(getJifVersion() + " - " + getSelectedPath());
+                    }
+                }
+                return;
+            }
+        }
+    }
+    
+    // Remove the "*" from the title of the tab of a text pane once it has
+    // been saved, which need not be the selected tab
+    void setSaved(JifTextPane tp) {
+        for (int i = 0; i < getFileTabCount(); i++) {
+            if (getTextPaneAt(i) == tp) {
+                String title = getTitleAt(i);
+                if (title.endsWith("*")) {
+                    fileTabbedPane.setTitleAt(i, title.substring(0, title.length()-1));
+                }
+                updateTitle();
+                return;
+            }
+        }
+    }
+    
     String getText() {
         return getSelectedTextPane().getText();
     }
@@ -7719,6 +8097,10 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
         return getScrollPaneAt(index).getPath();
     }
     
+    void setFileToolTipAt(int index, String text) {
+        fileTabbedPane.setToolTipTextAt(index, text);
+    }
+    
     JifScrollPane getScrollPaneAt(int index) {
         return (JifScrollPane) fileTabbedPane.getComponentAt(index);
     }
@@ -8351,6 +8733,31 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     // Project
     private JifProject project = new JifProject();
     
+    // Definitions found in the project source files
+    private JifSymbolIndex symbolIndex = new JifSymbolIndex();
+    
+    // Unloads the documents of idle editor tabs
+    private JifMemoryManager memory;
+    
+    // Build running in the background
+    private JifBuild build = new JifBuild();
+    private Thread buildThread = null;
+    
+    // Saves files in the background
+    private final JifFileSaver saver = new JifFileSaver();
+    private volatile boolean buildCancelled = false;
+    private List buildDiagnostics = new ArrayList();
+    
+    // Search all project files
+    private JifProjectSearch projectSearch = new JifProjectSearch();
+    private SearchOutput searchOutput = null;
+    private boolean searchRegex = false;
+    private boolean searchWholeWord = false;
+    
+    // Replace dialog conditions
+    private JCheckBox replaceRegexCheckBox;
+    private JCheckBox replaceMatchCaseCheckBox;
+    
     // Project list model
     private JifProjectListModel projectModel;
     
@@ -8363,38 +8770,8 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     private InformTreeNode globalTree;
     private InformTreeNode objectTree;
     
-    // Tree regular expressions
-    private Pattern classPattern = Pattern.compile(
-            "(?:^|;)(?:\\s|(?:!.*\n))*\n+\\s*Class\\s+(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern classToClassPattern = Pattern.compile(
-            "(?:^|;)\\s*Class\\s+(\\w+)(?:\\s|,|(?:\\(.+\\)))+class\\s+(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern constantPattern = Pattern.compile(
-            "(?:^|;)\\s*Constant\\s+(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern functionPattern = Pattern.compile(
-            ";(?:\\s|(?:!.*\n))*\n+\\s*\\[\\s*(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern globalPattern = Pattern.compile(
-            "(?:^|;)\\s*(?:Array|Global)\\s+(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern objectPattern = Pattern.compile(
-            "(?:^|;)\\s*(?:Object|Nearby)\\s+(?:->\\s+)*(\\w+)",
-            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
-    private Pattern objectToClassPattern = Pattern.compile(
-            "(?:^|;)\\s*(?:Object|Nearby)\\s+(?:->\\s+)*(\\w+)\\s+(?:\"[^\"]+\")*\\s*(?:\\w+)*(?:\\s|,)*class\\s+(\\w+)",
-            Pattern.MULTILINE|Pattern.CASE_INSENSITIVE
-            );
-    
-    // --- Tree builder maps
-    
-    // String name to Inform source code asset (Class, Object)
-    private Map fileAssets = new TreeMap();
-    // String name to Inform object details
-    private Map fileObjects = new TreeMap();
-    // String name to tree node (Class, Object)
-    private Map fileNodes = new TreeMap();
+    // Classes and objects of a file outside the project
+    private InformClassGraph fileClasses = new InformClassGraph();
     
     // New Files name counter
     private int countNewFile = 0;
@@ -8416,6 +8793,161 @@ public class jFrame extends JFrame implements JifConfigurationObserver, JifProje
     }
     
     // --- Nested classes ------------------------------------------------------
+    
+    /**
+     * Collects build output lines and appends them to the output window on
+     * the event dispatch thread, in as few updates as possible. Compiler 
+     * output is parsed for errors and warnings as it arrives.
+     */
+    class BuildOutput implements JifBuildObserver {
+        
+        // The compiler stage, may be null
+        private JifBuild.Stage compile;
+        // Number of compiler errors and warnings
+        private int errors = 0;
+        private int warnings = 0;
+        // Stages whose command line has been shown
+        private Set started = new HashSet();
+        
+        private StringBuilder pending = new StringBuilder();
+        private boolean scheduled = false;
+        
+        BuildOutput(JifBuild.Stage compile) {
+            this.compile = compile;
+        }
+        
+        public synchronized void buildOutput(JifBuild.Stage stage, String line, boolean error) {
+            start(stage);
+            if (stage != compile) {
+                append(line);
+                return;
+            }
+            InformDiagnostic diagnostic = InformDiagnostic.parse(line);
+            if (diagnostic != null) {
+                buildDiagnostics.add(diagnostic);
+                if (diagnostic.isError()) {
+                    errors++;
+                } else {
+                    warnings++;
+                }
+            }
+            append(Inform.format(line));
+        }
+        
+        public synchronized void buildStageFinished(JifBuild.Stage stage) {
+            if (stage.getState() == JifBuild.CANCELLED) {
+                return;
+            }
+            start(stage);
+            
+            JifProcess process = stage.getProcess();
+            switch (stage.getState()) {
+                case JifBuild.SKIPPED:
+                    append(java.util.ResourceBundle.getBundle("JIF").getString("BUILD_UP_TO_DATE"));
+                    break;
+                case JifBuild.FAILED:
+                    append(java.util.ResourceBundle.getBundle("JIF").getString("BUILD_FAILED") + " " + stage.getFailure());
+                    break;
+                default:
+                    append("");
+                    if (stage == compile) {
+                        append(java.util.ResourceBundle.getBundle("JIF").getString("BUILD_EXIT_CODE") + " " + process.getExitCode()
+                                + ", " + errors + " " + java.util.ResourceBundle.getBundle("JIF").getString("BUILD_ERRORS")
+                                + ", " + warnings + " " + java.util.ResourceBundle.getBundle("JIF").getString("BUILD_WARNINGS")
+                                + ", " + (process.getTime() / 1000.0) + "s");
+                    }
+                    if (stage.getMessage() != null) {
+                        append(stage.getMessage());
+                    }
+            }
+            append("");
+        }
+        
+        // Show the title and command line of a stage before its output
+        private void start(JifBuild.Stage stage) {
+            if (started.add(stage)) {
+                if (stage.getTitle() != null) {
+                    append(stage.getTitle());
+                }
+                append(stage.getProcess().getCommandLine());
+            }
+        }
+        
+        synchronized void append(String line) {
+            pending.append(line).append("\n");
+            if (!scheduled) {
+                scheduled = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                });
+            }
+        }
+        
+        void flush() {
+            String text;
+            synchronized (this) {
+                text = pending.toString();
+                pending.setLength(0);
+                scheduled = false;
+            }
+            if (text.length() > 0) {
+                if (SwingUtilities.isEventDispatchThread()) {
+                    outputAppend(text);
+                } else {
+                    final String later = text;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            outputAppend(later);
+                        }
+                    });
+                }
+            }
+        }
+    }
+    
+    // The matches found in a file, in the form of the output window
+    private String outputMatches(String path, List matches) {
+        StringBuilder out = new StringBuilder();
+        out.append("File=").append(new File(path).getName());
+        for (Iterator i = matches.iterator(); i.hasNext();) {
+            JifSearchMatch match = (JifSearchMatch) i.next();
+            out.append("\n")
+                    .append(Constants.TOKENSEARCH)
+                    .append(path)
+                    .append(Constants.TOKENSEARCH)
+                    .append(match.getLine())
+                    .append(Constants.TOKENSEARCH)
+                    .append(": ")
+                    .append(match.getText());
+        }
+        out.append("\n\n");
+        return out.toString();
+    }
+    
+    /**
+     * Appends the results of a project search to the output window, unless 
+     * another search has been started since.
+     */
+    class SearchOutput implements JifSearchObserver {
+        
+        public void searchFound(String path, List matches) {
+            final String out = outputMatches(path, matches);
+            
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (searchOutput == SearchOutput.this) {
+                        outputAppend(out);
+                    }
+                }
+            });
+        }
+        
+        public void searchFinished(int files, int matches) {
+        }
+    }
+    
      class PopupListenerProject extends MouseAdapter {
 
         public void mousePressed(MouseEvent e) {
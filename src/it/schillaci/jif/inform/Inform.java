@@ -34,11 +34,9 @@ package it.schillaci.jif.inform;
 
 import it.schillaci.jif.core.Constants;
 import it.schillaci.jif.core.GamePathMissingException;
+import it.schillaci.jif.core.JifProcess;
 import it.schillaci.jif.core.ProgramMissingException;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Set;
 import java.util.Vector;
 
@@ -67,8 +65,9 @@ public class Inform {
     }
     
     /**
-     * Runs the Inform compiler with the specified compiler switches, libraries,
-     * source file and destination file. Equivalent to the command line:
+     * Creates a process to run the Inform compiler with the specified compiler
+     * switches, libraries, source file and destination file. Equivalent to 
+     * the command line:
      * <code>Inform path switch... libraries source dest</code>  
      *
      * @param switches
@@ -79,11 +78,9 @@ public class Inform {
      *              Inform source file to compile
      * @param dest
      *              Game file name
-     * @throws IOException
+     * @return the compiler process, ready to run
      */
-    public String run(Set switches, String libraries, String source, String dest) throws IOException {
-        
-        StringBuffer output = new StringBuffer();
+    public JifProcess process(Set switches, String libraries, String source, String dest) {
         
         Vector auxV = new Vector(6);
         auxV.add(path);
@@ -93,36 +90,37 @@ public class Inform {
         auxV.add(dest);
         
         String command[] = new String[auxV.size()];
-        for (int i=0; i<auxV.size(); i++) {
-            command[i] = (String)auxV.get(i);
-            output.append(command[i] + " ");
-            output.append(i==auxV.size()-1 ? "\n" : " ");
-        }
-        
-        Process proc = Runtime.getRuntime().exec(
-                command,
-                null,
-                new File(game)
-                );
-        
-        BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream(), Constants.fileFormat));
-        String line = "";
+        auxV.toArray(command);
         
+        return new JifProcess(command, new File(game));
+    }
+    
+    /**
+     * Format a line of compiler output for the output window. Errors and 
+     * warnings are marked with the comment character so that clicking on them
+     * jumps to the source.
+     *
+     * @param line
+     *              a line of compiler output
+     * @return the line to display
+     */
+    public static String format(String line) {
         // in caso di errore o warning metto il cancelletto #
-        while ((line = br.readLine()) != null) {
-            if ( (line.indexOf("Error:") != -1) || (line.indexOf("error:") != -1)) {
-                output.append(Constants.TOKENCOMMENT + line + "\n");
-            } else if ( (line.indexOf("Warning:")!=-1) || (line.indexOf("warning:")!=-1)) {
-                output.append(Constants.TOKENCOMMENT + line + "\n");
-            } else {
-                output.append(line + "\n");
-            }
+        if ( (line.indexOf("Error:") != -1) || (line.indexOf("error:") != -1)) {
+            return Constants.TOKENCOMMENT + line;
+        } else if ( (line.indexOf("Warning:")!=-1) || (line.indexOf("warning:")!=-1)) {
+            return Constants.TOKENCOMMENT + line;
         }
-        
-        output.append("\n");
-        output.append(ok + "\n");
-        
-        return output.toString();
+        return line;
+    }
+    
+    /**
+     * Returns the message displayed when the compiler has finished
+     *
+     * @return the completion message
+     */
+    public String getOk() {
+        return ok;
     }
     
     /**
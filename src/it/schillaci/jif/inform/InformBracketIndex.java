@@ -0,0 +1,462 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformBracketIndex.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.IntList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.Element;
+
+/**
+ * InformBracketIndex: The significant brackets of a document, for finding the
+ * bracket matching the one at a position.
+ * <p>
+ * The brackets of each line are taken from the tokens of the document's 
+ * <code>InformTokenCache</code>, so that brackets within strings, single 
+ * quoted words and comments are ignored, and are kept relative to the start
+ * of their line. An edit only marks the lines it touches, whose brackets are
+ * taken again before the next lookup, continuing to the following lines
+ * while the lexer state at the start of a line changes.
+ * <p>
+ * For each kind of bracket, "()", "{}" and "[]", a segment tree over the 
+ * lines holds the change in nesting depth across each run of lines, with the
+ * lowest depth reached from its start and the highest depth reached back 
+ * from its end. A lookup scans the line of the bracket, descends the tree to
+ * the line holding the match and scans that line, so it takes a time 
+ * logarithmic in the number of lines.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformBracketIndex {
+    
+    // Kinds of bracket
+    private static final int KINDS = 3;
+    
+    // Each bracket of a line is encoded as its offset in the line, shifted
+    // left by CODE_BITS, with its kind times two plus one for a close bracket
+    private static final int CODE_BITS = 3;
+    private static final int CODE_MASK = (1 << CODE_BITS) - 1;
+    
+    private static final int[] NO_BRACKETS = new int[0];
+    
+    // The indexed document and its tokens
+    private final AbstractDocument document;
+    private final InformTokenCache tokens;
+    
+    // The brackets of each line, null for a line to be taken again
+    private final List lines = new ArrayList();
+    
+    // Lexer state at the start of each line when its brackets were taken
+    private final IntList states = new IntList();
+    
+    // Range of lines to be taken again, empty when from > to
+    private int dirtyFrom = 0;
+    private int dirtyTo = -1;
+    
+    // Segment tree over the lines for each kind of bracket, null when the
+    // lines have been added or removed since it was built
+    private int treeSize = 0;
+    private int[][] sum = null;
+    private int[][] minPrefix = null;
+    private int[][] maxSuffix = null;
+    
+    private final DocumentListener listener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            changed(e);
+        }
+        public void removeUpdate(DocumentEvent e) {
+            changed(e);
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    
+    /**
+     * Creates a new instance of InformBracketIndex for a document. The index
+     * follows the edits made to the document from then on.
+     *
+     * @param document
+     *              the document to index
+     * @param tokens
+     *              the token cache of the document
+     */
+    public InformBracketIndex(AbstractDocument document, InformTokenCache tokens) {
+        this.document = document;
+        this.tokens = tokens;
+        document.addDocumentListener(listener);
+        reset();
+    }
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Returns the position of the bracket matching the bracket at a position,
+     * searching forward from an open bracket and back from a close bracket
+     * for a bracket of the same kind at the same depth.
+     *
+     * @param position
+     *              the position of a bracket
+     * @return the position of the matching bracket, or -1 if there is no
+     *         significant bracket at the position or it is not matched
+     */
+    public int findMatch(int position) {
+        document.readLock();
+        try {
+            update();
+            Element root = document.getDefaultRootElement();
+            if (position < 0 || position >= document.getLength()) {
+                return -1;
+            }
+            int line = root.getElementIndex(position);
+            int start = root.getElement(line).getStartOffset();
+            int[] brackets = (int[]) lines.get(line);
+            int index = find(brackets, position - start);
+            if (index < 0) {
+                return -1;
+            }
+            int code = brackets[index] & CODE_MASK;
+            return ((code & 1) == 0)
+                    ? findClose(line, index, code >> 1)
+                    : findOpen(line, index, code >> 1);
+        } finally {
+            document.readUnlock();
+        }
+    }
+    
+    /**
+     * Stop following the edits made to the document
+     */
+    public void dispose() {
+        document.removeDocumentListener(listener);
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    // Forget all the lines
+    private void reset() {
+        int lineCount = document.getDefaultRootElement().getElementCount();
+        lines.clear();
+        lines.addAll(Collections.nCopies(lineCount, null));
+        states.replace(0, states.size(), lineCount, InformLexer.STATE_NORMAL);
+        dirtyFrom = 0;
+        dirtyTo = lineCount - 1;
+        sum = null;
+    }
+    
+    // Keep the lines in step with an edit, marking the lines it touches
+    private void changed(DocumentEvent e) {
+        Element root = document.getDefaultRootElement();
+        // The lines holding the edited text, as the change of lines may
+        // start after the line the edit started in
+        int first = root.getElementIndex(e.getOffset());
+        int last = (e.getType() == DocumentEvent.EventType.INSERT)
+                ? root.getElementIndex(e.getOffset() + e.getLength())
+                : first;
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null) {
+            int index = change.getIndex();
+            int removed = change.getChildrenRemoved().length;
+            int added = change.getChildrenAdded().length;
+            if (lines.size() != root.getElementCount() - added + removed) {
+                reset();
+                return;
+            }
+            // The first line of the change starts where the line it replaces
+            // did, and keeps its start state as the text before is untouched
+            int state = (index < states.size()) ? states.get(index) : InformLexer.STATE_NORMAL;
+            lines.subList(index, index + removed).clear();
+            lines.addAll(index, Collections.nCopies(added, null));
+            states.replace(index, removed, added, InformLexer.STATE_NORMAL);
+            if (added > 0) {
+                states.set(index, state);
+            }
+            if (dirtyTo >= index + removed) {
+                dirtyTo += added - removed;
+            } else if (dirtyTo >= index) {
+                dirtyTo = index;
+            }
+            first = Math.min(first, index);
+            last = Math.max(last, index + added - 1);
+            sum = null;
+        }
+        
+        for (int i = first; i <= last && i < lines.size(); i++) {
+            lines.set(i, null);
+        }
+        dirtyFrom = Math.min(dirtyFrom, first);
+        dirtyTo = Math.max(dirtyTo, Math.min(last, lines.size() - 1));
+    }
+    
+    // Take the brackets of the lines marked by edits, and of the lines 
+    // following them whose start state changes, then bring the trees up to
+    // date
+    private void update() {
+        int lineCount = lines.size();
+        if (dirtyFrom <= dirtyTo) {
+            int i = dirtyFrom;
+            while (i < lineCount) {
+                if (i > dirtyTo && lines.get(i) != null) {
+                    break;
+                }
+                states.set(i, tokens.getState(i));
+                lines.set(i, brackets(tokens.getTokens(i)));
+                if (sum != null) {
+                    updateTree(i);
+                }
+                i++;
+                if (i < lineCount && states.get(i) != tokens.getState(i)) {
+                    lines.set(i, null);
+                }
+            }
+            dirtyFrom = lineCount;
+            dirtyTo = -1;
+        }
+        if (sum == null) {
+            buildTree();
+        }
+    }
+    
+    // Find the brackets among the tokens of a line
+    private static int[] brackets(int[] line) {
+        IntList brackets = null;
+        for (int i = 0; i < line.length; i += InformTokenCache.TOKEN_SIZE) {
+            InformToken.Lexeme type = InformToken.getLexeme(line[i + InformTokenCache.TYPE]);
+            int code;
+            if (type == InformToken.OPENBRACKET) {
+                code = 0;
+            } else if (type == InformToken.CLOSEBRACKET) {
+                code = 1;
+            } else if (type == InformToken.OPENBRACE) {
+                code = 2;
+            } else if (type == InformToken.CLOSEBRACE) {
+                code = 3;
+            } else if (type == InformToken.OPENROUTINE) {
+                code = 4;
+            } else if (type == InformToken.CLOSEROUTINE) {
+                code = 5;
+            } else {
+                continue;
+            }
+            if (brackets == null) {
+                brackets = new IntList();
+            }
+            brackets.add((line[i + InformTokenCache.START] << CODE_BITS) | code);
+        }
+        return (brackets == null) ? NO_BRACKETS : brackets.toArray();
+    }
+    
+    // Index of the bracket at an offset in a line, or -1
+    private static int find(int[] brackets, int offset) {
+        int lo = 0;
+        int hi = brackets.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = brackets[mid] >> CODE_BITS;
+            if (at < offset) {
+                lo = mid + 1;
+            } else if (at > offset) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    // Change in depth of a bracket of a kind: +1 open, -1 close, 0 otherwise
+    private static int depth(int bracket, int kind) {
+        int code = bracket & CODE_MASK;
+        return ((code >> 1) != kind) ? 0 : ((code & 1) == 0) ? 1 : -1;
+    }
+    
+    // Find the close bracket matching an open bracket
+    private int findClose(int line, int index, int kind) {
+        int[] brackets = (int[]) lines.get(line);
+        int level = 1;
+        for (int i = index + 1; i < brackets.length; i++) {
+            level += depth(brackets[i], kind);
+            if (level == 0) {
+                return position(line, brackets[i]);
+            }
+        }
+        
+        int[] acc = new int[] { level };
+        int match = forward(kind, 1, 0, treeSize - 1, line + 1, acc);
+        if (match < 0) {
+            return -1;
+        }
+        brackets = (int[]) lines.get(match);
+        level = acc[0];
+        for (int i = 0; i < brackets.length; i++) {
+            level += depth(brackets[i], kind);
+            if (level == 0) {
+                return position(match, brackets[i]);
+            }
+        }
+        return -1;
+    }
+    
+    // Find the open bracket matching a close bracket
+    private int findOpen(int line, int index, int kind) {
+        int[] brackets = (int[]) lines.get(line);
+        int level = -1;
+        for (int i = index - 1; i >= 0; i--) {
+            level += depth(brackets[i], kind);
+            if (level == 0) {
+                return position(line, brackets[i]);
+            }
+        }
+        
+        int[] acc = new int[] { level };
+        int match = backward(kind, 1, 0, treeSize - 1, line - 1, acc);
+        if (match < 0) {
+            return -1;
+        }
+        brackets = (int[]) lines.get(match);
+        level = acc[0];
+        for (int i = brackets.length - 1; i >= 0; i--) {
+            level += depth(brackets[i], kind);
+            if (level == 0) {
+                return position(match, brackets[i]);
+            }
+        }
+        return -1;
+    }
+    
+    private int position(int line, int bracket) {
+        return document.getDefaultRootElement().getElement(line).getStartOffset()
+                + (bracket >> CODE_BITS);
+    }
+    
+    // The first line from a line on at which the depth, starting from the
+    // level held in acc, falls to zero. On return acc holds the level at the
+    // start of that line.
+    private int forward(int kind, int node, int lo, int hi, int from, int[] acc) {
+        if (hi < from) {
+            return -1;
+        }
+        if (lo >= from && acc[0] + minPrefix[kind][node] > 0) {
+            acc[0] += sum[kind][node];
+            return -1;
+        }
+        if (lo == hi) {
+            return lo;
+        }
+        int mid = (lo + hi) >>> 1;
+        int match = forward(kind, 2 * node, lo, mid, from, acc);
+        return (match >= 0) ? match : forward(kind, 2 * node + 1, mid + 1, hi, from, acc);
+    }
+    
+    // The last line up to a line at which the depth, going back from the 
+    // (negative) level held in acc, rises to zero. On return acc holds the
+    // level at the end of that line.
+    private int backward(int kind, int node, int lo, int hi, int to, int[] acc) {
+        if (lo > to) {
+            return -1;
+        }
+        if (hi <= to && acc[0] + maxSuffix[kind][node] < 0) {
+            acc[0] += sum[kind][node];
+            return -1;
+        }
+        if (lo == hi) {
+            return lo;
+        }
+        int mid = (lo + hi) >>> 1;
+        int match = backward(kind, 2 * node + 1, mid + 1, hi, to, acc);
+        return (match >= 0) ? match : backward(kind, 2 * node, lo, mid, to, acc);
+    }
+    
+    private void buildTree() {
+        int lineCount = lines.size();
+        treeSize = 1;
+        while (treeSize < lineCount) {
+            treeSize <<= 1;
+        }
+        sum = new int[KINDS][2 * treeSize];
+        minPrefix = new int[KINDS][2 * treeSize];
+        maxSuffix = new int[KINDS][2 * treeSize];
+        for (int i = 0; i < lineCount; i++) {
+            setLeaf(i);
+        }
+        for (int node = treeSize - 1; node >= 1; node--) {
+            join(node);
+        }
+    }
+    
+    private void updateTree(int line) {
+        setLeaf(line);
+        for (int node = (treeSize + line) >> 1; node >= 1; node >>= 1) {
+            join(node);
+        }
+    }
+    
+    // The depth changes across a line, counting the empty prefix and suffix
+    private void setLeaf(int line) {
+        int[] brackets = (int[]) lines.get(line);
+        int node = treeSize + line;
+        for (int kind = 0; kind < KINDS; kind++) {
+            int level = 0;
+            int low = 0;
+            for (int i = 0; i < brackets.length; i++) {
+                level += depth(brackets[i], kind);
+                low = Math.min(low, level);
+            }
+            int high = 0;
+            int back = 0;
+            for (int i = brackets.length - 1; i >= 0; i--) {
+                back += depth(brackets[i], kind);
+                high = Math.max(high, back);
+            }
+            sum[kind][node] = level;
+            minPrefix[kind][node] = low;
+            maxSuffix[kind][node] = high;
+        }
+    }
+    
+    private void join(int node) {
+        int left = 2 * node;
+        int right = left + 1;
+        for (int kind = 0; kind < KINDS; kind++) {
+            sum[kind][node] = sum[kind][left] + sum[kind][right];
+            minPrefix[kind][node] = Math.min(minPrefix[kind][left],
+                    sum[kind][left] + minPrefix[kind][right]);
+            maxSuffix[kind][node] = Math.max(maxSuffix[kind][right],
+                    sum[kind][right] + maxSuffix[kind][left]);
+        }
+    }
+}
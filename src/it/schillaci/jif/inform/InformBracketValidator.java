@@ -0,0 +1,430 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformBracketValidator.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.IntList;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+
+/**
+ * InformBracketValidator: Keeps the bracket errors of an Inform document up 
+ * to date as it is edited.
+ * <p>
+ * The document is split into regions at the end of each top level directive
+ * or routine, that is after each semicolon outside any brackets. Once the 
+ * edits to the document pause, the region holding the edits is checked again
+ * on a worker thread, continuing into the following regions until the check
+ * reaches the end of a region with no brackets left open. Errors and region
+ * ends are kept as document <code>Position</code>s so they move with the 
+ * text, and listeners are told when the errors change. The results of a 
+ * check are dropped if the document is edited before they are applied, the
+ * edit schedules a new check.
+ * <p>
+ * A bracket is in error when it is not closed, not opened, or closed by a
+ * bracket of another kind. Brackets in strings, words and comments are 
+ * ignored. The tokens are read from the document's 
+ * <code>InformTokenCache</code>, so the text is only lexed again where it has
+ * been edited.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformBracketValidator {
+    
+    // Milliseconds the edits must pause for before the document is checked
+    private static final int DELAY = 400;
+    
+    // Single worker thread shared by all the validators
+    private static ExecutorService worker = null;
+    
+    // The validated document and its tokens
+    private final AbstractDocument document;
+    private final InformTokenCache tokens;
+    
+    // Positions of the bracket errors and of the region ends, in order
+    private final List errors = new ArrayList();
+    private final List boundaries = new ArrayList();
+    
+    // The range of text edited since it was last checked
+    private boolean damaged = true;
+    private int damageStart = 0;
+    private int damageEnd;
+    
+    // Count of the edits made to the document, used to discard stale checks
+    private volatile int generation = 0;
+    
+    // Starts a check once the edits pause
+    private final Timer timer;
+    
+    private final List listeners = new ArrayList();
+    
+    private final DocumentListener listener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            inserted(e.getOffset(), e.getLength());
+        }
+        public void removeUpdate(DocumentEvent e) {
+            removed(e.getOffset(), e.getLength());
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    
+    /**
+     * Creates a new instance of InformBracketValidator. The whole document is
+     * checked once the validator has been created, and the edits made to the
+     * document are followed from then on. It must be created on the event
+     * dispatch thread.
+     *
+     * @param document
+     *              the document to validate
+     * @param tokens
+     *              the token cache of the document
+     */
+    public InformBracketValidator(AbstractDocument document, InformTokenCache tokens) {
+        this.document = document;
+        this.tokens = tokens;
+        damageEnd = document.getLength();
+        timer = new Timer(DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                schedule();
+            }
+        });
+        timer.setRepeats(false);
+        document.addDocumentListener(listener);
+        timer.start();
+    }
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Check the edited part of the document straight away, on the calling 
+     * thread, which must be the event dispatch thread
+     */
+    public void validate() {
+        if (!damaged) {
+            return;
+        }
+        timer.stop();
+        int start = getRegionStart();
+        int end = damageEnd;
+        Object[] ends = boundaries.toArray();
+        Check check;
+        document.readLock();
+        try {
+            check = new Check(start, end, ends);
+        } finally {
+            document.readUnlock();
+        }
+        apply(generation, check);
+    }
+    
+    /**
+     * Returns the positions of the bracket errors found by the last check,
+     * in order. Errors in text edited since may be missing.
+     *
+     * @return the error positions
+     */
+    public int[] getErrors() {
+        int[] offsets = new int[errors.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = ((Position) errors.get(i)).getOffset();
+        }
+        return offsets;
+    }
+    
+    /**
+     * Tests if there are edits which have not been checked yet
+     *
+     * @return <code>true</code> if the errors may be out of date
+     */
+    public boolean isDamaged() {
+        return damaged;
+    }
+    
+    /**
+     * Adds a listener told on the event dispatch thread each time a check
+     * has been applied
+     *
+     * @param l
+     *              the listener
+     */
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(l);
+    }
+    
+    /**
+     * Removes a listener added by <code>addChangeListener</code>
+     *
+     * @param l
+     *              the listener
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(l);
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    private void inserted(int offset, int length) {
+        generation++;
+        if (damaged) {
+            damageStart = Math.min(damageStart, offset);
+            damageEnd = (damageEnd >= offset) ? damageEnd + length : damageEnd;
+            damageEnd = Math.max(damageEnd, offset + length);
+        } else {
+            damaged = true;
+            damageStart = offset;
+            damageEnd = offset + length;
+        }
+        timer.restart();
+    }
+    
+    private void removed(int offset, int length) {
+        generation++;
+        if (damaged) {
+            damageStart = Math.min(damageStart, offset);
+            if (damageEnd > offset + length) {
+                damageEnd -= length;
+            } else if (damageEnd > offset) {
+                damageEnd = offset;
+            }
+            damageEnd = Math.max(damageEnd, offset);
+        } else {
+            damaged = true;
+            damageStart = offset;
+            damageEnd = offset;
+        }
+        timer.restart();
+    }
+    
+    // The end of the last region ending before the edits
+    private int getRegionStart() {
+        int index = search(boundaries.toArray(), damageStart);
+        return (index == 0) ? 0 : ((Position) boundaries.get(index - 1)).getOffset();
+    }
+    
+    // The index of the first of an ordered array of positions at or after an
+    // offset
+    private static int search(Object[] positions, int offset) {
+        int lo = 0;
+        int hi = positions.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((Position) positions[mid]).getOffset() < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    // Check the edits on the worker thread
+    private void schedule() {
+        if (!damaged) {
+            return;
+        }
+        final int jobGeneration = generation;
+        final int start = getRegionStart();
+        final int end = damageEnd;
+        final Object[] ends = boundaries.toArray();
+        getWorker().execute(new Runnable() {
+            public void run() {
+                final Check check;
+                document.readLock();
+                try {
+                    if (generation != jobGeneration) {
+                        // Superseded by a newer edit
+                        return;
+                    }
+                    check = new Check(start, end, ends);
+                } finally {
+                    document.readUnlock();
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        apply(jobGeneration, check);
+                    }
+                });
+            }
+        });
+    }
+    
+    // Replace the errors and region ends within the checked text
+    private void apply(int jobGeneration, Check check) {
+        if (!damaged || generation != jobGeneration) {
+            return;
+        }
+        try {
+            replace(errors, check.start, check.stop, check.errors.toArray());
+            replace(boundaries, check.start + 1, check.stop + 1, check.boundaries.toArray());
+        } catch (BadLocationException ex) {
+            System.err.println("Bracket validation: " + ex.getMessage());
+        }
+        damaged = false;
+        
+        ChangeEvent event = new ChangeEvent(this);
+        Object[] targets = listeners.toArray();
+        for (int i = 0; i < targets.length; i++) {
+            ((ChangeListener) targets[i]).stateChanged(event);
+        }
+    }
+    
+    // Replace the positions from start up to stop with new positions
+    private void replace(List positions, int start, int stop, int[] offsets)
+            throws BadLocationException {
+        
+        Object[] current = positions.toArray();
+        int from = search(current, start);
+        int to = search(current, stop);
+        positions.subList(from, to).clear();
+        List created = new ArrayList(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            created.add(document.createPosition(offsets[i]));
+        }
+        positions.addAll(from, created);
+    }
+    
+    private static synchronized ExecutorService getWorker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "InformBracketValidator");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return worker;
+    }
+    
+    // Whether a region ended at an offset when the document was last checked
+    private static boolean isBoundary(Object[] ends, int offset) {
+        int index = search(ends, offset);
+        return index < ends.length && ((Position) ends[index]).getOffset() == offset;
+    }
+    
+    // --- Check ---------------------------------------------------------------
+    
+    // The brackets of the document from the start of a region, checked until
+    // the end of a region after the edits with no brackets left open. This is
+    // created with the document read lock held.
+    private class Check {
+        
+        // The text checked
+        final int start;
+        int stop;
+        
+        // Offsets of the errors and of the region ends found, in order
+        final IntList errors = new IntList();
+        final IntList boundaries = new IntList();
+        
+        Check(int start, int damageEnd, Object[] ends) {
+            this.start = start;
+            int length = document.getLength();
+            // Past the end, so positions left at the end are replaced too
+            stop = length + 1;
+            
+            // Open brackets, as their offset shifted left two with their kind
+            IntList open = new IntList();
+            // The region starts after a semicolon outside any string, so its
+            // first token starts there
+            InformTokenCache.Tokens token = tokens.getTokens(start, length);
+            while (token.next()) {
+                InformToken.Lexeme type = token.getType();
+                int kind = -1;
+                boolean opens = false;
+                if (type == InformToken.OPENBRACKET || type == InformToken.CLOSEBRACKET) {
+                    kind = 0;
+                    opens = (type == InformToken.OPENBRACKET);
+                } else if (type == InformToken.OPENBRACE || type == InformToken.CLOSEBRACE) {
+                    kind = 1;
+                    opens = (type == InformToken.OPENBRACE);
+                } else if (type == InformToken.OPENROUTINE || type == InformToken.CLOSEROUTINE) {
+                    kind = 2;
+                    opens = (type == InformToken.OPENROUTINE);
+                } else if (type == InformToken.SEMICOLON && open.size() == 0) {
+                    int end = token.getEnd();
+                    boundaries.add(end);
+                    // The text after an unchanged region end is as it was
+                    if (end > damageEnd && isBoundary(ends, end)) {
+                        stop = end;
+                        break;
+                    }
+                    continue;
+                } else {
+                    continue;
+                }
+                
+                int position = token.getStart();
+                if (opens) {
+                    open.add((position << 2) | kind);
+                } else if (open.size() == 0) {
+                    errors.add(position);
+                } else {
+                    int last = open.get(open.size() - 1);
+                    open.replace(open.size() - 1, 1, 0, 0);
+                    if ((last & 3) != kind) {
+                        errors.add(last >> 2);
+                        errors.add(position);
+                    }
+                }
+            }
+            
+            for (int i = 0; i < open.size(); i++) {
+                errors.add(open.get(i) >> 2);
+            }
+            int[] sorted = errors.toArray();
+            Arrays.sort(sorted);
+            errors.clear();
+            for (int i = 0; i < sorted.length; i++) {
+                errors.add(sorted[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformClassGraph.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+
+import it.schillaci.jif.core.IntList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * InformClassGraph: The inheritance of the classes and objects defined in a
+ * set of Inform source files.
+ * <p>
+ * Each name is interned once as an int id, and the classes each id inherits
+ * from and the classes and objects inheriting from it are kept as lists of
+ * ids. The graph is updated a file at a time from the definitions found in
+ * the file, taking out the links made by the previous definitions of the 
+ * file first, so no other file is looked at again. A name that is only used
+ * as a class keeps its place in the graph, without a definition.
+ * <p>
+ * The graph is not synchronized.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformClassGraph {
+    
+    // Interned names, the id of a name is its index in the list
+    private final List names = new ArrayList();
+    private final Map ids = new HashMap();
+    
+    // For each id, the definitions of the name as a list of InformSymbol,
+    // empty for names which are only used as a class
+    private final List definitions = new ArrayList();
+    
+    // For each id, the ids of the classes it inherits from and of the 
+    // classes and objects inheriting from it, as an IntList
+    private final List parents = new ArrayList();
+    private final List children = new ArrayList();
+    
+    // File path to the list of class and object definitions in the file
+    private final Map files = new HashMap();
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Replaces the classes and objects defined in a file
+     *
+     * @param path
+     *              the path of the Inform source file
+     * @param symbols
+     *              the list of <code>InformSymbol</code> definitions in the 
+     *              file, definitions other than classes and objects are 
+     *              ignored
+     */
+    public void update(String path, List symbols) {
+        remove(path);
+        
+        List defined = new ArrayList();
+        for (Iterator i = symbols.iterator(); i.hasNext();) {
+            InformSymbol symbol = (InformSymbol) i.next();
+            if (symbol.getKind() != InformSymbol.CLASS
+                    && symbol.getKind() != InformSymbol.OBJECT) {
+                continue;
+            }
+            int id = intern(symbol.getName());
+            getDefinitions(id).add(symbol);
+            for (Iterator j = symbol.getClasses().iterator(); j.hasNext();) {
+                int parent = intern((String) j.next());
+                getParents(id).add(parent);
+                getChildren(parent).add(id);
+            }
+            defined.add(symbol);
+        }
+        if (!defined.isEmpty()) {
+            files.put(path, defined);
+        }
+    }
+    
+    /**
+     * Removes the classes and objects defined in a file
+     *
+     * @param path
+     *              the path of the Inform source file
+     */
+    public void remove(String path) {
+        List defined = (List) files.remove(path);
+        if (defined == null) {
+            return;
+        }
+        
+        for (Iterator i = defined.iterator(); i.hasNext();) {
+            InformSymbol symbol = (InformSymbol) i.next();
+            int id = getId(symbol.getName());
+            getDefinitions(id).remove(symbol);
+            for (Iterator j = symbol.getClasses().iterator(); j.hasNext();) {
+                int parent = getId((String) j.next());
+                unlink(getParents(id), parent);
+                unlink(getChildren(parent), id);
+            }
+        }
+    }
+    
+    /**
+     * Removes all the files from the graph
+     */
+    public void clear() {
+        names.clear();
+        ids.clear();
+        definitions.clear();
+        parents.clear();
+        children.clear();
+        files.clear();
+    }
+    
+    /**
+     * Returns the first definition of a class or object
+     *
+     * @param name
+     *              the name of the class or object
+     * @return the definition, or <code>null</code> if the name is not defined
+     */
+    public InformSymbol getDefinition(String name) {
+        int id = getId(name.toLowerCase());
+        if (id == -1 || getDefinitions(id).isEmpty()) {
+            return null;
+        }
+        return (InformSymbol) getDefinitions(id).get(0);
+    }
+    
+    /**
+     * Tests whether a name is a class, either defined as a class or used as
+     * the class of another definition
+     *
+     * @param name
+     *              the name to test
+     * @return <code>true</code> if the name is a class
+     */
+    public boolean isClass(String name) {
+        int id = getId(name.toLowerCase());
+        return id != -1 && isClass(id);
+    }
+    
+    /**
+     * Returns the classes that do not inherit from another class
+     *
+     * @return the list of class names in name order
+     */
+    public List getRoots() {
+        List roots = new ArrayList();
+        for (int id = 0; id < names.size(); id++) {
+            if (getParents(id).size() == 0 && isClass(id)) {
+                roots.add(names.get(id));
+            }
+        }
+        Collections.sort(roots);
+        return roots;
+    }
+    
+    /**
+     * Returns the classes and objects inheriting directly from a class
+     *
+     * @param name
+     *              the name of the class
+     * @return the list of class and object names in name order
+     */
+    public List getChildren(String name) {
+        TreeSet set = new TreeSet();
+        int id = getId(name.toLowerCase());
+        if (id != -1) {
+            IntList list = getChildren(id);
+            for (int i = 0; i < list.size(); i++) {
+                set.add(names.get(list.get(i)));
+            }
+        }
+        return new ArrayList(set);
+    }
+    
+    /**
+     * Returns the classes a class or object inherits from, directly or 
+     * through other classes
+     *
+     * @param name
+     *              the name of the class or object
+     * @return the list of class names, nearest first
+     */
+    public List getAncestors(String name) {
+        return walk(name, parents, false);
+    }
+    
+    /**
+     * Returns the objects of a class, including the objects of the classes 
+     * which inherit from it
+     *
+     * @param name
+     *              the name of the class
+     * @return the list of object names in name order
+     */
+    public List getInstances(String name) {
+        List instances = walk(name, children, true);
+        Collections.sort(instances);
+        return instances;
+    }
+    
+    // Breadth first walk of the graph from a name along one of the adjacency
+    // lists, each id is only visited once so loops in the source are harmless
+    private List walk(String name, List adjacency, boolean objects) {
+        List list = new ArrayList();
+        int start = getId(name.toLowerCase());
+        if (start == -1) {
+            return list;
+        }
+        
+        boolean[] visited = new boolean[names.size()];
+        IntList queue = new IntList();
+        visited[start] = true;
+        queue.add(start);
+        for (int i = 0; i < queue.size(); i++) {
+            IntList next = (IntList) adjacency.get(queue.get(i));
+            for (int j = 0; j < next.size(); j++) {
+                int id = next.get(j);
+                if (visited[id]) {
+                    continue;
+                }
+                visited[id] = true;
+                queue.add(id);
+                if (!objects || !isClass(id)) {
+                    list.add(names.get(id));
+                }
+            }
+        }
+        return list;
+    }
+    
+    // The id of a name, adding the name if it is new
+    private int intern(String name) {
+        Integer id = (Integer) ids.get(name);
+        if (id == null) {
+            id = Integer.valueOf(names.size());
+            ids.put(name, id);
+            names.add(name);
+            definitions.add(new ArrayList(1));
+            parents.add(new IntList(1));
+            children.add(new IntList(1));
+        }
+        return id.intValue();
+    }
+    
+    // The id of a name, or -1 if the name is not in the graph
+    private int getId(String name) {
+        Integer id = (Integer) ids.get(name);
+        return (id == null) ? -1 : id.intValue();
+    }
+    
+    // A class has a class definition or something inheriting from it
+    private boolean isClass(int id) {
+        if (getChildren(id).size() > 0) {
+            return true;
+        }
+        List list = getDefinitions(id);
+        for (int i = 0; i < list.size(); i++) {
+            if (((InformSymbol) list.get(i)).getKind() == InformSymbol.CLASS) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Remove one link to an id from an adjacency list, a class used by two
+    // definitions of a name is linked twice
+    private static void unlink(IntList list, int id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == id) {
+                list.replace(i, 1, 0, 0);
+                return;
+            }
+        }
+    }
+    
+    private List getDefinitions(int id) {
+        return (List) definitions.get(id);
+    }
+    
+    private IntList getParents(int id) {
+        return (IntList) parents.get(id);
+    }
+    
+    private IntList getChildren(int id) {
+        return (IntList) children.get(id);
+    }
+}
@@ -0,0 +1,189 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformDiagnostic.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An error or warning reported by the Inform compiler, parsed from a line of
+ * compiler output in any of the -E0, -E1 or -E2 error formats.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformDiagnostic {
+
+    /**
+     * Type safe enumeration for the severity of a diagnostic
+     */
+    public static class Severity {
+
+        // Name of the severity
+        private String name;
+
+        private Severity(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "InformDiagnostic.Severity[Name: " + name + "]";
+        }
+    }
+
+    public static final Severity FATAL   = new Severity("fatal error");
+    public static final Severity ERROR   = new Severity("error");
+    public static final Severity WARNING = new Severity("warning");
+
+    // -E1 (Microsoft) format: file(line): Error: message
+    private static final Pattern e1Pattern = Pattern.compile(
+            "^\\s*(.+?)\\((\\d+)\\)\\s*:\\s*(fatal error|error|warning)\\s*:?\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE);
+    // -E2 (Macintosh MPW) format: File "file"; Line line # Error: message
+    private static final Pattern e2Pattern = Pattern.compile(
+            "^\\s*File\\s+\"(.+?)\"\\s*;\\s*Line\\s+(\\d+)\\s*#\\s*(fatal error|error|warning)\\s*:?\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE);
+    // -E0 (Archimedes) format: "file", line line: Error: message
+    private static final Pattern e0Pattern = Pattern.compile(
+            "^\\s*(?:\"(.+?)\"\\s*,\\s*)?line\\s+(\\d+)\\s*:\\s*(fatal error|error|warning)\\s*:?\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE);
+    // Errors without a source position, e.g. Fatal error: Couldn't open
+    private static final Pattern plainPattern = Pattern.compile(
+            "^\\s*\\**\\s*(fatal error|error|warning)\\s*:\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE);
+
+    // Severity of the diagnostic
+    private Severity severity;
+    // Path of the source file as reported by the compiler, may be null
+    private String path;
+    // Line number in the source file (starting at 1), or -1 if unknown
+    private int line;
+    // Text of the message
+    private String message;
+
+    /**
+     * Creates a new diagnostic
+     *
+     * @param severity
+     *              the severity of the diagnostic
+     * @param path
+     *              the source file, or <code>null</code> if not known
+     * @param line
+     *              the line number, or -1 if not known
+     * @param message
+     *              the text of the message
+     */
+    public InformDiagnostic(Severity severity, String path, int line, String message) {
+        this.severity = severity;
+        this.path = path;
+        this.line = line;
+        this.message = message;
+    }
+
+    /**
+     * Parse a line of compiler output
+     *
+     * @param text
+     *              the line of output
+     * @return the diagnostic, or <code>null</code> if the line is not an 
+     *         error or warning
+     */
+    public static InformDiagnostic parse(String text) {
+        Matcher m = e1Pattern.matcher(text);
+        if (!m.matches()) {
+            m = e2Pattern.matcher(text);
+        }
+        if (!m.matches()) {
+            m = e0Pattern.matcher(text);
+        }
+        if (m.matches()) {
+            return new InformDiagnostic(
+                    severity(m.group(3)),
+                    m.group(1),
+                    Integer.parseInt(m.group(2)),
+                    m.group(4));
+        }
+
+        m = plainPattern.matcher(text);
+        if (m.matches()) {
+            return new InformDiagnostic(severity(m.group(1)), null, -1, m.group(2));
+        }
+        return null;
+    }
+
+    private static Severity severity(String name) {
+        if (name.equalsIgnoreCase("warning")) {
+            return WARNING;
+        }
+        return name.equalsIgnoreCase("error") ? ERROR : FATAL;
+    }
+
+    public boolean isError() {
+        return severity != WARNING;
+    }
+
+    public boolean isWarning() {
+        return severity == WARNING;
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    // --- Object methods ------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return ((path == null) ? "" : path + "(" + line + "): ")
+                + severity.getName() + ": " + message;
+    }
+}
@@ -32,16 +32,20 @@ package it.schillaci.jif.inform;
  *
  */
 
+import it.schillaci.jif.core.IntList;
 import it.schillaci.jif.core.JifDocument;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.Stack;
-import java.util.TreeSet;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Element;
 import javax.swing.text.GapContent;
 import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
 
 /**
@@ -52,9 +56,35 @@ import javax.swing.text.StyleContext;
  * @version 2.0
  * @since Jif 3.2
  */
-public class InformDocument extends JifDocument implements InformParser.Callback {
+public class InformDocument extends JifDocument {
 
     private static final long serialVersionUID = 5856047697369563208L;
+
+    // Marker for a line whose lexer start state has not been determined
+    static final int STATE_UNKNOWN = -1;
+
+    // Whether syntax highlighting is done on a background thread
+    private static boolean backgroundHighlighting = false;
+
+    // Lexer state at the start of each line of the document
+    final IntList lineStates = new IntList();
+
+    // Count of the edits made to the document, used to discard stale
+    // background highlighting
+    private volatile int generation = 0;
+
+    // Lexer and segment reused for highlighting on the event dispatch thread
+    private final InformLexer lexer = new InformLexer("");
+    private final Segment segment = new Segment();
+
+    // Background highlighter for the document
+    private final InformHighlighter highlighter = new InformHighlighter(this);
+
+    // Whether the text being loaded is left to the background highlighter
+    private boolean deferHighlighting = false;
+
+    // Bracket validator for the document, created on first use
+    private InformBracketValidator validator = null;
     
     /**
      * Constructs an Inform document with a shared set of styles for syntax
@@ -131,7 +161,31 @@ public class InformDocument extends JifDocument implements InformParser.Callback
             throws BadLocationException {
 
         super.insertString(offset, str, getStyle(InformSyntax.Normal.getName()));
-        processChangedLines(offset, str.length());
+        changedLines(offset, str.length());
+
+    }
+
+    /**
+     * Load the text read from a file into the document. The text is inserted
+     * without highlighting, the lines are left for the background highlighter
+     * whether or not background highlighting is enabled for editing.
+     * 
+     * @param offset
+     *            The offset to insert the text
+     * @param str
+     *            The text read from the file
+     * @throws BadLocationException
+     *            If the insert action fails
+     */
+    @Override
+    public void load(int offset, String str) throws BadLocationException {
+
+        deferHighlighting = true;
+        try {
+            insertString(offset, str, null);
+        } finally {
+            deferHighlighting = false;
+        }
 
     }
 
@@ -149,13 +203,57 @@ public class InformDocument extends JifDocument implements InformParser.Callback
     public void remove(int offset, int length) throws BadLocationException {
 
         super.remove(offset, length);
-        processChangedLines(offset, length);
+        changedLines(offset, 0);
+
+    }
+
+    /**
+     * Keep the lexer start states in step with the lines of the document when
+     * text is inserted. Lines created by the insertion have an unknown start
+     * state until they are highlighted.
+     *
+     * @param chng
+     *            a description of the document change
+     * @param attr
+     *            the attributes for the inserted text
+     */
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+
+        super.insertUpdate(chng, attr);
+        generation++;
+        updateLineStates(chng);
+
+    }
+
+    /**
+     * Keep the lexer start states in step with the lines of the document when
+     * text is removed.
+     *
+     * @param chng
+     *            a description of the document change
+     */
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+
+        super.removeUpdate(chng);
+        generation++;
+        updateLineStates(chng);
 
     }
 
     /**
      * Determine the area of the document whose syntax highlighting is impacted
-     * by the change of source content
+     * by the change of source content. Highlighting restarts at the first line
+     * with a known lexer start state at or before the change and continues a
+     * line at a time until the changed lines have been processed and the
+     * lexer state at the start of a line matches the state it was last
+     * highlighted with. The tokens are read from the document's token cache,
+     * which only lexes the damaged region again unless the change opens or
+     * closes a string spanning several lines.
+     * <p>
+     * With background highlighting the changed lines are only marked as
+     * damaged and the highlighting is left to a worker thread.
      *
      * @param offset
      *            The initial offset of the change
@@ -167,47 +265,41 @@ public class InformDocument extends JifDocument implements InformParser.Callback
     public void processChangedLines(int offset, int length)
             throws BadLocationException {
 
-        Element line;
-        int startOffset = offset;
-        int changeOffset = offset;
-        int changeLength = length;
-        MutableAttributeSet highlight = getStyle(InformSyntax.Normal.getName());
-        MutableAttributeSet tokenCheck = getStyle(InformSyntax.Normal.getName());
-        
-        // Locate start of first highlight token at insert/remove offset 
-        
-        if (changeOffset>0) {
-            
-            // Check for the element before the insertion/removal point (offset-1) so if the
-            // insertion/removal point is at the boundary of two elements we get the previous
-            // highlight token not the following highlight token 
-            
-            Element token = getCharacterElement(offset-1);
-            startOffset = token.getStartOffset();
-            highlight = (MutableAttributeSet) token.getAttributes();
-            
-            tokenCheck = getStyle((String)highlight.getAttribute(AttributeSet.NameAttribute));
-            
-            while (highlight.containsAttributes(tokenCheck) && changeOffset>0) {
-                changeOffset = startOffset;
-                token = getCharacterElement(changeOffset-1);
-                startOffset = token.getStartOffset();
-                highlight = (MutableAttributeSet) token.getAttributes();
+        Element root = getDefaultRootElement();
+        int lineCount = root.getElementCount();
+
+        if (lineStates.size() != lineCount) {
+            lineStates.replace(0, lineStates.size(), lineCount, STATE_UNKNOWN);
+        }
+
+        int index = root.getElementIndex(offset);
+        int lastIndex = root.getElementIndex(offset + length);
+
+        if (backgroundHighlighting || deferHighlighting) {
+            for (int i = index; i <= lastIndex; i++) {
+                lineStates.set(i, STATE_UNKNOWN);
             }
+            highlighter.schedule();
+            return;
         }
-        
-        // Find the length of the text in the document impacted by the insert/remove. 
-        // The length of the text between the start of the first highlight token at the insert point
-        // to the end of the current line plus the length of the text being inserted into the document.
-        
-        if (length>0) {
-            line = getParagraphElement(offset+length);
-        } else {
-            line = getParagraphElement(offset);
+
+        // Back up to the nearest line that has been highlighted
+        while (index > 0 && lineStates.get(index) == STATE_UNKNOWN) {
+            index--;
         }
-        changeLength = line.getEndOffset()-changeOffset; 
 
-        applyHighlighting(changeOffset, changeLength);
+        InformTokenCache tokens = getTokenCache();
+        while (index < lineCount) {
+            int state = tokens.getState(index);
+
+            // Stop once the lexer state converges with the remaining lines
+            if (index > lastIndex && lineStates.get(index) == state) {
+                break;
+            }
+            lineStates.set(index, state);
+            highlightLine(tokens, index);
+            index++;
+        }
 
     }
     
@@ -224,62 +316,282 @@ public class InformDocument extends JifDocument implements InformParser.Callback
      */
     public void applyHighlighting(int offset, int length) throws BadLocationException {
 
+        applyHighlighting(offset, length, InformLexer.STATE_NORMAL);
+
+    }
+
+    /**
+     * Apply inform syntax highlighting to the specified portion of the document
+     * starting in the specified lexer state
+     *
+     * @param offset
+     *            The initial offset at which to apply syntax highlighting
+     * @param length
+     *            The changeLength of the document text to be highlighted
+     * @param state
+     *            The lexer state at the initial offset
+     * @return the lexer state at the end of the highlighted text
+     * @throws BadLocationException
+     *            If applying highlighting fails
+     */
+    public int applyHighlighting(int offset, int length, int state)
+            throws BadLocationException {
+
         int startOffset;
         int endOffset;
         int changeLength;
         MutableAttributeSet syntax;
 
-        String source = getText(offset, length);
-        InformLexer lexer = new InformLexer(source, offset);
-        InformToken token = lexer.nextElement();
+        // Lex the document content in place rather than copying it out
+        getText(offset, length, segment);
+        lexer.reset(segment, offset, state);
 
-        while (token.getType() != InformToken.EOS) {
+        while (lexer.advance() != InformToken.EOS) {
 
-            startOffset = token.getStartPosition();
-            endOffset = token.getEndPosition();
+            startOffset = lexer.getTokenStart();
+            endOffset = lexer.getTokenEnd();
             changeLength = endOffset - startOffset;
 
-            if (token.getType() == InformToken.COMMENT) {
-                syntax = getStyle(InformSyntax.Comment.getName());
-            } else if (token.getType() == InformToken.NUMBER) {
-                syntax = getStyle(InformSyntax.Number.getName());
-            } else if (token.getType() == InformToken.STRING) {
-                syntax = getStyle(InformSyntax.String.getName());
-            } else if (token.getType() == InformToken.SYMBOL) {
-                if (isAttribute(token.getContent())) {
-                    syntax = getStyle(InformSyntax.Attribute.getName());
-                } else if (isProperty(token.getContent())) {
-                    syntax = getStyle(InformSyntax.Property.getName());
-                } else if (isVerb(token.getContent())) {
-                    syntax = getStyle(InformSyntax.Verb.getName());
-                } else if (isKeyword(token.getContent())) {
-                    syntax = getStyle(InformSyntax.Keyword.getName());
-                } else {
-                    syntax = getStyle(InformSyntax.Normal.getName());
+            syntax = getStyle(getSyntax(lexer).getName());
+            setCharacterAttributes(startOffset, changeLength, syntax, true);
+        }
+
+        return lexer.getState();
+    }
+
+    // Apply syntax highlighting to a line from its cached tokens
+    private void highlightLine(InformTokenCache tokens, int line) {
+
+        int[] lineTokens = tokens.getTokens(line);
+        int lineStart = getDefaultRootElement().getElement(line).getStartOffset();
+        int start;
+        int length;
+        InformSyntax syntax;
+
+        for (int i = 0; i < lineTokens.length; i += InformTokenCache.TOKEN_SIZE) {
+            start = lineStart + lineTokens[i + InformTokenCache.START];
+            length = lineTokens[i + InformTokenCache.LENGTH];
+            syntax = getSyntax(
+                    InformToken.getLexeme(lineTokens[i + InformTokenCache.TYPE]),
+                    start, length);
+            setCharacterAttributes(start, length, getStyle(syntax.getName()), true);
+        }
+
+    }
+
+    /**
+     * Apply the style runs computed by the background highlighter. The runs
+     * are discarded if the document has been edited since the highlighter
+     * took its snapshot, as a newer job will already have been scheduled.
+     *
+     * @param generation
+     *            the edit count of the document snapshot
+     * @param runStarts
+     *            the start offsets of the style runs
+     * @param runEnds
+     *            the end offsets of the style runs
+     * @param runSyntax
+     *            the <code>InformSyntax</code> of each style run
+     * @param lines
+     *            the lines that were lexed
+     * @param states
+     *            the lexer start state of each of the lexed lines
+     */
+    void applyStyleRuns(int generation, IntList runStarts, IntList runEnds,
+            List runSyntax, IntList lines, IntList states) {
+
+        String name;
+        Element run;
+        int start;
+        int end;
+
+        writeLock();
+        try {
+            if (generation != this.generation
+                    || lineStates.size() != getDefaultRootElement().getElementCount()) {
+                return;
+            }
+
+            for (int i = 0; i < runStarts.size(); i++) {
+                start = runStarts.get(i);
+                end = runEnds.get(i);
+                name = ((InformSyntax) runSyntax.get(i)).getName();
+
+                // Skip runs that already have the right highlighting
+                run = getCharacterElement(start);
+                if (run.getStartOffset() <= start
+                        && run.getEndOffset() >= end
+                        && name.equals(run.getAttributes().getAttribute(StyleConstants.NameAttribute))) {
+                    continue;
                 }
-            } else if (token.getType() == InformToken.WHITESPACE) {
-                syntax = getStyle(InformSyntax.White.getName());
-            } else if (token.getType() == InformToken.WORD) {
-                syntax = getStyle(InformSyntax.Word.getName());
-            } else {
-                syntax = getStyle(InformSyntax.Normal.getName());
+                setCharacterAttributes(start, end - start, getStyle(name), true);
             }
 
-            setCharacterAttributes(startOffset, changeLength, syntax, true);
-            token = lexer.nextElement();
+            for (int i = 0; i < lines.size(); i++) {
+                lineStates.set(lines.get(i), states.get(i));
+            }
+        } finally {
+            writeUnlock();
         }
+
     }
-    
-    @Override
-    public void handleToken(InformToken token) {
-        setCharacterAttributes(
-                token.getStartPosition(),
-                token.getEndPosition() - token.getStartPosition(),
-                getStyle(token.getType().getName()),
-                true);
+
+    /**
+     * Returns the syntax highlighting type for the current element of an
+     * Inform lexer. The element text is only requested for symbols.
+     *
+     * @param lexer
+     *            the lexer positioned on the element to highlight
+     * @return the syntax type of the element
+     */
+    InformSyntax getSyntax(InformLexer lexer) {
+
+        InformToken.Lexeme type = lexer.getTokenType();
+
+        if (type == InformToken.SYMBOL) {
+            return getSymbolSyntax(lexer.getTokenContent());
+        }
+        return getSyntax(type);
+
+    }
+
+    /**
+     * Returns the syntax highlighting type for a cached token. The token text
+     * is only read from the document for symbols.
+     *
+     * @param type
+     *            the lexeme of the token
+     * @param offset
+     *            the start offset of the token
+     * @param length
+     *            the length of the token
+     * @return the syntax type of the token
+     */
+    InformSyntax getSyntax(InformToken.Lexeme type, int offset, int length) {
+
+        if (type == InformToken.SYMBOL) {
+            try {
+                return getSymbolSyntax(getText(offset, length));
+            } catch (BadLocationException ex) {
+                return InformSyntax.Normal;
+            }
+        }
+        return getSyntax(type);
+
+    }
+
+    // The syntax type of any token other than a symbol
+    private InformSyntax getSyntax(InformToken.Lexeme type) {
+
+        if (type == InformToken.COMMENT) {
+            return InformSyntax.Comment;
+        } else if (type == InformToken.NUMBER) {
+            return InformSyntax.Number;
+        } else if (type == InformToken.STRING) {
+            return InformSyntax.String;
+        } else if (type == InformToken.WHITESPACE) {
+            return InformSyntax.White;
+        } else if (type == InformToken.WORD) {
+            return InformSyntax.Word;
+        }
+        return InformSyntax.Normal;
+
+    }
+
+    // The syntax type of a symbol
+    private InformSyntax getSymbolSyntax(String content) {
+
+        if (isAttribute(content)) {
+            return InformSyntax.Attribute;
+        } else if (isProperty(content)) {
+            return InformSyntax.Property;
+        } else if (isVerb(content)) {
+            return InformSyntax.Verb;
+        } else if (isKeyword(content)) {
+            return InformSyntax.Keyword;
+        }
+        return InformSyntax.Normal;
+
+    }
+
+    /**
+     * Returns the edit count of the document
+     *
+     * @return the number of insertions and removals made to the document
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns a copy of the lexer start state of each line. All the lines are
+     * unknown if the states are out of step with the lines of the document.
+     *
+     * @return the lexer start states
+     */
+    int[] getLineStates() {
+
+        int lineCount = getDefaultRootElement().getElementCount();
+        if (lineStates.size() != lineCount) {
+            int[] states = new int[lineCount];
+            Arrays.fill(states, STATE_UNKNOWN);
+            return states;
+        }
+        return lineStates.toArray();
+
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    /**
+     * Returns whether syntax highlighting is done on a background thread
+     *
+     * @return <code>true</code> for background highlighting
+     */
+    public static boolean isBackgroundHighlighting() {
+        return backgroundHighlighting;
+    }
+
+    /**
+     * Sets whether syntax highlighting is done on a background thread. When
+     * set, edits only mark the damaged lines and the lexing is done by a
+     * worker thread, with the results applied in a single update on the
+     * event dispatch thread.
+     *
+     * @param backgroundHighlighting
+     *            <code>true</code> for background highlighting
+     */
+    public static void setBackgroundHighlighting(boolean backgroundHighlighting) {
+        InformDocument.backgroundHighlighting = backgroundHighlighting;
+    }
+
+    // Apply the change of lines recorded in a document event to the lexer
+    // start states. The first line of the change keeps its start state as the
+    // text before the change point is untouched.
+    private void updateLineStates(DefaultDocumentEvent chng) {
+
+        DocumentEvent.ElementChange change = chng.getChange(getDefaultRootElement());
+        if (change == null) {
+            return;
+        }
+
+        int index = change.getIndex();
+        int removed = change.getChildrenRemoved().length;
+        int added = change.getChildrenAdded().length;
+
+        if (lineStates.size() != getDefaultRootElement().getElementCount() - added + removed) {
+            // Out of step, processChangedLines will rebuild the states
+            return;
+        }
+
+        int state = (removed > 0) ? lineStates.get(index) : STATE_UNKNOWN;
+        lineStates.replace(index, removed, added, STATE_UNKNOWN);
+        if (added > 0) {
+            lineStates.set(index, state);
+        }
+
     }
 
-    @Override
     public boolean isAttribute(String name){
         return InformLibrary.isAttribute(name);
     }
@@ -292,7 +604,6 @@ public class InformDocument extends JifDocument implements InformParser.Callback
         return InformLibrary.isKeyword(name) || InformLibrary.isDirective(name);
     }
 
-    @Override
     public boolean isProperty(String name){
         return InformLibrary.isProperty(name);
     }
@@ -301,7 +612,6 @@ public class InformDocument extends JifDocument implements InformParser.Callback
         return InformLibrary.isStatement(name);
     }
 
-    @Override
     public boolean isVerb(String name) {
         return InformLibrary.isVerb(name);
     }
@@ -326,69 +636,35 @@ public class InformDocument extends JifDocument implements InformParser.Callback
 
     /**
      * Find any logical errors in the significant brackets in the Inform source
-     * code in the document. This ignores comments, strings and words.
+     * code in the document. This ignores comments, strings and words. Only the
+     * text edited since the errors were last found is checked again. This
+     * must be called on the event dispatch thread.
      *
      * @return <code>Iterator</code> for bracket error positions in the document
      */
     @Override
     public Iterator bracketErrors() {
-        Set errors = new TreeSet();
-        try {
-            Stack stack = new Stack();
-            InformLexer lexer = new InformLexer(getText(0, getLength()));
-            InformToken token = lexer.nextBracket();
-            InformToken.Lexeme type = token.getType();
-            InformToken peek = null;
-            while (type != InformToken.EOS) {
-                if (type == InformToken.OPENBRACE
-                        || type == InformToken.OPENBRACKET
-                        || type == InformToken.OPENROUTINE) {
-                    stack.push(token);
-                }
-                if (type == InformToken.CLOSEBRACE) {
-                    if (stack.empty()) {
-                        errors.add(new Integer(token.getStartPosition()));
-                    } else {
-                        peek = (InformToken) stack.pop();
-                        if (peek.getType() != InformToken.OPENBRACE) {
-                            errors.add(new Integer(peek.getStartPosition()));
-                            errors.add(new Integer(token.getStartPosition()));
-                        }
-                    }
-                }
-                if (type == InformToken.CLOSEBRACKET) {
-                    if (stack.empty()) {
-                        errors.add(new Integer(token.getStartPosition()));
-                    } else {
-                        peek = (InformToken) stack.pop();
-                        if (peek.getType() != InformToken.OPENBRACKET) {
-                            errors.add(new Integer(peek.getStartPosition()));
-                            errors.add(new Integer(token.getStartPosition()));
-                        }
-                    }
-                }
-                if (type == InformToken.CLOSEROUTINE) {
-                    if (stack.empty()) {
-                        errors.add(new Integer(token.getStartPosition()));
-                    } else {
-                        peek = (InformToken) stack.pop();
-                        if (peek.getType() != InformToken.OPENROUTINE) {
-                            errors.add(new Integer(peek.getStartPosition()));
-                            errors.add(new Integer(token.getStartPosition()));
-                        }
-                    }
-                }
-                token = lexer.nextBracket();
-                type = token.getType();
-            }
+        InformBracketValidator validator = getValidator();
+        validator.validate();
+        int[] positions = validator.getErrors();
+        List errors = new ArrayList(positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            errors.add(new Integer(positions[i]));
+        }
+        return errors.iterator();
+    }
 
-            while (!stack.empty()) {
-                peek = (InformToken) stack.pop();
-                errors.add(new Integer(peek.getStartPosition()));
-            }
-        } catch (BadLocationException ex) {
-        } finally {
-            return errors.iterator();
+    /**
+     * Returns the validator keeping the bracket errors of the document up to
+     * date, creating it on first use. This must be called on the event 
+     * dispatch thread.
+     *
+     * @return the bracket validator
+     */
+    public InformBracketValidator getValidator() {
+        if (validator == null) {
+            validator = new InformBracketValidator(this, getTokenCache());
         }
+        return validator;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformHighlighter.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+
+import it.schillaci.jif.core.IntList;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+/**
+ * Background syntax highlighter for an Inform document. Lines whose
+ * highlighting has been damaged by an edit are lexed on a worker thread
+ * against a snapshot of the document text. The resulting style runs are
+ * merged where adjacent runs share the same syntax and handed back to the
+ * event dispatch thread to be applied in a single update. A job is discarded
+ * as soon as a newer edit is made to the document, the edit schedules a
+ * fresh job covering both the old and the new damage.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+final class InformHighlighter implements Runnable {
+
+    // Single worker thread shared by all the Inform documents
+    private static ExecutorService worker = null;
+
+    // Document being highlighted
+    private final InformDocument document;
+
+    // Whether a job for the document is waiting to run
+    private boolean queued = false;
+
+    // Snapshot of the document taken by the worker
+    private String text;
+    private int[] lineStarts;
+    private int[] lineStates;
+    private int generation;
+
+    /**
+     * Creates a new background highlighter for an Inform document
+     *
+     * @param document
+     *            the document to highlight
+     */
+    InformHighlighter(InformDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * Schedule highlighting of the damaged lines of the document. At most one
+     * job for the document is waiting at any time.
+     */
+    synchronized void schedule() {
+        if (!queued) {
+            queued = true;
+            getWorker().execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        synchronized (this) {
+            queued = false;
+        }
+
+        document.render(new Runnable() {
+            @Override
+            public void run() {
+                snapshot();
+            }
+        });
+
+        if (text == null) {
+            return;
+        }
+
+        final IntList runStarts = new IntList();
+        final IntList runEnds = new IntList();
+        final List runSyntax = new ArrayList();
+        final IntList lines = new IntList();
+        final IntList states = new IntList();
+        final int jobGeneration = generation;
+
+        int lineCount = lineStarts.length;
+        int line = 0;
+        int state;
+        int start;
+        int end;
+        InformLexer lexer = new InformLexer("");
+        InformSyntax syntax;
+        int last;
+
+        while (line < lineCount) {
+
+            // Find the next damaged line and resume from the line before it
+            while (line < lineCount && lineStates[line] != InformDocument.STATE_UNKNOWN) {
+                line++;
+            }
+            if (line == lineCount) {
+                break;
+            }
+            if (line > 0) {
+                line--;
+            }
+            state = (line == 0) ? InformLexer.STATE_NORMAL : lineStates[line];
+
+            do {
+                if (document.getGeneration() != jobGeneration) {
+                    // Superseded by a newer edit
+                    return;
+                }
+
+                lineStates[line] = state;
+                lines.add(line);
+                states.add(state);
+
+                start = lineStarts[line];
+                end = (line + 1 < lineCount) ? lineStarts[line + 1] : text.length();
+                lexer.reset(CharBuffer.wrap(text, start, end), start, state);
+
+                while (lexer.advance() != InformToken.EOS) {
+                    syntax = document.getSyntax(lexer);
+                    last = runStarts.size() - 1;
+                    if (last >= 0
+                            && runSyntax.get(last) == syntax
+                            && runEnds.get(last) == lexer.getTokenStart()) {
+                        runEnds.set(last, lexer.getTokenEnd());
+                    } else {
+                        runStarts.add(lexer.getTokenStart());
+                        runEnds.add(lexer.getTokenEnd());
+                        runSyntax.add(syntax);
+                    }
+                }
+
+                state = lexer.getState();
+                line++;
+
+            } while (line < lineCount && lineStates[line] != state);
+        }
+
+        text = null;
+
+        if (lines.size() == 0) {
+            return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                document.applyStyleRuns(jobGeneration, runStarts, runEnds, runSyntax, lines, states);
+            }
+        });
+
+    }
+
+    // Copy the document text, line starts and lexer line states. This is
+    // called with the document read lock held.
+    private void snapshot() {
+
+        Element root = document.getDefaultRootElement();
+        int lineCount = root.getElementCount();
+
+        generation = document.getGeneration();
+        lineStarts = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lineStarts[i] = root.getElement(i).getStartOffset();
+        }
+        lineStates = document.getLineStates();
+
+        try {
+            text = document.getText(0, document.getLength());
+        } catch (BadLocationException ex) {
+            System.err.println("Unable to highlight document: " + ex.getMessage());
+            text = null;
+        }
+
+    }
+
+    private static synchronized ExecutorService getWorker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "InformHighlighter");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return worker;
+    }
+}
@@ -0,0 +1,159 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformIncludes.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+
+import it.schillaci.jif.core.JifBuildInputs;
+import it.schillaci.jif.core.JifDAO;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * InformIncludes: Finds the files read by the Inform compiler, following the
+ * Include directives of a source file and of every file it includes. Each
+ * Include is resolved against every place the compiler might look for it, 
+ * with and without the ".h" and ".inf" extensions, so the list may have 
+ * files which the compiler does not read or which do not exist. This errs on
+ * the side of rebuilding.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformIncludes implements JifBuildInputs {
+
+    // The main source file
+    private File source;
+    // Directories searched for included files
+    private List directories;
+
+    /**
+     * Creates a new instance of InformIncludes
+     *
+     * @param source
+     *              the main source file
+     * @param directories
+     *              the directories searched for included files, such as the
+     *              library path and the working directory of the compiler
+     */
+    public InformIncludes(File source, List directories) {
+        this.source = source.getAbsoluteFile();
+        this.directories = directories;
+    }
+
+    /**
+     * Returns the source file and every file it might include
+     *
+     * @return list of <code>File</code>
+     * @throws IOException
+     *              if an included file can not be read
+     */
+    public List getInputs() throws IOException {
+
+        List files = new ArrayList();
+        Set seen = new HashSet();
+        LinkedList pending = new LinkedList();
+        seen.add(source);
+        files.add(source);
+        pending.add(source);
+
+        while (!pending.isEmpty()) {
+            File file = (File) pending.removeFirst();
+            if (!file.isFile()) {
+                continue;
+            }
+            InformParser parser = new InformParser(
+                    new InformLexer(JifDAO.load(file), 0, InformLexer.STATE_NORMAL));
+            InformOutline.Directive directive;
+            while ((directive = parser.next()) != null) {
+                if (directive.getKind() != InformSymbol.INCLUDE || directive.getName() == null) {
+                    continue;
+                }
+                for (Iterator i = candidates(file, directive.getName()).iterator(); i.hasNext();) {
+                    File include = (File) i.next();
+                    if (seen.add(include)) {
+                        files.add(include);
+                        pending.add(include);
+                    }
+                }
+            }
+        }
+        return files;
+
+    }
+
+    // The files an Include directive in a file might refer to
+    private List candidates(File file, String name) {
+
+        List dirs = new ArrayList();
+        if (name.startsWith(">")) {
+            // Relative to the including file
+            name = name.substring(1);
+            dirs.add(file.getParentFile());
+        } else if (new File(name).isAbsolute()) {
+            dirs.add(null);
+        } else {
+            dirs.addAll(directories);
+            dirs.add(file.getParentFile());
+        }
+
+        List names = new ArrayList();
+        names.add(name);
+        if (new File(name).getName().indexOf('.') == -1) {
+            names.add(name + ".h");
+            names.add(name + ".inf");
+        }
+        if (!name.equals(name.toLowerCase())) {
+            for (int i = 0, n = names.size(); i < n; i++) {
+                names.add(((String) names.get(i)).toLowerCase());
+            }
+        }
+
+        List files = new ArrayList();
+        for (Iterator i = dirs.iterator(); i.hasNext();) {
+            Object dir = i.next();
+            for (Iterator j = names.iterator(); j.hasNext();) {
+                String include = (String) j.next();
+                File candidate = (dir == null) ? new File(include) : new File((File) dir, include);
+                files.add(candidate.getAbsoluteFile());
+            }
+        }
+        return files;
+
+    }
+}
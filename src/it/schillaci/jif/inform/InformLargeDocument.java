@@ -0,0 +1,342 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformLargeDocument.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.JifPieceContent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleContext;
+
+/**
+ * InformLargeDocument: Inform document for editing large source files. The
+ * text is held in a piece table and no character attributes are stored, so
+ * each line is a single element whatever its highlighting. The syntax
+ * highlighting of a line is kept instead as a run of primitive values, the
+ * start, end and style of each token, which is worked out when the line is
+ * first painted and thrown away when the line is edited. Lines are lexed
+ * lazily from the last line whose lexer start state is known to be right, so
+ * the cost of highlighting depends on the lines that are shown rather than on
+ * the size of the file.
+ *
+ * @see InformLargeView
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformLargeDocument extends InformDocument {
+
+    private static final long serialVersionUID = -2719480370558826632L;
+
+    /**
+     * Number of values held in the style runs for each token: the start and
+     * end offsets of the token in the line and the index of its syntax in
+     * <code>InformSyntax.styles</code>
+     */
+    public static final int RUN_SIZE = 3;
+
+    // Style runs of each line, null until the line has been lexed
+    private final List lineRuns = new ArrayList();
+
+    // Lines before this one have the right lexer start state
+    private int validLines = 0;
+
+    // Lexer and segment reused for lexing lines
+    private final InformLexer lineLexer = new InformLexer("");
+    private final Segment lineSegment = new Segment();
+
+    /**
+     * Constructs an empty large Inform document with a shared set of styles
+     * for syntax highlighting.
+     *
+     * @param styles
+     *            the set of styles for Inform syntax highlighting which may be
+     *            shared across documents
+     */
+    public InformLargeDocument(InformContext styles) {
+        super(new JifPieceContent(), (StyleContext) styles);
+    }
+
+    /**
+     * Constructs an empty large Inform document with its own set of styles
+     */
+    public InformLargeDocument() {
+        this(new InformContext());
+    }
+
+    /**
+     * Character attributes are not stored in a large document, the view
+     * paints each token in the style found by lexing its line.
+     */
+    @Override
+    public void setCharacterAttributes(int offset, int length,
+            AttributeSet s, boolean replace) {
+    }
+
+    /**
+     * Mark the lines impacted by a change of source content to be lexed again
+     * when they are next painted. A change to a single line is lexed straight
+     * away, if this changes the lexer state at the end of the line then the
+     * rest of the document is repainted.
+     *
+     * @param offset
+     *            The initial offset of the change
+     * @param length
+     *            The length of the change
+     * @throws BadLocationException
+     *            If the change processing fails
+     */
+    @Override
+    public void processChangedLines(int offset, int length)
+            throws BadLocationException {
+
+        Element root = getDefaultRootElement();
+        int lineCount = root.getElementCount();
+
+        if (lineStates.size() != lineCount || lineRuns.size() != lineCount) {
+            lineStates.replace(0, lineStates.size(), lineCount, STATE_UNKNOWN);
+            lineRuns.clear();
+            lineRuns.addAll(Collections.nCopies(lineCount, null));
+            validLines = 0;
+        }
+
+        int index = root.getElementIndex(offset);
+        int lastIndex = root.getElementIndex(offset + length);
+
+        for (int i = index; i <= lastIndex; i++) {
+            lineRuns.set(i, null);
+        }
+
+        if (index == lastIndex && index < validLines && index + 1 < lineCount) {
+            int state = lexLine(index, lineStates.get(index));
+            if (state == lineStates.get(index + 1)) {
+                return;
+            }
+            lineStates.set(index + 1, STATE_UNKNOWN);
+            validLines = index + 1;
+            fireRestyled(root.getElement(index + 1).getStartOffset());
+            return;
+        }
+
+        for (int i = index + 1; i <= lastIndex + 1 && i < lineCount; i++) {
+            lineStates.set(i, STATE_UNKNOWN);
+        }
+        invalidateLines(index);
+
+    }
+
+    /**
+     * Returns the style runs of a line of the document. For each token there
+     * are <code>RUN_SIZE</code> values, the start and end offsets of the token
+     * relative to the start of the line and the index of its syntax in
+     * <code>InformSyntax.styles</code>. The array must not be changed.
+     *
+     * @param line
+     *            the index of the line
+     * @return the style runs of the line
+     * @throws BadLocationException
+     *            If lexing the line fails
+     */
+    public int[] getLineRuns(int line) throws BadLocationException {
+
+        readLock();
+        try {
+            int lineCount = getDefaultRootElement().getElementCount();
+            if (lineStates.size() != lineCount || lineRuns.size() != lineCount) {
+                processChangedLines(0, getLength());
+            }
+
+            // Lex forward from the last line known to have the right state
+            while (validLines <= line) {
+                int i = validLines;
+                if (i == 0) {
+                    lineStates.set(0, InformLexer.STATE_NORMAL);
+                    validLines = 1;
+                    continue;
+                }
+                int state = lexLine(i - 1, lineStates.get(i - 1));
+                if (state == lineStates.get(i)) {
+                    // The states converge up to the next damaged line
+                    i++;
+                    while (i < lineCount && lineStates.get(i) != STATE_UNKNOWN) {
+                        i++;
+                    }
+                    validLines = i;
+                } else {
+                    lineStates.set(i, state);
+                    lineRuns.set(i, null);
+                    validLines = i + 1;
+                }
+            }
+
+            int[] runs = (int[]) lineRuns.get(line);
+            if (runs == null) {
+                lexLine(line, lineStates.get(line));
+                runs = (int[]) lineRuns.get(line);
+            }
+            return runs;
+        } finally {
+            readUnlock();
+        }
+
+    }
+
+    /**
+     * Keep the style runs in step with the lines of the document when text
+     * is inserted.
+     *
+     * @param chng
+     *            a description of the document change
+     * @param attr
+     *            the attributes for the inserted text
+     */
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+
+        super.insertUpdate(chng, attr);
+        updateLineRuns(chng);
+
+    }
+
+    /**
+     * Keep the style runs in step with the lines of the document when text
+     * is removed.
+     *
+     * @param chng
+     *            a description of the document change
+     */
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+
+        super.removeUpdate(chng);
+        updateLineRuns(chng);
+
+    }
+
+    // Lex a line from its start state, keeping its style runs and returning
+    // the lexer state at the end of the line
+    private int lexLine(int line, int state) throws BadLocationException {
+
+        Element element = getDefaultRootElement().getElement(line);
+        int start = element.getStartOffset();
+        int[] runs = new int[16 * RUN_SIZE];
+        int count = 0;
+
+        getText(start, element.getEndOffset() - start, lineSegment);
+        lineLexer.reset(lineSegment, 0, state);
+
+        while (lineLexer.advance() != InformToken.EOS) {
+            if (count + RUN_SIZE > runs.length) {
+                int[] grown = new int[runs.length * 2];
+                System.arraycopy(runs, 0, grown, 0, count);
+                runs = grown;
+            }
+            runs[count++] = lineLexer.getTokenStart();
+            runs[count++] = lineLexer.getTokenEnd();
+            runs[count++] = getSyntaxIndex(getSyntax(lineLexer));
+        }
+
+        int[] trimmed = new int[count];
+        System.arraycopy(runs, 0, trimmed, 0, count);
+        lineRuns.set(line, trimmed);
+        return lineLexer.getState();
+
+    }
+
+    // Apply the change of lines recorded in a document event to the style runs
+    private void updateLineRuns(DefaultDocumentEvent chng) {
+
+        DocumentEvent.ElementChange change = chng.getChange(getDefaultRootElement());
+        if (change == null) {
+            return;
+        }
+
+        int index = change.getIndex();
+        int removed = change.getChildrenRemoved().length;
+        int added = change.getChildrenAdded().length;
+
+        if (lineRuns.size() != getDefaultRootElement().getElementCount() - added + removed) {
+            // Out of step, processChangedLines will rebuild the runs
+            return;
+        }
+
+        lineRuns.subList(index, index + removed).clear();
+        lineRuns.addAll(index, Collections.nCopies(added, null));
+        invalidateLines(index);
+
+    }
+
+    // Forget the lexer states after a changed line, and its own state too if
+    // it is not known
+    private void invalidateLines(int line) {
+
+        if (line < lineStates.size() && lineStates.get(line) == STATE_UNKNOWN) {
+            validLines = Math.min(validLines, line);
+        } else {
+            validLines = Math.min(validLines, line + 1);
+        }
+
+    }
+
+    // Tell the views that the highlighting from an offset to the end of the
+    // document has changed
+    private void fireRestyled(int offset) {
+
+        writeLock();
+        try {
+            DefaultDocumentEvent e = new DefaultDocumentEvent(
+                    offset, getLength() - offset, DocumentEvent.EventType.CHANGE);
+            e.end();
+            fireChangedUpdate(e);
+        } finally {
+            writeUnlock();
+        }
+
+    }
+
+    // Index of a syntax in the syntax highlighting styles
+    private static int getSyntaxIndex(InformSyntax syntax) {
+
+        for (int i = 0; i < InformSyntax.styles.length; i++) {
+            if (InformSyntax.styles[i] == syntax) {
+                return i;
+            }
+        }
+        return 0;
+
+    }
+}
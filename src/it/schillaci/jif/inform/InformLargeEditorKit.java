@@ -0,0 +1,99 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformLargeEditorKit.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.JifDocument;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * InformLargeEditorKit: Editor kit for large Inform source code documents.
+ * The document keeps its text in a piece table and its highlighting in
+ * primitive style runs, and a single view paints the lines that are shown.
+ *
+ * @see InformLargeDocument
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformLargeEditorKit extends InformEditorKit {
+
+    private static final long serialVersionUID = 6170918207329406347L;
+
+    /**
+     * Files larger than this number of bytes are edited as large documents
+     */
+    public static final long LARGE_FILE_SIZE = 1024 * 1024;
+
+    private static final ViewFactory factory = new ViewFactory() {
+        @Override
+        public View create(Element elem) {
+            return new InformLargeView(elem);
+        }
+    };
+
+    public InformLargeEditorKit() {
+        super();
+    }
+
+    // --- EditorKit methods ---------------------------
+
+    /**
+     * Fetches a factory that creates a single view painting all the lines of
+     * a large Inform document
+     *
+     * @return the view factory
+     */
+    @Override
+    public ViewFactory getViewFactory() {
+        return factory;
+    }
+
+    /**
+     * Creates an uninitialised text storage model
+     * (<code>InformLargeDocument</code>) that is appropriate for this type of
+     * editor.
+     *
+     * @return the model
+     */
+    @Override
+    public Document createDefaultDocument() {
+        return new InformLargeDocument();
+    }
+
+    @Override
+    public JifDocument createDefaultDocument(InformContext context) {
+        return new InformLargeDocument(context);
+    }
+}
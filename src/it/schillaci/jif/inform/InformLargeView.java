@@ -0,0 +1,152 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformLargeView.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Shape;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.Utilities;
+import javax.swing.text.ViewFactory;
+
+/**
+ * InformLargeView: View of a large Inform document that paints the tokens of
+ * each line directly from the style runs of the document. There is no view
+ * per element, so the layout of the document only depends on the number of
+ * lines and only the lines that are shown are lexed and painted. The text is
+ * painted in the font of the editor with the colour of each syntax style.
+ *
+ * @see InformLargeDocument
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformLargeView extends PlainView {
+
+    // Segment reused for painting the text of tokens
+    private final Segment text = new Segment();
+
+    /**
+     * Creates a new view of the lines of a large Inform document
+     *
+     * @param elem
+     *            the root element of the document
+     */
+    public InformLargeView(Element elem) {
+        super(elem);
+    }
+
+    /**
+     * Paints a portion of a line that is not selected, a token at a time in
+     * the colour of the style of the token.
+     *
+     * @param g
+     *            the graphics context
+     * @param x
+     *            the starting X coordinate
+     * @param y
+     *            the starting Y coordinate
+     * @param p0
+     *            the beginning position in the model
+     * @param p1
+     *            the ending position in the model
+     * @return the X location of the end of the range
+     * @throws BadLocationException
+     *            if the range is invalid
+     */
+    @Override
+    protected int drawUnselectedText(Graphics g, int x, int y, int p0, int p1)
+            throws BadLocationException {
+
+        if (!(getDocument() instanceof InformLargeDocument)) {
+            return super.drawUnselectedText(g, x, y, p0, p1);
+        }
+
+        InformLargeDocument doc = (InformLargeDocument) getDocument();
+        Element root = doc.getDefaultRootElement();
+        int line = root.getElementIndex(p0);
+        int lineStart = root.getElement(line).getStartOffset();
+        int[] runs = doc.getLineRuns(line);
+        int start;
+        int end;
+
+        for (int i = 0; i < runs.length && p0 < p1; i += InformLargeDocument.RUN_SIZE) {
+            end = lineStart + runs[i + 1];
+            if (end <= p0) {
+                continue;
+            }
+            start = Math.max(p0, lineStart + runs[i]);
+            end = Math.min(p1, end);
+            if (start > p0) {
+                // Text between tokens is painted in the normal style
+                x = drawRun(g, x, y, p0, start, InformSyntax.Normal);
+            }
+            x = drawRun(g, x, y, start, end, InformSyntax.styles[runs[i + 2]]);
+            p0 = end;
+        }
+        if (p0 < p1) {
+            x = drawRun(g, x, y, p0, p1, InformSyntax.Normal);
+        }
+        return x;
+
+    }
+
+    /**
+     * Repaints the lines whose highlighting has changed
+     */
+    @Override
+    public void changedUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+
+        Element root = getElement();
+        int first = root.getElementIndex(changes.getOffset());
+        int last = root.getElementIndex(changes.getOffset() + changes.getLength());
+        damageLineRange(first, last, a, getContainer());
+
+    }
+
+    // Paint the text of a run in the colour of a syntax style
+    private int drawRun(Graphics g, int x, int y, int p0, int p1,
+            InformSyntax syntax) throws BadLocationException {
+
+        InformLargeDocument doc = (InformLargeDocument) getDocument();
+        Color color = StyleConstants.getForeground(doc.getStyle(syntax.getName()));
+        g.setColor(color);
+        doc.getText(p0, p1 - p0, text);
+        return Utilities.drawTabbedText(text, x, y, g, this, p0);
+
+    }
+}
@@ -44,8 +44,10 @@ import java.util.ArrayList;
  */
 
 public final class InformLexer {
-    // Buffer for source
-    private char[] source;
+    // Source text, read in place without copying
+    private CharSequence source;
+    // Length of the source text
+    private int length;
     // Position of source buffer within source document
     private int offset = 0;
     // Start position of current token
@@ -56,8 +58,8 @@ public final class InformLexer {
     private InformToken token;
     // Current token type
     private InformToken.Lexeme tokenType;
-    // Current token content
-    private String tokenContent = "";
+    // Current token content, only materialized when requested
+    private String tokenContent = null;
     // Lexer processing an Inform single quoted word
     private boolean inWord = false;
     // Lexer processing an Inform double quoted string
@@ -65,6 +67,18 @@ public final class InformLexer {
     // Marker for the end of the lexer source buffer
     private static final char endOfSourceGuard = '\u0000';
 
+    /**
+     * Lexer state between tokens outside any multi-line construct.
+     */
+    public static final int STATE_NORMAL = 0;
+
+    /**
+     * Lexer state within an Inform double quoted string. Strings are the only
+     * tokens that can continue across a line boundary, comments and single
+     * quoted words always end at a newline.
+     */
+    public static final int STATE_STRING = 1;
+
     /**
      * Creates a new Inform lexer object for a string of Inform source code.
      * 
@@ -88,11 +102,28 @@ public final class InformLexer {
      */
     public InformLexer(String informSource, int offset) {
 
-        // An end of source guard character is added to the end of the source so that
-        // it can be used to safely terminate the lexer without checking the
-        // index against the length all the time when incrementing the index.
-        this.source = (informSource + endOfSourceGuard).toCharArray();
-        this.offset = offset;
+        this(informSource, offset, STATE_NORMAL);
+
+    }
+
+    /**
+     * Creates a new Inform lexer object for a sequence of Inform source code
+     * with an offset, starting in the specified lexer state. This allows
+     * lexing to be resumed at the start of any line using the state at the end
+     * of the previous line. The characters are read in place, so a
+     * <code>Segment</code> of a document can be lexed without copying it.
+     *
+     * @param informSource
+     *            The text to be split into tokens
+     * @param offset
+     *            The base offset of the string within its parent string
+     * @param state
+     *            The lexer state at the start of the text, either
+     *            <code>STATE_NORMAL</code> or <code>STATE_STRING</code>
+     */
+    public InformLexer(CharSequence informSource, int offset, int state) {
+
+        reset(informSource, offset, state);
 
     }
 
@@ -245,12 +276,36 @@ public final class InformLexer {
      */
     public InformToken nextElement() {
 
+        advance();
+        return new InformToken(tokenType, startPos + offset, endPos + offset,
+                getTokenContent());
+
+    }
+
+    /**
+     * Advances the lexer to the next continuous Inform language element
+     * without creating a token object. The type and position of the element
+     * are then available from <code>getTokenType</code>,
+     * <code>getTokenStart</code> and <code>getTokenEnd</code>, and its text
+     * from <code>getTokenContent</code>.
+     *
+     * @return the type of the element, <code>InformToken.EOS</code> at the
+     *         end of the source
+     */
+    public InformToken.Lexeme advance() {
+
         // Continue from last call
         startPos = endPos;
-        // Start building content string
-        tokenContent = new String(source, endPos, 1);
+        tokenContent = null;
+
+        // Resume a string left open at the end of the previous source
+        if (inString && charAt(endPos) != endOfSourceGuard) {
+            tokenType = InformToken.STRING;
+            scanString();
+            return tokenType;
+        }
 
-        switch (source[endPos++]) {
+        switch (charAt(endPos++)) {
             case '_':
             case 'a':
             case 'b':
@@ -304,8 +359,7 @@ public final class InformLexer {
             case 'X':
             case 'Y':
             case 'Z':
-                while (isIdentifier(source[endPos])) {
-                    tokenContent += source[endPos];
+                while (isIdentifier(charAt(endPos))) {
                     ++endPos;
                 }
                 tokenType = InformToken.SYMBOL;
@@ -320,8 +374,7 @@ public final class InformLexer {
             case '7':
             case '8':
             case '9':
-                while (isDecimal(source[endPos])) {
-                    tokenContent += source[endPos];
+                while (isDecimal(charAt(endPos))) {
                     ++endPos;
                 }
                 tokenType = InformToken.NUMBER;
@@ -329,30 +382,14 @@ public final class InformLexer {
             case '\"':
                 inString = true;
                 tokenType = InformToken.STRING;
-                while (inString) {
-                    switch (source[endPos]) {
-                        case '\"':
-                            tokenContent += source[endPos];
-                            inString = false;
-                            ++endPos;
-                            break;
-                        case endOfSourceGuard:
-                            inString = false;
-                            break;
-                        default:
-                            tokenContent += source[endPos];
-                            ++endPos;
-                            break;
-                    }
-                }
+                scanString();
                 break;
             case '\'':
                 inWord = true;
                 while (inWord) {
-                    switch (source[endPos]) {
+                    switch (charAt(endPos)) {
                         case '\'':
-                            tokenContent += source[endPos];
-                            if (source[endPos - 1] != '@') {
+                            if (charAt(endPos - 1) != '@') {
                                 inWord = false;
                             }
                             ++endPos;
@@ -362,7 +399,6 @@ public final class InformLexer {
                             inWord = false;
                             break;
                         default:
-                            tokenContent += source[endPos];
                             ++endPos;
                             break;
                     }
@@ -370,75 +406,65 @@ public final class InformLexer {
                 tokenType = InformToken.WORD;
                 break;
             case '!':
-                while (source[endPos] != '\n' && source[endPos] != endOfSourceGuard) {
-                    tokenContent += source[endPos];
+                while (charAt(endPos) != '\n' && charAt(endPos) != endOfSourceGuard) {
                     ++endPos;
                 }
                 tokenType = InformToken.COMMENT;
                 break;
             case ' ':
             case '\t':
-                while (isWhiteSpace(source[endPos])) {
-                    tokenContent += source[endPos];
+                while (isWhiteSpace(charAt(endPos))) {
                     ++endPos;
                 }
                 tokenType = InformToken.WHITESPACE;
                 break;
             case '$':
-                if (source[endPos] == '$') {
-                    tokenContent += source[endPos];
+                if (charAt(endPos) == '$') {
                     ++endPos;
-                    while (isBinary(source[endPos])) {
-                        tokenContent += source[endPos];
+                    while (isBinary(charAt(endPos))) {
                         ++endPos;
                     }
                     tokenType = InformToken.BINARY;
                 } else {
-                    while (isHexidecimal(source[endPos])) {
-                        tokenContent += source[endPos];
+                    while (isHexidecimal(charAt(endPos))) {
                         ++endPos;
                     }
                     tokenType = InformToken.HEXIDECIMAL;
                 }
                 break;
             case '#':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '#':
                         ++endPos;
                         tokenType = InformToken.HASHHASH;
-                        tokenContent = "##";
                         break;
                     case 'a':
-                        if (source[endPos + 1] == '$') {
+                        if (charAt(endPos + 1) == '$') {
                             tokenType = InformToken.HASHADOLLAR;
-                            tokenContent = "#a$";
                             endPos = endPos + 2;
                         } else {
                             tokenType = InformToken.HASH;
                         }
                         break;
                     case 'n':
-                        if (source[endPos + 1] == '$') {
+                        if (charAt(endPos + 1) == '$') {
                             tokenType = InformToken.HASHNDOLLAR;
-                            tokenContent = "#n$";
                             endPos = endPos + 2;
                         } else {
                             tokenType = InformToken.HASH;
                         }
                         break;
                     case 'r':
-                        if (source[endPos + 1] == '$') {
+                        if (charAt(endPos + 1) == '$') {
                             tokenType = InformToken.HASHRDOLLAR;
-                            tokenContent = "#r$";
                             endPos = endPos + 2;
                         } else {
                             tokenType = InformToken.HASH;
                         }
                         break;
                     case 'w':
-                        if (source[endPos + 1] == '$') {
+                        if (charAt(endPos + 1) == '$') {
                             tokenType = InformToken.HASHWDOLLAR;
-                            tokenContent = "#w$";
                             endPos = endPos + 2;
                         } else {
                             tokenType = InformToken.HASH;
@@ -450,35 +476,30 @@ public final class InformLexer {
                 }
                 break;
             case '.':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '.':
                         ++endPos;
-                        switch (source[endPos]) {
+                        switch (charAt(endPos)) {
                             case '#':
                                 ++endPos;
                                 tokenType = InformToken.DOTDOTHASH;
-                                tokenContent = "..#";
                                 break;
                             case '@':
                                 ++endPos;
                                 tokenType = InformToken.DOTDOTAMPERSAND;
-                                tokenContent = "..@";
                                 break;
                             default:
                                 tokenType = InformToken.DOTDOT;
-                                tokenContent = "..";
                                 break;
                         }
                         break;
                     case '#':
                         ++endPos;
                         tokenType = InformToken.DOTHASH;
-                        tokenContent = ".#";
                         break;
                     case '@':
                         ++endPos;
                         tokenType = InformToken.DOTAMPERSAND;
-                        tokenContent = ".@";
                         break;
                     default:
                         tokenType = InformToken.DOT;
@@ -486,22 +507,19 @@ public final class InformLexer {
                 }
                 break;
             case '-':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '-':
                         ++endPos;
-                        if (source[endPos] == '>') {
+                        if (charAt(endPos) == '>') {
                             ++endPos;
                             tokenType = InformToken.MINUSMINUSARROW;
-                            tokenContent = "-->";
                         } else {
                             tokenType = InformToken.MINUSMINUS;
-                            tokenContent = "--";
                         }
                         break;
                     case '>':
                         ++endPos;
                         tokenType = InformToken.MINUSARROW;
-                        tokenContent = "->";
                         break;
                     default:
                         tokenType = InformToken.MINUS;
@@ -509,16 +527,14 @@ public final class InformLexer {
                 }
                 break;
             case '=':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '=':
                         ++endPos;
                         tokenType = InformToken.EQUALEQUAL;
-                        tokenContent = "==";
                         break;
                     case '>':
                         ++endPos;
                         tokenType = InformToken.EQUALARROW;
-                        tokenContent = "=>";
                         break;
                     default:
                         tokenType = InformToken.EQUAL;
@@ -526,16 +542,14 @@ public final class InformLexer {
                 }
                 break;
             case '~':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '~':
                         ++endPos;
                         tokenType = InformToken.NOTNOT;
-                        tokenContent = "~~";
                         break;
                     case '=':
                         ++endPos;
                         tokenType = InformToken.NOTEQUAL;
-                        tokenContent = "~=";
                         break;
                     default:
                         tokenType = InformToken.NOT;
@@ -543,16 +557,14 @@ public final class InformLexer {
                 }
                 break;
             case '<':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '<':
                         ++endPos;
                         tokenType = InformToken.LESSLESS;
-                        tokenContent = "<<";
                         break;
                     case '=':
                         ++endPos;
                         tokenType = InformToken.LESSEQUAL;
-                        tokenContent = "<=";
                         break;
                     default:
                         tokenType = InformToken.LESS;
@@ -560,16 +572,14 @@ public final class InformLexer {
                 }
                 break;
             case '>':
-                switch (source[endPos]) {
+                switch (charAt(endPos)) {
                     case '>':
                         ++endPos;
                         tokenType = InformToken.ARROWARROW;
-                        tokenContent = ">>";
                         break;
                     case '=':
                         ++endPos;
                         tokenType = InformToken.ARROWEQUAL;
-                        tokenContent = ">=";
                         break;
                     default:
                         tokenType = InformToken.ARROW;
@@ -577,37 +587,33 @@ public final class InformLexer {
                 }
                 break;
             case '+':
-                if (source[endPos] == '+') {
+                if (charAt(endPos) == '+') {
                     ++endPos;
                     tokenType = InformToken.PLUSPLUS;
-                    tokenContent = "++";
                 } else {
                     tokenType = InformToken.PLUS;
                 }
                 break;
             case '&':
-                if (source[endPos] == '&') {
+                if (charAt(endPos) == '&') {
                     ++endPos;
                     tokenType = InformToken.ANDAND;
-                    tokenContent = "&&";
                 } else {
                     tokenType = InformToken.AND;
                 }
                 break;
             case '|':
-                if (source[endPos] == '|') {
+                if (charAt(endPos) == '|') {
                     ++endPos;
                     tokenType = InformToken.OROR;
-                    tokenContent = "||";
                 } else {
                     tokenType = InformToken.OR;
                 }
                 break;
             case ':':
-                if (source[endPos] == ':') {
+                if (charAt(endPos) == ':') {
                     ++endPos;
                     tokenType = InformToken.COLONCOLON;
-                    tokenContent = "::";
                 } else {
                     tokenType = InformToken.COLON;
                 }
@@ -659,8 +665,96 @@ public final class InformLexer {
                 break;
         }
 
-        return new InformToken(tokenType, startPos + offset, endPos + offset,
-                tokenContent);
+        return tokenType;
+
+    }
+
+    /**
+     * Returns the type of the current element
+     *
+     * @return the element type
+     */
+    public InformToken.Lexeme getTokenType() {
+
+        return tokenType;
+
+    }
+
+    /**
+     * Returns the start position of the current element, including the base
+     * offset of the source
+     *
+     * @return the element start position
+     */
+    public int getTokenStart() {
+
+        return startPos + offset;
+
+    }
+
+    /**
+     * Returns the end position of the current element, including the base
+     * offset of the source
+     *
+     * @return the element end position
+     */
+    public int getTokenEnd() {
+
+        return endPos + offset;
+
+    }
+
+    /**
+     * Returns the text of the current element. The text is only copied out of
+     * the source the first time it is requested for each element.
+     *
+     * @return the element text
+     */
+    public String getTokenContent() {
+
+        if (tokenContent == null) {
+            tokenContent = source.subSequence(
+                    Math.min(startPos, length),
+                    Math.min(endPos, length)).toString();
+        }
+        return tokenContent;
+
+    }
+
+    /**
+     * Restarts the lexer on a new sequence of Inform source code, so a single
+     * lexer can be reused for many lines or documents.
+     *
+     * @param informSource
+     *            The text to be split into tokens
+     * @param offset
+     *            The base offset of the text within its parent document
+     * @param state
+     *            The lexer state at the start of the text
+     */
+    public void reset(CharSequence informSource, int offset, int state) {
+
+        this.source = informSource;
+        this.length = informSource.length();
+        this.offset = offset;
+        this.startPos = 0;
+        this.endPos = 0;
+        this.tokenContent = null;
+        this.inWord = false;
+        this.inString = (state == STATE_STRING);
+
+    }
+
+    /**
+     * Returns the state of the lexer at the current position. This is
+     * <code>STATE_STRING</code> when the source ended inside an unterminated
+     * double quoted string and <code>STATE_NORMAL</code> otherwise.
+     *
+     * @return the current lexer state
+     */
+    public int getState() {
+
+        return inString ? STATE_STRING : STATE_NORMAL;
 
     }
 
@@ -678,6 +772,27 @@ public final class InformLexer {
 
     }
 
+    // Character at a position in the source, the end of source guard is
+    // returned for positions past the end
+    private char charAt(int position) {
+
+        return (position < length) ? source.charAt(position) : endOfSourceGuard;
+
+    }
+
+    // Scan the remainder of a double quoted string. The string state is left
+    // set if the end of the source is reached before the closing quote.
+    private void scanString() {
+
+        while (charAt(endPos) != endOfSourceGuard) {
+            if (charAt(endPos++) == '\"') {
+                inString = false;
+                return;
+            }
+        }
+
+    }
+
     private boolean isWhiteSpace(char c) {
 
         if (c == ' ' || c == '\t') {
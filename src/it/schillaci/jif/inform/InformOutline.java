@@ -0,0 +1,534 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformOutline.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+
+import it.schillaci.jif.core.IntList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+
+/**
+ * InformOutline: The top level directives of an Inform document, as parsed by
+ * an <code>InformParser</code> from the document's token cache.
+ * <p>
+ * Each directive keeps its start offset in the document, with its other
+ * offsets relative to the start, so an edit only moves the start and end of
+ * the directives after it. Those moves are kept as a single pending shift of
+ * the directives from an index on, so an edit costs no more than the number
+ * of directives between it and the edit before, and the shift is only applied
+ * to every directive when the outline is asked for. The offsets of the
+ * directives returned are up to date until the document is next edited.
+ * <p>
+ * The directives touched by edits are parsed again
+ * when the outline is next asked for, starting at the end of the directive
+ * before the edits and stopping at the first directive end past the edits
+ * that matches the end of an existing directive, as the text and parse after
+ * that point are unchanged. A directive whose semicolon is missing ends just
+ * before the next directive, so it is parsed again along with any edit
+ * after it.
+ * <p>
+ * The outline must be used on the event dispatch thread.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformOutline {
+    
+    // The outlined document and its tokens
+    private final AbstractDocument document;
+    private final InformTokenCache tokens;
+    
+    // The directives of the document, in source order
+    private final List directives = new ArrayList();
+    
+    // Shift not yet applied to the start of the directives from shiftIndex
+    // on
+    private int shiftIndex = 0;
+    private int shift = 0;
+    
+    // Range of text edited since the directives were parsed, empty when
+    // start > end
+    private int damageStart;
+    private int damageEnd;
+    
+    private final DocumentListener listener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            inserted(e.getOffset(), e.getLength());
+        }
+        public void removeUpdate(DocumentEvent e) {
+            removed(e.getOffset(), e.getLength());
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    
+    /**
+     * Creates a new instance of InformOutline for a document. The outline
+     * follows the edits made to the document from then on.
+     *
+     * @param document
+     *              the document to outline
+     * @param tokens
+     *              the token cache of the document
+     */
+    public InformOutline(AbstractDocument document, InformTokenCache tokens) {
+        this.document = document;
+        this.tokens = tokens;
+        damageStart = 0;
+        damageEnd = document.getLength();
+        document.addDocumentListener(listener);
+    }
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Returns the directives of the document in source order, including the
+     * directives that are not outlined and text that is not a directive
+     *
+     * @return the list of <code>Directive</code>s
+     */
+    public List getDirectives() {
+        update();
+        return new ArrayList(directives);
+    }
+    
+    /**
+     * Returns the directives of the document of a kind, in source order
+     *
+     * @param kind
+     *              the kind of directive
+     * @return the list of <code>Directive</code>s of the kind
+     */
+    public List getDirectives(InformSymbol.Kind kind) {
+        update();
+        List list = new ArrayList();
+        for (int i = 0; i < directives.size(); i++) {
+            Directive directive = (Directive) directives.get(i);
+            if (directive.getKind() == kind) {
+                list.add(directive);
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * Returns the directive holding an offset of the document
+     *
+     * @param offset
+     *              an offset in the document
+     * @return the directive, or <code>null</code> if the offset is between 
+     *         directives
+     */
+    public Directive getDirectiveAt(int offset) {
+        update();
+        int index = find(offset);
+        if (index < directives.size()) {
+            Directive directive = (Directive) directives.get(index);
+            if (directive.getStart() <= offset) {
+                return directive;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Stop following the edits made to the document
+     */
+    public void dispose() {
+        document.removeDocumentListener(listener);
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    // Index of the first directive ending after an offset
+    private int find(int offset) {
+        int lo = 0;
+        int hi = directives.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getStart(mid) + ((Directive) directives.get(mid)).length <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+    
+    // Start of a directive, with the pending shift
+    private int getStart(int index) {
+        Directive directive = (Directive) directives.get(index);
+        return (index >= shiftIndex) ? directive.start + shift : directive.start;
+    }
+    
+    // Move the pending shift to start at another directive, applying it to
+    // the directives it no longer covers or taking it out of the directives
+    // it now covers
+    private void moveShift(int index) {
+        for (int i = shiftIndex; i < index; i++) {
+            ((Directive) directives.get(i)).start += shift;
+        }
+        for (int i = index; i < shiftIndex; i++) {
+            ((Directive) directives.get(i)).start -= shift;
+        }
+        shiftIndex = index;
+    }
+    
+    // Apply the pending shift to all the directives
+    private void applyShift() {
+        moveShift(directives.size());
+        shift = 0;
+    }
+    
+    // Move the directives after an insertion and extend the directive that
+    // holds it
+    private void inserted(int offset, int length) {
+        int index = find(offset);
+        if (index < directives.size()) {
+            if (getStart(index) < offset) {
+                ((Directive) directives.get(index)).length += length;
+                index++;
+            }
+            moveShift(index);
+            shift += length;
+        }
+        if (damageEnd >= offset) {
+            damageEnd += length;
+        }
+        damageStart = Math.min(damageStart, offset);
+        damageEnd = Math.max(damageEnd, offset + length);
+    }
+    
+    // Move the directives after a removal and shrink the directives that
+    // overlap it
+    private void removed(int offset, int length) {
+        int index = find(offset);
+        int after = index;
+        while (after < directives.size() && getStart(after) < offset + length) {
+            after++;
+        }
+        moveShift(after);
+        for (int i = index; i < after; i++) {
+            Directive directive = (Directive) directives.get(i);
+            int start = removed(directive.start, offset, length);
+            directive.length = removed(directive.start + directive.length, offset, length) - start;
+            directive.start = start;
+        }
+        if (after < directives.size()) {
+            shift -= length;
+        }
+        damageEnd = removed(damageEnd, offset, length);
+        damageStart = Math.min(damageStart, offset);
+        damageEnd = Math.max(damageEnd, offset);
+    }
+    
+    // Where an offset is moved to by a removal
+    private static int removed(int position, int offset, int length) {
+        if (position >= offset + length) {
+            return position - length;
+        }
+        return Math.min(position, offset);
+    }
+    
+    // Parse the directives touched by edits again
+    private void update() {
+        applyShift();
+        if (damageStart > damageEnd) {
+            return;
+        }
+        
+        document.readLock();
+        try {
+            // The directive before the edits ends the text left as it was,
+            // unless its end depends on the directive after it. A directive
+            // ending at the edits may have lost its last tokens.
+            int first = find(damageStart - 1);
+            while (first > 0 && !((Directive) directives.get(first - 1)).isTerminated()) {
+                first--;
+            }
+            int from = (first == 0) ? 0 : ((Directive) directives.get(first - 1)).getEnd();
+            
+            InformParser parser = new InformParser(
+                    tokens.getTokens(from, document.getLength()), document);
+            List parsed = new ArrayList();
+            int old = first;
+            int last = directives.size();
+            Directive directive;
+            // Text from the end of the edits on may begin a new directive,
+            // so the parse joins the old list only past that point
+            while ((directive = parser.next()) != null) {
+                parsed.add(directive);
+                int end = directive.getEnd();
+                while (old < directives.size() 
+                        && ((Directive) directives.get(old)).getEnd() < end) {
+                    old++;
+                }
+                if (end > damageEnd
+                        && old < directives.size()
+                        && ((Directive) directives.get(old)).getEnd() == end) {
+                    last = old + 1;
+                    break;
+                }
+            }
+            
+            directives.subList(first, last).clear();
+            directives.addAll(first, parsed);
+            shiftIndex = directives.size();
+            damageStart = Integer.MAX_VALUE;
+            damageEnd = -1;
+        } finally {
+            document.readUnlock();
+        }
+    }
+    
+    // --- Nested classes ------------------------------------------------------
+    
+    /**
+     * A top level directive of Inform source code. The kind of a directive 
+     * that is outlined is one of the <code>InformSymbol</code> kinds, with 
+     * Array directives as globals and Extend directives as verbs.
+     */
+    public static class Directive {
+        
+        // Offset of the directive, with the other offsets relative to it
+        int start;
+        int length = 0;
+        
+        // Kind of directive, null if it is not outlined
+        private InformSymbol.Kind kind = null;
+        
+        // Directive keyword in lower case, or the class of an object defined
+        // from its class
+        private String keyword = null;
+        
+        // Name of the definition and its offset
+        private String name = null;
+        private int position = -1;
+        
+        // Whether the directive ends with a semicolon
+        private boolean terminated = false;
+        
+        // Arrows, parent and classes of an object or class
+        private int arrows = 0;
+        private String parent = null;
+        private List classes = Collections.EMPTY_LIST;
+        
+        // Dictionary words of a Verb or Extend directive and their offsets
+        private List words = Collections.EMPTY_LIST;
+        private IntList wordPositions = null;
+        
+        /**
+         * Creates a directive starting at an offset
+         *
+         * @param start
+         *              the offset of the first token of the directive
+         */
+        Directive(int start) {
+            this.start = start;
+        }
+        
+        /**
+         * Returns the kind of the directive
+         *
+         * @return the kind, or <code>null</code> for a directive that is not
+         *         outlined
+         */
+        public InformSymbol.Kind getKind() {
+            return kind;
+        }
+        
+        /**
+         * Returns the keyword of the directive in lower case, such as 
+         * "object" or "nearby". For an object defined from its class, this is
+         * the class.
+         *
+         * @return the keyword, or <code>null</code> for a routine or text
+         *         that is not a directive
+         */
+        public String getKeyword() {
+            return keyword;
+        }
+        
+        /**
+         * Returns the name defined by the directive. This is the first
+         * dictionary word of a Verb or Extend directive, and the file of an
+         * Include directive.
+         *
+         * @return the name, or <code>null</code> if there is none
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * Returns the offset of the name in the document
+         *
+         * @return the offset of the name, or -1 if there is none
+         */
+        public int getPosition() {
+            return (position < 0) ? -1 : start + position;
+        }
+        
+        /**
+         * Returns the offset of the first token of the directive
+         *
+         * @return the start offset
+         */
+        public int getStart() {
+            return start;
+        }
+        
+        /**
+         * Returns the offset after the last token of the directive
+         *
+         * @return the end offset
+         */
+        public int getEnd() {
+            return start + length;
+        }
+        
+        /**
+         * Returns whether the directive ends with a semicolon, rather than
+         * being ended by the next directive or the end of the source
+         *
+         * @return <code>true</code> if the directive is terminated
+         */
+        public boolean isTerminated() {
+            return terminated;
+        }
+        
+        /**
+         * Returns the number of arrows giving the initial location of an
+         * object in the object before it
+         *
+         * @return the number of arrows
+         */
+        public int getArrows() {
+            return arrows;
+        }
+        
+        /**
+         * Returns the object an object is initially placed in, when given by
+         * name after its short name
+         *
+         * @return the parent object in lower case, or <code>null</code>
+         */
+        public String getParent() {
+            return parent;
+        }
+        
+        /**
+         * Returns the classes of a class or object, in lower case
+         *
+         * @return the list of class names
+         */
+        public List getClasses() {
+            return Collections.unmodifiableList(classes);
+        }
+        
+        /**
+         * Returns the dictionary words of a Verb or Extend directive
+         *
+         * @return the list of words, without their quotes
+         */
+        public List getWords() {
+            return Collections.unmodifiableList(words);
+        }
+        
+        /**
+         * Returns the offset of a dictionary word in the document
+         *
+         * @param index
+         *              the index of the word
+         * @return the offset of the word
+         */
+        public int getWordPosition(int index) {
+            return start + wordPositions.get(index);
+        }
+        
+        @Override
+        public String toString() {
+            return "InformOutline.Directive[keyword: " + keyword
+                    + ", name: " + name + ", start: " + start
+                    + ", end: " + getEnd() + "]";
+        }
+        
+        // --- Builder methods used by the parser ------------------------------
+        
+        void setKind(InformSymbol.Kind kind, String keyword) {
+            this.kind = kind;
+            this.keyword = keyword;
+        }
+        
+        void setName(String name, int offset) {
+            this.name = name;
+            this.position = offset - start;
+        }
+        
+        void setEnd(int end, boolean terminated) {
+            this.length = Math.max(end - start, 0);
+            this.terminated = terminated;
+        }
+        
+        void setArrows(int arrows) {
+            this.arrows = arrows;
+        }
+        
+        void setParent(String parent) {
+            this.parent = parent.toLowerCase();
+        }
+        
+        void addClass(String name) {
+            if (classes.isEmpty()) {
+                classes = new ArrayList();
+            }
+            classes.add(name.toLowerCase());
+        }
+        
+        void addWord(String word, int offset) {
+            if (words.isEmpty()) {
+                words = new ArrayList();
+                wordPositions = new IntList();
+            }
+            words.add(word);
+            wordPositions.add(offset - start);
+            if (name == null) {
+                setName(word, offset);
+            }
+        }
+    }
+}
@@ -32,381 +32,369 @@ package it.schillaci.jif.inform;
  *
  */
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 /**
- * InformParser: Used to split a string of Inform source code into a series of
- * tokens identifying classes, elements globals, objects, properties,
- * relationships and verbs.
- * 
+ * InformParser: Splits Inform source code into its top level directives,
+ * describing each one as an <code>InformOutline.Directive</code>: classes,
+ * objects with their arrows and classes, routines, Verb and Extend grammar,
+ * globals, arrays, constants, attributes, properties and Include files.
+ * <p>
+ * The parser is error tolerant. A directive ends at the first semicolon 
+ * outside routine brackets, at the token after the closing bracket of a 
+ * routine whose semicolon is missing, or at a directive keyword found at the
+ * start of a line, so an unterminated directive does not swallow the
+ * directives that follow it. Directives the parser does not outline, and 
+ * text that is not a directive at all, are still returned so that the 
+ * outline covers the whole source. As each directive is parsed from a fresh
+ * state, parsing can start again at the end of any directive.
+ * <p>
+ * The tokens are read either from an <code>InformLexer</code> or from the
+ * token cache of a document.
+ *
  * @author Peter Piggott
- * @version 2.0
+ * @version 3.0
  * @since 3.2
  */
-
 public class InformParser {
 
-    private State baseState;
-    private State attributeState;
-    private State attributeAliasState;
-    private State classState;
-    private State fakeState;
-    private State grammarState;
-    private State grammarActionState;
-    private State objectState;
-    private State propertyState;
-    private State verbState;
-    private State state = baseState;
-    
-    private Callback callback;
-    private InformLexer lex;
-    
-    private Stack stack = new Stack();
-    
-    private InformToken token = null;
-    private InformToken.Lexeme tokenType = null;
-    private String tokenContent = "";
+    // Directives that start a new directive when found at the start of a
+    // line, ending a directive whose semicolon is missing
+    private static final Set recovery = new HashSet(Arrays.asList(new String[] {
+        "array", "attribute", "constant", "extend", "global", "include",
+        "nearby", "object", "property", "verb"
+    }));
 
-    /**
-     * Creates a new instance of InformParser
-     */
-    public InformParser(Callback callback, InformLexer lex) {
-        this.callback = callback;
-        this.lex = lex;
-        initStates();
-    }
+    // Token source, either a lexer or a token cache cursor over a document
+    private final InformLexer lexer;
+    private final InformTokenCache.Tokens tokens;
+    private final Document document;
 
-    private void initStates() {
-        baseState = new BaseState(this);
-        attributeState = new AttributeState(this);
-        attributeAliasState = new AttributeAliasState(this);
-        classState = new ClassState(this);
-        fakeState = new FakeState(this);
-        grammarState = new GrammarState(this);
-        grammarActionState = new GrammarActionState(this);
-        objectState = new ObjectState(this);
-        propertyState = new PropertyState(this);
-        verbState = new VerbState(this);
-        state = baseState;
-    }
+    // The current token
+    private InformToken.Lexeme type = null;
+    private int start = 0;
+    private int end = 0;
+    private String content = null;
 
-    public void parse() {
+    // Whether the current token is the first on its line
+    private boolean lineStart = false;
 
-        token = lex.nextElement();
+    // End of the significant token before the current token
+    private int previous = 0;
 
-        while (token.getType() != InformToken.EOS) {
-            parseElement(token);
-            token = lex.nextElement();
-        }
-    }
-
-    void parseElement(InformToken token) {
-
-        if (token.getType() == InformToken.COMMENT
-                || token.getType() == InformToken.WHITESPACE) {
-            callback.handleToken(token);
-            return;
-        }
+    // Whether the current token has been pushed back
+    private boolean pushed = false;
 
-        if (token.getType() == InformToken.NUMBER
-                || token.getType() == InformToken.STRING
-                || token.getType() == InformToken.WORD) {
-            callback.handleToken(token);
-            state.parseToken();
-        }
-    }
-
-    void push(InformToken token) {
-        stack.push(token);
-    }
-
-    InformToken peek() {
-        return (InformToken) stack.peek();
-    }
-
-    InformToken pop() {
-        return (InformToken) stack.pop();
-    }
-
-    void shift(State state) {
-        push(token);
-        setState(state);
-    }
-
-    void setState(State state) {
-        this.state = state;
-    }
-
-    private boolean isAttribute(String name) {
-        return InformLibrary.isAttribute(name) || callback.isAttribute(name);
-    }
-
-    private boolean isDirective(String name) {
-        return InformLibrary.isDirective(name);
-    }
-
-    private boolean isKeyword(String name) {
-        return InformLibrary.isKeyword(name) || InformLibrary.isDirective(name);
-    }
-
-    private boolean isProperty(String name) {
-        return InformLibrary.isProperty(name) || callback.isProperty(name);
-    }
-
-    private boolean isStatement(String name) {
-        return InformLibrary.isStatement(name);
-    }
-
-    private boolean isVerb(String name) {
-        return InformLibrary.isVerb(name) || callback.isVerb(name);
-    }
-
-    // --- Interfaces ----------------------------------------------------------
     /**
-     * Users of the parser must implement this callback interface
+     * Creates a new instance of InformParser reading the tokens from a lexer
+     *
+     * @param lexer
+     *            the lexer positioned at the start of a directive
      */
-    public interface Callback {
-        // Basic syntax items
-
-        public void handleToken(InformToken token);
-
-        public boolean isAttribute(String token);
-
-        public boolean isProperty(String token);
-
-        public boolean isVerb(String token);
+    public InformParser(InformLexer lexer) {
+        this.lexer = lexer;
+        this.tokens = null;
+        this.document = null;
     }
 
-    private interface State {
-//        void parseSymbol();
-
-        void parseToken();
+    /**
+     * Creates a new instance of InformParser reading the tokens from the 
+     * token cache of a document
+     *
+     * @param tokens
+     *            the cached tokens, starting at the start of a directive
+     * @param document
+     *            the document holding the tokens
+     */
+    public InformParser(InformTokenCache.Tokens tokens, Document document) {
+        this.lexer = null;
+        this.tokens = tokens;
+        this.document = document;
     }
 
-    // --- Nested classes ------------------------------------------------------
-    /* The parser can start at any point in the source so default syntax 
-     * coloring actions are taken until a directive is found.
+    /**
+     * Parses the next directive
+     *
+     * @return the directive, or <code>null</code> at the end of the source
      */
-    private class BaseState implements State {
-
-        InformParser parser;
-
-        public BaseState(InformParser parser) {
-            this.parser = parser;
-        }
-
-        private void parseKeyword() {
-            if (token.getContent().equalsIgnoreCase("attribute")) {
-                setState(attributeState);
-            } else if (token.getContent().equalsIgnoreCase("property")) {
-                setState(propertyState);
-            } else if (token.getContent().equalsIgnoreCase("extend")) {
-                setState(verbState);
-            } else if (token.getContent().equalsIgnoreCase("verb")) {
-                setState(verbState);
-            }
-        }
+    public InformOutline.Directive next() {
 
-        @Override
-        public void parseToken() {
-            callback.handleToken(token);
+        if (advance() == InformToken.EOS) {
+            return null;
         }
-    }
 
-    private class DirectiveState implements State {
+        InformOutline.Directive directive = new InformOutline.Directive(start);
+        int depth = 0;
 
-        InformParser parser;
-
-        public DirectiveState(InformParser parser) {
-            this.parser = parser;
+        // Conditional compilation and other directives may be prefixed by #
+        if (type == InformToken.HASH) {
+            advance();
         }
 
-        private void parseKeyword() {
-            if (token.getContent().equalsIgnoreCase("attribute")) {
-                setState(attributeState);
-            } else if (token.getContent().equalsIgnoreCase("class")) {
-                setState(classState);
-            } else if (token.getContent().equalsIgnoreCase("object")) {
-                setState(objectState);
-            } else if (token.getContent().equalsIgnoreCase("property")) {
-                setState(propertyState);
-            } else if (token.getContent().equalsIgnoreCase("extend")) {
-                setState(verbState);
-            } else if (token.getContent().equalsIgnoreCase("verb")) {
-                setState(verbState);
+        if (type == InformToken.OPENROUTINE) {
+            directive.setKind(InformSymbol.ROUTINE, null);
+            if (advance() == InformToken.SYMBOL) {
+                directive.setName(content(), start);
+            } else {
+                pushBack();
             }
+            depth = 1;
+        } else if (type == InformToken.SYMBOL) {
+            header(directive);
+        } else {
+            pushBack();
         }
 
-        @Override
-        public void parseToken() {
-            callback.handleToken(token);
-        }
-    }
-
-    // --- Attribute directive -------------------------------------------------
-    private class AttributeState implements State {
-
-        InformParser parser;
+        body(directive, depth);
+        return directive;
 
-        public AttributeState(InformParser parser) {
-            this.parser = parser;
-        }
+    }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
+    // --- Helper methods ------------------------------------------------------
+
+    // Parse the start of a directive, from its keyword to its body
+    private void header(InformOutline.Directive directive) {
+
+        String word = content().toLowerCase();
+
+        if (word.equals("class")) {
+            directive.setKind(InformSymbol.CLASS, word);
+            name(directive);
+        } else if (word.equals("object") || word.equals("nearby")) {
+            directive.setKind(InformSymbol.OBJECT, word);
+            object(directive);
+        } else if (word.equals("global") || word.equals("array")) {
+            directive.setKind(InformSymbol.GLOBAL, word);
+            name(directive);
+        } else if (word.equals("constant")) {
+            directive.setKind(InformSymbol.CONSTANT, word);
+            name(directive);
+        } else if (word.equals("attribute")) {
+            directive.setKind(InformSymbol.ATTRIBUTE, word);
+            name(directive);
+        } else if (word.equals("property")) {
+            directive.setKind(InformSymbol.PROPERTY, word);
+            while (advance() == InformToken.SYMBOL && isPropertyQualifier(content())) {
+            }
+            pushBack();
+            name(directive);
+        } else if (word.equals("verb") || word.equals("extend")) {
+            directive.setKind(InformSymbol.VERB, word);
+            words(directive);
+        } else if (word.equals("include")) {
+            directive.setKind(InformSymbol.INCLUDE, word);
+            if (advance() == InformToken.STRING) {
+                String file = content();
+                int length = file.length();
+                if (length > 1 && file.charAt(length - 1) == '"') {
+                    length--;
+                }
+                directive.setName(file.substring(1, length), start + 1);
+            } else {
+                pushBack();
             }
+        } else if (InformLibrary.isDirective(word)) {
+            directive.setKind(null, word);
+        } else {
+            // An object defined directly from its class: Room kitchen "Kitchen"
+            directive.setKind(InformSymbol.OBJECT, word);
+            directive.addClass(word);
+            object(directive);
         }
-    }
 
-    private class AttributeAliasState implements State {
+    }
 
-        InformParser parser;
+    // Parse the header of an object: its arrows, name, short name and parent
+    private void object(InformOutline.Directive directive) {
 
-        public AttributeAliasState(InformParser parser) {
-            this.parser = parser;
+        int arrows = 0;
+        while (advance() == InformToken.MINUSARROW) {
+            arrows++;
         }
+        pushBack();
+        directive.setArrows(arrows);
+        name(directive);
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
-            }
+        // A short name spanning lines is read from a cache a line at a time
+        while (advance() == InformToken.STRING) {
         }
-    }
-
-    // --- Class directive -----------------------------------------------------
-    private class ClassState implements State {
-
-        InformParser parser;
-
-        public ClassState(InformParser parser) {
-            this.parser = parser;
+        pushBack();
+        if (advance() == InformToken.SYMBOL && !isSegment(content())) {
+            directive.setParent(content());
+        } else {
+            pushBack();
         }
 
-        @Override
-        public void parseToken() {
-        }
     }
 
-    // --- Fake_action directive -----------------------------------------------
-    private class FakeState implements State {
-
-        InformParser parser;
+    // Take the name of a directive if the next token is a symbol
+    private void name(InformOutline.Directive directive) {
 
-        public FakeState(InformParser parser) {
-            this.parser = parser;
+        if (advance() == InformToken.SYMBOL) {
+            directive.setName(content(), start);
+        } else {
+            pushBack();
         }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
-            }
-        }
     }
 
-    // --- Object directive ----------------------------------------------------
-    private class ObjectState implements State {
-
-        InformParser parser;
-
-        public ObjectState(InformParser parser) {
-            this.parser = parser;
+    // Take the dictionary words of a Verb or Extend directive
+    private void words(InformOutline.Directive directive) {
+
+        while (advance() == InformToken.WORD
+                || (type == InformToken.SYMBOL && isVerbQualifier(content()))) {
+            if (type == InformToken.WORD) {
+                String word = content();
+                int length = word.length();
+                if (length > 1 && word.charAt(length - 1) == '\'') {
+                    length--;
+                }
+                if (length > 1) {
+                    directive.addWord(word.substring(1, length), start + 1);
+                }
+            }
         }
+        pushBack();
 
-        @Override
-        public void parseToken() {
-        }
     }
 
-    // --- Property directive --------------------------------------------------
-    private class PropertyState implements State {
-
-        InformParser parser;
-
-        public PropertyState(InformParser parser) {
-            this.parser = parser;
-        }
+    // Parse the rest of a directive up to its end, taking the class list of
+    // a class or object
+    private void body(InformOutline.Directive directive, int depth) {
+
+        boolean routine = (directive.getKind() == InformSymbol.ROUTINE);
+        boolean classes = (directive.getKind() == InformSymbol.CLASS
+                || directive.getKind() == InformSymbol.OBJECT);
+        boolean inClass = false;
+        boolean closed = false;
+
+        while (advance() != InformToken.EOS) {
+
+            // A directive keyword at the start of a line means the semicolon
+            // is missing, as is any token after the end of a routine
+            if ((lineStart && type == InformToken.SYMBOL && recovery.contains(content().toLowerCase()))
+                    || (closed && type != InformToken.SEMICOLON)) {
+                pushBack();
+                directive.setEnd(previous, false);
+                return;
+            }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
+            if (type == InformToken.OPENROUTINE) {
+                depth++;
+            } else if (type == InformToken.CLOSEROUTINE) {
+                if (depth > 0) {
+                    depth--;
+                }
+                closed = routine && depth == 0;
+            } else if (depth > 0) {
+                continue;
+            } else if (type == InformToken.SEMICOLON) {
+                directive.setEnd(end, true);
+                return;
+            } else if (classes && type == InformToken.SYMBOL) {
+                String word = content();
+                if (word.equalsIgnoreCase("class")) {
+                    inClass = true;
+                } else if (isSegment(word)) {
+                    inClass = false;
+                } else if (inClass) {
+                    directive.addClass(word);
+                }
+            } else if (type == InformToken.COMMA) {
+                inClass = false;
             }
         }
-    }
 
-    // --- Trace directive -----------------------------------------------------
-    private class TraceState implements State {
+        // The source ended within the directive
+        directive.setEnd(previous, false);
 
-        InformParser parser;
+    }
 
-        public TraceState(InformParser parser) {
-            this.parser = parser;
-        }
+    private boolean isPropertyQualifier(String word) {
+        return word.equalsIgnoreCase("additive")
+                || word.equalsIgnoreCase("long")
+                || word.equalsIgnoreCase("individual");
+    }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
-            }
-        }
+    private boolean isSegment(String word) {
+        return word.equalsIgnoreCase("class")
+                || word.equalsIgnoreCase("with")
+                || word.equalsIgnoreCase("has")
+                || word.equalsIgnoreCase("private");
     }
 
-    // --- Extend, Verb directives ---------------------------------------------
-    private class VerbState implements State {
+    private boolean isVerbQualifier(String word) {
+        return word.equalsIgnoreCase("meta")
+                || word.equalsIgnoreCase("only");
+    }
 
-        InformParser parser;
+    // Advance to the next significant token, skipping whitespace, newlines
+    // and comments
+    private InformToken.Lexeme advance() {
 
-        public VerbState(InformParser parser) {
-            this.parser = parser;
+        if (pushed) {
+            pushed = false;
+            return type;
+        }
+        if (type != null && type != InformToken.EOS) {
+            previous = end;
         }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.TIMES) {
-                setState(grammarState);
-            } else if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
+        boolean newline = (type == null);
+        while (true) {
+            if (lexer != null) {
+                type = lexer.advance();
+                start = lexer.getTokenStart();
+                end = lexer.getTokenEnd();
+            } else if (tokens.next()) {
+                type = tokens.getType();
+                start = tokens.getStart();
+                end = tokens.getEnd();
+            } else {
+                type = InformToken.EOS;
+            }
+            if (type == InformToken.NEWLINE) {
+                newline = true;
+            } else if (type == InformToken.WHITESPACE || type == InformToken.COMMENT) {
+                newline = false;
+            } else {
+                break;
             }
         }
-    }
-
-    private class GrammarState implements State {
-
-        InformParser parser;
-
-        public GrammarState(InformParser parser) {
-            this.parser = parser;
+        if (type == InformToken.EOS) {
+            start = previous;
+            end = previous;
         }
+        lineStart = newline;
+        content = null;
+        return type;
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.MINUSARROW) {
-                setState(grammarActionState);
-            } else if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
-            }
-        }
     }
 
-    private class GrammarActionState implements State {
-
-        InformParser parser;
-
-        public GrammarActionState(InformParser parser) {
-            this.parser = parser;
-        }
+    // Push back the current token so the next call to advance returns it
+    private void pushBack() {
+        pushed = true;
+    }
 
-        @Override
-        public void parseToken() {
-            if (token.getType() == InformToken.TIMES) {
-                setState(grammarState);
-            } else if (token.getType() == InformToken.SEMICOLON) {
-                setState(baseState);
+    // The text of the current token
+    private String content() {
+
+        if (content == null) {
+            if (lexer != null) {
+                content = lexer.getTokenContent();
+            } else {
+                try {
+                    content = document.getText(start, end - start);
+                } catch (BadLocationException ex) {
+                    content = "";
+                }
             }
         }
+        return content;
+
     }
-}
\ No newline at end of file
+}
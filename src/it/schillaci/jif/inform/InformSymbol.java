@@ -0,0 +1,195 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformSymbol.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A definition found in some Inform source code: a class, object, routine,
+ * global, constant, attribute, property or verb, with the position of its
+ * name in the source file and, for classes and objects, the names of the
+ * classes it inherits from.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformSymbol implements Comparable {
+
+    /**
+     * Type safe enumeration for the kinds of Inform definitions
+     */
+    public static class Kind {
+
+        // Name of the kind of definition
+        private String name;
+
+        /**
+         * Creates a new <code>Kind</code> with the specified name.
+         *
+         * @param name
+         *            the name of the kind
+         */
+        private Kind(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "InformSymbol.Kind[Name: " + name + "]";
+        }
+
+        /**
+         * Returns the kind with the specified name
+         *
+         * @param name
+         *            the name of the kind
+         * @return the kind, or <code>null</code> if there is no such kind
+         */
+        public static Kind get(String name) {
+            for (int i = 0; i < kinds.length; i++) {
+                if (kinds[i].name.equals(name)) {
+                    return kinds[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    public static final Kind CLASS     = new Kind("class");
+    public static final Kind OBJECT    = new Kind("object");
+    public static final Kind ROUTINE   = new Kind("routine");
+    public static final Kind GLOBAL    = new Kind("global");
+    public static final Kind CONSTANT  = new Kind("constant");
+    public static final Kind ATTRIBUTE = new Kind("attribute");
+    public static final Kind PROPERTY  = new Kind("property");
+    public static final Kind VERB      = new Kind("verb");
+    public static final Kind INCLUDE   = new Kind("include");
+
+    // All the kinds of definition
+    static final Kind[] kinds = {
+        CLASS, OBJECT, ROUTINE, GLOBAL, CONSTANT, ATTRIBUTE, PROPERTY, VERB, INCLUDE };
+
+    // Kind of definition
+    private Kind kind;
+    // Name of the definition (lower case)
+    private String name;
+    // Path of the file containing the definition
+    private String path;
+    // Position of the name in the file
+    private int position;
+    // Classes a class or object inherits from (lower case)
+    private List classes = null;
+
+    // --- Constructors --------------------------------------------------------
+
+    /**
+     * Creates a new Inform symbol
+     *
+     * @param kind
+     *              The kind of definition
+     * @param name
+     *              The name of the definition
+     * @param path
+     *              The path of the file containing the definition
+     * @param position
+     *              The position of the name in the file
+     */
+    public InformSymbol(Kind kind, String name, String path, int position) {
+        this.kind = kind;
+        this.name = name.toLowerCase();
+        this.path = path;
+        this.position = position;
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the classes a class or object inherits from, in source order
+     *
+     * @return the list of class names, empty if there are none
+     */
+    public List getClasses() {
+        return (classes == null)
+                ? Collections.EMPTY_LIST
+                : Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Adds a class the class or object inherits from
+     *
+     * @param name
+     *              The name of the class
+     */
+    public void addClass(String name) {
+        if (classes == null) {
+            classes = new ArrayList(1);
+        }
+        classes.add(name.toLowerCase());
+    }
+
+    // --- Object methods ------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    // --- Comparable implementation -------------------------------------------
+
+    @Override
+    public int compareTo(Object o) {
+        return name.compareTo(((InformSymbol) o).name);
+    }
+}
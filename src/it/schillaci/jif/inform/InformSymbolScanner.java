@@ -0,0 +1,127 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformSymbolScanner.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * InformSymbolScanner: Finds the definitions in a file of Inform source code
+ * from the directives found by an <code>InformParser</code>. Only the top 
+ * level of each directive is examined, so names inside strings, comments and
+ * routine bodies are never mistaken for definitions.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public final class InformSymbolScanner {
+
+    private InformSymbolScanner() {
+    }
+
+    /**
+     * Scans some Inform source code for definitions
+     *
+     * @param path
+     *              The path of the file containing the source
+     * @param source
+     *              The Inform source code
+     * @return the list of <code>InformSymbol</code> definitions in source order
+     */
+    public static List scan(String path, CharSequence source) {
+
+        List symbols = new ArrayList();
+        InformParser parser = new InformParser(
+                new InformLexer(source, 0, InformLexer.STATE_NORMAL));
+        InformOutline.Directive directive;
+
+        while ((directive = parser.next()) != null) {
+            add(symbols, path, directive);
+        }
+        return symbols;
+
+    }
+
+    /**
+     * Lists the definitions in the outline of an open Inform document
+     *
+     * @param path
+     *              The path of the file being edited
+     * @param outline
+     *              The outline of the document
+     * @return the list of <code>InformSymbol</code> definitions in source order
+     */
+    public static List scan(String path, InformOutline outline) {
+
+        List symbols = new ArrayList();
+        for (Iterator i = outline.getDirectives().iterator(); i.hasNext();) {
+            add(symbols, path, (InformOutline.Directive) i.next());
+        }
+        return symbols;
+
+    }
+
+    // Add the definitions made by a directive
+    private static void add(List symbols, String path, InformOutline.Directive directive) {
+
+        InformSymbol.Kind kind = directive.getKind();
+
+        if (kind == InformSymbol.VERB) {
+            // Extend directives add to verbs defined elsewhere
+            if ("verb".equals(directive.getKeyword())) {
+                List words = directive.getWords();
+                for (int i = 0; i < words.size(); i++) {
+                    symbols.add(new InformSymbol(
+                            kind,
+                            (String) words.get(i),
+                            path,
+                            directive.getWordPosition(i)));
+                }
+            }
+        } else if (kind != null
+                && kind != InformSymbol.INCLUDE
+                && directive.getName() != null) {
+            InformSymbol symbol = new InformSymbol(
+                    kind,
+                    directive.getName(),
+                    path,
+                    directive.getPosition());
+            for (Iterator i = directive.getClasses().iterator(); i.hasNext();) {
+                symbol.addClass((String) i.next());
+            }
+            symbols.add(symbol);
+        }
+
+    }
+}
@@ -169,11 +169,30 @@ public class InformToken {
          WORD
         };
 
+    // Number each lexeme by its place in the token types
+    static {
+        for (int i = 0; i < types.length; i++) {
+            types[i].index = i;
+        }
+    }
+
+    /**
+     * Returns the lexeme numbered by <code>Lexeme.getIndex</code>.
+     *
+     * @param index
+     *           the number of the lexeme
+     * @return the lexeme
+     */
+    public static Lexeme getLexeme(int index) {
+        return types[index];
+    }
     
     public static class Lexeme {
         
         private static String name;
         
+        private int index;
+        
         Lexeme(String name) {
             this.name = name;
         }
@@ -182,6 +201,15 @@ public class InformToken {
             return name;
         }
         
+        /**
+         * Returns the number of the lexeme, for keeping token types as ints
+         *
+         * @return the number of the lexeme
+         */
+        public int getIndex() {
+            return index;
+        }
+        
         @Override
         public String toString() {
             return "Lexeme[name: " + name + "]";
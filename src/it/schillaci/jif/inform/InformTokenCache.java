@@ -0,0 +1,404 @@
+package it.schillaci.jif.inform;
+
+/*
+ * InformTokenCache.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+
+import it.schillaci.jif.core.IntList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * InformTokenCache: The tokens of a document, lexed once and shared by the
+ * syntax highlighting, the bracket index and validator, and word lookup.
+ * <p>
+ * The tokens of each line are kept as an array of ints, three to a token:
+ * the index of its lexeme, its offset in the line and its length. As the
+ * offsets are relative to the line, a line keeps its tokens while the lines
+ * before it are edited. An edit drops the tokens of the lines it touches and
+ * these are lexed again when next asked for. The lexer state at the start of
+ * a line is found by walking on from the last line known to be in step,
+ * keeping the tokens of each line whose start state is unchanged, so only
+ * the lines an edit damages are lexed again.
+ * <p>
+ * The cache must be used on the event dispatch thread or with the document
+ * read locked, so that the text does not change while it is lexed.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class InformTokenCache {
+    
+    /**
+     * Number of ints held for each token
+     */
+    public static final int TOKEN_SIZE = 3;
+    
+    /**
+     * Place of the lexeme index within a token
+     */
+    public static final int TYPE = 0;
+    
+    /**
+     * Place of the offset in the line within a token
+     */
+    public static final int START = 1;
+    
+    /**
+     * Place of the length within a token
+     */
+    public static final int LENGTH = 2;
+    
+    private static final int[] NO_TOKENS = new int[0];
+    
+    // The cached document
+    private final AbstractDocument document;
+    
+    // The tokens of each line, null for a line to be lexed again
+    private final List lines = new ArrayList();
+    
+    // Lexer state at the start and at the end of each line when it was lexed
+    private final IntList starts = new IntList();
+    private final IntList ends = new IntList();
+    
+    // Count of the leading lines whose start states are in step with the text
+    private int known = 0;
+    
+    // Lexer, segment and token buffer reused for lexing lines
+    private final InformLexer lexer = new InformLexer("");
+    private final Segment segment = new Segment();
+    private final IntList lexed = new IntList();
+    
+    private final DocumentListener listener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            changed(e);
+        }
+        public void removeUpdate(DocumentEvent e) {
+            changed(e);
+        }
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+    
+    /**
+     * Creates a new instance of InformTokenCache for a document. The cache
+     * follows the edits made to the document from then on.
+     *
+     * @param document
+     *              the document to cache the tokens of
+     */
+    public InformTokenCache(AbstractDocument document) {
+        this.document = document;
+        document.addDocumentListener(listener);
+        reset();
+    }
+    
+    // --- Methods -------------------------------------------------------------
+    
+    /**
+     * Returns the lexer state at the start of a line. The lines before it
+     * are lexed first if their tokens have been dropped.
+     *
+     * @param line
+     *              the index of the line
+     * @return the lexer state at the start of the line
+     */
+    public synchronized int getState(int line) {
+        walk(line);
+        return starts.get(line);
+    }
+    
+    /**
+     * Returns the tokens of a line, lexing it if necessary. Each token takes
+     * <code>TOKEN_SIZE</code> ints, holding its lexeme index at 
+     * <code>TYPE</code> and its offset in the line and its length at
+     * <code>START</code> and <code>LENGTH</code>. The array is shared and
+     * must not be changed.
+     *
+     * @param line
+     *              the index of the line
+     * @return the tokens of the line
+     */
+    public synchronized int[] getTokens(int line) {
+        walk(line);
+        if (lines.get(line) == null) {
+            lex(line);
+        }
+        return (int[]) lines.get(line);
+    }
+    
+    /**
+     * Returns the tokens overlapping a range of the document, positioned
+     * before the first of them.
+     *
+     * @param start
+     *              the start offset of the range
+     * @param end
+     *              the end offset of the range
+     * @return the tokens of the range
+     */
+    public Tokens getTokens(int start, int end) {
+        return new Tokens(start, end);
+    }
+    
+    /**
+     * Returns the token holding an offset of the document, positioned on
+     * that token.
+     *
+     * @param offset
+     *              an offset in the document
+     * @return the token at the offset, or null if there is none
+     */
+    public Tokens getTokenAt(int offset) {
+        Tokens tokens = new Tokens(offset, offset + 1);
+        return tokens.next() ? tokens : null;
+    }
+    
+    /**
+     * Stop following the edits made to the document
+     */
+    public void dispose() {
+        document.removeDocumentListener(listener);
+    }
+    
+    // --- Helper methods ------------------------------------------------------
+    
+    // Forget all the lines
+    private synchronized void reset() {
+        int lineCount = document.getDefaultRootElement().getElementCount();
+        lines.clear();
+        lines.addAll(Collections.nCopies(lineCount, null));
+        starts.replace(0, starts.size(), lineCount, InformLexer.STATE_NORMAL);
+        ends.replace(0, ends.size(), lineCount, InformLexer.STATE_NORMAL);
+        known = 0;
+    }
+    
+    // Keep the lines in step with an edit, dropping the tokens of the lines
+    // it touches
+    private synchronized void changed(DocumentEvent e) {
+        Element root = document.getDefaultRootElement();
+        // The lines holding the edited text, as the change of lines may
+        // start after the line the edit started in
+        int first = root.getElementIndex(e.getOffset());
+        int last = (e.getType() == DocumentEvent.EventType.INSERT)
+                ? root.getElementIndex(e.getOffset() + e.getLength())
+                : first;
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null) {
+            int index = change.getIndex();
+            int removed = change.getChildrenRemoved().length;
+            int added = change.getChildrenAdded().length;
+            if (lines.size() != root.getElementCount() - added + removed) {
+                reset();
+                return;
+            }
+            // The first line of the change starts where the line it replaces
+            // did, and keeps its start state as the text before is untouched
+            int state = (index < starts.size()) ? starts.get(index) : InformLexer.STATE_NORMAL;
+            lines.subList(index, index + removed).clear();
+            lines.addAll(index, Collections.nCopies(added, null));
+            starts.replace(index, removed, added, InformLexer.STATE_NORMAL);
+            ends.replace(index, removed, added, InformLexer.STATE_NORMAL);
+            if (added > 0) {
+                starts.set(index, state);
+            }
+            first = Math.min(first, index);
+            last = Math.max(last, index + added - 1);
+        }
+        
+        for (int i = first; i <= last && i < lines.size(); i++) {
+            lines.set(i, null);
+        }
+        known = Math.min(known, first + 1);
+    }
+    
+    // Bring the start states up to date as far as a line, dropping the
+    // tokens of each line whose start state has changed
+    private void walk(int line) {
+        while (known <= line) {
+            int state = InformLexer.STATE_NORMAL;
+            if (known > 0) {
+                if (lines.get(known - 1) == null) {
+                    lex(known - 1);
+                }
+                state = ends.get(known - 1);
+            }
+            if (starts.get(known) != state) {
+                starts.set(known, state);
+                lines.set(known, null);
+            }
+            known++;
+        }
+    }
+    
+    // Lex a line from its start state
+    private void lex(int line) {
+        Element element = document.getDefaultRootElement().getElement(line);
+        int start = element.getStartOffset();
+        int state = starts.get(line);
+        // The last line leaves out the newline the document adds at its end
+        int end = Math.min(element.getEndOffset(), document.getLength());
+        try {
+            document.getText(start, end - start, segment);
+        } catch (BadLocationException ex) {
+            System.err.println("Token cache: " + ex.getMessage());
+            lines.set(line, NO_TOKENS);
+            ends.set(line, state);
+            return;
+        }
+        lexer.reset(segment, 0, state);
+        lexed.clear();
+        InformToken.Lexeme type;
+        while ((type = lexer.advance()) != InformToken.EOS) {
+            lexed.add(type.getIndex());
+            lexed.add(lexer.getTokenStart());
+            lexed.add(lexer.getTokenEnd() - lexer.getTokenStart());
+        }
+        lines.set(line, (lexed.size() == 0) ? NO_TOKENS : lexed.toArray());
+        ends.set(line, lexer.getState());
+    }
+    
+    // --- Nested classes ------------------------------------------------------
+    
+    /**
+     * A cursor over the cached tokens of a range of the document, moving a 
+     * line at a time through the cache so that no token objects are made. 
+     * The document must not be edited while it is in use.
+     */
+    public class Tokens {
+        
+        // End offset of the range
+        private final int end;
+        
+        // Current line, its start offset and its tokens
+        private int line;
+        private int lineStart;
+        private int[] tokens;
+        
+        // Index of the current token in the line
+        private int index;
+        
+        Tokens(int start, int end) {
+            this.end = end;
+            Element root = document.getDefaultRootElement();
+            load(root.getElementIndex(start));
+            
+            // Find the first token ending after the start
+            int offset = start - lineStart;
+            int lo = 0;
+            int hi = tokens.length / TOKEN_SIZE - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tokens[mid * TOKEN_SIZE + START] + tokens[mid * TOKEN_SIZE + LENGTH] <= offset) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            index = lo - 1;
+        }
+        
+        /**
+         * Moves on to the next token of the range
+         *
+         * @return <code>true</code> if there is a next token
+         */
+        public boolean next() {
+            index++;
+            while (index * TOKEN_SIZE >= tokens.length) {
+                if (line + 1 >= document.getDefaultRootElement().getElementCount()) {
+                    return false;
+                }
+                load(line + 1);
+                index = 0;
+            }
+            return getStart() < end;
+        }
+        
+        /**
+         * Moves back to the previous token, which may lie before the range
+         *
+         * @return <code>true</code> if there is a previous token
+         */
+        public boolean previous() {
+            index--;
+            while (index < 0) {
+                if (line == 0) {
+                    return false;
+                }
+                load(line - 1);
+                index = tokens.length / TOKEN_SIZE - 1;
+            }
+            return true;
+        }
+        
+        /**
+         * Returns the lexeme of the current token
+         *
+         * @return the token type
+         */
+        public InformToken.Lexeme getType() {
+            return InformToken.getLexeme(tokens[index * TOKEN_SIZE + TYPE]);
+        }
+        
+        /**
+         * Returns the start offset of the current token in the document
+         *
+         * @return the start offset
+         */
+        public int getStart() {
+            return lineStart + tokens[index * TOKEN_SIZE + START];
+        }
+        
+        /**
+         * Returns the end offset of the current token in the document
+         *
+         * @return the end offset
+         */
+        public int getEnd() {
+            return getStart() + tokens[index * TOKEN_SIZE + LENGTH];
+        }
+        
+        private void load(int line) {
+            this.line = line;
+            lineStart = document.getDefaultRootElement().getElement(line).getStartOffset();
+            tokens = getTokens(line);
+        }
+    }
+}
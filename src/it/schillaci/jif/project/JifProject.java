@@ -32,17 +32,14 @@ package it.schillaci.jif.project;
  *
  */
 
-import it.schillaci.jif.core.InformAsset;
 import it.schillaci.jif.core.JifFileName;
-import it.schillaci.jif.gui.Inspect;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 import java.util.Vector;
 
 /**
@@ -72,15 +69,15 @@ public class JifProject {
     // Files contained in the project
     private Vector files = new Vector();
     
-    // Class definitions founsd in project files
-    private Map classes = new TreeMap();
-    
     // Switches
     private Map switches        = new LinkedHashMap();
     
     // Actual Directory of the project (for the relative paths management)
     private String projectDirectory = null;
     
+    // Caret and scroll positions of the project files
+    private Map positions = new HashMap();
+    
     // --- Constructors --------------------------------------------------------
     
     /** Creates a new instance of JifProject */
@@ -113,7 +110,6 @@ public class JifProject {
         if (file.equals(mainFile)) {
             mainFile = null;
         }
-        clear(file.getPath());
         notifyObservers();
     }
     
@@ -126,50 +122,12 @@ public class JifProject {
         projectFile = null;
         mainFile = null;
         files.removeAllElements();
-        classes.clear();
+        positions.clear();
         notifyObservers();
     }
     
-    public void clear(String name) {
-        for (Iterator i=classes.entrySet().iterator(); i.hasNext(); ) {
-            Entry e = (Entry) i.next();
-            InformAsset ia = (InformAsset) e.getValue();
-            String path = ia.getPath();
-            if (path!=null && path.equals(name)) {
-                clearChildren(ia, name);
-                if (ia.hasChildren()) {
-                    ia.setLocation(new Inspect(ia.getName(), null, -1));
-                } else {
-                    i.remove();
-                }
-            }
-        }            
-    }
-    
-    private void clearChildren(InformAsset ia, String name) {
-        for (Iterator i=ia.iterator(); i.hasNext(); ) {
-            String childName = (String) i.next();
-            if (classes.containsKey(childName)) {
-                InformAsset child = (InformAsset) classes.get(childName);
-                if (child.getPath().equals(name)) {
-                    i.remove();
-                }
-            }
-        }
-    }
-    
     // --- Accessor methods ----------------------------------------------------
     
-    public void addClasses(Map classes) {
-        this.classes.putAll(classes);
-    }
-    
-    public Map getClasses() {
-        return Collections.unmodifiableMap(classes);
-    }
-    
-    // ---
-    
     public JifFileName getFile() {
         return projectFile;
     }
@@ -304,6 +262,54 @@ public class JifProject {
         this.projectDirectory = projectDirectory;
     }
     
+    // ---
+    
+    /**
+     * Records the caret position and the offset of the first visible text of
+     * a project file, a relative path is resolved against the project
+     * directory as for project files.
+     *
+     * @param filePath
+     *              the path of the file
+     * @param caret
+     *              the caret offset
+     * @param top
+     *              the offset of the text at the top of the view
+     */
+    public void addPosition(String filePath, int caret, int top) {
+        File f = new File(projectFile.getDirectory() + File.separator + filePath);
+        String path = f.exists() ?
+            projectFile.getDirectory() + File.separator + filePath :
+            filePath;
+        setPosition(path, caret, top);
+    }
+    
+    /**
+     * Returns the caret position and the offset of the first visible text of
+     * a project file as a two element array, or <code>null</code> if none
+     * has been recorded.
+     *
+     * @param path
+     *              the path of the file
+     * @return the caret and top offsets
+     */
+    public int[] getPosition(String path) {
+        return (int[]) positions.get(path);
+    }
+    
+    public Map getPositions() {
+        return positions;
+    }
+    
+    public void setPosition(String path, int caret, int top) {
+        positions.put(path, new int[] { caret, top });
+    }
+    
+    public void setPositions(Map positions) {
+        this.positions.clear();
+        this.positions.putAll(positions);
+    }
+    
     // --- Project observer methods --------------------------------------------
     
     public void registerObserver(JifProjectObserver o) {
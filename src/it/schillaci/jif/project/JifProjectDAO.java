@@ -85,6 +85,7 @@ public class JifProjectDAO {
         private static final Keyword MAIN   = new Keyword("[MAINFILE]");
         private static final Keyword SWITCH = new Keyword("[SWITCH]");
         private static final Keyword MODE   = new Keyword("[MODE]");
+        private static final Keyword POSITION = new Keyword("[POSITION]");
 
 
         // JifProject file keywords
@@ -92,6 +93,7 @@ public class JifProjectDAO {
             FILE,
             MAIN,
             MODE,
+            POSITION,
             SWITCH };
 
         static {
@@ -115,6 +117,7 @@ public class JifProjectDAO {
     private static Pattern mainPattern   = Pattern.compile("\n\\[MAINFILE\\]([^\n]+)");
     private static Pattern modePattern   = Pattern.compile("\n\\[MODE\\](.+)");
     private static Pattern switchPattern = Pattern.compile("\n\\[SWITCH\\]([^,]+),([^\n]+)");
+    private static Pattern positionPattern = Pattern.compile("\n\\[POSITION\\]([^\n]+),(\\d+),(\\d+)");
     
     /** Creates a new instance of JifProjectDAO */
     public JifProjectDAO() {
@@ -173,6 +176,15 @@ public class JifProjectDAO {
                 project.setInformMode(m.group(1).equalsIgnoreCase("inform")); 
             }
             
+            // Caret and scroll positions of the project files
+            m = positionPattern.matcher(cb);
+            while (m.find()) {
+                project.addPosition(
+                        m.group(1),
+                        Integer.parseInt(m.group(2)),
+                        Integer.parseInt(m.group(3)));
+            }
+            
         } catch (Exception ex) {
             throw new JifProjectException("Initialise (" + file + "): " + ex.getMessage());
         }
@@ -217,6 +229,20 @@ public class JifProjectDAO {
                 output.append(project.getMainPath() + "\n");
             }
             output.append(Keyword.MODE.getName()).append((project.getInformMode() ? "INFORM":"GLULX")).append("\n");
+            for (int i = 0; i < files.size(); i++) {
+                JifFileName fileName = (JifFileName) files.elementAt(i);
+                int[] position = project.getPosition(fileName.getPath());
+                if (position == null) {
+                    continue;
+                }
+                output.append(Keyword.POSITION.getName());
+                if (isRelativeFile(project, fileName.getName())) {
+                    output.append(fileName.getName());
+                } else {
+                    output.append(fileName.getPath());
+                }
+                output.append(",").append(position[0]).append(",").append(position[1]).append("\n");
+            }
             output.append("\n");
             
             // The project Switches
@@ -254,6 +280,7 @@ public class JifProjectDAO {
         project.setInformMode(newProj.getInformMode());
         project.setMain(newProj.getMain());
         project.setSwitches(newProj.getSwitches());
+        project.setPositions(newProj.getPositions());
 
     }
     
@@ -0,0 +1,286 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifProjectReplace.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.JifDAO;
+import it.schillaci.jif.core.JifFileName;
+import it.schillaci.jif.core.JifTextReplace;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * JifProjectReplace: Finds the replacements to make in all the files of a
+ * project. The files are read and searched in parallel on the pool shared
+ * with <code>JifProjectSearch</code>, and nothing is changed: the result
+ * lists the replacements of each file together with the changed lines, to be
+ * previewed before the replacements are applied to an open document or
+ * written to the file.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifProjectReplace {
+
+    // Files handled by a single task before the work is split no further
+    private static final int REPLACE_THRESHOLD = 1;
+
+    /**
+     * The replacements to make in one file
+     */
+    public static class FileReplace {
+
+        private final String path;
+        private final CharSequence text;
+        private final List replacements;
+        private final List lines;
+
+        FileReplace(String path, CharSequence text, List replacements) {
+            this.path = path;
+            this.text = text;
+            this.replacements = replacements;
+            this.lines = preview(path, text, replacements);
+        }
+
+        /**
+         * Returns the path of the file
+         *
+         * @return the file path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the <code>JifTextReplace.Replacement</code>s found in the
+         * file, in order of their offsets
+         *
+         * @return the replacements
+         */
+        public List getReplacements() {
+            return replacements;
+        }
+
+        /**
+         * Returns the lines changed by the replacements as they will read
+         * once replaced, as <code>JifSearchMatch</code>es
+         *
+         * @return the changed lines
+         */
+        public List getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns the text of the file with the replacements made
+         *
+         * @return the replaced text
+         */
+        public String getReplacedText() {
+            return JifTextReplace.apply(text, replacements);
+        }
+    }
+
+    /**
+     * Finds the replacements for a range of the files, splitting the range in
+     * half until it is small enough to handle directly.
+     */
+    static class ReplaceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -2315870965014622387L;
+
+        private final JifTextReplace replace;
+        private final String[] paths;
+        private final Map texts;
+        private final FileReplace[] results;
+        private final String[] errors;
+        private final int start;
+        private final int end;
+
+        ReplaceTask(JifTextReplace replace, String[] paths, Map texts,
+                FileReplace[] results, String[] errors, int start, int end) {
+            this.replace = replace;
+            this.paths = paths;
+            this.texts = texts;
+            this.results = results;
+            this.errors = errors;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= REPLACE_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    try {
+                        results[i] = replaceFile(replace, paths[i], texts);
+                    } catch (IOException ex) {
+                        errors[i] = paths[i] + ": " + ex.getMessage();
+                    }
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(
+                    new ReplaceTask(replace, paths, texts, results, errors, start, middle),
+                    new ReplaceTask(replace, paths, texts, results, errors, middle, end));
+        }
+    }
+
+    /**
+     * Find the replacements to make in all the files of a project. Returns
+     * when every file has been searched.
+     *
+     * @param project
+     *              the project
+     * @param replace
+     *              the replacement to make
+     * @param texts
+     *              the text of the files open for editing, by path, which is
+     *              used instead of the text saved in the file
+     * @param failures
+     *              receives a message for each file which can not be read
+     * @return the <code>FileReplace</code> of each file with at least one
+     *         replacement, in the order of the project files
+     * @throws IllegalArgumentException
+     *              if the replacement is not valid
+     */
+    public static List find(JifProject project, JifTextReplace replace, Map texts, List failures) {
+
+        List paths = new ArrayList();
+        for (Iterator i = project.iterator(); i.hasNext();) {
+            paths.add(((JifFileName) i.next()).getPath());
+        }
+        if (paths.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+
+        FileReplace[] results = new FileReplace[paths.size()];
+        String[] errors = new String[paths.size()];
+        JifProjectSearch.getPool().invoke(new ReplaceTask(
+                replace,
+                (String[]) paths.toArray(new String[paths.size()]),
+                texts,
+                results,
+                errors,
+                0,
+                results.length));
+
+        List found = new ArrayList();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                found.add(results[i]);
+            }
+            if (errors[i] != null) {
+                failures.add(errors[i]);
+            }
+        }
+        return found;
+    }
+
+    // Read and search one file
+    private static FileReplace replaceFile(JifTextReplace replace, String path, Map texts)
+            throws IOException {
+
+        CharSequence text = (CharSequence) texts.get(path);
+        if (text == null) {
+            text = JifDAO.load(new File(path));
+        }
+
+        List replacements = replace.findAll(text);
+        return replacements.isEmpty() ? null : new FileReplace(path, text, replacements);
+    }
+
+    // The lines of a text changed by some replacements, as they will read
+    // once replaced. Replacements on the same line are shown together.
+    private static List preview(String path, CharSequence text, List replacements) {
+
+        List lines = new ArrayList();
+        int length = text.length();
+        int line = 1;
+        int lineStart = 0;
+        int scanned = 0;
+        int i = 0;
+
+        while (i < replacements.size()) {
+            JifTextReplace.Replacement r = (JifTextReplace.Replacement) replacements.get(i);
+
+            // Count the lines up to the start of the replacement
+            for (; scanned < r.getStart(); scanned++) {
+                if (text.charAt(scanned) == '\n') {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+
+            // Replace up to the end of the line holding the last replacement
+            StringBuilder out = new StringBuilder();
+            int last = lineStart;
+            do {
+                r = (JifTextReplace.Replacement) replacements.get(i);
+                out.append(text, last, r.getStart()).append(r.getText());
+                last = r.getEnd();
+                i++;
+            } while (i < replacements.size()
+                    && indexOfNewline(text, last, ((JifTextReplace.Replacement)
+                    replacements.get(i)).getStart()) < 0);
+            int end = indexOfNewline(text, last, length);
+            if (end < 0) {
+                end = length;
+            }
+            out.append(text, last, end);
+            int textEnd = out.length();
+            if (textEnd > 0 && out.charAt(textEnd - 1) == '\r') {
+                out.setLength(textEnd - 1);
+            }
+
+            lines.add(new JifSearchMatch(path, line, lineStart, out.toString()));
+        }
+        return lines;
+    }
+
+    // Offset of the first newline in a range of a text, or -1
+    private static int indexOfNewline(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,396 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifProjectSearch.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.JifDAO;
+import it.schillaci.jif.core.JifFileName;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JifProjectSearch: Searches all the files of a project for a string or a 
+ * regular expression, ignoring case.
+ * <p>
+ * The first time a file is searched the set of (case folded) character 
+ * trigrams it contains is recorded. Later plain text searches only read the 
+ * files containing every trigram of the target, for as long as the 
+ * modification time and size of the file are unchanged. The files which must
+ * be read are read in bulk and searched in parallel on a fork-join pool, and
+ * the matching lines of each file are passed to a 
+ * <code>JifSearchObserver</code> as soon as the file has been searched.
+ * <p>
+ * Files are searched as they are saved on disk.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifProjectSearch {
+
+    // Files searched by a single task before the work is split no further
+    private static final int SEARCH_THRESHOLD = 1;
+
+    // Pool shared by all project searches
+    private static ForkJoinPool pool = null;
+
+    /**
+     * The trigrams found in a file
+     */
+    static class Entry {
+
+        // Modification time of the file when it was indexed
+        long modified;
+        // Size of the file when it was indexed
+        long size;
+        // Sorted, distinct trigram codes
+        int[] trigrams;
+
+        Entry(long modified, long size, int[] trigrams) {
+            this.modified = modified;
+            this.size = size;
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * Searches a range of the candidate files, splitting the range in half
+     * until it is small enough to search directly.
+     */
+    class SearchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -221390232664877725L;
+
+        private final Search search;
+        private final int start;
+        private final int end;
+
+        SearchTask(Search search, int start, int end) {
+            this.search = search;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= SEARCH_THRESHOLD) {
+                for (int i = start; i < end && !search.isCancelled(); i++) {
+                    searchFile(search, search.paths[i]);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(
+                    new SearchTask(search, start, middle),
+                    new SearchTask(search, middle, end));
+        }
+    }
+
+    /**
+     * The state of a single search
+     */
+    class Search {
+
+        final int generation;
+        final Pattern pattern;
+        final String[] paths;
+        final JifSearchObserver observer;
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicInteger matches = new AtomicInteger();
+
+        Search(int generation, Pattern pattern, String[] paths, JifSearchObserver observer) {
+            this.generation = generation;
+            this.pattern = pattern;
+            this.paths = paths;
+            this.observer = observer;
+        }
+
+        boolean isCancelled() {
+            return generation != JifProjectSearch.this.generation.get();
+        }
+    }
+
+    // File path to file trigrams
+    private Map files = new HashMap();
+
+    // Incremented to cancel the search in progress, from any thread
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Search all the files of a project, cancelling any search already in 
+     * progress. The search runs on the calling thread and the fork-join pool
+     * and returns when every file has been searched.
+     *
+     * @param project
+     *              the project to search
+     * @param target
+     *              the string or regular expression to find
+     * @param regex
+     *              whether the target is a regular expression
+     * @param wholeWord
+     *              whether matches must start and end at word boundaries
+     * @param observer
+     *              receives the matching lines of each file
+     * @return the number of matching lines, or -1 if the search was cancelled
+     * @throws java.util.regex.PatternSyntaxException
+     *              if the target is not a valid regular expression
+     */
+    public int search(JifProject project, String target, boolean regex,
+            boolean wholeWord, JifSearchObserver observer) {
+
+        int current = generation.incrementAndGet();
+        Pattern pattern = compile(target, regex, wholeWord);
+
+        // Only plain text targets can be looked up in the trigram sets
+        int[] required = (regex || target.length() < 3)
+                ? null
+                : trigrams(target);
+
+        List candidates = new ArrayList();
+        Set paths = new HashSet();
+        synchronized (this) {
+            for (Iterator i = project.iterator(); i.hasNext();) {
+                String path = ((JifFileName) i.next()).getPath();
+                paths.add(path);
+                Entry entry = getEntry(path);
+                if (entry == null
+                        || required == null
+                        || containsAll(entry.trigrams, required)) {
+                    candidates.add(path);
+                }
+            }
+            files.keySet().retainAll(paths);
+        }
+
+        Search search = new Search(
+                current,
+                pattern,
+                (String[]) candidates.toArray(new String[candidates.size()]),
+                observer);
+        if (search.paths.length > 0) {
+            getPool().invoke(new SearchTask(search, 0, search.paths.length));
+        }
+
+        if (search.isCancelled()) {
+            return -1;
+        }
+        observer.searchFinished(search.files.get(), search.matches.get());
+        return search.matches.get();
+    }
+
+    /**
+     * Cancel the search in progress, if any
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Forget the trigrams of all the files, for example when a project is 
+     * closed
+     */
+    public synchronized void clear() {
+        cancel();
+        files.clear();
+    }
+
+    /**
+     * Create the pattern used to search for a target, ignoring case
+     *
+     * @param target
+     *              the string or regular expression to find
+     * @param regex
+     *              whether the target is a regular expression
+     * @param wholeWord
+     *              whether matches must start and end at word boundaries
+     * @return the compiled pattern
+     */
+    public static Pattern compile(String target, boolean regex, boolean wholeWord) {
+        String expression = regex ? target : Pattern.quote(target);
+        if (wholeWord) {
+            expression = "\\b(?:" + expression + ")\\b";
+        }
+        return Pattern.compile(
+                expression,
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.MULTILINE);
+    }
+
+    // Read, index and search one file
+    private void searchFile(Search search, String path) {
+
+        File file = new File(path);
+        CharBuffer cb;
+        try {
+            long modified = file.lastModified();
+            long size = file.length();
+            cb = JifDAO.load(file);
+            synchronized (this) {
+                if (getEntry(path) == null) {
+                    files.put(path, new Entry(modified, size, trigrams(cb)));
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Unable to search " + path + ": " + ex.getMessage());
+            return;
+        }
+
+        List matches = new ArrayList();
+        Matcher m = search.pattern.matcher(cb);
+        int length = cb.length();
+        int line = 1;
+        int lineStart = 0;
+        int scanned = 0;
+        int from = 0;
+
+        while (from <= length && m.find(from)) {
+            if (search.isCancelled()) {
+                return;
+            }
+
+            // Count the lines up to the start of the match
+            int start = m.start();
+            for (; scanned < start; scanned++) {
+                if (cb.get(scanned) == '\n') {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+            int lineEnd = start;
+            while (lineEnd < length && cb.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int textEnd = lineEnd;
+            if (textEnd > lineStart && cb.get(textEnd - 1) == '\r') {
+                textEnd--;
+            }
+
+            matches.add(new JifSearchMatch(
+                    path,
+                    line,
+                    start,
+                    cb.subSequence(lineStart, textEnd).toString()));
+
+            // Only report each line once
+            scanned = lineEnd;
+            from = lineEnd + 1;
+        }
+
+        if (!matches.isEmpty() && !search.isCancelled()) {
+            search.files.incrementAndGet();
+            search.matches.addAndGet(matches.size());
+            search.observer.searchFound(path, matches);
+        }
+    }
+
+    // Returns the entry for a file if it is still up to date
+    private Entry getEntry(String path) {
+        Entry entry = (Entry) files.get(path);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(path);
+        if (entry.modified != file.lastModified() || entry.size != file.length()) {
+            files.remove(path);
+            return null;
+        }
+        return entry;
+    }
+
+    // --- Trigrams ------------------------------------------------------------
+
+    /**
+     * Returns the sorted, distinct trigram codes of some text. Characters are
+     * folded the same way as a case insensitive comparison and reduced to 
+     * eight bits, so that a match of the text always has all its trigrams.
+     *
+     * @param text
+     *              the text to index
+     * @return sorted array of trigram codes
+     */
+    static int[] trigrams(CharSequence text) {
+        int length = text.length();
+        if (length < 3) {
+            return new int[0];
+        }
+
+        int[] codes = new int[length - 2];
+        int code = (fold(text.charAt(0)) << 8) | fold(text.charAt(1));
+        for (int i = 2; i < length; i++) {
+            code = ((code << 8) | fold(text.charAt(i))) & 0xffffff;
+            codes[i - 2] = code;
+        }
+        Arrays.sort(codes);
+
+        int count = 1;
+        for (int i = 1; i < codes.length; i++) {
+            if (codes[i] != codes[count - 1]) {
+                codes[count++] = codes[i];
+            }
+        }
+        return (count == codes.length) ? codes : Arrays.copyOf(codes, count);
+    }
+
+    private static int fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c)) & 0xff;
+    }
+
+    private static boolean containsAll(int[] trigrams, int[] required) {
+        for (int i = 0; i < required.length; i++) {
+            if (Arrays.binarySearch(trigrams, required[i]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,83 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifSearchMatch.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+/**
+ * A line of a project file matching a <code>JifProjectSearch</code>
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifSearchMatch {
+    
+    // Path of the file containing the match
+    private String path;
+    // Line number of the match (starting at 1)
+    private int line;
+    // Offset of the match in the file
+    private int position;
+    // Text of the matching line
+    private String text;
+    
+    public JifSearchMatch(String path, int line, int position, String text) {
+        this.path = path;
+        this.line = line;
+        this.position = position;
+        this.text = text;
+    }
+    
+    // --- Accessor methods ----------------------------------------------------
+    
+    public int getLine() {
+        return line;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public int getPosition() {
+        return position;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    // --- Object methods ------------------------------------------------------
+    
+    @Override
+    public String toString() {
+        return path + ":" + line + ": " + text;
+    }
+}
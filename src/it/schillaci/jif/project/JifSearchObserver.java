@@ -0,0 +1,66 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifSearchObserver.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import java.util.List;
+
+/**
+ * Receives the results of a <code>JifProjectSearch</code> as they are found.
+ * Methods are called from the search threads, not the event dispatch thread.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public interface JifSearchObserver {
+    
+    /**
+     * Called once for each file containing matches
+     *
+     * @param path
+     *              the path of the file
+     * @param matches
+     *              list of <code>JifSearchMatch</code> in line order
+     */
+    void searchFound(String path, List matches);
+    
+    /**
+     * Called when every file has been searched, unless the search was
+     * cancelled
+     *
+     * @param files
+     *              number of files containing matches
+     * @param matches
+     *              total number of matching lines
+     */
+    void searchFinished(int files, int matches);
+}
@@ -0,0 +1,450 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifSymbolIndex.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.JifDAO;
+import it.schillaci.jif.core.JifFileName;
+import it.schillaci.jif.inform.InformClassGraph;
+import it.schillaci.jif.inform.InformSymbol;
+import it.schillaci.jif.inform.InformSymbolScanner;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * JifSymbolIndex: The definitions found in the Inform source files of a
+ * project. Each file is indexed separately from its lexer tokens and only
+ * rescanned when its modification time or size changes, or when the text of
+ * its editor is updated. Changed files are read and scanned in parallel on a
+ * fork-join pool. The index is persisted next to the project file by
+ * <code>JifSymbolIndexDAO</code>.
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifSymbolIndex {
+
+    /**
+     * Indexed details for a single source file
+     */
+    static class Entry {
+
+        // Modification time of the file when it was scanned, -1 if unknown
+        long modified;
+        // Size of the file when it was scanned
+        long size;
+        // Whether the symbols come from unsaved editor text
+        boolean edited = false;
+        // Definitions found in the file
+        List symbols;
+
+        Entry(long modified, long size, List symbols) {
+            this.modified = modified;
+            this.size = size;
+            this.symbols = symbols;
+        }
+    }
+
+    // Files scanned by a single task before the work is split no further
+    private static final int SCAN_THRESHOLD = 2;
+
+    // Pool shared by all project scans
+    private static ForkJoinPool pool = null;
+
+    /**
+     * Reads and scans a range of the changed files, splitting the range in
+     * half until it is small enough to scan directly. Each file is read once
+     * and the entry for it stored in the matching slot of the results.
+     */
+    static class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 5759370278450184326L;
+
+        private final String[] paths;
+        private final Entry[] results;
+        private final int start;
+        private final int end;
+
+        ScanTask(String[] paths, Entry[] results, int start, int end) {
+            this.paths = paths;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= SCAN_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    results[i] = scan(paths[i]);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(
+                    new ScanTask(paths, results, start, middle),
+                    new ScanTask(paths, results, middle, end));
+        }
+    }
+
+    // File path to indexed file details
+    private Map files = new TreeMap();
+
+    // Definition name to first definition, built on demand
+    private Map definitions = null;
+
+    // Inheritance of the classes and objects, updated with each file
+    private InformClassGraph classes = new InformClassGraph();
+
+    // Whether the index has changed since it was loaded or stored
+    private boolean changed = false;
+
+    // --- Methods -------------------------------------------------------------
+
+    /**
+     * Bring the index up to date with the Inform source files of a project.
+     * Files which are no longer part of the project are removed and files
+     * which have not changed on disk are not rescanned.
+     *
+     * @param project
+     *              the project to index
+     * @return the number of files which were rescanned
+     */
+    public int refresh(JifProject project) {
+
+        Set paths = new HashSet();
+        List stale = new ArrayList();
+
+        synchronized (this) {
+            for (Iterator i = project.iterator(); i.hasNext();) {
+                JifFileName file = (JifFileName) i.next();
+                if (file.getContentType() == JifFileName.INFORM) {
+                    paths.add(file.getPath());
+                    if (isStale(file.getPath())) {
+                        stale.add(file.getPath());
+                    }
+                }
+            }
+            retain(paths);
+        }
+
+        if (stale.isEmpty()) {
+            return 0;
+        }
+
+        // Read and scan the changed files without holding the index lock
+        String[] scanPaths = (String[]) stale.toArray(new String[stale.size()]);
+        Entry[] results = new Entry[scanPaths.length];
+        getPool().invoke(new ScanTask(scanPaths, results, 0, scanPaths.length));
+
+        // Merge the new entries, unless an editor has updated the file since
+        int count = 0;
+        synchronized (this) {
+            for (int i = 0; i < scanPaths.length; i++) {
+                Entry entry = (Entry) files.get(scanPaths[i]);
+                if (entry != null && entry.edited) {
+                    continue;
+                }
+                if (results[i] == null) {
+                    remove(scanPaths[i]);
+                } else {
+                    put(scanPaths[i], results[i]);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rescan a file from disk if it has changed since it was last indexed.
+     * Files with unsaved editor changes are left as they are.
+     *
+     * @param path
+     *              the path of the Inform source file
+     * @return <code>true</code> if the file was rescanned
+     */
+    public synchronized boolean refresh(String path) {
+
+        if (!isStale(path)) {
+            return false;
+        }
+
+        Entry entry = scan(path);
+        if (entry == null) {
+            remove(path);
+            return false;
+        }
+        put(path, entry);
+        return true;
+    }
+
+    // Whether a file needs to be rescanned from disk
+    private boolean isStale(String path) {
+        Entry entry = (Entry) files.get(path);
+        if (entry == null) {
+            return true;
+        }
+        if (entry.edited) {
+            return false;
+        }
+        File file = new File(path);
+        return entry.modified != file.lastModified() || entry.size != file.length();
+    }
+
+    // Read and scan a file from disk, returns null if it cannot be read
+    private static Entry scan(String path) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            long modified = file.lastModified();
+            long size = file.length();
+            return new Entry(modified, size, InformSymbolScanner.scan(path, JifDAO.read(file)));
+        } catch (IOException ex) {
+            System.err.println("Unable to index " + path + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * Reindex a file from the text of its editor. The file will not be
+     * rescanned from disk until it is saved or invalidated.
+     *
+     * @param path
+     *              the path of the Inform source file
+     * @param source
+     *              the current text of the file
+     */
+    public synchronized void update(String path, CharSequence source) {
+        Entry entry = new Entry(-1, -1, InformSymbolScanner.scan(path, source));
+        entry.edited = true;
+        put(path, entry);
+    }
+
+    /**
+     * Reindex a file from text which has just been saved to disk
+     *
+     * @param path
+     *              the path of the Inform source file
+     * @param source
+     *              the saved text of the file
+     */
+    public synchronized void saved(String path, CharSequence source) {
+        File file = new File(path);
+        put(path, new Entry(file.lastModified(), file.length(), InformSymbolScanner.scan(path, source)));
+    }
+
+    /**
+     * Mark a file for rescanning from disk, for example when its editor is
+     * closed without saving.
+     *
+     * @param path
+     *              the path of the Inform source file
+     */
+    public synchronized void invalidate(String path) {
+        Entry entry = (Entry) files.get(path);
+        if (entry != null) {
+            entry.modified = -1;
+            entry.edited = false;
+            changed = true;
+        }
+    }
+
+    /**
+     * Remove a file from the index
+     *
+     * @param path
+     *              the path of the Inform source file
+     */
+    public synchronized void remove(String path) {
+        if (files.remove(path) != null) {
+            classes.remove(path);
+            definitions = null;
+            changed = true;
+        }
+    }
+
+    /**
+     * Remove all the files from the index except those specified
+     *
+     * @param paths
+     *              the paths of the files to keep
+     */
+    public synchronized void retain(Collection paths) {
+        for (Iterator i = files.keySet().iterator(); i.hasNext();) {
+            String path = (String) i.next();
+            if (!paths.contains(path)) {
+                i.remove();
+                classes.remove(path);
+                definitions = null;
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Remove all the files from the index
+     */
+    public synchronized void clear() {
+        files.clear();
+        classes.clear();
+        definitions = null;
+        changed = false;
+    }
+
+    /**
+     * Find the first definition of a name in the indexed files. Verbs are
+     * dictionary words rather than code names and are not included. An action
+     * name with no definition of its own finds the routine for the action, so
+     * Take finds TakeSub.
+     *
+     * @param name
+     *              the name to look for (not case sensitive)
+     * @return the definition, or <code>null</code> if not found
+     */
+    public synchronized InformSymbol lookup(String name) {
+
+        if (definitions == null) {
+            definitions = new HashMap();
+            for (Iterator i = files.values().iterator(); i.hasNext();) {
+                Entry entry = (Entry) i.next();
+                for (Iterator j = entry.symbols.iterator(); j.hasNext();) {
+                    InformSymbol symbol = (InformSymbol) j.next();
+                    if (symbol.getKind() != InformSymbol.VERB
+                            && !definitions.containsKey(symbol.getName())) {
+                        definitions.put(symbol.getName(), symbol);
+                    }
+                }
+            }
+        }
+        InformSymbol symbol = (InformSymbol) definitions.get(name.toLowerCase());
+        if (symbol == null) {
+            symbol = (InformSymbol) definitions.get(name.toLowerCase() + "sub");
+            if (symbol != null && symbol.getKind() != InformSymbol.ROUTINE) {
+                symbol = null;
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the inheritance of the classes and objects in the indexed files.
+     * The graph is updated along with the index, so the index lock must be
+     * held while it is in use.
+     *
+     * @return the class graph
+     */
+    public synchronized InformClassGraph getClassGraph() {
+        return classes;
+    }
+
+    // --- Accessor methods ----------------------------------------------------
+
+    /**
+     * Returns the definitions in a file
+     *
+     * @param path
+     *              the path of the Inform source file
+     * @return list of <code>InformSymbol</code> in source order
+     */
+    public synchronized List getSymbols(String path) {
+        Entry entry = (Entry) files.get(path);
+        return (entry == null)
+                ? Collections.EMPTY_LIST
+                : Collections.unmodifiableList(entry.symbols);
+    }
+
+    /**
+     * Returns the definitions of one kind across all the indexed files
+     *
+     * @param kind
+     *              the kind of definition
+     * @return list of <code>InformSymbol</code>
+     */
+    public synchronized List getSymbols(InformSymbol.Kind kind) {
+        List list = new ArrayList();
+        for (Iterator i = files.values().iterator(); i.hasNext();) {
+            Entry entry = (Entry) i.next();
+            for (Iterator j = entry.symbols.iterator(); j.hasNext();) {
+                InformSymbol symbol = (InformSymbol) j.next();
+                if (symbol.getKind() == kind) {
+                    list.add(symbol);
+                }
+            }
+        }
+        return list;
+    }
+
+    public synchronized boolean contains(String path) {
+        return files.containsKey(path);
+    }
+
+    public synchronized boolean isChanged() {
+        return changed;
+    }
+
+    synchronized void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
+    synchronized Map getEntries() {
+        return new TreeMap(files);
+    }
+
+    synchronized void put(String path, Entry entry) {
+        files.put(path, entry);
+        classes.update(path, entry.symbols);
+        definitions = null;
+        changed = true;
+    }
+}
@@ -0,0 +1,225 @@
+package it.schillaci.jif.project;
+
+/*
+ * JifSymbolIndexDAO.java
+ *
+ * This file is part of JIF.
+ *
+ * Jif is substantially an editor entirely written in java that allows the
+ * file management for the creation of text-adventures based on Graham
+ * Nelson's Inform standard [a programming language for Interactive Fiction].
+ * With Jif, it's possible to edit, compile and run a Text Adventure in
+ * Inform format.
+ *
+ * Copyright (C) 2004-2018  Alessandro Schillaci
+ *
+ * WeB   : http://www.slade.altervista.org/
+ * e-m@il: silver.slade@tiscali.it
+ *
+ * Jif is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Jif; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+import it.schillaci.jif.core.Constants;
+import it.schillaci.jif.core.JifDAO;
+import it.schillaci.jif.inform.InformSymbol;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Data access object for the project symbol index. The index is stored as a
+ * text file next to the project file, with the extension <code>.jsi</code>.
+ * Each indexed source file is recorded with its modification time and size,
+ * followed by its definitions and the classes each inherits from, separated
+ * by spaces. An index stored in another version of the format is ignored.
+ * <pre>
+ * [VERSION]version
+ * [FILE]modified,size,path
+ * [SYMBOL]kind,position,name,classes
+ * </pre>
+ *
+ * @version 1.0
+ * @since JIF 3.7
+ */
+public class JifSymbolIndexDAO {
+
+    // Symbol index file keywords
+    private static final String VERSION = "[VERSION]";
+    private static final String FILE    = "[FILE]";
+    private static final String SYMBOL  = "[SYMBOL]";
+
+    // Version of the symbol index format
+    private static final String version = "2";
+
+    // Extension of the symbol index file
+    private static final String extension = ".jsi";
+
+    /** Creates a new instance of JifSymbolIndexDAO */
+    private JifSymbolIndexDAO() {
+    }
+
+    /**
+     * Returns the symbol index file for a project
+     *
+     * @param project
+     *              the project
+     * @return the symbol index file next to the project file
+     */
+    public static File getFile(JifProject project) {
+        String path = project.getPath();
+        int dot = path.lastIndexOf('.');
+        if (dot > path.lastIndexOf(File.separatorChar)) {
+            path = path.substring(0, dot);
+        }
+        return new File(path + extension);
+    }
+
+    /**
+     * Load a symbol index from persistent storage, replacing its contents. A
+     * missing or unreadable index file just leaves the index empty so that it
+     * is rebuilt from the source files.
+     *
+     * @param index
+     *              the index to load
+     * @param file
+     *              the persistent storage from which to load the index
+     */
+    public static void load(JifSymbolIndex index, File file) {
+
+        index.clear();
+        if (!file.exists()) {
+            return;
+        }
+
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), Constants.fileFormat));
+            String line;
+            String path = null;
+            JifSymbolIndex.Entry entry = null;
+            boolean current = false;
+
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith(VERSION)) {
+                    current = version.equals(line.substring(VERSION.length()));
+                } else if (!current) {
+                    continue;
+                } else if (line.startsWith(FILE)) {
+                    // A file is added once all its definitions have been read
+                    if (entry != null) {
+                        index.put(path, entry);
+                    }
+                    String[] fields = line.substring(FILE.length()).split(",", 3);
+                    path = fields[2];
+                    entry = new JifSymbolIndex.Entry(
+                            Long.parseLong(fields[0]),
+                            Long.parseLong(fields[1]),
+                            new ArrayList());
+                } else if (line.startsWith(SYMBOL) && entry != null) {
+                    String[] fields = line.substring(SYMBOL.length()).split(",", -1);
+                    InformSymbol.Kind kind = InformSymbol.Kind.get(fields[0]);
+                    if (kind == null) {
+                        continue;
+                    }
+                    InformSymbol symbol = new InformSymbol(
+                            kind,
+                            fields[2],
+                            path,
+                            Integer.parseInt(fields[1]));
+                    String[] classes = fields[3].split(" ");
+                    for (int j = 0; j < classes.length; j++) {
+                        if (classes[j].length() > 0) {
+                            symbol.addClass(classes[j]);
+                        }
+                    }
+                    entry.symbols.add(symbol);
+                }
+            }
+            if (entry != null) {
+                index.put(path, entry);
+            }
+        } catch (Exception ex) {
+            System.err.println("Unable to load symbol index (" + file + "): " + ex.getMessage());
+            index.clear();
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+        index.setChanged(false);
+    }
+
+    /**
+     * Store a symbol index to persistent storage if it has changed. Files
+     * indexed from unsaved editor text are stored as unknown so that they are
+     * rescanned from disk when the index is next loaded.
+     *
+     * @param index
+     *              the index to store
+     * @param file
+     *              the persistent storage for the index
+     */
+    public static void store(JifSymbolIndex index, File file) {
+
+        if (!index.isChanged()) {
+            return;
+        }
+
+        StringBuilder output = new StringBuilder();
+        output.append("# Jif Symbol Index\n");
+        output.append("# Generated file, it is rebuilt if removed\n");
+        output.append(VERSION).append(version).append("\n");
+
+        for (Iterator i = index.getEntries().entrySet().iterator(); i.hasNext();) {
+            Entry e = (Entry) i.next();
+            String path = (String) e.getKey();
+            JifSymbolIndex.Entry entry = (JifSymbolIndex.Entry) e.getValue();
+
+            output.append(FILE)
+                    .append(entry.edited ? -1 : entry.modified).append(",")
+                    .append(entry.size).append(",")
+                    .append(path).append("\n");
+            for (Iterator j = entry.symbols.iterator(); j.hasNext();) {
+                InformSymbol symbol = (InformSymbol) j.next();
+                output.append(SYMBOL)
+                        .append(symbol.getKind().getName()).append(",")
+                        .append(symbol.getPosition()).append(",")
+                        .append(symbol.getName()).append(",");
+                List classes = symbol.getClasses();
+                for (int k = 0; k < classes.size(); k++) {
+                    output.append((k == 0) ? "" : " ").append(classes.get(k));
+                }
+                output.append("\n");
+            }
+        }
+
+        try {
+            JifDAO.save(file, output.toString());
+            index.setChanged(false);
+        } catch (IOException ex) {
+            System.err.println("Unable to store symbol index (" + file + "): " + ex.getMessage());
+        }
+    }
+}
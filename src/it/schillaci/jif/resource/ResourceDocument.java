@@ -143,7 +143,7 @@ public class ResourceDocument extends JifDocument {
             throws BadLocationException {
         
         super.insertString(offset, str, getStyle(InformSyntax.Normal.getName()));
-        processChangedLines(offset, str.length());
+        changedLines(offset, str.length());
     }
     
     /**
@@ -161,7 +161,7 @@ public class ResourceDocument extends JifDocument {
             throws BadLocationException {
         
         super.remove(offset, length);
-        processChangedLines(offset, length);
+        changedLines(offset, length);
     }
     
     /**